@@ -0,0 +1,53 @@
+package com.programthis.order_cart_service.client;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+
+import java.time.Duration;
+
+/**
+ * Si se usa el endpoint de búsqueda masiva del catálogo (GET /api/products/batch). Solo 405 y 501 indican que el
+ * catálogo no lo soporta: entonces se deja de usar durante {@code retryAfter} y después se vuelve a probar (ej. tras
+ * actualizar el catálogo). Un 400 o un 404 puede deberse a la propia petición (ej. un ID mal formado), así que solo
+ * hace que ese lote se resuelva con búsquedas individuales.
+ */
+class BulkLookupAvailability {
+
+    private final boolean enabled;
+    private final long retryAfterNanos;
+    // System.nanoTime() a partir del cual se vuelve a usar la búsqueda masiva
+    private volatile long disabledUntilNanos;
+    private volatile boolean disabled;
+
+    BulkLookupAvailability(boolean enabled, Duration retryAfter) {
+        this.enabled = enabled;
+        this.retryAfterNanos = retryAfter.toNanos();
+    }
+
+    boolean isAvailable() {
+        if (!enabled) {
+            return false;
+        }
+        if (disabled && System.nanoTime() - disabledUntilNanos >= 0) {
+            disabled = false;
+            System.out.println("Se vuelve a probar la búsqueda masiva del Product Catalog Service.");
+        }
+        return !disabled;
+    }
+
+    // true si el lote debe resolverse con búsquedas individuales; con 405/501 desactiva además la búsqueda masiva
+    boolean fallBackOn(HttpStatusCode status) {
+        if (status.isSameCodeAs(HttpStatus.METHOD_NOT_ALLOWED) || status.isSameCodeAs(HttpStatus.NOT_IMPLEMENTED)) {
+            disabledUntilNanos = System.nanoTime() + retryAfterNanos;
+            disabled = true;
+            System.err.println("El Product Catalog Service no soporta búsquedas masivas (" + status + "). Se usarán búsquedas individuales concurrentes durante "
+                    + Duration.ofNanos(retryAfterNanos) + ".");
+            return true;
+        }
+        if (status.isSameCodeAs(HttpStatus.BAD_REQUEST) || status.isSameCodeAs(HttpStatus.NOT_FOUND)) {
+            System.err.println("El Product Catalog Service rechazó una búsqueda masiva (" + status + "). Ese lote se resolverá con búsquedas individuales.");
+            return true;
+        }
+        return false;
+    }
+}
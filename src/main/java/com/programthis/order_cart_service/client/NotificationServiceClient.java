@@ -2,6 +2,7 @@ package com.programthis.order_cart_service.client;
 
 import com.programthis.order_cart_service.dto.NotificationRequestDto;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
@@ -14,7 +15,7 @@ public class NotificationServiceClient {
     private final String notificationServiceBaseUrl;
 
     @Autowired // Inyecta RestTemplate y la URL del notification-service
-    public NotificationServiceClient(RestTemplate restTemplate,
+    public NotificationServiceClient(@Qualifier("notificationRestTemplate") RestTemplate restTemplate,
                                        @Value("${notification-service.url}") String notificationServiceUrl) {
         this.restTemplate = restTemplate;
         // La URL base para el servicio de notificaciones (ej. http://localhost:8085)
@@ -3,6 +3,7 @@ package com.programthis.order_cart_service.client;
 import com.programthis.order_cart_service.dto.PaymentRequestDto;
 import com.programthis.order_cart_service.dto.PaymentResponseDto;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
@@ -17,7 +18,7 @@ public class PaymentServiceClient {
     private final String paymentServiceBaseUrl;
 
     @Autowired // Inyecta RestTemplate (definido en RestTemplateConfig) y la URL del payment-service
-    public PaymentServiceClient(RestTemplate restTemplate,
+    public PaymentServiceClient(@Qualifier("paymentRestTemplate") RestTemplate restTemplate,
                                 @Value("${payment-service.url}") String paymentServiceUrl) {
         this.restTemplate = restTemplate;
         // La URL base para el servicio de pagos (ej. http://localhost:8084)
@@ -1,38 +1,170 @@
 package com.programthis.order_cart_service.client;
 
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.programthis.order_cart_service.config.ProductCacheProperties;
 import com.programthis.order_cart_service.dto.ProductDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 @Component
 public class ProductCatalogServiceClient {
 
     private final RestTemplate restTemplate;
     private final String productCatalogBaseUrl;
+    private final Executor remoteCallExecutor;
+    private final int batchSize;
+    // Si se usa el endpoint de búsqueda masiva (se deja de usar un tiempo si el catálogo indica que no lo soporta)
+    private final BulkLookupAvailability bulkLookup;
+    // Caché local de productos, incluidos los inexistentes como Optional.empty() (null si está desactivada)
+    private final AsyncLoadingCache<Long, Optional<ProductDto>> productCache;
+    // Búsquedas en curso por ID: las peticiones concurrentes del mismo producto comparten una única llamada HTTP.
+    // Se ejecutan sin el plazo de quien las lanzó (ver startSharedLookup) y cada petición las espera con el suyo
+    private final Map<Long, CompletableFuture<Optional<ProductDto>>> inFlightLookups = new ConcurrentHashMap<>();
+    private final Counter coalescedLookups;
 
     @Autowired
-    public ProductCatalogServiceClient(RestTemplate restTemplate,
-                                       @Value("${product-catalog-service.url}") String productCatalogServiceUrl) {
+    public ProductCatalogServiceClient(@Qualifier("productCatalogRestTemplate") RestTemplate restTemplate,
+                                       @Value("${product-catalog-service.url}") String productCatalogServiceUrl,
+                                       @Qualifier("remoteCallExecutor") Executor remoteCallExecutor,
+                                       @Value("${product-catalog-service.batch-size:50}") int batchSize,
+                                       @Value("${product-catalog-service.bulk-lookup-enabled:true}") boolean bulkLookupEnabled,
+                                       @Value("${product-catalog-service.bulk-lookup-retry-after:10m}") Duration bulkLookupRetryAfter,
+                                       ProductCacheProperties cacheProperties,
+                                       MeterRegistry meterRegistry) {
         this.restTemplate = restTemplate;
         // La URL base para el servicio de catálogo (ej. http://localhost:8081)
         // Se añade "/api" porque es el prefijo de los controladores en product-catalog-service.
-        this.productCatalogBaseUrl = productCatalogServiceUrl + "/api"; 
+        this.productCatalogBaseUrl = productCatalogServiceUrl + "/api";
+        this.remoteCallExecutor = remoteCallExecutor;
+        this.batchSize = Math.max(1, batchSize);
+        this.bulkLookup = new BulkLookupAvailability(bulkLookupEnabled, bulkLookupRetryAfter);
+        this.coalescedLookups = Counter.builder("product.catalog.lookups.coalesced")
+                .description("Búsquedas de producto resueltas reutilizando una llamada ya en curso")
+                .register(meterRegistry);
+        this.productCache = cacheProperties.isEnabled() ? buildProductCache(cacheProperties, meterRegistry) : null;
+    }
+
+    /**
+     * Construye la caché acotada de productos: W-TinyLFU por tamaño, expiración por entrada y refresco en
+     * segundo plano de las entradas próximas a expirar (se sigue sirviendo el valor actual mientras se refresca).
+     * Los productos inexistentes (404) se guardan como Optional.empty() con un TTL corto ({@code negative-ttl}).
+     * Las estadísticas (aciertos, fallos, desalojos) se publican en Micrometer bajo el nombre de caché "products".
+     * Es asíncrona para que quien pide un producto que otra petición está cargando lo espere con su propio plazo.
+     */
+    private AsyncLoadingCache<Long, Optional<ProductDto>> buildProductCache(ProductCacheProperties properties, MeterRegistry meterRegistry) {
+        Duration expireAfterWrite = properties.getExpireAfterWrite();
+        Duration negativeTtl = properties.getNegativeTtl();
+        Caffeine<Long, Optional<ProductDto>> builder = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfter(new Expiry<Long, Optional<ProductDto>>() {
+                    @Override
+                    public long expireAfterCreate(Long productId, Optional<ProductDto> product, long currentTime) {
+                        return (product.isPresent() ? expireAfterWrite : negativeTtl).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Long productId, Optional<ProductDto> product, long currentTime, long currentDuration) {
+                        return expireAfterCreate(productId, product, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long productId, Optional<ProductDto> product, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .executor(remoteCallExecutor)
+                .recordStats();
+        Duration refreshAfterWrite = properties.getRefreshAfterWrite();
+        if (refreshAfterWrite != null && refreshAfterWrite.compareTo(expireAfterWrite) < 0) {
+            builder.refreshAfterWrite(refreshAfterWrite);
+        }
+
+        AsyncLoadingCache<Long, Optional<ProductDto>> cache = builder.buildAsync(new AsyncCacheLoader<Long, Optional<ProductDto>>() {
+            @Override
+            public CompletableFuture<Optional<ProductDto>> asyncLoad(Long productId, Executor executor) {
+                return lookupProduct(productId);
+            }
+
+            @Override
+            public CompletableFuture<Map<Long, Optional<ProductDto>>> asyncLoadAll(Set<? extends Long> productIds, Executor executor) {
+                return lookupProducts(new ArrayList<>(productIds));
+            }
+        });
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "products");
+        return cache;
     }
 
     /**
      * Obtiene los detalles de un producto del Product Catalog Service por su ID.
-     * Utiliza RestTemplate para realizar la llamada HTTP GET.
+     * Se sirve desde la caché local si está activa; en caso contrario utiliza RestTemplate para realizar la llamada HTTP GET.
      *
      * @param productId El ID del producto a buscar.
      * @return Un Optional que contiene el ProductDto si se encuentra el producto, o Optional.empty() si no se encuentra (404 Not Found).
      * @throws RuntimeException Si ocurre un error inesperado al comunicarse con el servicio (ej. error de conexión, 5xx).
      */
     public Optional<ProductDto> getProductById(Long productId) {
+        return await(productCache == null ? lookupProduct(productId) : productCache.get(productId));
+    }
+
+    // Single-flight: si ya hay una búsqueda en curso para este ID se reutiliza en lugar de lanzar otra
+    private CompletableFuture<Optional<ProductDto>> lookupProduct(Long productId) {
+        CompletableFuture<Optional<ProductDto>> lookup = new CompletableFuture<>();
+        CompletableFuture<Optional<ProductDto>> inFlight = inFlightLookups.putIfAbsent(productId, lookup);
+        if (inFlight != null) {
+            coalescedLookups.increment();
+            return inFlight;
+        }
+        startSharedLookup(() -> CompletableFuture.supplyAsync(() -> requestProductById(productId), remoteCallExecutor))
+                .whenComplete((product, ex) -> {
+                    if (ex == null) {
+                        lookup.complete(product);
+                    } else {
+                        lookup.completeExceptionally(unwrap(ex));
+                    }
+                    inFlightLookups.remove(productId, lookup);
+                });
+        return lookup;
+    }
+
+    // Lanza en remoteCallExecutor una búsqueda que pueden compartir varias peticiones, sin el plazo (RemoteCallDeadline)
+    // de la que la inicia: si ese plazo vence, la búsqueda no debe fallar para las demás. Solo la limitan los timeouts
+    // de cada petición HTTP (http-clients.*), y cada petición la espera con su propio plazo (await)
+    private <T> CompletableFuture<T> startSharedLookup(Supplier<CompletableFuture<T>> lookup) {
+        return RemoteCallDeadline.without(lookup);
+    }
+
+    private Optional<ProductDto> requestProductById(Long productId) {
         String url = productCatalogBaseUrl + "/products/{id}"; // Construye la URL completa para el endpoint de producto
         try {
             // Realiza la llamada GET. RestTemplate deserializa automáticamente la respuesta JSON a ProductDto.
@@ -50,4 +182,158 @@ public class ProductCatalogServiceClient {
             throw new RuntimeException("Error en comunicación con Product Catalog Service", ex);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Obtiene varios productos del Product Catalog Service en una sola operación.
+     * Los IDs se agrupan en lotes de {@code product-catalog-service.batch-size} que se consultan en paralelo
+     * contra el endpoint masivo. Si el catálogo no soporta dicho endpoint, se recurre a búsquedas individuales
+     * lanzadas concurrentemente, de modo que la latencia total depende de la búsqueda más lenta y no de la suma.
+     * Los productos ya presentes en la caché local no se vuelven a consultar.
+     *
+     * @param productIds Los IDs de los productos a buscar (se ignoran duplicados y nulos).
+     * @return Un mapa ID -> ProductDto con los productos encontrados. Los IDs inexistentes no aparecen en el mapa.
+     * @throws RuntimeException Si ocurre un error inesperado al comunicarse con el servicio.
+     */
+    public Map<Long, ProductDto> getProductsByIds(Collection<Long> productIds) {
+        List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(productIds));
+        distinctIds.remove(null);
+        if (distinctIds.isEmpty()) {
+            return Map.of();
+        }
+        // Solo los IDs que no están en caché se consultan al catálogo (vía AsyncCacheLoader.asyncLoadAll)
+        Map<Long, Optional<ProductDto>> lookups = await(productCache == null
+                ? lookupProducts(distinctIds)
+                : productCache.getAll(distinctIds));
+
+        Map<Long, ProductDto> products = new HashMap<>();
+        lookups.forEach((productId, product) -> product.ifPresent(productDto -> products.put(productId, productDto)));
+        return products;
+    }
+
+    // Single-flight por ID: se consultan solo los IDs sin búsqueda en curso y se reutilizan las demás
+    private CompletableFuture<Map<Long, Optional<ProductDto>>> lookupProducts(List<Long> distinctIds) {
+        Map<Long, CompletableFuture<Optional<ProductDto>>> ownLookups = new LinkedHashMap<>();
+        Map<Long, CompletableFuture<Optional<ProductDto>>> lookups = new LinkedHashMap<>();
+        int coalesced = 0;
+        for (Long productId : distinctIds) {
+            CompletableFuture<Optional<ProductDto>> lookup = new CompletableFuture<>();
+            CompletableFuture<Optional<ProductDto>> inFlight = inFlightLookups.putIfAbsent(productId, lookup);
+            if (inFlight == null) {
+                ownLookups.put(productId, lookup);
+                lookups.put(productId, lookup);
+            } else {
+                lookups.put(productId, inFlight);
+                coalesced++;
+            }
+        }
+        if (coalesced > 0) {
+            coalescedLookups.increment(coalesced);
+        }
+
+        if (!ownLookups.isEmpty()) {
+            List<Long> ownIds = new ArrayList<>(ownLookups.keySet());
+            startSharedLookup(() -> requestProductsByIds(ownIds)).whenComplete((found, ex) -> ownLookups.forEach((productId, lookup) -> {
+                // Los IDs que el catálogo no devuelve se registran como inexistentes (caché negativa)
+                if (ex == null) {
+                    lookup.complete(Optional.ofNullable(found.get(productId)));
+                } else {
+                    lookup.completeExceptionally(unwrap(ex));
+                }
+                inFlightLookups.remove(productId, lookup);
+            }));
+        }
+
+        return CompletableFuture.allOf(lookups.values().toArray(new CompletableFuture[0])).thenApply(done -> {
+            Map<Long, Optional<ProductDto>> results = new HashMap<>();
+            lookups.forEach((productId, lookup) -> results.put(productId, lookup.join()));
+            return results;
+        });
+    }
+
+    // Los lotes y las búsquedas individuales se encadenan sin bloquear ningún hilo de remoteCallExecutor mientras
+    // esperan a otras tareas del mismo executor
+    private CompletableFuture<Map<Long, ProductDto>> requestProductsByIds(List<Long> distinctIds) {
+        if (!bulkLookup.isAvailable()) {
+            return fetchIndividually(distinctIds);
+        }
+        // Todos los lotes se lanzan a la vez; los que el catálogo rechace se resuelven individualmente
+        List<CompletableFuture<Map<Long, ProductDto>>> chunkLookups = new ArrayList<>();
+        for (int from = 0; from < distinctIds.size(); from += batchSize) {
+            List<Long> chunk = distinctIds.subList(from, Math.min(from + batchSize, distinctIds.size()));
+            chunkLookups.add(CompletableFuture.supplyAsync(() -> fetchChunkInBulk(chunk), remoteCallExecutor)
+                    .thenCompose(chunkResult -> chunkResult.map(CompletableFuture::completedFuture)
+                            .orElseGet(() -> fetchIndividually(chunk))));
+        }
+        return mergeProducts(chunkLookups);
+    }
+
+    private Optional<Map<Long, ProductDto>> fetchChunkInBulk(List<Long> chunk) {
+        String url = UriComponentsBuilder.fromHttpUrl(productCatalogBaseUrl + "/products/batch")
+                .queryParam("ids", chunk.toArray())
+                .toUriString();
+        try {
+            ProductDto[] productDtos = restTemplate.getForObject(url, ProductDto[].class);
+            Map<Long, ProductDto> products = new HashMap<>();
+            if (productDtos != null) {
+                for (ProductDto productDto : productDtos) {
+                    if (productDto != null && productDto.getId() != null && chunk.contains(productDto.getId())) {
+                        products.put(productDto.getId(), productDto);
+                    }
+                }
+            }
+            return Optional.of(products);
+        } catch (HttpStatusCodeException ex) {
+            if (bulkLookup.fallBackOn(ex.getStatusCode())) {
+                return Optional.empty();
+            }
+            System.err.println("Error al comunicarse con Product Catalog Service para obtener los productos " + chunk + ": " + ex.getMessage());
+            throw new RuntimeException("Error en comunicación con Product Catalog Service", ex);
+        } catch (Exception ex) {
+            System.err.println("Error al comunicarse con Product Catalog Service para obtener los productos " + chunk + ": " + ex.getMessage());
+            throw new RuntimeException("Error en comunicación con Product Catalog Service", ex);
+        }
+    }
+
+    // Fallback: una búsqueda individual por ID, todas lanzadas concurrentemente
+    private CompletableFuture<Map<Long, ProductDto>> fetchIndividually(List<Long> productIds) {
+        List<CompletableFuture<Map<Long, ProductDto>>> lookups = new ArrayList<>();
+        for (Long productId : productIds) {
+            lookups.add(CompletableFuture.supplyAsync(() -> requestProductById(productId), remoteCallExecutor)
+                    .thenApply(product -> product.map(productDto -> Map.of(productId, productDto)).orElse(Map.of())));
+        }
+        return mergeProducts(lookups);
+    }
+
+    private static CompletableFuture<Map<Long, ProductDto>> mergeProducts(List<CompletableFuture<Map<Long, ProductDto>>> lookups) {
+        return CompletableFuture.allOf(lookups.toArray(new CompletableFuture[0])).thenApply(done -> {
+            Map<Long, ProductDto> products = new HashMap<>();
+            lookups.forEach(lookup -> products.putAll(lookup.join()));
+            return products;
+        });
+    }
+
+    // Espera una búsqueda, compartida o no, con el plazo del hilo actual (RemoteCallDeadline) si lo tiene. Si vence,
+    // la búsqueda sigue en curso para las demás peticiones que la esperan, y su resultado llega igualmente a la caché
+    private static <T> T await(CompletableFuture<T> lookup) {
+        Optional<Duration> remaining = RemoteCallDeadline.remaining();
+        try {
+            return remaining.isEmpty()
+                    ? lookup.get()
+                    : lookup.get(Math.max(0, remaining.get().toNanos()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            throw new RuntimeException("Plazo de la llamada remota vencido esperando al Product Catalog Service");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException("Error en comunicación con Product Catalog Service", ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrumpido esperando al Product Catalog Service", ex);
+        }
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+}
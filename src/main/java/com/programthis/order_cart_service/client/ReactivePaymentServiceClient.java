@@ -0,0 +1,52 @@
+package com.programthis.order_cart_service.client;
+
+import com.programthis.order_cart_service.dto.PaymentRequestDto;
+import com.programthis.order_cart_service.dto.PaymentResponseDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+// Versión no bloqueante de PaymentServiceClient para el perfil "reactive"
+@Component
+@Profile("reactive")
+public class ReactivePaymentServiceClient {
+
+    private final WebClient webClient;
+
+    @Autowired
+    public ReactivePaymentServiceClient(@Qualifier("paymentWebClient") WebClient webClient,
+                                        @Value("${payment-service.url}") String paymentServiceUrl) {
+        // Se añade "/api/v1" porque es el prefijo de los controladores en payment-service
+        this.webClient = webClient.mutate().baseUrl(paymentServiceUrl + "/api/v1").build();
+    }
+
+    /**
+     * Procesa un pago en el Payment Service.
+     *
+     * @return Mono con la respuesta del pago, vacío si el Payment Service lo rechaza (4xx);
+     * error si falla la comunicación o el servicio responde 5xx.
+     */
+    public Mono<PaymentResponseDto> processPayment(PaymentRequestDto requestDto) {
+        return webClient.post()
+                .uri("/payments/process")
+                .bodyValue(requestDto)
+                .retrieve()
+                .bodyToMono(PaymentResponseDto.class)
+                .onErrorResume(WebClientResponseException.class, ex -> {
+                    if (ex.getStatusCode().is4xxClientError()) {
+                        System.err.println("Error del Payment Service al procesar pago para Order ID " + requestDto.getOrderId() + ": " + ex.getStatusCode() + " - " + ex.getResponseBodyAsString());
+                        return Mono.empty();
+                    }
+                    return Mono.error(ex);
+                })
+                .onErrorMap(ex -> {
+                    System.err.println("Error al comunicarse con Payment Service para procesar pago de Order ID " + requestDto.getOrderId() + ": " + ex.getMessage());
+                    return new RuntimeException("Error en comunicación con Payment Service", ex);
+                });
+    }
+}
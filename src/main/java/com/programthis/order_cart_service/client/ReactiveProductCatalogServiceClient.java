@@ -0,0 +1,191 @@
+package com.programthis.order_cart_service.client;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.programthis.order_cart_service.config.ProductCacheProperties;
+import com.programthis.order_cart_service.dto.ProductDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Versión no bloqueante de {@link ProductCatalogServiceClient} para el perfil {@code reactive}: mismos endpoints,
+ * misma búsqueda masiva por lotes con recurso a búsquedas individuales, y caché local con caché negativa.
+ * La caché asíncrona comparte la búsqueda en curso entre peticiones concurrentes del mismo producto.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveProductCatalogServiceClient {
+
+    private final WebClient webClient;
+    private final int batchSize;
+    // Si se usa el endpoint de búsqueda masiva (se deja de usar un tiempo si el catálogo indica que no lo soporta)
+    private final BulkLookupAvailability bulkLookup;
+    // Caché local de productos, incluidos los inexistentes como Optional.empty() (null si está desactivada)
+    private final AsyncCache<Long, Optional<ProductDto>> productCache;
+
+    @Autowired
+    public ReactiveProductCatalogServiceClient(@Qualifier("productCatalogWebClient") WebClient webClient,
+                                               @Value("${product-catalog-service.url}") String productCatalogServiceUrl,
+                                               @Value("${product-catalog-service.batch-size:50}") int batchSize,
+                                               @Value("${product-catalog-service.bulk-lookup-enabled:true}") boolean bulkLookupEnabled,
+                                               @Value("${product-catalog-service.bulk-lookup-retry-after:10m}") Duration bulkLookupRetryAfter,
+                                               ProductCacheProperties cacheProperties,
+                                               MeterRegistry meterRegistry) {
+        // Se añade "/api" porque es el prefijo de los controladores en product-catalog-service
+        this.webClient = webClient.mutate().baseUrl(productCatalogServiceUrl + "/api").build();
+        this.batchSize = Math.max(1, batchSize);
+        this.bulkLookup = new BulkLookupAvailability(bulkLookupEnabled, bulkLookupRetryAfter);
+        this.productCache = cacheProperties.isEnabled() ? buildProductCache(cacheProperties, meterRegistry) : null;
+    }
+
+    // Misma política que la caché bloqueante salvo el refresco en segundo plano, que requiere un cargador fijo
+    private AsyncCache<Long, Optional<ProductDto>> buildProductCache(ProductCacheProperties properties, MeterRegistry meterRegistry) {
+        Duration expireAfterWrite = properties.getExpireAfterWrite();
+        Duration negativeTtl = properties.getNegativeTtl();
+        AsyncCache<Long, Optional<ProductDto>> cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfter(new Expiry<Long, Optional<ProductDto>>() {
+                    @Override
+                    public long expireAfterCreate(Long productId, Optional<ProductDto> product, long currentTime) {
+                        return (product.isPresent() ? expireAfterWrite : negativeTtl).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Long productId, Optional<ProductDto> product, long currentTime, long currentDuration) {
+                        return expireAfterCreate(productId, product, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long productId, Optional<ProductDto> product, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "products-reactive");
+        return cache;
+    }
+
+    /**
+     * Obtiene un producto por su ID.
+     *
+     * @return Mono con Optional.empty() si el producto no existe (404); error si falla la comunicación.
+     */
+    public Mono<Optional<ProductDto>> getProductById(Long productId) {
+        if (productCache == null) {
+            return requestProductById(productId);
+        }
+        return Mono.fromFuture(() -> productCache.get(productId, (id, executor) -> requestProductById(id).toFuture()));
+    }
+
+    /**
+     * Obtiene varios productos en una sola operación (lotes en paralelo contra el endpoint masivo).
+     * Los productos ya presentes en la caché local no se vuelven a consultar.
+     *
+     * @return Mono con un mapa ID -> ProductDto de los productos encontrados; los IDs inexistentes no aparecen.
+     */
+    public Mono<Map<Long, ProductDto>> getProductsByIds(Collection<Long> productIds) {
+        Set<Long> distinctIds = new LinkedHashSet<>(productIds);
+        distinctIds.remove(null);
+        if (distinctIds.isEmpty()) {
+            return Mono.just(Map.of());
+        }
+        Mono<Map<Long, Optional<ProductDto>>> lookups = productCache == null
+                ? requestProductsByIds(distinctIds)
+                : Mono.fromFuture(() -> productCache.getAll(distinctIds, (ids, executor) -> requestProductsByIds(ids).toFuture()));
+        return lookups.map(found -> {
+            Map<Long, ProductDto> products = new HashMap<>();
+            found.forEach((productId, product) -> product.ifPresent(productDto -> products.put(productId, productDto)));
+            return products;
+        });
+    }
+
+    private Mono<Optional<ProductDto>> requestProductById(Long productId) {
+        return webClient.get()
+                .uri("/products/{id}", productId)
+                .retrieve()
+                .bodyToMono(ProductDto.class)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .onErrorResume(WebClientResponseException.NotFound.class, ex -> {
+                    System.err.println("Producto con ID " + productId + " no encontrado en el Product Catalog Service.");
+                    return Mono.just(Optional.empty());
+                })
+                .onErrorMap(ex -> !(ex instanceof CatalogCommunicationException), ex -> {
+                    System.err.println("Error al comunicarse con Product Catalog Service para obtener el producto " + productId + ": " + ex.getMessage());
+                    return new CatalogCommunicationException(ex);
+                });
+    }
+
+    // Todos los IDs pedidos aparecen en el resultado; los que el catálogo no devuelve, como Optional.empty() (caché negativa)
+    private Mono<Map<Long, Optional<ProductDto>>> requestProductsByIds(Set<? extends Long> productIds) {
+        List<Long> ids = new ArrayList<>(productIds);
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            chunks.add(ids.subList(from, Math.min(from + batchSize, ids.size())));
+        }
+        return Flux.fromIterable(chunks)
+                .flatMap(chunk -> bulkLookup.isAvailable() ? fetchChunkInBulk(chunk) : fetchIndividually(chunk))
+                .collectList()
+                .map(results -> {
+                    Map<Long, Optional<ProductDto>> products = new HashMap<>();
+                    ids.forEach(productId -> products.put(productId, Optional.empty()));
+                    results.forEach(found -> found.forEach((productId, product) -> products.put(productId, Optional.of(product))));
+                    return products;
+                });
+    }
+
+    private Mono<Map<Long, ProductDto>> fetchChunkInBulk(List<Long> chunk) {
+        return webClient.get()
+                .uri(uriBuilder -> uriBuilder.path("/products/batch").queryParam("ids", chunk.toArray()).build())
+                .retrieve()
+                .bodyToFlux(ProductDto.class)
+                .filter(productDto -> productDto.getId() != null && chunk.contains(productDto.getId()))
+                .collectMap(ProductDto::getId)
+                .onErrorResume(WebClientResponseException.class, ex -> {
+                    if (bulkLookup.fallBackOn(ex.getStatusCode())) {
+                        return fetchIndividually(chunk);
+                    }
+                    return Mono.error(ex);
+                })
+                .onErrorMap(ex -> !(ex instanceof CatalogCommunicationException), ex -> {
+                    System.err.println("Error al comunicarse con Product Catalog Service para obtener los productos " + chunk + ": " + ex.getMessage());
+                    return new CatalogCommunicationException(ex);
+                });
+    }
+
+    // Fallback: una búsqueda individual por ID, todas concurrentes
+    private Mono<Map<Long, ProductDto>> fetchIndividually(List<Long> productIds) {
+        return Flux.fromIterable(productIds)
+                .flatMap(productId -> requestProductById(productId)
+                        .flatMap(product -> Mono.justOrEmpty(product)))
+                .collectMap(ProductDto::getId);
+    }
+
+    // Mismo mensaje que el cliente bloqueante; el tipo propio evita envolver dos veces el mismo error
+    private static class CatalogCommunicationException extends RuntimeException {
+        CatalogCommunicationException(Throwable cause) {
+            super("Error en comunicación con Product Catalog Service", cause);
+        }
+    }
+}
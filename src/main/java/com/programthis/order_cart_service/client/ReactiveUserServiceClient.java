@@ -0,0 +1,46 @@
+package com.programthis.order_cart_service.client;
+
+import com.programthis.order_cart_service.dto.UserDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+// Versión no bloqueante de UserServiceClient para el perfil "reactive"
+@Component
+@Profile("reactive")
+public class ReactiveUserServiceClient {
+
+    private final WebClient webClient;
+
+    @Autowired
+    public ReactiveUserServiceClient(@Qualifier("userWebClient") WebClient webClient,
+                                     @Value("${user-service.url}") String userServiceUrl) {
+        // Se añade "/api" porque es el prefijo de los controladores en user-service
+        this.webClient = webClient.mutate().baseUrl(userServiceUrl + "/api").build();
+    }
+
+    /**
+     * Obtiene los detalles de un usuario del User Service por su ID.
+     *
+     * @return Mono con el UserDto, vacío si el usuario no existe (404); error si falla la comunicación.
+     */
+    public Mono<UserDto> getUserById(Long userId) {
+        return webClient.get()
+                .uri("/users/{id}", userId)
+                .retrieve()
+                .bodyToMono(UserDto.class)
+                .onErrorResume(WebClientResponseException.NotFound.class, ex -> {
+                    System.err.println("Usuario con ID " + userId + " no encontrado en el User Service.");
+                    return Mono.empty();
+                })
+                .onErrorMap(ex -> {
+                    System.err.println("Error al comunicarse con User Service para obtener el usuario " + userId + ": " + ex.getMessage());
+                    return new RuntimeException("Error en comunicación con User Service", ex);
+                });
+    }
+}
@@ -0,0 +1,83 @@
+package com.programthis.order_cart_service.client;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Plazo de las llamadas remotas del hilo actual (ej. el plazo global del checkout). Los RestTemplate limitan el
+ * timeout de cada petición al tiempo que queda (ver RestTemplateConfig), y los executors de AsyncConfig lo propagan a
+ * las tareas que se lanzan desde el hilo: una llamada nunca sigue esperando al servicio remoto después del plazo.
+ */
+public final class RemoteCallDeadline {
+
+    // Instante límite en System.nanoTime(), o null si no hay plazo
+    private static final ThreadLocal<Long> DEADLINE_NANOS = new ThreadLocal<>();
+
+    private RemoteCallDeadline() {
+    }
+
+    /**
+     * Ejecuta la llamada con el plazo indicado (instante en System.nanoTime()) y restaura después el anterior.
+     */
+    public static <T> T within(long deadlineNanos, Supplier<T> call) {
+        Long previous = DEADLINE_NANOS.get();
+        DEADLINE_NANOS.set(deadlineNanos);
+        try {
+            return call.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Ejecuta la llamada sin plazo y restaura después el anterior. Es para el trabajo que comparten llamadas con
+     * plazos distintos (ej. una búsqueda de producto en curso): ni ella ni las tareas que lance heredan el plazo.
+     */
+    public static <T> T without(Supplier<T> call) {
+        Long previous = DEADLINE_NANOS.get();
+        DEADLINE_NANOS.remove();
+        try {
+            return call.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Tiempo que queda hasta el plazo del hilo actual (cero o negativo si ya venció), o vacío si no hay plazo.
+     */
+    public static Optional<Duration> remaining() {
+        Long deadlineNanos = DEADLINE_NANOS.get();
+        return deadlineNanos == null
+                ? Optional.empty()
+                : Optional.of(Duration.ofNanos(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * Decorador de tareas: la tarea se ejecuta con el plazo que tenía el hilo que la envió.
+     */
+    public static Runnable propagate(Runnable task) {
+        Long deadlineNanos = DEADLINE_NANOS.get();
+        if (deadlineNanos == null) {
+            return task;
+        }
+        return () -> {
+            Long previous = DEADLINE_NANOS.get();
+            DEADLINE_NANOS.set(deadlineNanos);
+            try {
+                task.run();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    private static void restore(Long previous) {
+        if (previous == null) {
+            DEADLINE_NANOS.remove();
+        } else {
+            DEADLINE_NANOS.set(previous);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.programthis.order_cart_service.client;
 
 import com.programthis.order_cart_service.dto.UserDto; // Asegúrate de que este DTO exista
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
@@ -16,7 +17,7 @@ public class UserServiceClient {
     private final String userServiceBaseUrl;
 
     @Autowired // Inyecta RestTemplate y la URL del user-service
-    public UserServiceClient(RestTemplate restTemplate,
+    public UserServiceClient(@Qualifier("userRestTemplate") RestTemplate restTemplate,
                                @Value("${user-service.url}") String userServiceUrl) {
         this.restTemplate = restTemplate;
         // La URL base para el servicio de usuarios (ej. http://localhost:8082)
@@ -0,0 +1,87 @@
+package com.programthis.order_cart_service.config;
+
+import com.programthis.order_cart_service.client.RemoteCallDeadline;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Executors de la aplicación. Con {@code spring.threads.virtual.enabled=true} en Java 21 (perfil Maven
+ * {@code java21}) cada executor crea un hilo virtual por tarea, con un límite de concurrencia igual a su
+ * max-pool-size; en otro caso son pools de hilos de plataforma acotados. Todos propagan a sus tareas el plazo de las
+ * llamadas remotas del hilo que las envía ({@link RemoteCallDeadline}).
+ */
+@Configuration
+public class AsyncConfig {
+
+    private final Environment environment;
+
+    public AsyncConfig(Environment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Executor acotado para las llamadas remotas que se lanzan en paralelo (ej. búsquedas de productos
+     * en el catálogo durante el checkout). La cola es corta a propósito: si se llena, la tarea se ejecuta
+     * en el hilo llamador en lugar de acumular trabajo indefinidamente.
+     */
+    @Bean(name = "remoteCallExecutor")
+    public Executor remoteCallExecutor(@Value("${remote-calls.executor.core-pool-size:8}") int corePoolSize,
+                                       @Value("${remote-calls.executor.max-pool-size:32}") int maxPoolSize,
+                                       @Value("${remote-calls.executor.queue-capacity:100}") int queueCapacity) {
+        return boundedExecutor("remote-call-", corePoolSize, maxPoolSize, queueCapacity);
+    }
+
+    /**
+     * Executor para las consultas remotas en paralelo del checkout (usuario y catálogo). Es independiente de
+     * remoteCallExecutor porque la búsqueda de productos reparte a su vez trabajo en ese executor, y compartir
+     * el mismo pool podría bloquearlo con tareas esperando a otras tareas encoladas.
+     */
+    @Bean(name = "checkoutExecutor")
+    public Executor checkoutExecutor(@Value("${checkout.executor.core-pool-size:8}") int corePoolSize,
+                                     @Value("${checkout.executor.max-pool-size:64}") int maxPoolSize,
+                                     @Value("${checkout.executor.queue-capacity:200}") int queueCapacity) {
+        return boundedExecutor("checkout-", corePoolSize, maxPoolSize, queueCapacity);
+    }
+
+    /**
+     * Executor del checkout asíncrono: procesa el pago y registra su resultado después de responder 202.
+     * Si la cola se llena, el pago se ejecuta en el hilo de la petición (el checkout se vuelve síncrono)
+     * en lugar de rechazar pedidos ya aceptados.
+     */
+    @Bean(name = "paymentPipelineExecutor")
+    public Executor paymentPipelineExecutor(@Value("${checkout.async.executor.core-pool-size:16}") int corePoolSize,
+                                            @Value("${checkout.async.executor.max-pool-size:64}") int maxPoolSize,
+                                            @Value("${checkout.async.executor.queue-capacity:1000}") int queueCapacity) {
+        return boundedExecutor("payment-pipeline-", corePoolSize, maxPoolSize, queueCapacity);
+    }
+
+    private Executor boundedExecutor(String threadNamePrefix, int corePoolSize, int maxPoolSize, int queueCapacity) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            // Hilos virtuales: sin pool ni cola. Al alcanzar el límite, quien envía la tarea espera (mismo efecto
+            // de contención que CallerRunsPolicy) en lugar de ejecutar trabajo ilimitado contra los servicios remotos
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(maxPoolSize);
+            executor.setTaskTerminationTimeout(30_000);
+            executor.setTaskDecorator(RemoteCallDeadline::propagate);
+            return executor;
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setTaskDecorator(RemoteCallDeadline::propagate);
+        return executor;
+    }
+}
@@ -0,0 +1,33 @@
+package com.programthis.order_cart_service.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuración de las modificaciones concurrentes del carrito (prefijo {@code cart.concurrency}).
+ * Ver {@link com.programthis.order_cart_service.service.CartMutationGuard}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "cart.concurrency")
+public class CartConcurrencyProperties {
+
+    // Intentos como máximo de una modificación que choca con otra concurrente (bloqueo optimista)
+    private int maxAttempts = 3;
+
+    // Espera antes de cada reintento; se multiplica por el número de intento
+    private Duration retryBackoff = Duration.ofMillis(10);
+
+    // Serializa en memoria las modificaciones del carrito de un mismo usuario. Solo evita conflictos entre
+    // peticiones de la misma instancia: pensado para despliegues de un solo nodo
+    private boolean localLocks = false;
+
+    // Número de cerrojos compartidos entre todos los usuarios (por hash del ID de usuario)
+    private int lockStripes = 64;
+
+    // Espera máxima por el cerrojo antes de rechazar la modificación
+    private Duration lockTimeout = Duration.ofSeconds(2);
+}
@@ -0,0 +1,31 @@
+package com.programthis.order_cart_service.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuración del almacén de carritos (prefijo {@code cart.store}).
+ * El intervalo de escritura del modo write-behind se lee directamente en {@code @Scheduled}
+ * ({@code cart.store.flush-interval-ms}).
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "cart.store")
+public class CartStoreProperties {
+
+    // "jpa" (cada operación escribe en MySQL) o "write-behind" (carritos activos en memoria)
+    private String mode = "jpa";
+
+    // Carritos que se mantienen en memoria como máximo. Los de usuarios nuevos por encima del límite se
+    // modifican directamente en MySQL hasta que haya sitio
+    private int maxCarts = 10_000;
+
+    // Un carrito sin cambios pendientes que lleva este tiempo sin usarse sale de memoria
+    private Duration idleTimeout = Duration.ofMinutes(30);
+
+    // Carritos que se escriben en cada transacción
+    private int flushBatchSize = 100;
+}
@@ -0,0 +1,26 @@
+package com.programthis.order_cart_service.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuración de la caché de carritos que sirve {@code GET /api/carts/{userId}} (prefijo {@code cart.view-cache}).
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "cart.view-cache")
+public class CartViewCacheProperties {
+
+    // Permite desactivar la caché (cada GET carga el carrito con sus ítems)
+    private boolean enabled = true;
+
+    // Carritos en memoria como máximo; al superarlo se desalojan según W-TinyLFU
+    private long maximumSize = 10_000;
+
+    // Tiempo que se conserva un carrito sin volver a cargarlo. Solo limita la memoria: cada acierto se valida con
+    // la versión del almacén
+    private Duration expireAfterWrite = Duration.ofMinutes(10);
+}
@@ -0,0 +1,131 @@
+package com.programthis.order_cart_service.config;
+
+import com.programthis.order_cart_service.client.RemoteCallDeadline;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Límite de peticiones simultáneas de un RestTemplate HTTP/2. El cliente del JDK multiplexa las peticiones sobre pocas
+ * conexiones y no tiene un pool configurable, así que maxConnections se aplica a las peticiones en curso: cada una
+ * ocupa un hueco desde que se envía hasta que se cierra la respuesta. La espera de un hueco está acotada por
+ * connectionRequestTimeout y por el plazo de la llamada remota ({@link RemoteCallDeadline}), como la espera de una
+ * conexión del pool HTTP/1.1.
+ */
+class Http2ConcurrencyLimiter implements ClientHttpRequestInterceptor {
+
+    private final String serviceName;
+    private final int maxConcurrentRequests;
+    private final Duration acquireTimeout;
+    private final Semaphore permits;
+
+    Http2ConcurrencyLimiter(String serviceName, int maxConcurrentRequests, Duration acquireTimeout) {
+        this.serviceName = serviceName;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.acquireTimeout = acquireTimeout;
+        this.permits = new Semaphore(maxConcurrentRequests, true);
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        acquire();
+        try {
+            return new PermitReleasingResponse(execution.execute(request, body));
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void acquire() throws IOException {
+        Duration timeout = acquireTimeout;
+        Optional<Duration> remaining = RemoteCallDeadline.remaining();
+        if (remaining.isPresent()) {
+            if (remaining.get().toMillis() <= 0) {
+                throw new RuntimeException("Plazo de la llamada remota vencido antes de enviar la petición");
+            }
+            if (remaining.get().compareTo(timeout) < 0) {
+                timeout = remaining.get();
+            }
+        }
+        try {
+            if (!permits.tryAcquire(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("Sin hueco para una petición HTTP/2 a " + serviceName + " tras "
+                        + timeout.toMillis() + " ms (" + maxConcurrentRequests + " en curso)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrumpido esperando un hueco para una petición HTTP/2 a " + serviceName, e);
+        }
+    }
+
+    int inUse() {
+        return maxConcurrentRequests - permits.availablePermits();
+    }
+
+    int available() {
+        return permits.availablePermits();
+    }
+
+    int pending() {
+        return permits.getQueueLength();
+    }
+
+    int max() {
+        return maxConcurrentRequests;
+    }
+
+    // Libera el hueco al cerrar la respuesta (RestTemplate la cierra siempre tras leerla), una sola vez
+    private class PermitReleasingResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        PermitReleasingResponse(ClientHttpResponse delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                if (released.compareAndSet(false, true)) {
+                    permits.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.programthis.order_cart_service.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configuración de los clientes HTTP salientes (prefijo {@code http-clients}).
+ * {@code defaults} aplica a todos los servicios; {@code services.<nombre>} sobrescribe solo los valores indicados
+ * para un servicio concreto (product-catalog-service, payment-service, user-service, notification-service).
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "http-clients")
+public class HttpClientProperties {
+
+    private Pool defaults = new Pool(50, Duration.ofSeconds(2), Duration.ofSeconds(5), Duration.ofSeconds(1), Duration.ofSeconds(30), Duration.ofMinutes(5), false);
+
+    private Map<String, Pool> services = new HashMap<>();
+
+    /**
+     * Devuelve la configuración efectiva de un servicio: sus valores propios y, para los no definidos, los de {@code defaults}.
+     */
+    public Pool resolve(String serviceName) {
+        Pool override = services.get(serviceName);
+        if (override == null) {
+            return defaults;
+        }
+        return new Pool(
+                override.getMaxConnections() != null ? override.getMaxConnections() : defaults.getMaxConnections(),
+                override.getConnectTimeout() != null ? override.getConnectTimeout() : defaults.getConnectTimeout(),
+                override.getResponseTimeout() != null ? override.getResponseTimeout() : defaults.getResponseTimeout(),
+                override.getConnectionRequestTimeout() != null ? override.getConnectionRequestTimeout() : defaults.getConnectionRequestTimeout(),
+                override.getIdleEvictionAfter() != null ? override.getIdleEvictionAfter() : defaults.getIdleEvictionAfter(),
+                override.getTimeToLive() != null ? override.getTimeToLive() : defaults.getTimeToLive(),
+                override.getHttp2() != null ? override.getHttp2() : defaults.getHttp2());
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Pool {
+        // Conexiones simultáneas máximas hacia el servicio
+        private Integer maxConnections;
+        // Tiempo máximo para establecer la conexión TCP
+        private Duration connectTimeout;
+        // Tiempo máximo sin recibir datos de la respuesta una vez enviada la petición. Es el único timeout de lectura:
+        // los clientes HTTP usados (Apache HttpClient, el del JDK y Reactor Netty) solo limitan la inactividad, no la
+        // duración total de la respuesta
+        private Duration responseTimeout;
+        // Tiempo máximo esperando una conexión libre del pool
+        private Duration connectionRequestTimeout;
+        // Las conexiones inactivas más tiempo que este se cierran en segundo plano
+        private Duration idleEvictionAfter;
+        // Vida máxima de una conexión keep-alive antes de renovarla
+        private Duration timeToLive;
+        // Usa HTTP/2 (cliente del JDK) en lugar del pool HTTP/1.1. Sus conexiones no son configurables: maxConnections
+        // limita las peticiones en curso y connectionRequestTimeout la espera de un hueco; idleEvictionAfter y
+        // timeToLive no se aplican
+        private Boolean http2;
+    }
+}
\ No newline at end of file
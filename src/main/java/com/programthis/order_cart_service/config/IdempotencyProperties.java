@@ -0,0 +1,23 @@
+package com.programthis.order_cart_service.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuración de las claves de idempotencia del checkout (prefijo {@code idempotency}).
+ * La limpieza de claves expiradas se programa con {@code idempotency.cleanup-interval-ms}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "idempotency")
+public class IdempotencyProperties {
+
+    // Tiempo durante el que una clave devuelve el resultado original
+    private Duration keyTtl = Duration.ofHours(24);
+
+    // Tiempo máximo que una petición puede tener la clave en curso; después otra puede retomarla
+    private Duration inProgressTimeout = Duration.ofMinutes(2);
+}
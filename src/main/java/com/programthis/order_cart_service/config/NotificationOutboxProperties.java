@@ -0,0 +1,33 @@
+package com.programthis.order_cart_service.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuración del despachador del outbox de notificaciones (prefijo {@code notifications.outbox}).
+ * El intervalo de sondeo se lee directamente en {@code @Scheduled} ({@code notifications.outbox.poll-interval-ms}).
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "notifications.outbox")
+public class NotificationOutboxProperties {
+
+    // Número máximo de notificaciones que se reservan y envían en cada lote
+    private int batchSize = 50;
+
+    // Intentos antes de dar una notificación por fallida definitivamente
+    private int maxAttempts = 8;
+
+    // Espera tras el primer fallo; se duplica en cada reintento hasta max-backoff
+    private Duration initialBackoff = Duration.ofSeconds(5);
+
+    private Duration maxBackoff = Duration.ofMinutes(10);
+
+    // Tiempo que una notificación queda reservada por un envío en curso. Si la instancia cae antes de
+    // registrar el resultado, pasado este tiempo otra instancia la vuelve a enviar. La reserva se renueva justo antes
+    // de enviar cada notificación del lote, así que basta con que supere el timeout del Notification Service
+    private Duration lease = Duration.ofMinutes(1);
+}
@@ -0,0 +1,24 @@
+package com.programthis.order_cart_service.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuración de la recuperación de pedidos que se quedaron en PENDING (prefijo {@code checkout.pending-recovery}).
+ * El intervalo de revisión se lee directamente en {@code @Scheduled} ({@code checkout.pending-recovery.interval-ms}).
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "checkout.pending-recovery")
+public class PendingOrderRecoveryProperties {
+
+    // Tiempo sin cambios tras el cual un pedido PENDING se da por abandonado. Debe superar con margen el timeout
+    // de respuesta del Payment Service, para no competir con un pago que sigue en curso
+    private Duration staleAfter = Duration.ofMinutes(5);
+
+    // Pedidos que se revisan como mucho en cada pasada
+    private int batchSize = 50;
+}
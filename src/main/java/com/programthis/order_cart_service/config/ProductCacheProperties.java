@@ -0,0 +1,31 @@
+package com.programthis.order_cart_service.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuración de la caché local de productos del catálogo (prefijo {@code product-catalog-service.cache}).
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "product-catalog-service.cache")
+public class ProductCacheProperties {
+
+    // Permite desactivar la caché por completo (todas las búsquedas van al catálogo)
+    private boolean enabled = true;
+
+    // Número máximo de productos en memoria; al superarlo se desalojan según W-TinyLFU
+    private long maximumSize = 10_000;
+
+    // Tiempo máximo que una entrada puede servirse desde la caché
+    private Duration expireAfterWrite = Duration.ofMinutes(5);
+
+    // A partir de esta edad, un acceso devuelve el valor actual y lo refresca en segundo plano
+    private Duration refreshAfterWrite = Duration.ofMinutes(1);
+
+    // Tiempo que se recuerda que un producto no existe (404) antes de volver a consultarlo
+    private Duration negativeTtl = Duration.ofSeconds(30);
+}
\ No newline at end of file
@@ -0,0 +1,35 @@
+package com.programthis.order_cart_service.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Perfil {@code reactive}: la aplicación arranca como WebFlux sobre Netty (event loop, sin un hilo por petición)
+ * y sirve los controladores reactivos en lugar de los de Spring MVC.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveConfig {
+
+    // Tomcat también está en el classpath (Spring MVC); se fuerza Netty como servidor reactivo
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * Scheduler para el acceso a base de datos (JPA/JDBC es bloqueante). Su límite de hilos coincide con el pool
+     * de conexiones, de modo que el event loop nunca se bloquea y las operaciones que exceden las conexiones
+     * disponibles esperan en la cola del scheduler en lugar de ocupar hilos.
+     */
+    @Bean(name = "jpaScheduler", destroyMethod = "dispose")
+    public Scheduler jpaScheduler(@Value("${reactive.jpa.thread-cap:${spring.datasource.hikari.maximum-pool-size:10}}") int threadCap,
+                                  @Value("${reactive.jpa.queued-task-cap:100000}") int queuedTaskCap) {
+        return Schedulers.newBoundedElastic(threadCap, queuedTaskCap, "jpa");
+    }
+}
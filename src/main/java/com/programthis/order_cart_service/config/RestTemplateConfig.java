@@ -1,14 +1,176 @@
 package com.programthis.order_cart_service.config;
 
+import com.programthis.order_cart_service.client.RemoteCallDeadline;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Un RestTemplate por servicio remoto, cada uno con su propio pool de conexiones y timeouts
+ * (ver {@link HttpClientProperties}), para que un servicio lento no pueda agotar las conexiones de los demás.
+ */
 @Configuration
 public class RestTemplateConfig {
 
+    private final HttpClientProperties httpClientProperties;
+    private final MeterRegistry meterRegistry;
+
+    public RestTemplateConfig(HttpClientProperties httpClientProperties, MeterRegistry meterRegistry) {
+        this.httpClientProperties = httpClientProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Bean
+    public RestTemplate productCatalogRestTemplate() {
+        return buildRestTemplate("product-catalog-service");
+    }
+
+    @Bean
+    public RestTemplate paymentRestTemplate() {
+        return buildRestTemplate("payment-service");
+    }
+
+    @Bean
+    public RestTemplate userRestTemplate() {
+        return buildRestTemplate("user-service");
+    }
+
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate notificationRestTemplate() {
+        return buildRestTemplate("notification-service");
+    }
+
+    private RestTemplate buildRestTemplate(String serviceName) {
+        HttpClientProperties.Pool pool = httpClientProperties.resolve(serviceName);
+        if (Boolean.TRUE.equals(pool.getHttp2())) {
+            return http2RestTemplate(serviceName, pool);
+        }
+        return new RestTemplate(pooledRequestFactory(serviceName, pool));
+    }
+
+    // HTTP/1.1 con pool de conexiones keep-alive (Apache HttpClient 5). Durante una petición, HttpClient sustituye el
+    // timeout de socket de la conexión por el de respuesta: los dos reciben responseTimeout
+    private ClientHttpRequestFactory pooledRequestFactory(String serviceName, HttpClientProperties.Pool pool) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(pool.getMaxConnections())
+                .setMaxConnPerRoute(pool.getMaxConnections())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(pool.getConnectTimeout()))
+                        .setSocketTimeout(Timeout.of(pool.getResponseTimeout()))
+                        .setTimeToLive(TimeValue.of(pool.getTimeToLive()))
+                        .build())
+                .build();
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(pool.getConnectionRequestTimeout()))
+                .setResponseTimeout(Timeout.of(pool.getResponseTimeout()))
+                .build();
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(pool.getIdleEvictionAfter()))
+                .build();
+
+        registerPoolGauge("http.client.pool.leased", "Conexiones en uso", serviceName, connectionManager, m -> m.getTotalStats().getLeased());
+        registerPoolGauge("http.client.pool.available", "Conexiones libres en el pool", serviceName, connectionManager, m -> m.getTotalStats().getAvailable());
+        registerPoolGauge("http.client.pool.pending", "Peticiones esperando una conexión", serviceName, connectionManager, m -> m.getTotalStats().getPending());
+        registerPoolGauge("http.client.pool.max", "Tamaño máximo del pool", serviceName, connectionManager, m -> m.getTotalStats().getMax());
+
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        requestFactory.setHttpContextFactory((method, uri) -> deadlineContext(requestConfig));
+        return requestFactory;
+    }
+
+    // Si el hilo tiene un plazo (RemoteCallDeadline), la espera de conexión y la de respuesta no lo sobrepasan.
+    // null deja la configuración por defecto del cliente
+    static HttpClientContext deadlineContext(RequestConfig requestConfig) {
+        Optional<Duration> remaining = RemoteCallDeadline.remaining();
+        if (remaining.isEmpty()) {
+            return null;
+        }
+        if (remaining.get().toMillis() <= 0) {
+            throw new RuntimeException("Plazo de la llamada remota vencido antes de enviar la petición");
+        }
+        Timeout remainingTimeout = Timeout.ofMilliseconds(remaining.get().toMillis());
+        HttpClientContext context = HttpClientContext.create();
+        context.setRequestConfig(RequestConfig.copy(requestConfig)
+                .setConnectionRequestTimeout(min(requestConfig.getConnectionRequestTimeout(), remainingTimeout))
+                .setResponseTimeout(min(requestConfig.getResponseTimeout(), remainingTimeout))
+                .build());
+        return context;
+    }
+
+    private static Timeout min(Timeout configured, Timeout remaining) {
+        return configured.toMilliseconds() <= remaining.toMilliseconds() ? configured : remaining;
+    }
+
+    // HTTP/2: el cliente del JDK multiplexa las peticiones sobre pocas conexiones y gestiona su propio pool.
+    // maxConnections limita las peticiones en curso (Http2ConcurrencyLimiter, con las mismas métricas
+    // http.client.pool.*) y el timeout de respuesta se acota, petición a petición, al plazo de la llamada remota
+    private RestTemplate http2RestTemplate(String serviceName, HttpClientProperties.Pool pool) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(pool.getConnectTimeout())
+                .build();
+        // Hilos que escriben el cuerpo de las peticiones; compartido por todas en lugar de uno por JdkClientHttpRequestFactory
+        SimpleAsyncTaskExecutor bodyExecutor = new SimpleAsyncTaskExecutor("http2-" + serviceName + "-");
+        ClientHttpRequestFactory requestFactory = (uri, method) -> {
+            JdkClientHttpRequestFactory jdkRequestFactory = new JdkClientHttpRequestFactory(httpClient, bodyExecutor);
+            jdkRequestFactory.setReadTimeout(deadlineReadTimeout(pool.getResponseTimeout()));
+            return jdkRequestFactory.createRequest(uri, method);
+        };
+
+        Http2ConcurrencyLimiter limiter = new Http2ConcurrencyLimiter(
+                serviceName, pool.getMaxConnections(), pool.getConnectionRequestTimeout());
+        registerPoolGauge("http.client.pool.leased", "Conexiones en uso", serviceName, limiter, Http2ConcurrencyLimiter::inUse);
+        registerPoolGauge("http.client.pool.available", "Conexiones libres en el pool", serviceName, limiter, Http2ConcurrencyLimiter::available);
+        registerPoolGauge("http.client.pool.pending", "Peticiones esperando una conexión", serviceName, limiter, Http2ConcurrencyLimiter::pending);
+        registerPoolGauge("http.client.pool.max", "Tamaño máximo del pool", serviceName, limiter, Http2ConcurrencyLimiter::max);
+
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
+        restTemplate.getInterceptors().add(limiter);
+        return restTemplate;
+    }
+
+    // Timeout de respuesta de una petición HTTP/2: el configurado o, si el hilo tiene un plazo (RemoteCallDeadline)
+    // más corto, lo que queda de él
+    static Duration deadlineReadTimeout(Duration responseTimeout) {
+        Optional<Duration> remaining = RemoteCallDeadline.remaining();
+        if (remaining.isEmpty()) {
+            return responseTimeout;
+        }
+        if (remaining.get().toMillis() <= 0) {
+            throw new RuntimeException("Plazo de la llamada remota vencido antes de enviar la petición");
+        }
+        return remaining.get().compareTo(responseTimeout) < 0 ? remaining.get() : responseTimeout;
+    }
+
+    private <T> void registerPoolGauge(String name, String description, String serviceName, T pool,
+                                       ToDoubleFunction<T> value) {
+        Gauge.builder(name, pool, value)
+                .description(description)
+                .tag("service", serviceName)
+                .register(meterRegistry);
     }
 }
\ No newline at end of file
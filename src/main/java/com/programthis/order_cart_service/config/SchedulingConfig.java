@@ -0,0 +1,58 @@
+package com.programthis.order_cart_service.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.task.SimpleAsyncTaskSchedulerBuilder;
+import org.springframework.boot.task.ThreadPoolTaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Habilita las tareas {@code @Scheduled} y define sus planificadores. Las tareas periódicas (outbox de notificaciones,
+ * recuperación de pedidos PENDING, limpieza de claves de idempotencia) comparten {@code taskScheduler}, con un hilo por
+ * tarea ({@code spring.task.scheduling.pool.size}) para que una ejecución lenta no retrase a las demás. La escritura
+ * diferida de carritos tiene un planificador propio: el tiempo que un cambio pasa solo en memoria no depende de
+ * ninguna otra tarea (como mucho {@code cart.store.flush-interval-ms} más lo que dure la escritura anterior).
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+    private final Environment environment;
+
+    public SchedulingConfig(Environment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Planificador por defecto de {@code @Scheduled}. Se declara aquí porque, al existir {@code cartFlushScheduler},
+     * Spring Boot ya no crea el suyo. Se construye igual que el de Spring Boot (propiedades
+     * {@code spring.task.scheduling.*}): un hilo virtual por ejecución en el modo virtual, un pool en otro caso.
+     */
+    @Bean(name = "taskScheduler")
+    public TaskScheduler taskScheduler(ThreadPoolTaskSchedulerBuilder threadPoolTaskSchedulerBuilder,
+                                       SimpleAsyncTaskSchedulerBuilder simpleAsyncTaskSchedulerBuilder) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            return simpleAsyncTaskSchedulerBuilder.build();
+        }
+        return threadPoolTaskSchedulerBuilder.build();
+    }
+
+    /**
+     * Planificador exclusivo de la escritura diferida de carritos (WriteBehindCartStore.flushDirtyCarts), con un
+     * único hilo de plataforma: las escrituras no se solapan entre sí y no esperan a las llamadas remotas de las
+     * demás tareas.
+     */
+    @Bean(name = "cartFlushScheduler")
+    @ConditionalOnProperty(name = "cart.store.mode", havingValue = "write-behind")
+    public TaskScheduler cartFlushScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("cart-flush-");
+        return scheduler;
+    }
+}
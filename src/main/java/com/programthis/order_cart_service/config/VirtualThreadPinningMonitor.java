@@ -0,0 +1,84 @@
+package com.programthis.order_cart_service.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Detecta hilos virtuales "anclados" a su hilo portador (ej. bloqueos de E/S dentro de un bloque
+ * {@code synchronized} en el driver JDBC), que anulan la ventaja de los hilos virtuales.
+ * Escucha el evento JFR {@code jdk.VirtualThreadPinned} en streaming, registra el punto del código
+ * responsable y lo publica como métrica {@code jvm.threads.virtual.pinned} (etiqueta {@code frame}).
+ * Solo se activa con hilos virtuales (Java 21 y {@code spring.threads.virtual.enabled=true}).
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadPinningMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    // Marcos de la propia JVM que no ayudan a localizar el origen del anclaje
+    private static final List<String> INFRASTRUCTURE_PREFIXES = List.of("java.", "jdk.", "sun.");
+
+    private final MeterRegistry meterRegistry;
+    private final Duration threshold;
+    private RecordingStream recordingStream;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry,
+                                       @Value("${virtual-threads.pinning.threshold:20ms}") Duration threshold) {
+        this.meterRegistry = meterRegistry;
+        this.threshold = threshold;
+    }
+
+    @PostConstruct
+    public void start() {
+        recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::onPinned);
+        recordingStream.startAsync();
+        System.out.println("Monitor de anclaje de hilos virtuales activo (umbral " + threshold.toMillis() + " ms)");
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        String frame = originFrame(event.getStackTrace());
+        Timer.builder("jvm.threads.virtual.pinned")
+                .description("Tiempo que un hilo virtual bloqueado mantuvo ocupado su hilo portador")
+                .tag("frame", frame)
+                .register(meterRegistry)
+                .record(event.getDuration());
+        System.err.println("Hilo virtual anclado " + event.getDuration().toMillis() + " ms en " + frame
+                + " (" + event.getThread().getJavaName() + ")");
+    }
+
+    // Primer marco fuera de la JVM: normalmente el driver JDBC, el cliente HTTP o código de la aplicación
+    static String originFrame(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "unknown";
+        }
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            String type = frame.getMethod().getType().getName();
+            if (INFRASTRUCTURE_PREFIXES.stream().noneMatch(type::startsWith)) {
+                return type + "." + frame.getMethod().getName();
+            }
+        }
+        return "jdk";
+    }
+}
@@ -0,0 +1,69 @@
+package com.programthis.order_cart_service.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+
+/**
+ * Un WebClient por servicio remoto para el perfil {@code reactive}, equivalente a {@link RestTemplateConfig}:
+ * cada servicio tiene su propio pool de conexiones Reactor Netty y sus timeouts ({@link HttpClientProperties}).
+ * Las métricas del pool se publican como {@code reactor.netty.connection.provider.*} con el nombre del servicio.
+ */
+@Configuration
+@Profile("reactive")
+public class WebClientConfig {
+
+    private final HttpClientProperties httpClientProperties;
+    private final WebClient.Builder webClientBuilder;
+
+    public WebClientConfig(HttpClientProperties httpClientProperties, WebClient.Builder webClientBuilder) {
+        this.httpClientProperties = httpClientProperties;
+        this.webClientBuilder = webClientBuilder;
+    }
+
+    @Bean
+    public WebClient productCatalogWebClient() {
+        return buildWebClient("product-catalog-service");
+    }
+
+    @Bean
+    public WebClient paymentWebClient() {
+        return buildWebClient("payment-service");
+    }
+
+    @Bean
+    public WebClient userWebClient() {
+        return buildWebClient("user-service");
+    }
+
+    private WebClient buildWebClient(String serviceName) {
+        HttpClientProperties.Pool pool = httpClientProperties.resolve(serviceName);
+        ConnectionProvider connectionProvider = ConnectionProvider.builder(serviceName)
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireTimeout(pool.getConnectionRequestTimeout())
+                .maxIdleTime(pool.getIdleEvictionAfter())
+                .maxLifeTime(pool.getTimeToLive())
+                .evictInBackground(pool.getIdleEvictionAfter())
+                .metrics(true)
+                .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) pool.getConnectTimeout().toMillis())
+                .responseTimeout(pool.getResponseTimeout());
+        if (Boolean.TRUE.equals(pool.getHttp2())) {
+            // HTTP/2 sin TLS (h2c), con HTTP/1.1 como alternativa si el servicio no lo soporta
+            httpClient = httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+
+        return webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
@@ -1,6 +1,13 @@
 package com.programthis.order_cart_service.controller;
 
+import com.programthis.order_cart_service.dto.OrderHistoryPage;
+import com.programthis.order_cart_service.dto.OrderStatusDto;
+import com.programthis.order_cart_service.dto.OrderSummaryDto;
+import com.programthis.order_cart_service.dto.OrderSummaryPage;
 import com.programthis.order_cart_service.model.Order;
+import com.programthis.order_cart_service.service.CheckoutDeadlineExceededException;
+import com.programthis.order_cart_service.service.CheckoutPaymentFailedException;
+import com.programthis.order_cart_service.service.IdempotencyService;
 import com.programthis.order_cart_service.service.OrderService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -13,12 +20,16 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.EntityModel;
 import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -27,37 +38,133 @@ import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/orders")
 @Tag(name = "Order Management", description = "APIs for managing customer orders")
 public class OrderController {
 
+    static final String SLOWEST_DEPENDENCY_HEADER = "X-Checkout-Slowest-Dependency";
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String IDEMPOTENT_REPLAY_HEADER = "Idempotent-Replayed";
+    static final String PREFER_HEADER = "Prefer";
+    static final String PREFERENCE_APPLIED_HEADER = "Preference-Applied";
+    static final String RESPOND_ASYNC = "respond-async";
+
     private final OrderService orderService;
+    private final IdempotencyService idempotencyService;
+    private final OrderStatusStreamRegistry orderStatusStreamRegistry;
 
     @Autowired
-    public OrderController(OrderService orderService) {
+    public OrderController(OrderService orderService, IdempotencyService idempotencyService,
+                           OrderStatusStreamRegistry orderStatusStreamRegistry) {
         this.orderService = orderService;
+        this.idempotencyService = idempotencyService;
+        this.orderStatusStreamRegistry = orderStatusStreamRegistry;
     }
 
     private EntityModel<Order> toModel(Order order) {
         return EntityModel.of(order,
                 linkTo(methodOn(OrderController.class).getOrderById(order.getId())).withSelfRel(),
-                linkTo(methodOn(OrderController.class).getOrdersByUserId(order.getUserId())).withRel("user-orders"));
+                linkTo(methodOn(OrderController.class).getOrdersByUserId(order.getUserId(), null, null)).withRel("user-orders"),
+                linkTo(methodOn(OrderController.class).getOrderStatus(order.getId())).withRel("status"),
+                linkTo(methodOn(OrderController.class).streamOrderStatus(order.getId())).withRel("status-events"));
     }
     
     @Operation(summary = "Create an order from a user's cart")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Order created successfully",
                     content = @Content(mediaType = "application/hal+json", schema = @Schema(implementation = Order.class))),
-            @ApiResponse(responseCode = "400", description = "Bad request, e.g., empty cart")
+            @ApiResponse(responseCode = "202", description = "Order accepted (Prefer: respond-async); payment is processed in the background. "
+                    + "Follow the Location header or the status / status-events links",
+                    content = @Content(mediaType = "application/hal+json", schema = @Schema(implementation = Order.class))),
+            @ApiResponse(responseCode = "400", description = "Bad request, e.g., empty cart"),
+            @ApiResponse(responseCode = "402", description = "The order was created but its payment failed (status PAYMENT_FAILED; the cart items were restored). "
+                    + "Retries with the same Idempotency-Key return this order",
+                    content = @Content(mediaType = "application/hal+json", schema = @Schema(implementation = Order.class))),
+            @ApiResponse(responseCode = "409", description = "Another request with the same Idempotency-Key is still in progress"),
+            @ApiResponse(responseCode = "422", description = "The Idempotency-Key was already used with a different request body"),
+            @ApiResponse(responseCode = "504", description = "A downstream service did not answer within the checkout deadline; "
+                    + "the X-Checkout-Slowest-Dependency header names it")
     })
     @PostMapping("/{userId}/createFromCart")
     public ResponseEntity<EntityModel<Order>> createOrderFromCart(
             @PathVariable Long userId,
-            @RequestBody OrderCreationRequest request) {
+            @RequestBody OrderCreationRequest request,
+            @Parameter(description = "Client-generated key; retries with the same key return the original order instead of creating a new one")
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @Parameter(description = "Send 'respond-async' to get 202 Accepted as soon as the order is reserved, without waiting for the payment")
+            @RequestHeader(value = PREFER_HEADER, required = false) String prefer) {
+        boolean async = prefer != null && prefer.contains(RESPOND_ASYNC);
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return createOrder(userId, request, async);
+        }
+
+        String fingerprint = IdempotencyService.fingerprint(request.getShippingAddress(), request.getPaymentMethod());
+        IdempotencyService.Claim claim = idempotencyService.begin(userId, idempotencyKey, fingerprint);
+        switch (claim.getOutcome()) {
+            case REPLAY:
+                // Repetición de una petición ya completada: se devuelve el pedido original sin repetir el checkout
+                return orderService.getOrderById(claim.getOrderId())
+                        .map(this::toModel)
+                        .map(model -> replay(model).body(model))
+                        .orElse(new ResponseEntity<>(HttpStatus.GONE));
+            case IN_PROGRESS:
+                return new ResponseEntity<>(HttpStatus.CONFLICT);
+            case MISMATCH:
+                return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
+            default:
+                break;
+        }
+
+        ResponseEntity<EntityModel<Order>> response = createOrder(userId, request, async);
+        if (response.getBody() != null) {
+            // Hay pedido, también si su pago falló: la clave queda asociada a él y las repeticiones lo devuelven
+            idempotencyService.complete(userId, idempotencyKey, claim.getOwnerToken(), response.getBody().getContent().getId());
+        } else {
+            // Sin pedido creado (carrito vacío, plazo vencido...): se libera la clave para que el cliente pueda reintentar
+            idempotencyService.release(userId, idempotencyKey, claim.getOwnerToken());
+        }
+        return response;
+    }
+
+    // Las repeticiones devuelven el pedido original con el mismo código que su primera respuesta: 202 mientras sigue
+    // PENDING (solo lo devuelve así el checkout asíncrono; el síncrono no completa la clave hasta registrar el pago),
+    // 402 si su pago falló y 201 en otro caso
+    static ResponseEntity.BodyBuilder replay(EntityModel<Order> model) {
+        String status = model.getContent().getStatus();
+        ResponseEntity.BodyBuilder builder;
+        if ("PENDING".equals(status)) {
+            builder = ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .location(model.getRequiredLink(IanaLinkRelations.SELF).toUri())
+                    .header(PREFERENCE_APPLIED_HEADER, RESPOND_ASYNC);
+        } else if ("PAYMENT_FAILED".equals(status)) {
+            builder = ResponseEntity.status(HttpStatus.PAYMENT_REQUIRED);
+        } else {
+            builder = ResponseEntity.status(HttpStatus.CREATED);
+        }
+        return builder.header(IDEMPOTENT_REPLAY_HEADER, "true");
+    }
+
+    private ResponseEntity<EntityModel<Order>> createOrder(Long userId, OrderCreationRequest request, boolean async) {
         try {
+            if (async) {
+                // El pedido queda PENDING y el pago continúa en segundo plano
+                Order acceptedOrder = orderService.submitOrderFromCart(userId, request.getShippingAddress(), request.getPaymentMethod());
+                return ResponseEntity.status(HttpStatus.ACCEPTED)
+                        .location(linkTo(methodOn(OrderController.class).getOrderById(acceptedOrder.getId())).toUri())
+                        .header(PREFERENCE_APPLIED_HEADER, RESPOND_ASYNC)
+                        .body(toModel(acceptedOrder));
+            }
             Order newOrder = orderService.createOrderFromCart(userId, request.getShippingAddress(), request.getPaymentMethod());
             EntityModel<Order> orderModel = toModel(newOrder);
             return new ResponseEntity<>(orderModel, HttpStatus.CREATED);
+        } catch (CheckoutDeadlineExceededException e) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                    .header(SLOWEST_DEPENDENCY_HEADER, String.join(",", e.getSlowestDependencies()))
+                    .build();
+        } catch (CheckoutPaymentFailedException e) {
+            // El pedido ya existe: se devuelve para que el cliente vea su estado
+            return ResponseEntity.status(HttpStatus.PAYMENT_REQUIRED).body(toModel(e.getOrder()));
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().build();
         }
@@ -76,19 +183,117 @@ public class OrderController {
                 .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
 
-    @Operation(summary = "Get all orders for a specific user")
+    @Operation(summary = "Get the current status of an order (polling endpoint for asynchronous checkout)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Current order status; while it is PENDING a Retry-After header suggests when to poll again",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = OrderStatusDto.class))),
+            @ApiResponse(responseCode = "404", description = "Order not found")
+    })
+    @GetMapping("/{orderId}/status")
+    public ResponseEntity<OrderStatusDto> getOrderStatus(@PathVariable Long orderId) {
+        return orderService.getOrderById(orderId)
+                .map(order -> {
+                    ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+                    if ("PENDING".equals(order.getStatus())) {
+                        builder.header(HttpHeaders.RETRY_AFTER, "1");
+                    }
+                    return builder.body(toStatusDto(order));
+                })
+                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    @Operation(summary = "Stream the status transitions of an order as Server-Sent Events",
+            description = "Sends the current status first and one 'status' event per transition; the stream ends when the order leaves PENDING")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Event stream opened", content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE)),
+            @ApiResponse(responseCode = "404", description = "Order not found")
+    })
+    @GetMapping(value = "/{orderId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamOrderStatus(@PathVariable Long orderId) {
+        // El estado actual se lee después de registrar el stream (ver OrderStatusStreamRegistry.subscribe)
+        return orderStatusStreamRegistry.subscribe(orderId, () -> orderService.getOrderById(orderId).map(this::toStatusDto))
+                .map(ResponseEntity::ok)
+                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    private OrderStatusDto toStatusDto(Order order) {
+        return new OrderStatusDto(order.getId(), order.getStatus(), order.getTransactionId());
+    }
+
+    @Operation(summary = "Get a page of a user's orders, newest first",
+            description = "Keyset pagination: follow the 'next' link (or pass its cursor) to get the following page")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "A page of orders; includes a 'next' link when there are more"),
+            @ApiResponse(responseCode = "204", description = "The user has no orders"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor")
+    })
     @GetMapping("/user/{userId}")
-    public ResponseEntity<CollectionModel<EntityModel<Order>>> getOrdersByUserId(@PathVariable Long userId) {
-        List<EntityModel<Order>> orders = orderService.getOrdersByUserId(userId).stream()
+    public ResponseEntity<CollectionModel<EntityModel<Order>>> getOrdersByUserId(
+            @PathVariable Long userId,
+            @Parameter(description = "Opaque cursor from the previous page's 'next' link; omit it for the first page")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size (default " + OrderService.DEFAULT_HISTORY_PAGE_SIZE
+                    + ", max " + OrderService.MAX_HISTORY_PAGE_SIZE + ")")
+            @RequestParam(required = false) Integer size) {
+        int pageSize = size != null ? size : OrderService.DEFAULT_HISTORY_PAGE_SIZE;
+        OrderHistoryPage page;
+        try {
+            page = orderService.getOrderHistory(userId, cursor, pageSize);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (page.getOrders().isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+
+        List<EntityModel<Order>> orders = page.getOrders().stream()
                 .map(this::toModel)
                 .collect(Collectors.toList());
+        CollectionModel<EntityModel<Order>> model = CollectionModel.of(orders,
+                linkTo(methodOn(OrderController.class).getOrdersByUserId(userId, cursor, size)).withSelfRel());
+        if (page.getNextCursor() != null) {
+            model.add(linkTo(methodOn(OrderController.class).getOrdersByUserId(userId, page.getNextCursor(), size))
+                    .withRel(IanaLinkRelations.NEXT));
+        }
+        return ResponseEntity.ok(model);
+    }
+
+    @Operation(summary = "Get a page of order summaries for a user, newest first",
+            description = "Lightweight list view (id, date, status, total and item count) without the order items; "
+                    + "same ordering and cursor semantics as the order history")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "A page of order summaries; includes a 'next' link when there are more"),
+            @ApiResponse(responseCode = "204", description = "The user has no orders"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor")
+    })
+    @GetMapping("/user/{userId}/summary")
+    public ResponseEntity<CollectionModel<OrderSummaryDto>> getOrderSummariesByUserId(
+            @PathVariable Long userId,
+            @Parameter(description = "Opaque cursor from the previous page's 'next' link; omit it for the first page")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size (default " + OrderService.DEFAULT_HISTORY_PAGE_SIZE
+                    + ", max " + OrderService.MAX_HISTORY_PAGE_SIZE + ")")
+            @RequestParam(required = false) Integer size) {
+        int pageSize = size != null ? size : OrderService.DEFAULT_HISTORY_PAGE_SIZE;
+        OrderSummaryPage page;
+        try {
+            page = orderService.getOrderSummaries(userId, cursor, pageSize);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
 
-        if (orders.isEmpty()) {
+        if (page.getSummaries().isEmpty()) {
             return ResponseEntity.noContent().build();
         }
 
-        return ResponseEntity.ok(CollectionModel.of(orders,
-                linkTo(methodOn(OrderController.class).getOrdersByUserId(userId)).withSelfRel()));
+        CollectionModel<OrderSummaryDto> model = CollectionModel.of(page.getSummaries(),
+                linkTo(methodOn(OrderController.class).getOrderSummariesByUserId(userId, cursor, size)).withSelfRel());
+        if (page.getNextCursor() != null) {
+            model.add(linkTo(methodOn(OrderController.class).getOrderSummariesByUserId(userId, page.getNextCursor(), size))
+                    .withRel(IanaLinkRelations.NEXT));
+        }
+        return ResponseEntity.ok(model);
     }
 
     @Operation(summary = "Update the status of an order")
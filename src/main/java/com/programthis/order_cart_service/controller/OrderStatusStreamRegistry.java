@@ -0,0 +1,126 @@
+package com.programthis.order_cart_service.controller;
+
+import com.programthis.order_cart_service.dto.OrderStatusDto;
+import com.programthis.order_cart_service.service.OrderService;
+import com.programthis.order_cart_service.service.OrderStatusChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Suscripciones SSE abiertas por pedido. Reenvía cada {@link OrderStatusChangedEvent} a los clientes suscritos
+ * y cierra el stream cuando el pedido sale de PENDING (resultado del checkout).
+ * Los eventos solo llegan a la instancia que confirmó el cambio. Si el pago lo registró otra instancia (o su
+ * recuperación de pedidos PENDING), el cambio se detecta releyendo periódicamente de la base de datos el estado de
+ * los pedidos con streams abiertos ({@code checkout.async.sse-recheck-interval-ms}).
+ * Los emisores no ocupan un hilo de Tomcat mientras esperan: la respuesta queda en modo asíncrono.
+ */
+@Component
+@Profile("!reactive")
+public class OrderStatusStreamRegistry {
+
+    static final String STATUS_EVENT = "status";
+    private static final String PENDING = "PENDING";
+
+    private final Map<Long, List<SseEmitter>> emittersByOrder = new ConcurrentHashMap<>();
+    private final OrderService orderService;
+    private final Duration streamTimeout;
+
+    public OrderStatusStreamRegistry(OrderService orderService,
+                                     @Value("${checkout.async.sse-timeout:60s}") Duration streamTimeout) {
+        this.orderService = orderService;
+        this.streamTimeout = streamTimeout;
+    }
+
+    /**
+     * Abre un stream para el pedido y le envía su estado actual. El emisor se registra antes de leer ese estado
+     * (currentStatus): una transición que se confirme entre la lectura y el registro llega como evento, en lugar de
+     * perderse y dejar el stream abierto en PENDING hasta que venza el plazo.
+     *
+     * @return vacío si el pedido no existe; en ese caso no queda ningún emisor registrado.
+     */
+    public Optional<SseEmitter> subscribe(Long orderId, Supplier<Optional<OrderStatusDto>> currentStatus) {
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        emittersByOrder.computeIfAbsent(orderId, id -> new CopyOnWriteArrayList<>()).add(emitter);
+        emitter.onCompletion(() -> remove(orderId, emitter));
+        emitter.onTimeout(() -> remove(orderId, emitter));
+        emitter.onError(e -> remove(orderId, emitter));
+
+        Optional<OrderStatusDto> status;
+        try {
+            status = currentStatus.get();
+        } catch (RuntimeException e) {
+            remove(orderId, emitter);
+            throw e;
+        }
+        if (status.isEmpty()) {
+            remove(orderId, emitter);
+            return Optional.empty();
+        }
+        send(orderId, emitter, status.get());
+        return Optional.of(emitter);
+    }
+
+    // Con transacción activa se entrega tras el commit; sin ella (TransactionTemplate ya confirmado), de inmediato
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        deliver(new OrderStatusDto(event.getOrderId(), event.getStatus(), event.getTransactionId()));
+    }
+
+    // Una sola consulta para todos los pedidos con streams abiertos en esta instancia; solo devuelve los que ya
+    // salieron de PENDING, y su envío cierra los streams
+    @Scheduled(fixedDelayString = "${checkout.async.sse-recheck-interval-ms:5000}")
+    public void recheckOpenStreams() {
+        if (emittersByOrder.isEmpty()) {
+            return;
+        }
+        orderService.findFinishedStatuses(List.copyOf(emittersByOrder.keySet())).forEach(this::deliver);
+    }
+
+    private void deliver(OrderStatusDto status) {
+        List<SseEmitter> emitters = emittersByOrder.get(status.getOrderId());
+        if (emitters == null) {
+            return;
+        }
+        for (SseEmitter emitter : emitters) {
+            send(status.getOrderId(), emitter, status);
+        }
+    }
+
+    int subscriberCount(Long orderId) {
+        List<SseEmitter> emitters = emittersByOrder.get(orderId);
+        return emitters == null ? 0 : emitters.size();
+    }
+
+    private void send(Long orderId, SseEmitter emitter, OrderStatusDto status) {
+        try {
+            emitter.send(SseEmitter.event().name(STATUS_EVENT).id(status.getStatus()).data(status));
+            if (!PENDING.equals(status.getStatus())) {
+                emitter.complete();
+                remove(orderId, emitter);
+            }
+        } catch (IOException | IllegalStateException e) {
+            // El cliente se desconectó o el emisor ya estaba cerrado
+            remove(orderId, emitter);
+        }
+    }
+
+    private void remove(Long orderId, SseEmitter emitter) {
+        emittersByOrder.computeIfPresent(orderId, (id, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+}
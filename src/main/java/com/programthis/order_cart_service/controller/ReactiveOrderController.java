@@ -0,0 +1,280 @@
+package com.programthis.order_cart_service.controller;
+
+import com.programthis.order_cart_service.dto.OrderStatusDto;
+import com.programthis.order_cart_service.dto.OrderSummaryDto;
+import com.programthis.order_cart_service.model.Order;
+import com.programthis.order_cart_service.service.CheckoutDeadlineExceededException;
+import com.programthis.order_cart_service.service.CheckoutPaymentFailedException;
+import com.programthis.order_cart_service.service.IdempotencyService;
+import com.programthis.order_cart_service.service.OrderService;
+import com.programthis.order_cart_service.service.ReactiveJpaBridge;
+import com.programthis.order_cart_service.service.ReactiveOrderService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+import static com.programthis.order_cart_service.controller.OrderController.*;
+import static org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.linkTo;
+import static org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.methodOn;
+
+// Variante WebFlux de OrderController (perfil "reactive"): mismas rutas, cabeceras y códigos de respuesta
+@RestController
+@Profile("reactive")
+@RequestMapping("/api/orders")
+@Tag(name = "Order Management", description = "APIs for managing customer orders")
+public class ReactiveOrderController {
+
+    private final ReactiveOrderService orderService;
+    private final IdempotencyService idempotencyService;
+    private final ReactiveOrderStatusStream orderStatusStream;
+    private final ReactiveJpaBridge jpa;
+    private final Duration streamTimeout;
+    private final Duration streamRecheckInterval;
+
+    @Autowired
+    public ReactiveOrderController(ReactiveOrderService orderService, IdempotencyService idempotencyService,
+                                   ReactiveOrderStatusStream orderStatusStream, ReactiveJpaBridge jpa,
+                                   @Value("${checkout.async.sse-timeout:60s}") Duration streamTimeout,
+                                   @Value("${checkout.async.sse-recheck-interval-ms:5000}") long streamRecheckIntervalMs) {
+        this.orderService = orderService;
+        this.idempotencyService = idempotencyService;
+        this.orderStatusStream = orderStatusStream;
+        this.jpa = jpa;
+        this.streamTimeout = streamTimeout;
+        this.streamRecheckInterval = Duration.ofMillis(streamRecheckIntervalMs);
+    }
+
+    private Mono<EntityModel<Order>> toModel(Order order) {
+        return Flux.concat(
+                        linkTo(methodOn(ReactiveOrderController.class).getOrderById(order.getId())).withSelfRel().toMono(),
+                        linkTo(methodOn(ReactiveOrderController.class).getOrdersByUserId(order.getUserId(), null, null)).withRel("user-orders").toMono(),
+                        linkTo(methodOn(ReactiveOrderController.class).getOrderStatus(order.getId())).withRel("status").toMono(),
+                        linkTo(methodOn(ReactiveOrderController.class).streamOrderStatus(order.getId())).withRel("status-events").toMono())
+                .collectList()
+                .map(links -> EntityModel.of(order, links));
+    }
+
+    @Operation(summary = "Create an order from a user's cart")
+    @PostMapping("/{userId}/createFromCart")
+    public Mono<ResponseEntity<EntityModel<Order>>> createOrderFromCart(
+            @PathVariable Long userId,
+            @RequestBody OrderController.OrderCreationRequest request,
+            @Parameter(description = "Client-generated key; retries with the same key return the original order instead of creating a new one")
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @Parameter(description = "Send 'respond-async' to get 202 Accepted as soon as the order is reserved, without waiting for the payment")
+            @RequestHeader(value = PREFER_HEADER, required = false) String prefer) {
+        boolean async = prefer != null && prefer.contains(RESPOND_ASYNC);
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return createOrder(userId, request, async);
+        }
+
+        String fingerprint = IdempotencyService.fingerprint(request.getShippingAddress(), request.getPaymentMethod());
+        // IdempotencyService usa JPA: sus llamadas se ejecutan fuera del event loop
+        return jpa.offload(() -> idempotencyService.begin(userId, idempotencyKey, fingerprint))
+                .flatMap(claim -> switch (claim.getOutcome()) {
+                    // Repetición de una petición ya completada: se devuelve el pedido original sin repetir el checkout
+                    case REPLAY -> orderService.getOrderById(claim.getOrderId())
+                            .flatMap(this::toModel)
+                            .map(model -> OrderController.replay(model).body(model))
+                            .defaultIfEmpty(new ResponseEntity<>(HttpStatus.GONE));
+                    case IN_PROGRESS -> Mono.just(new ResponseEntity<>(HttpStatus.CONFLICT));
+                    case MISMATCH -> Mono.just(new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY));
+                    default -> createOrder(userId, request, async)
+                            .flatMap(response -> finishIdempotentRequest(userId, idempotencyKey, claim.getOwnerToken(), response));
+                });
+    }
+
+    private Mono<ResponseEntity<EntityModel<Order>>> finishIdempotentRequest(Long userId, String idempotencyKey, String ownerToken,
+                                                                             ResponseEntity<EntityModel<Order>> response) {
+        if (response.getBody() != null) {
+            // Hay pedido, también si su pago falló: la clave queda asociada a él y las repeticiones lo devuelven
+            Long orderId = response.getBody().getContent().getId();
+            return jpa.offload(() -> {
+                idempotencyService.complete(userId, idempotencyKey, ownerToken, orderId);
+                return response;
+            });
+        }
+        // Sin pedido creado (carrito vacío, plazo vencido...): se libera la clave para que el cliente pueda reintentar
+        return jpa.offload(() -> {
+            idempotencyService.release(userId, idempotencyKey, ownerToken);
+            return response;
+        });
+    }
+
+    private Mono<ResponseEntity<EntityModel<Order>>> createOrder(Long userId, OrderController.OrderCreationRequest request, boolean async) {
+        Mono<ResponseEntity<EntityModel<Order>>> response;
+        if (async) {
+            // El pedido queda PENDING y el pago continúa en segundo plano
+            response = orderService.submitOrderFromCart(userId, request.getShippingAddress(), request.getPaymentMethod())
+                    .flatMap(this::toModel)
+                    .map(model -> ResponseEntity.status(HttpStatus.ACCEPTED)
+                            .location(model.getRequiredLink(IanaLinkRelations.SELF).toUri())
+                            .header(PREFERENCE_APPLIED_HEADER, RESPOND_ASYNC)
+                            .body(model));
+        } else {
+            response = orderService.createOrderFromCart(userId, request.getShippingAddress(), request.getPaymentMethod())
+                    .flatMap(this::toModel)
+                    .map(model -> new ResponseEntity<>(model, HttpStatus.CREATED));
+        }
+        return response
+                .onErrorResume(CheckoutDeadlineExceededException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                        .header(SLOWEST_DEPENDENCY_HEADER, String.join(",", e.getSlowestDependencies()))
+                        .build()))
+                // El pedido ya existe: se devuelve para que el cliente vea su estado
+                .onErrorResume(CheckoutPaymentFailedException.class, e -> toModel(e.getOrder())
+                        .map(model -> ResponseEntity.status(HttpStatus.PAYMENT_REQUIRED).body(model)))
+                .onErrorResume(RuntimeException.class, e -> Mono.just(ResponseEntity.badRequest().build()));
+    }
+
+    @Operation(summary = "Get an order by its ID")
+    @GetMapping("/{orderId}")
+    public Mono<ResponseEntity<EntityModel<Order>>> getOrderById(@PathVariable Long orderId) {
+        return orderService.getOrderById(orderId)
+                .flatMap(this::toModel)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    @Operation(summary = "Get the current status of an order (polling endpoint for asynchronous checkout)")
+    @GetMapping("/{orderId}/status")
+    public Mono<ResponseEntity<OrderStatusDto>> getOrderStatus(@PathVariable Long orderId) {
+        return orderService.getOrderById(orderId)
+                .map(order -> {
+                    ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+                    if ("PENDING".equals(order.getStatus())) {
+                        builder.header(HttpHeaders.RETRY_AFTER, "1");
+                    }
+                    return builder.body(toStatusDto(order));
+                })
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    @Operation(summary = "Stream the status transitions of an order as Server-Sent Events",
+            description = "Sends the current status first and one 'status' event per transition; the stream ends when the order leaves PENDING")
+    @GetMapping(value = "/{orderId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Mono<ResponseEntity<Flux<ServerSentEvent<OrderStatusDto>>>> streamOrderStatus(@PathVariable Long orderId) {
+        return orderService.getOrderById(orderId)
+                .map(order -> ResponseEntity.ok(statusEvents(orderId)))
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    // merge se suscribe a los cambios antes de releer el estado actual: una transición que ocurra entre ambos
+    // no se pierde. Los cambios solo llegan a la instancia que los confirmó: los de otra instancia se detectan al
+    // releer el estado cada sse-recheck-interval-ms. El stream termina con el primer estado distinto de PENDING o al
+    // vencer el plazo.
+    private Flux<ServerSentEvent<OrderStatusDto>> statusEvents(Long orderId) {
+        return Flux.merge(
+                        orderStatusStream.statusChanges(orderId),
+                        orderService.getOrderById(orderId).map(this::toStatusDto),
+                        Flux.interval(streamRecheckInterval)
+                                .concatMap(tick -> orderService.getOrderById(orderId))
+                                .map(this::toStatusDto)
+                                .filter(status -> !"PENDING".equals(status.getStatus())))
+                .takeUntil(status -> !"PENDING".equals(status.getStatus()))
+                .take(streamTimeout)
+                .map(status -> ServerSentEvent.builder(status)
+                        .event(OrderStatusStreamRegistry.STATUS_EVENT)
+                        .id(status.getStatus())
+                        .build());
+    }
+
+    private OrderStatusDto toStatusDto(Order order) {
+        return new OrderStatusDto(order.getId(), order.getStatus(), order.getTransactionId());
+    }
+
+    @Operation(summary = "Get a page of a user's orders, newest first")
+    @GetMapping("/user/{userId}")
+    public Mono<ResponseEntity<CollectionModel<EntityModel<Order>>>> getOrdersByUserId(
+            @PathVariable Long userId,
+            @Parameter(description = "Opaque cursor from the previous page's 'next' link; omit it for the first page")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size (default " + OrderService.DEFAULT_HISTORY_PAGE_SIZE
+                    + ", max " + OrderService.MAX_HISTORY_PAGE_SIZE + ")")
+            @RequestParam(required = false) Integer size) {
+        int pageSize = size != null ? size : OrderService.DEFAULT_HISTORY_PAGE_SIZE;
+        return orderService.getOrderHistory(userId, cursor, pageSize)
+                .flatMap(page -> {
+                    if (page.getOrders().isEmpty()) {
+                        return Mono.just(ResponseEntity.noContent().<CollectionModel<EntityModel<Order>>>build());
+                    }
+                    Mono<Link> next = page.getNextCursor() == null
+                            ? Mono.empty()
+                            : linkTo(methodOn(ReactiveOrderController.class).getOrdersByUserId(userId, page.getNextCursor(), size))
+                                    .withRel(IanaLinkRelations.NEXT).toMono();
+                    Mono<List<Link>> links = Flux.concat(
+                                    linkTo(methodOn(ReactiveOrderController.class).getOrdersByUserId(userId, cursor, size)).withSelfRel().toMono(),
+                                    next)
+                            .collectList();
+                    return Flux.fromIterable(page.getOrders())
+                            .concatMap(this::toModel)
+                            .collectList()
+                            .zipWith(links, (orders, collectionLinks) -> ResponseEntity.ok(CollectionModel.of(orders, collectionLinks)));
+                })
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.just(ResponseEntity.badRequest().build()));
+    }
+
+    @Operation(summary = "Get a page of order summaries for a user, newest first")
+    @GetMapping("/user/{userId}/summary")
+    public Mono<ResponseEntity<CollectionModel<OrderSummaryDto>>> getOrderSummariesByUserId(
+            @PathVariable Long userId,
+            @Parameter(description = "Opaque cursor from the previous page's 'next' link; omit it for the first page")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size (default " + OrderService.DEFAULT_HISTORY_PAGE_SIZE
+                    + ", max " + OrderService.MAX_HISTORY_PAGE_SIZE + ")")
+            @RequestParam(required = false) Integer size) {
+        int pageSize = size != null ? size : OrderService.DEFAULT_HISTORY_PAGE_SIZE;
+        return orderService.getOrderSummaries(userId, cursor, pageSize)
+                .flatMap(page -> {
+                    if (page.getSummaries().isEmpty()) {
+                        return Mono.just(ResponseEntity.noContent().<CollectionModel<OrderSummaryDto>>build());
+                    }
+                    Mono<Link> next = page.getNextCursor() == null
+                            ? Mono.empty()
+                            : linkTo(methodOn(ReactiveOrderController.class).getOrderSummariesByUserId(userId, page.getNextCursor(), size))
+                                    .withRel(IanaLinkRelations.NEXT).toMono();
+                    return Flux.concat(
+                                    linkTo(methodOn(ReactiveOrderController.class).getOrderSummariesByUserId(userId, cursor, size)).withSelfRel().toMono(),
+                                    next)
+                            .collectList()
+                            .map(links -> ResponseEntity.ok(CollectionModel.of(page.getSummaries(), links)));
+                })
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.just(ResponseEntity.badRequest().build()));
+    }
+
+    @Operation(summary = "Update the status of an order")
+    @PutMapping("/{orderId}/status")
+    public Mono<ResponseEntity<EntityModel<Order>>> updateOrderStatus(
+            @PathVariable Long orderId,
+            @Parameter(description = "New status for the order", required = true) @RequestParam String newStatus) {
+        return orderService.updateOrderStatus(orderId, newStatus)
+                .flatMap(this::toModel)
+                .map(ResponseEntity::ok)
+                .onErrorResume(RuntimeException.class, e -> Mono.just(new ResponseEntity<>(HttpStatus.NOT_FOUND)));
+    }
+
+    @Operation(summary = "Delete an order")
+    @DeleteMapping("/{orderId}")
+    public Mono<ResponseEntity<Void>> deleteOrder(@PathVariable Long orderId) {
+        return orderService.deleteOrder(orderId)
+                .then(Mono.just(ResponseEntity.noContent().<Void>build()))
+                .onErrorResume(RuntimeException.class, e -> Mono.just(new ResponseEntity<>(HttpStatus.NOT_FOUND)));
+    }
+}
@@ -0,0 +1,35 @@
+package com.programthis.order_cart_service.controller;
+
+import com.programthis.order_cart_service.dto.OrderStatusDto;
+import com.programthis.order_cart_service.service.OrderStatusChangedEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+
+/**
+ * Equivalente reactivo de {@link OrderStatusStreamRegistry}: difunde cada {@link OrderStatusChangedEvent}
+ * a los streams SSE abiertos. Un suscriptor lento pierde eventos en lugar de frenar a los demás.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveOrderStatusStream {
+
+    private final Sinks.Many<OrderStatusChangedEvent> events = Sinks.many().multicast().directBestEffort();
+
+    // Con transacción activa se entrega tras el commit; sin ella (TransactionTemplate ya confirmado), de inmediato
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        // Los eventos llegan desde varios hilos; se reintenta brevemente si otro hilo está emitiendo a la vez
+        events.emitNext(event, Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100)));
+    }
+
+    public Flux<OrderStatusDto> statusChanges(Long orderId) {
+        return events.asFlux()
+                .filter(event -> orderId.equals(event.getOrderId()))
+                .map(event -> new OrderStatusDto(event.getOrderId(), event.getStatus(), event.getTransactionId()));
+    }
+}
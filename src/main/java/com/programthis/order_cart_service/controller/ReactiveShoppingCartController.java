@@ -0,0 +1,131 @@
+package com.programthis.order_cart_service.controller;
+
+import com.programthis.order_cart_service.dto.CartItemOperationDto;
+import com.programthis.order_cart_service.model.ShoppingCart;
+import com.programthis.order_cart_service.service.CartConflictException;
+import com.programthis.order_cart_service.service.CartViewCache;
+import com.programthis.order_cart_service.service.ReactiveShoppingCartService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.linkTo;
+import static org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.methodOn;
+
+// Variante WebFlux de ShoppingCartController (perfil "reactive"): mismas rutas y respuestas, sin un hilo por petición
+@RestController
+@Profile("reactive")
+@RequestMapping("/api/carts")
+@Tag(name = "Shopping Cart Management", description = "APIs for managing user shopping carts")
+public class ReactiveShoppingCartController {
+
+    private final ReactiveShoppingCartService shoppingCartService;
+
+    @Autowired
+    public ReactiveShoppingCartController(ReactiveShoppingCartService shoppingCartService) {
+        this.shoppingCartService = shoppingCartService;
+    }
+
+    private Mono<EntityModel<ShoppingCart>> toModel(ShoppingCart cart) {
+        return Flux.concat(
+                        linkTo(methodOn(ReactiveShoppingCartController.class).getCart(cart.getUserId(), null)).withSelfRel().toMono(),
+                        linkTo(methodOn(ReactiveShoppingCartController.class).addProductToCart(cart.getUserId(), null, null)).withRel("add-item").toMono(),
+                        linkTo(methodOn(ReactiveShoppingCartController.class).clearCart(cart.getUserId())).withRel("clear-cart").toMono())
+                .collectList()
+                .map(links -> EntityModel.of(cart, links));
+    }
+
+    private static ResponseEntity<EntityModel<ShoppingCart>> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    // Igual que en ShoppingCartController: 304 si el cliente ya tiene la versión actual
+    @Operation(summary = "Get a user's shopping cart (empty and not persisted if the user has none yet; supports If-None-Match)")
+    @GetMapping("/{userId}")
+    public Mono<ResponseEntity<EntityModel<ShoppingCart>>> getCart(
+            @PathVariable Long userId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return shoppingCartService.getCart(userId)
+                .flatMap(cart -> {
+                    String etag = CartViewCache.etagOf(cart);
+                    if (CartViewCache.matches(ifNoneMatch, etag)) {
+                        return Mono.just(notModified(etag));
+                    }
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if (etag != null) {
+                        response.eTag(etag);
+                    }
+                    return toModel(cart).map(response::body);
+                });
+    }
+
+    @Operation(summary = "Add a product to the cart")
+    @PostMapping("/{userId}/items")
+    public Mono<ResponseEntity<EntityModel<ShoppingCart>>> addProductToCart(
+            @PathVariable Long userId,
+            @RequestParam Long productId,
+            @RequestParam Integer quantity) {
+        return shoppingCartService.addProductToCart(userId, productId, quantity)
+                .flatMap(this::toModel)
+                .map(ResponseEntity::ok)
+                .onErrorResume(CartConflictException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).build()))
+                .onErrorResume(RuntimeException.class, e -> Mono.just(ResponseEntity.badRequest().build()));
+    }
+
+    @Operation(summary = "Apply several add/update/remove operations to the cart at once (all or nothing)")
+    @PatchMapping("/{userId}/items")
+    public Mono<ResponseEntity<EntityModel<ShoppingCart>>> applyItemOperations(
+            @PathVariable Long userId,
+            @RequestBody List<CartItemOperationDto> operations) {
+        return shoppingCartService.applyItemOperations(userId, operations)
+                .flatMap(this::toModel)
+                .map(ResponseEntity::ok)
+                .onErrorResume(CartConflictException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).build()))
+                .onErrorResume(RuntimeException.class, e -> Mono.just(ResponseEntity.badRequest().build()));
+    }
+
+    @Operation(summary = "Update product quantity in the cart")
+    @PutMapping("/{userId}/items/{productId}")
+    public Mono<ResponseEntity<EntityModel<ShoppingCart>>> updateProductQuantityInCart(
+            @PathVariable Long userId,
+            @PathVariable Long productId,
+            @RequestParam Integer newQuantity) {
+        return shoppingCartService.updateProductQuantityInCart(userId, productId, newQuantity)
+                .flatMap(this::toModel)
+                .map(ResponseEntity::ok)
+                .onErrorResume(CartConflictException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).build()))
+                .onErrorResume(RuntimeException.class, e -> Mono.just(ResponseEntity.notFound().build()));
+    }
+
+    @Operation(summary = "Remove a product from the cart")
+    @DeleteMapping("/{userId}/items/{productId}")
+    public Mono<ResponseEntity<EntityModel<ShoppingCart>>> removeProductFromCart(
+            @PathVariable Long userId,
+            @PathVariable Long productId) {
+        return shoppingCartService.removeProductFromCart(userId, productId)
+                .flatMap(this::toModel)
+                .map(ResponseEntity::ok)
+                .onErrorResume(CartConflictException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).build()))
+                .onErrorResume(RuntimeException.class, e -> Mono.just(ResponseEntity.notFound().build()));
+    }
+
+    @Operation(summary = "Clear all items from the cart")
+    @DeleteMapping("/{userId}/clear")
+    public Mono<ResponseEntity<EntityModel<ShoppingCart>>> clearCart(@PathVariable Long userId) {
+        return shoppingCartService.clearCart(userId)
+                .flatMap(this::toModel)
+                .map(ResponseEntity::ok)
+                .onErrorResume(CartConflictException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).build()))
+                .onErrorResume(RuntimeException.class, e -> Mono.just(ResponseEntity.notFound().build()));
+    }
+}
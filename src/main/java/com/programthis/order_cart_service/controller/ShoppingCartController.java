@@ -1,19 +1,27 @@
 package com.programthis.order_cart_service.controller;
 
+import com.programthis.order_cart_service.dto.CartItemOperationDto;
 import com.programthis.order_cart_service.model.ShoppingCart;
+import com.programthis.order_cart_service.service.CartConflictException;
+import com.programthis.order_cart_service.service.CartViewCache;
 import com.programthis.order_cart_service.service.ShoppingCartService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.hateoas.EntityModel;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/carts")
 @Tag(name = "Shopping Cart Management", description = "APIs for managing user shopping carts")
 public class ShoppingCartController {
@@ -27,16 +35,33 @@ public class ShoppingCartController {
 
     private EntityModel<ShoppingCart> toModel(ShoppingCart cart) {
         return EntityModel.of(cart,
-                linkTo(methodOn(ShoppingCartController.class).getOrCreateCart(cart.getUserId())).withSelfRel(),
+                linkTo(methodOn(ShoppingCartController.class).getCart(cart.getUserId(), null)).withSelfRel(),
                 linkTo(methodOn(ShoppingCartController.class).addProductToCart(cart.getUserId(), null, null)).withRel("add-item"),
                 linkTo(methodOn(ShoppingCartController.class).clearCart(cart.getUserId())).withRel("clear-cart"));
     }
 
-    @Operation(summary = "Get or create a shopping cart for a user")
+    // 304 con la ETag, sin cuerpo
+    private static ResponseEntity<EntityModel<ShoppingCart>> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    // Si el cliente ya tiene la versión actual del carrito (If-None-Match), se responde 304 sin construir la respuesta.
+    // Con el carrito en la caché, la versión es lo único que se lee del almacén
+    @Operation(summary = "Get a user's shopping cart (empty and not persisted if the user has none yet; supports If-None-Match)")
     @GetMapping("/{userId}")
-    public ResponseEntity<EntityModel<ShoppingCart>> getOrCreateCart(@PathVariable Long userId) {
-        ShoppingCart cart = shoppingCartService.getOrCreateShoppingCart(userId);
-        return new ResponseEntity<>(toModel(cart), HttpStatus.OK);
+    public ResponseEntity<EntityModel<ShoppingCart>> getCart(
+            @PathVariable Long userId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        ShoppingCart cart = shoppingCartService.getCart(userId);
+        String etag = CartViewCache.etagOf(cart);
+        if (CartViewCache.matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (etag != null) {
+            response.eTag(etag);
+        }
+        return response.body(toModel(cart));
     }
 
     @Operation(summary = "Add a product to the cart")
@@ -48,6 +73,25 @@ public class ShoppingCartController {
         try {
             ShoppingCart updatedCart = shoppingCartService.addProductToCart(userId, productId, quantity);
             return new ResponseEntity<>(toModel(updatedCart), HttpStatus.OK);
+        } catch (CartConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Varias operaciones en una petición, p. ej. al repetir un pedido o importar una lista de deseos: una búsqueda
+    // en el catálogo y una transacción. Si una operación no es válida no se aplica ninguna (400)
+    @Operation(summary = "Apply several add/update/remove operations to the cart at once (all or nothing)")
+    @PatchMapping("/{userId}/items")
+    public ResponseEntity<EntityModel<ShoppingCart>> applyItemOperations(
+            @PathVariable Long userId,
+            @RequestBody List<CartItemOperationDto> operations) {
+        try {
+            ShoppingCart updatedCart = shoppingCartService.applyItemOperations(userId, operations);
+            return new ResponseEntity<>(toModel(updatedCart), HttpStatus.OK);
+        } catch (CartConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().build();
         }
@@ -62,6 +106,8 @@ public class ShoppingCartController {
         try {
             ShoppingCart updatedCart = shoppingCartService.updateProductQuantityInCart(userId, productId, newQuantity);
             return new ResponseEntity<>(toModel(updatedCart), HttpStatus.OK);
+        } catch (CartConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
@@ -75,6 +121,8 @@ public class ShoppingCartController {
         try {
             ShoppingCart updatedCart = shoppingCartService.removeProductFromCart(userId, productId);
             return new ResponseEntity<>(toModel(updatedCart), HttpStatus.OK);
+        } catch (CartConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
@@ -86,6 +134,8 @@ public class ShoppingCartController {
         try {
             ShoppingCart clearedCart = shoppingCartService.clearCart(userId);
             return new ResponseEntity<>(toModel(clearedCart), HttpStatus.OK);
+        } catch (CartConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
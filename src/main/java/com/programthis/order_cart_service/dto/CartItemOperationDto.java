@@ -0,0 +1,22 @@
+package com.programthis.order_cart_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Una operación de PATCH /api/carts/{userId}/items. Las operaciones de una petición se aplican en orden
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartItemOperationDto {
+
+    public enum Type {
+        ADD,    // Suma quantity (mayor que 0) a la cantidad del producto, o lo añade con el precio del catálogo
+        UPDATE, // Fija la cantidad del producto; 0 o menos lo elimina
+        REMOVE  // Elimina el producto (quantity se ignora)
+    }
+
+    private Type op;
+    private Long productId;
+    private Integer quantity;
+}
@@ -0,0 +1,17 @@
+package com.programthis.order_cart_service.dto;
+
+import com.programthis.order_cart_service.model.Order;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Una página del historial de pedidos; nextCursor es null en la última página
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderHistoryPage {
+    private List<Order> orders;
+    private String nextCursor;
+}
@@ -0,0 +1,14 @@
+package com.programthis.order_cart_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderStatusDto {
+    private Long orderId;
+    private String status; // Ej: "PENDING", "COMPLETED", "PAYMENT_FAILED"
+    private String transactionId;
+}
@@ -0,0 +1,21 @@
+package com.programthis.order_cart_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Resumen de un pedido para los listados: se construye directamente desde la consulta (sin cargar la entidad
+// Order ni sus ítems), con el número de ítems calculado en SQL
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSummaryDto {
+    private Long id;
+    private LocalDateTime orderDate;
+    private String status;
+    private BigDecimal totalAmount;
+    private Long itemCount;
+}
@@ -0,0 +1,16 @@
+package com.programthis.order_cart_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Una página de resúmenes de pedidos; nextCursor es null en la última página
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSummaryPage {
+    private List<OrderSummaryDto> summaries;
+    private String nextCursor;
+}
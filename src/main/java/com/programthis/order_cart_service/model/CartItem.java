@@ -4,22 +4,27 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import com.fasterxml.jackson.annotation.JsonBackReference; // ¡Añadir esta línea!
 
 @Entity
-@Table(name = "cart_items")
+@Table(name = "cart_items", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_cart_items_cart_product", columnNames = {"cart_id", "product_id"})
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class CartItem {
     @Id
+    // IDENTITY y no secuencia: los ítems también se insertan con SQL nativo (CartItemRepository.upsertQuantity)
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     @JsonBackReference // ¡Añadir esta anotación aquí!
+    @ToString.Exclude // El carrito ya imprime sus ítems
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "cart_id", nullable = false)
     private ShoppingCart cart;
@@ -39,6 +44,29 @@ public class CartItem {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    // Identidad por ID, o por instancia mientras no se ha guardado. No depende de la cantidad ni de otros campos que
+    // cambian, ni recorre el carrito (cart), así que un ítem se sigue encontrando en listas y conjuntos al modificarlo.
+    // hashCode constante: el ID cambia al guardarse
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CartItem other)) {
+            return false;
+        }
+        return id != null && id.equals(other.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return CartItem.class.hashCode();
+    }
+
     @PrePersist
     protected void onCreate() {
         this.createdAt = LocalDateTime.now();
@@ -0,0 +1,65 @@
+package com.programthis.order_cart_service.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Clave de idempotencia recibida en la cabecera {@code Idempotency-Key} del checkout.
+ * La restricción única (user_id, idempotency_key) garantiza que solo una petición por clave puede crear el pedido;
+ * las repeticiones devuelven el pedido ya creado (order_id) hasta que la clave expira.
+ */
+@Entity
+@Table(name = "idempotency_records", uniqueConstraints = {
+    @UniqueConstraint(columnNames = {"user_id", "idempotency_key"})
+}, indexes = {
+    @Index(name = "idx_idempotency_records_expires_at", columnList = "expires_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecord {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "idempotency_key", nullable = false)
+    private String idempotencyKey;
+
+    // Huella (SHA-256) del cuerpo de la petición original, para detectar claves reutilizadas con otros datos
+    @Column(name = "request_fingerprint", nullable = false, length = 64)
+    private String requestFingerprint;
+
+    @Column(name = "status", nullable = false)
+    private String status; // "IN_PROGRESS" o "COMPLETED"
+
+    // Token (UUID) de la petición que reservó o retomó la clave: solo ella puede completarla o liberarla
+    @Column(name = "owner_token", nullable = false, length = 36)
+    private String ownerToken;
+
+    // Pedido creado por la petición original (solo cuando status = COMPLETED)
+    @Column(name = "order_id")
+    private Long orderId;
+
+    // Mientras status = IN_PROGRESS, las repeticiones se rechazan hasta este instante; después se considera
+    // que la petición original murió y otra puede continuar con la misma clave
+    @Column(name = "locked_until", nullable = false)
+    private LocalDateTime lockedUntil;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+    }
+}
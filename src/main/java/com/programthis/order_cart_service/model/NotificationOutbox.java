@@ -0,0 +1,76 @@
+package com.programthis.order_cart_service.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Notificación pendiente de enviar al Notification Service (patrón outbox).
+ * Se escribe en la misma transacción que el cambio de estado del pedido y la envía en segundo plano
+ * NotificationOutboxService, de modo que sobrevive a reinicios y no añade latencia al checkout.
+ * La restricción única (order_id, type) evita duplicar la misma notificación para un pedido.
+ */
+@Entity
+@Table(name = "notification_outbox", uniqueConstraints = {
+    @UniqueConstraint(columnNames = {"order_id", "type"})
+}, indexes = {
+    @Index(name = "idx_notification_outbox_status_next_attempt", columnList = "status, next_attempt_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationOutbox {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "order_id", nullable = false)
+    private Long orderId;
+
+    @Column(name = "recipient_email", nullable = false)
+    private String recipientEmail;
+
+    @Column(name = "subject", nullable = false)
+    private String subject;
+
+    @Column(name = "message_body", nullable = false, length = 4000)
+    private String messageBody;
+
+    @Column(name = "type", nullable = false)
+    private String type; // Ej: "ORDER_CONFIRMATION"
+
+    @Column(name = "status", nullable = false)
+    private String status; // "PENDING", "SENDING", "SENT" o "FAILED"
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        this.updatedAt = LocalDateTime.now();
+    }
+}
@@ -4,7 +4,6 @@ import com.fasterxml.jackson.annotation.JsonManagedReference;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
-import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import org.springframework.hateoas.RepresentationModel;
 
@@ -13,15 +12,21 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
-@EqualsAndHashCode(callSuper = true)
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+    // Historial de pedidos por usuario, paginado por keyset (ver OrderRepository.findHistoryIdsAfter)
+    @Index(name = "idx_orders_user_date_id", columnList = "user_id, order_date DESC, id"),
+    // Pedidos PENDING abandonados (ver OrderRepository.findStalePendingIds)
+    @Index(name = "idx_orders_status_updated_at", columnList = "status, updated_at")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Order extends RepresentationModel<Order> { // Extiende de RepresentationModel
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Secuencia con optimizador "pooled": un acceso a orders_seq reserva 50 IDs, sin ida y vuelta por INSERT
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     private Long id;
 
     // ... (resto de los campos sin cambios)
@@ -56,6 +61,30 @@ public class Order extends RepresentationModel<Order> { // Extiende de Represent
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // Bloqueo optimista: cambia con cada modificación del pedido. El registro del pago y la compensación solo cierran
+    // el pedido si sigue en la versión que leyeron (ver OrderRepository.finishPending)
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    // Identidad por ID, o por instancia mientras no se ha guardado. No recorre los ítems ni los enlaces HATEOAS.
+    // hashCode constante: el ID se asigna al guardar
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Order other)) {
+            return false;
+        }
+        return id != null && id.equals(other.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Order.class.hashCode();
+    }
+
     // ... (resto de los métodos sin cambios)
     @PrePersist
     protected void onCreate() {
@@ -2,43 +2,86 @@ package com.programthis.order_cart_service.model;
 
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
-import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import org.springframework.hateoas.RepresentationModel;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
-@EqualsAndHashCode(callSuper = true)
 @Entity
 @Table(name = "shopping_carts", uniqueConstraints = {
-    @UniqueConstraint(columnNames = "user_id")
+    @UniqueConstraint(name = "uk_shopping_carts_user", columnNames = "user_id")
 })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class ShoppingCart extends RepresentationModel<ShoppingCart> { // Extiende de RepresentationModel
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "shopping_carts_seq")
+    @SequenceGenerator(name = "shopping_carts_seq", sequenceName = "shopping_carts_seq", allocationSize = 50)
     private Long id;
 
     // ... (resto de los campos sin cambios)
     @Column(name = "user_id", nullable = false)
     private Long userId;
 
-    @JsonManagedReference
+    // Ítems indexados por producto (un producto aparece como mucho una vez, ver uk_cart_items_cart_product): buscar,
+    // añadir y quitar un ítem no recorre los demás. Mantiene el orden de inserción (al cargar, el de los IDs). Solo se
+    // modifica con addCartItem, removeCartItem y setItems; getItems devuelve una copia de solo lectura
     @OneToMany(mappedBy = "cart", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
-    private List<CartItem> items = new ArrayList<>();
+    @MapKey(name = "productId")
+    @OrderBy("id")
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Map<Long, CartItem> items = new LinkedHashMap<>();
 
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
 
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
+
+    // Bloqueo optimista: cambia con cada modificación del carrito o de sus ítems (ver CartMutationGuard)
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
     
+    // Carrito vacío de un usuario que aún no tiene uno: no tiene fila en la base de datos (sin ID) y se crea con
+    // la primera modificación. Versión 0, como un carrito recién creado
+    public static ShoppingCart emptyFor(Long userId) {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setUserId(userId);
+        cart.setVersion(0L);
+        return cart;
+    }
+
+    // Identidad por usuario (clave natural: user_id es único y no cambia), o por instancia si aún no tiene usuario.
+    // No recorre los ítems ni los enlaces HATEOAS, así que no inicializa la colección LAZY y cuesta lo mismo con
+    // cualquier número de ítems (ver docs/entity-identity.md)
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ShoppingCart other)) {
+            return false;
+        }
+        return userId != null && userId.equals(other.getUserId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(userId);
+    }
+
     // ... (resto de los métodos sin cambios)
     @PrePersist
     protected void onCreate() {
@@ -51,18 +94,46 @@ public class ShoppingCart extends RepresentationModel<ShoppingCart> { // Extiend
         this.updatedAt = LocalDateTime.now();
     }
 
+    // Ítems en orden de inserción, como lista (así se serializan). Es una copia: los cambios pasan por addCartItem
+    // y removeCartItem
+    @JsonManagedReference
+    public List<CartItem> getItems() {
+        return items == null ? List.of() : List.copyOf(items.values());
+    }
+
+    // Sustituye los ítems (ej. Jackson al deserializar). Modifica la colección existente: Hibernate la sigue gestionando
+    public void setItems(List<CartItem> newItems) {
+        itemMap().clear();
+        if (newItems != null) {
+            newItems.forEach(this::addCartItem);
+        }
+    }
+
+    // Ítem del producto en el carrito, o null si no está
+    public CartItem findItem(Long productId) {
+        return itemMap().get(productId);
+    }
+
+    // Si el producto ya tenía otro ítem, lo sustituye (orphanRemoval borra el anterior)
     public void addCartItem(CartItem cartItem) {
-        if (items == null) {
-            items = new ArrayList<>();
+        CartItem replaced = itemMap().put(cartItem.getProductId(), cartItem);
+        if (replaced != null && replaced != cartItem) {
+            replaced.setCart(null);
         }
-        items.add(cartItem);
         cartItem.setCart(this);
     }
 
+    // Solo quita esa instancia: otro ítem del mismo producto no se toca
     public void removeCartItem(CartItem cartItem) {
-        if (items != null) {
-            items.remove(cartItem);
+        if (itemMap().remove(cartItem.getProductId(), cartItem)) {
             cartItem.setCart(null);
         }
     }
+
+    private Map<Long, CartItem> itemMap() {
+        if (items == null) {
+            items = new LinkedHashMap<>();
+        }
+        return items;
+    }
 }
\ No newline at end of file
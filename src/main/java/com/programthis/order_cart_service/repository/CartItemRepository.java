@@ -2,12 +2,70 @@ package com.programthis.order_cart_service.repository;
 
 import com.programthis.order_cart_service.model.CartItem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface CartItemRepository extends JpaRepository<CartItem, Long> {
     // Método personalizado para encontrar todos los ítems de un carrito específico
     List<CartItem> findByCartId(Long cartId);
-}
\ No newline at end of file
+
+    // Añade un producto al carrito en una sola sentencia, sin leer los ítems: si ya está (restricción única
+    // uk_cart_items_cart_product) suma la cantidad y conserva el precio de la primera adición.
+    // Es atómico frente a altas concurrentes del mismo producto, e incrementa la versión del ítem si ya existía. Vacía el contexto de persistencia al terminar
+    // porque los ítems ya cargados quedan desactualizados
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "INSERT INTO cart_items (cart_id, product_id, quantity, price_at_addition, created_at, updated_at, version) "
+            + "VALUES (:cartId, :productId, :quantity, :priceAtAddition, :now, :now, 0) "
+            + "ON DUPLICATE KEY UPDATE quantity = quantity + :quantity, updated_at = :now, version = version + 1", nativeQuery = true)
+    int upsertQuantity(@Param("cartId") Long cartId,
+                       @Param("productId") Long productId,
+                       @Param("quantity") Integer quantity,
+                       @Param("priceAtAddition") BigDecimal priceAtAddition,
+                       @Param("now") LocalDateTime now);
+
+    // Vacía un carrito con una sola sentencia DELETE, sin cargar sus ítems. Como el upsert, vacía el contexto de
+    // persistencia al terminar para que ningún ítem borrado siga gestionado
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM CartItem i WHERE i.cart.id = :cartId")
+    int deleteByCartId(@Param("cartId") Long cartId);
+
+    // Como upsertQuantity, pero fija la cantidad en lugar de sumarla. Lo usa la escritura diferida de carritos
+    // (WriteBehindCartStore), que escribe el estado final de cada ítem
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "INSERT INTO cart_items (cart_id, product_id, quantity, price_at_addition, created_at, updated_at, version) "
+            + "VALUES (:cartId, :productId, :quantity, :priceAtAddition, :now, :now, 0) "
+            + "ON DUPLICATE KEY UPDATE quantity = :quantity, updated_at = :now, version = version + 1", nativeQuery = true)
+    int saveQuantity(@Param("cartId") Long cartId,
+                     @Param("productId") Long productId,
+                     @Param("quantity") Integer quantity,
+                     @Param("priceAtAddition") BigDecimal priceAtAddition,
+                     @Param("now") LocalDateTime now);
+
+    // Borra de un carrito los ítems de varios productos con una sola sentencia
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM CartItem i WHERE i.cart.id = :cartId AND i.productId IN :productIds")
+    int deleteByCartIdAndProductIdIn(@Param("cartId") Long cartId, @Param("productIds") Collection<Long> productIds);
+
+    // Resta una cantidad a un ítem del carrito sin leerlo. El checkout quita así del carrito solo lo que entra en el
+    // pedido: lo añadido o cambiado después de leer el carrito se conserva. Los ítems que quedan a 0 o menos los
+    // borra deleteEmptyItems
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE CartItem i SET i.quantity = i.quantity - :quantity, i.updatedAt = :now, i.version = i.version + 1 "
+            + "WHERE i.cart.id = :cartId AND i.productId = :productId")
+    int subtractQuantity(@Param("cartId") Long cartId,
+                         @Param("productId") Long productId,
+                         @Param("quantity") Integer quantity,
+                         @Param("now") LocalDateTime now);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM CartItem i WHERE i.cart.id = :cartId AND i.quantity <= 0")
+    int deleteEmptyItems(@Param("cartId") Long cartId);
+}
@@ -0,0 +1,47 @@
+package com.programthis.order_cart_service.repository;
+
+import com.programthis.order_cart_service.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, Long> {
+    Optional<IdempotencyRecord> findByUserIdAndIdempotencyKey(Long userId, String idempotencyKey);
+
+    // Toma el relevo de una petición IN_PROGRESS abandonada (o de una clave ya expirada). La condición sobre
+    // locked_until hace que, si varias peticiones compiten, solo una obtenga 1 fila actualizada. El nuevo owner_token
+    // impide que la petición abandonada, si aún sigue viva, complete o libere después la clave
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.status = 'IN_PROGRESS', r.orderId = NULL, r.requestFingerprint = :fingerprint, "
+            + "r.ownerToken = :ownerToken, r.lockedUntil = :lockedUntil, r.expiresAt = :expiresAt "
+            + "WHERE r.id = :id AND ((r.status = 'IN_PROGRESS' AND r.lockedUntil < :now) OR r.expiresAt < :now)")
+    int takeOver(@Param("id") Long id, @Param("fingerprint") String fingerprint, @Param("ownerToken") String ownerToken,
+                 @Param("lockedUntil") LocalDateTime lockedUntil, @Param("expiresAt") LocalDateTime expiresAt,
+                 @Param("now") LocalDateTime now);
+
+    // Asocia el pedido a la clave si sigue reservada por ownerToken. Devuelve 0 si otra petición la retomó
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.status = 'COMPLETED', r.orderId = :orderId, r.expiresAt = :expiresAt "
+            + "WHERE r.userId = :userId AND r.idempotencyKey = :idempotencyKey AND r.ownerToken = :ownerToken "
+            + "AND r.status = 'IN_PROGRESS'")
+    int complete(@Param("userId") Long userId, @Param("idempotencyKey") String idempotencyKey,
+                 @Param("ownerToken") String ownerToken, @Param("orderId") Long orderId,
+                 @Param("expiresAt") LocalDateTime expiresAt);
+
+    // Borra la clave si sigue IN_PROGRESS y reservada por ownerToken. Devuelve 0 si otra petición la retomó
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.userId = :userId AND r.idempotencyKey = :idempotencyKey "
+            + "AND r.ownerToken = :ownerToken AND r.status = 'IN_PROGRESS'")
+    int release(@Param("userId") Long userId, @Param("idempotencyKey") String idempotencyKey,
+                @Param("ownerToken") String ownerToken);
+
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -0,0 +1,62 @@
+package com.programthis.order_cart_service.repository;
+
+import com.programthis.order_cart_service.model.NotificationOutbox;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface NotificationOutboxRepository extends JpaRepository<NotificationOutbox, Long> {
+    // Encola una notificación si el pedido no tiene ya una de ese tipo (restricción única (order_id, type)): devuelve 1
+    // si la insertó y 0 si ya existía. Una sola sentencia, así que dos altas concurrentes no chocan con la restricción
+    // ni abortan la transacción del pedido. IGNORE también rebajaría otros errores a avisos: los valores se validan antes
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO notification_outbox (order_id, type, recipient_email, subject, message_body, status, "
+            + "attempts, next_attempt_at, created_at, updated_at) "
+            + "VALUES (:orderId, :type, :recipientEmail, :subject, :messageBody, 'PENDING', 0, :now, :now, :now)", nativeQuery = true)
+    int insertIfAbsent(@Param("orderId") Long orderId,
+                       @Param("type") String type,
+                       @Param("recipientEmail") String recipientEmail,
+                       @Param("subject") String subject,
+                       @Param("messageBody") String messageBody,
+                       @Param("now") LocalDateTime now);
+
+    // Notificaciones listas para enviar (pendientes o con la reserva de otro envío caducada).
+    // SKIP LOCKED (lock.timeout = -2) permite que varias instancias drenen la tabla sin bloquearse entre sí.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT n FROM NotificationOutbox n WHERE n.status IN ('PENDING', 'SENDING') AND n.nextAttemptAt <= :now ORDER BY n.id")
+    List<NotificationOutbox> findDueForDispatch(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // Renueva la reserva de una notificación justo antes de enviarla, solo si sigue siendo de este envío (mismo número
+    // de intento). Si la reserva caducó mientras se enviaba el resto del lote y otra instancia la tomó, el número de
+    // intento ya cambió: devuelve 0 y la notificación no se envía dos veces
+    @Modifying
+    @Query("UPDATE NotificationOutbox n SET n.nextAttemptAt = :leaseUntil "
+            + "WHERE n.id = :id AND n.status = 'SENDING' AND n.attempts = :attempts")
+    int renewLease(@Param("id") Long id, @Param("attempts") Integer attempts, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    // Registra el resultado de un envío con la misma condición que renewLease: si entretanto otra instancia reservó la
+    // notificación, devuelve 0 y no se sobrescribe su estado
+    @Modifying
+    @Query("UPDATE NotificationOutbox n SET n.status = :status, n.nextAttemptAt = :nextAttemptAt, n.lastError = :lastError, "
+            + "n.sentAt = :sentAt, n.updatedAt = :now "
+            + "WHERE n.id = :id AND n.status = 'SENDING' AND n.attempts = :attempts")
+    int completeAttempt(@Param("id") Long id,
+                        @Param("attempts") Integer attempts,
+                        @Param("status") String status,
+                        @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                        @Param("lastError") String lastError,
+                        @Param("sentAt") LocalDateTime sentAt,
+                        @Param("now") LocalDateTime now);
+}
@@ -1,13 +1,101 @@
 package com.programthis.order_cart_service.repository;
 
+import com.programthis.order_cart_service.dto.OrderStatusDto;
+import com.programthis.order_cart_service.dto.OrderSummaryDto;
 import com.programthis.order_cart_service.model.Order;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
+    // Los pedidos se devuelven siempre con sus ítems (se serializan en la respuesta): se cargan en la misma
+    // consulta con un LEFT JOIN en lugar de una consulta adicional por pedido
+    @Override
+    @EntityGraph(attributePaths = "items")
+    Optional<Order> findById(Long id);
+
     // Método personalizado para encontrar todos los pedidos de un usuario específico
+    @EntityGraph(attributePaths = "items")
     List<Order> findByUserIdOrderByOrderDateDesc(Long userId);
-}
\ No newline at end of file
+
+    // Historial paginado por keyset sobre (order_date DESC, id ASC), el mismo orden que el índice
+    // idx_orders_user_date_id: cada página es un recorrido del índice a partir del cursor, sin OFFSET.
+    // Solo se leen los IDs; los pedidos con sus ítems se cargan después con findByIdIn (un LIMIT junto a
+    // un JOIN de la colección obligaría a Hibernate a paginar en memoria)
+    @Query("SELECT o.id FROM Order o WHERE o.userId = :userId ORDER BY o.orderDate DESC, o.id ASC")
+    List<Long> findHistoryIds(@Param("userId") Long userId, Pageable page);
+
+    @Query("SELECT o.id FROM Order o WHERE o.userId = :userId "
+            + "AND (o.orderDate < :orderDate OR (o.orderDate = :orderDate AND o.id > :orderId)) "
+            + "ORDER BY o.orderDate DESC, o.id ASC")
+    List<Long> findHistoryIdsAfter(@Param("userId") Long userId,
+                                   @Param("orderDate") LocalDateTime orderDate,
+                                   @Param("orderId") Long orderId,
+                                   Pageable page);
+
+    @EntityGraph(attributePaths = "items")
+    List<Order> findByIdInOrderByOrderDateDescIdAsc(Collection<Long> ids);
+
+    // Resúmenes para listados, con el mismo orden y cursor que el historial. La expresión constructora hace que
+    // Hibernate devuelva directamente los DTO: no se instancian pedidos ni ítems. Los ítems se cuentan con una
+    // subconsulta correlacionada (índice de order_items.order_id) en lugar de un JOIN con GROUP BY, que obligaría a
+    // agrupar todos los pedidos del usuario antes de aplicar el LIMIT en vez de recorrer idx_orders_user_date_id
+    @Query("SELECT new com.programthis.order_cart_service.dto.OrderSummaryDto(o.id, o.orderDate, o.status, o.totalAmount, "
+            + "(SELECT COUNT(oi) FROM OrderItem oi WHERE oi.order = o)) "
+            + "FROM Order o WHERE o.userId = :userId "
+            + "ORDER BY o.orderDate DESC, o.id ASC")
+    List<OrderSummaryDto> findSummaries(@Param("userId") Long userId, Pageable page);
+
+    @Query("SELECT new com.programthis.order_cart_service.dto.OrderSummaryDto(o.id, o.orderDate, o.status, o.totalAmount, "
+            + "(SELECT COUNT(oi) FROM OrderItem oi WHERE oi.order = o)) "
+            + "FROM Order o WHERE o.userId = :userId "
+            + "AND (o.orderDate < :orderDate OR (o.orderDate = :orderDate AND o.id > :orderId)) "
+            + "ORDER BY o.orderDate DESC, o.id ASC")
+    List<OrderSummaryDto> findSummariesAfter(@Param("userId") Long userId,
+                                             @Param("orderDate") LocalDateTime orderDate,
+                                             @Param("orderId") Long orderId,
+                                             Pageable page);
+
+    // Estado de los pedidos indicados que ya salieron de PENDING (por clave primaria), sin cargar los pedidos
+    @Query("SELECT new com.programthis.order_cart_service.dto.OrderStatusDto(o.id, o.status, o.transactionId) "
+            + "FROM Order o WHERE o.id IN :orderIds AND o.status <> 'PENDING'")
+    List<OrderStatusDto> findFinishedStatuses(@Param("orderIds") Collection<Long> orderIds);
+
+    // Pedidos PENDING sin cambios desde antes de staleBefore (ver PendingOrderRecoveryService), con el índice
+    // idx_orders_status_updated_at
+    @Query("SELECT o.id FROM Order o WHERE o.status = 'PENDING' AND o.updatedAt < :staleBefore ORDER BY o.updatedAt")
+    List<Long> findStalePendingIds(@Param("staleBefore") LocalDateTime staleBefore, Pageable page);
+
+    // Reserva un pedido PENDING abandonado renovando su updated_at e incrementando su versión: el pago asíncrono que
+    // aún lo tenga en curso ya no puede cerrarlo. Devuelve 0 si ya cambió o lo reservó otra instancia
+    @Modifying
+    @Query("UPDATE Order o SET o.updatedAt = :now, o.version = o.version + 1 "
+            + "WHERE o.id = :orderId AND o.status = 'PENDING' AND o.updatedAt < :staleBefore")
+    int claimStalePending(@Param("orderId") Long orderId, @Param("staleBefore") LocalDateTime staleBefore,
+                          @Param("now") LocalDateTime now);
+
+    // Reserva un pedido PENDING para cobrarlo (checkout asíncrono, antes de llamar al Payment Service). Devuelve 0 si
+    // cambió desde la versión indicada: mientras el pago esperaba en la cola, la recuperación lo tomó o lo cerró
+    @Modifying
+    @Query("UPDATE Order o SET o.updatedAt = :now, o.version = o.version + 1 "
+            + "WHERE o.id = :orderId AND o.version = :version AND o.status = 'PENDING'")
+    int claimPending(@Param("orderId") Long orderId, @Param("version") Long version, @Param("now") LocalDateTime now);
+
+    // Cierra un pedido PENDING (resultado del pago o compensación) solo si sigue en la versión indicada. Devuelve 0 si
+    // otro proceso lo cerró o lo reservó antes: el checkout y la recuperación nunca aplican los dos su resultado
+    @Modifying
+    @Query("UPDATE Order o SET o.status = :status, o.transactionId = :transactionId, o.updatedAt = :now, "
+            + "o.version = o.version + 1 WHERE o.id = :orderId AND o.version = :version AND o.status = 'PENDING'")
+    int finishPending(@Param("orderId") Long orderId, @Param("version") Long version, @Param("status") String status,
+                      @Param("transactionId") String transactionId, @Param("now") LocalDateTime now);
+}
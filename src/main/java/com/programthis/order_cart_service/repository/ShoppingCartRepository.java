@@ -1,13 +1,41 @@
 package com.programthis.order_cart_service.repository;
 
 import com.programthis.order_cart_service.model.ShoppingCart;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 @Repository
 public interface ShoppingCartRepository extends JpaRepository<ShoppingCart, Long> {
-    // Método personalizado para encontrar un carrito por el ID del usuario
+    // Método personalizado para encontrar un carrito por el ID del usuario.
+    // Todos los usos recorren o serializan los ítems, así que se cargan en la misma consulta
+    @EntityGraph(attributePaths = "items")
     Optional<ShoppingCart> findByUserId(Long userId);
-}
\ No newline at end of file
+
+    // Solo el ID del carrito, para escribir ítems sin cargar el carrito ni sus ítems
+    @Query("SELECT c.id FROM ShoppingCart c WHERE c.userId = :userId")
+    Optional<Long> findIdByUserId(@Param("userId") Long userId);
+
+    // Solo la versión del carrito, para comprobar si el de la caché de lectura sigue vigente (CartViewCache)
+    @Query("SELECT c.version FROM ShoppingCart c WHERE c.userId = :userId")
+    Optional<Long> findVersionByUserId(@Param("userId") Long userId);
+
+    // Incrementa la versión del carrito en las modificaciones que no lo cargan (upsert y borrado masivo de ítems),
+    // para que cualquier cambio en el carrito haga fallar a las modificaciones concurrentes que sí lo cargaron
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ShoppingCart c SET c.version = c.version + 1, c.updatedAt = :now WHERE c.id = :cartId")
+    int touch(@Param("cartId") Long cartId, @Param("now") LocalDateTime now);
+
+    // Como touch, pero deja el carrito en la versión indicada (la del carrito en memoria del modo write-behind),
+    // o en la siguiente si la de MySQL ya la alcanzó: la versión nunca retrocede
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ShoppingCart c SET c.version = CASE WHEN c.version < :version THEN :version ELSE c.version + 1 END, "
+            + "c.updatedAt = :now WHERE c.id = :cartId")
+    int touchToVersion(@Param("cartId") Long cartId, @Param("version") Long version, @Param("now") LocalDateTime now);
+}
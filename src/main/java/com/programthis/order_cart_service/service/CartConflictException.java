@@ -0,0 +1,12 @@
+package com.programthis.order_cart_service.service;
+
+/**
+ * Se lanza cuando una modificación del carrito sigue chocando con otras concurrentes después de agotar los
+ * reintentos ({@code cart.concurrency.max-attempts}), o cuando no se obtiene a tiempo el cerrojo local del usuario.
+ */
+public class CartConflictException extends RuntimeException {
+
+    public CartConflictException(Long userId, Throwable cause) {
+        super("El carrito del usuario " + userId + " se modificó desde otra petición y no se pudo aplicar el cambio.", cause);
+    }
+}
@@ -0,0 +1,88 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.dto.CartItemOperationDto;
+import com.programthis.order_cart_service.dto.ProductDto;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Reglas de las operaciones por lotes del carrito (PATCH /api/carts/{userId}/items), comunes a los dos CartStore.
+// Son las mismas que las de las operaciones individuales, con los mismos mensajes de error
+final class CartItemOperations {
+
+    // Operaciones como máximo en una petición
+    static final int MAX_OPERATIONS = 100;
+
+    private CartItemOperations() {
+    }
+
+    // Comprueba la forma de las operaciones antes de consultar el catálogo o el carrito
+    static void validate(List<CartItemOperationDto> operations) {
+        if (operations == null || operations.isEmpty()) {
+            throw new RuntimeException("No se indicó ninguna operación sobre el carrito.");
+        }
+        if (operations.size() > MAX_OPERATIONS) {
+            throw new RuntimeException("Se admiten como máximo " + MAX_OPERATIONS + " operaciones por petición.");
+        }
+        for (CartItemOperationDto operation : operations) {
+            if (operation == null || operation.getOp() == null || operation.getProductId() == null) {
+                throw new RuntimeException("Cada operación debe indicar op y productId.");
+            }
+            if (operation.getOp() == CartItemOperationDto.Type.ADD
+                    && (operation.getQuantity() == null || operation.getQuantity() <= 0)) {
+                throw new RuntimeException("La cantidad a añadir del producto con ID " + operation.getProductId() + " debe ser mayor que 0.");
+            }
+            if (operation.getOp() == CartItemOperationDto.Type.UPDATE && operation.getQuantity() == null) {
+                throw new RuntimeException("Falta la nueva cantidad del producto con ID " + operation.getProductId() + ".");
+            }
+        }
+    }
+
+    // Productos que hay que buscar en el catálogo: los de las operaciones ADD, sin repetir
+    static List<Long> addedProductIds(List<CartItemOperationDto> operations) {
+        return operations.stream()
+                .filter(operation -> operation.getOp() == CartItemOperationDto.Type.ADD)
+                .map(CartItemOperationDto::getProductId)
+                .distinct()
+                .toList();
+    }
+
+    // Aplica las operaciones en orden a las cantidades del carrito (productId -> cantidad) y devuelve las cantidades
+    // finales, sin modificar las recibidas. Si una operación falla se lanza su error y no se aplica ninguna
+    static Map<Long, Integer> apply(Map<Long, Integer> quantities, List<CartItemOperationDto> operations) {
+        Map<Long, Integer> result = new LinkedHashMap<>(quantities);
+        for (CartItemOperationDto operation : operations) {
+            Long productId = operation.getProductId();
+            switch (operation.getOp()) {
+                case ADD -> result.merge(productId, operation.getQuantity(), Integer::sum);
+                case UPDATE -> {
+                    if (!result.containsKey(productId)) {
+                        throw new RuntimeException("Producto con ID " + productId + " no encontrado en el carrito para actualizar.");
+                    }
+                    if (operation.getQuantity() <= 0) {
+                        result.remove(productId);
+                    } else {
+                        result.put(productId, operation.getQuantity());
+                    }
+                }
+                case REMOVE -> {
+                    if (result.remove(productId) == null) {
+                        throw new RuntimeException("Producto con ID " + productId + " no encontrado en el carrito para eliminar.");
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // Precio de un producto añadido por primera vez, del resultado de la búsqueda masiva en el catálogo
+    static BigDecimal catalogPrice(Map<Long, ProductDto> products, Long productId) {
+        ProductDto product = products.get(productId);
+        if (product == null) {
+            throw new RuntimeException("Producto con ID " + productId + " no encontrado en el catálogo. No se puede añadir al carrito.");
+        }
+        return product.getPrice();
+    }
+}
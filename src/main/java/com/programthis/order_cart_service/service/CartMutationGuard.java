@@ -0,0 +1,143 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.config.CartConcurrencyProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Ejecuta cada modificación del carrito en su propia transacción y la repite si choca con otra concurrente:
+// conflicto de versión (@Version en ShoppingCart y CartItem) o violación de una clave única del carrito por dos altas
+// simultáneas (el carrito del usuario, user_id, o el mismo producto en el carrito, cart_id + product_id). Hibernate
+// notifica esas violaciones como DataIntegrityViolationException, igual que cualquier otra restricción: solo se
+// reintentan las de esas dos claves, el resto (ej. claves foráneas) se propaga sin repetir.
+// Cada intento vuelve a leer el carrito, así que ningún cambio pisa a otro sin bloquear filas en la base de datos.
+// Opcionalmente serializa en memoria las modificaciones de un mismo usuario (cart.concurrency.local-locks).
+// Métricas: cart.mutation.conflicts (outcome=retried|exhausted), cart.mutation.lock.contended y cart.mutation.lock.wait
+@Component
+public class CartMutationGuard {
+
+    // Claves únicas del carrito (migraciones V11 y V4), por el nombre que Hibernate extrae del error. En los lotes JDBC
+    // no lo extrae: entonces basta con que sea una clave duplicada (ER_DUP_ENTRY en MySQL, SQLState 23505 en H2), porque
+    // las únicas claves únicas que toca una modificación del carrito son estas dos; los IDs los asigna la base de datos
+    private static final List<String> CART_UNIQUE_KEYS = List.of("uk_shopping_carts_user", "uk_cart_items_cart_product");
+    private static final int MYSQL_DUPLICATE_ENTRY = 1062;
+    private static final String SQL_STATE_DUPLICATE_KEY = "23505";
+
+    private final TransactionTemplate transactionTemplate;
+    private final CartConcurrencyProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ReentrantLock[] locks;
+
+    @Autowired
+    public CartMutationGuard(PlatformTransactionManager transactionManager,
+                             CartConcurrencyProperties properties,
+                             MeterRegistry meterRegistry) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.locks = new ReentrantLock[Math.max(1, properties.getLockStripes())];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public <T> T mutate(Long userId, Supplier<T> mutation) {
+        // Dentro de una transacción ya abierta (ej. la compensación del checkout) no se puede reintentar:
+        // un conflicto la marca para rollback, así que se ejecuta tal cual y decide quien la abrió
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return mutation.get();
+        }
+        if (!properties.isLocalLocks()) {
+            return executeWithRetry(userId, mutation);
+        }
+        ReentrantLock lock = locks[Math.floorMod(userId.hashCode(), locks.length)];
+        acquire(lock, userId);
+        try {
+            return executeWithRetry(userId, mutation);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private <T> T executeWithRetry(Long userId, Supplier<T> mutation) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> mutation.get());
+            } catch (OptimisticLockingFailureException | DataIntegrityViolationException e) {
+                if (e instanceof DataIntegrityViolationException violation && !violatesCartUniqueKey(violation)) {
+                    throw violation;
+                }
+                if (attempt >= properties.getMaxAttempts()) {
+                    meterRegistry.counter("cart.mutation.conflicts", "outcome", "exhausted").increment();
+                    throw new CartConflictException(userId, e);
+                }
+                meterRegistry.counter("cart.mutation.conflicts", "outcome", "retried").increment();
+                System.out.println("Conflicto concurrente en el carrito del usuario " + userId + " (intento " + attempt + "), reintentando.");
+                backOff(userId, attempt, e);
+            }
+        }
+    }
+
+    private static boolean violatesCartUniqueKey(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation && violation.getConstraintName() != null) {
+                return CART_UNIQUE_KEYS.contains(unqualified(violation.getConstraintName()));
+            }
+            if (cause instanceof SQLException sqlException) {
+                return isDuplicateKey(sqlException);
+            }
+        }
+        return false;
+    }
+
+    // MySQL antepone la tabla al nombre de la clave (ej. "shopping_carts.uk_shopping_carts_user")
+    private static String unqualified(String constraintName) {
+        return constraintName.substring(constraintName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isDuplicateKey(SQLException e) {
+        return e.getErrorCode() == MYSQL_DUPLICATE_ENTRY || SQL_STATE_DUPLICATE_KEY.equals(e.getSQLState());
+    }
+
+    private void backOff(Long userId, int attempt, RuntimeException conflict) {
+        try {
+            Thread.sleep(properties.getRetryBackoff().toMillis() * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CartConflictException(userId, conflict);
+        }
+    }
+
+    private void acquire(ReentrantLock lock, Long userId) {
+        if (lock.tryLock()) {
+            return;
+        }
+        meterRegistry.counter("cart.mutation.lock.contended").increment();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        boolean acquired;
+        try {
+            acquired = lock.tryLock(properties.getLockTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        sample.stop(meterRegistry.timer("cart.mutation.lock.wait"));
+        if (!acquired) {
+            throw new CartConflictException(userId, null);
+        }
+    }
+}
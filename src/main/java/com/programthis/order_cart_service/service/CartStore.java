@@ -0,0 +1,53 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.dto.CartItemOperationDto;
+import com.programthis.order_cart_service.dto.ProductDto;
+import com.programthis.order_cart_service.model.CartItem;
+import com.programthis.order_cart_service.model.ShoppingCart;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Dónde viven los carritos mientras se modifican. Se elige con {@code cart.store.mode}:
+ * <ul>
+ *     <li>{@code jpa} (por defecto): {@link JpaCartStore}, cada operación escribe en MySQL.</li>
+ *     <li>{@code write-behind}: {@link WriteBehindCartStore}, los carritos activos se modifican en memoria y se
+ *     escriben en MySQL por lotes cada cierto tiempo.</li>
+ * </ul>
+ * Los errores de negocio (producto o carrito no encontrado) se lanzan igual en ambas implementaciones.
+ */
+public interface CartStore {
+
+    ShoppingCart getOrCreateShoppingCart(Long userId);
+
+    // Solo lectura: no crea el carrito si el usuario no tiene uno
+    Optional<ShoppingCart> findShoppingCart(Long userId);
+
+    // Versión actual del carrito, sin cargarlo (vacío si el usuario no tiene carrito). Valida la caché de lectura
+    Optional<Long> findVersion(Long userId);
+
+    // Suma la cantidad si el producto ya está; conserva el precio de la primera adición
+    ShoppingCart addProductToCart(Long userId, ProductDto productDto, Integer quantity);
+
+    // Una cantidad de 0 o menos elimina el producto
+    ShoppingCart updateProductQuantityInCart(Long userId, Long productId, Integer newQuantity);
+
+    ShoppingCart removeProductFromCart(Long userId, Long productId);
+
+    // Aplica en orden varias operaciones, todas o ninguna. products tiene los productos de las operaciones ADD
+    ShoppingCart applyItemOperations(Long userId, List<CartItemOperationDto> operations, Map<Long, ProductDto> products);
+
+    // Compensación del checkout: devuelve los ítems con su precio original, dentro de la transacción que la llama
+    ShoppingCart restoreCartItems(Long userId, List<CartItem> items);
+
+    ShoppingCart clearCart(Long userId);
+
+    // Vaciado del checkout: resta del carrito las cantidades pedidas (las de la instantánea del checkout) dentro de la
+    // transacción que lo llama. Lo que el usuario añadió o cambió después de la instantánea se conserva
+    void removeOrderedItems(Long userId, List<CartItem> orderedItems);
+
+    // Escribe en MySQL, antes de volver, los cambios pendientes del carrito del usuario
+    void flush(Long userId);
+}
@@ -0,0 +1,173 @@
+package com.programthis.order_cart_service.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.programthis.order_cart_service.config.CartViewCacheProperties;
+import com.programthis.order_cart_service.model.CartItem;
+import com.programthis.order_cart_service.model.ShoppingCart;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Caché por usuario del carrito que devuelve {@code GET /api/carts/{userId}}, con su ETag.
+ * <p>
+ * Cada acierto se valida con la versión actual del carrito en el almacén ({@link CartStore#findVersion}, una consulta
+ * que no carga ítems): un carrito que cambió en otra instancia, o por una vía que no pasa por esta caché, no se sirve
+ * obsoleto. Lo que se ahorra es cargar los ítems y copiarlos.
+ * <p>
+ * La ETag se deriva de la versión del carrito ({@code @Version}), que aumenta con cada cambio, así que una entrada
+ * solo se sustituye por otra de versión igual o mayor: una lectura lenta que termina después de una modificación no
+ * puede volver a dejar en la caché el carrito anterior. Al invalidar se conserva la versión conocida como mínimo
+ * para lo que se guarde después, por el mismo motivo.
+ * <p>
+ * Se guarda una copia inmutable del carrito, no la entidad: cada lectura recibe su propio {@link ShoppingCart}
+ * desacoplado, así que nadie modifica el carrito que ven los demás hilos.
+ * Las estadísticas se publican en Micrometer bajo el nombre de caché "carts".
+ */
+@Component
+public class CartViewCache {
+
+    // cart == null: entrada invalidada, solo se aceptan carritos con una versión mayor que version
+    private record CachedView(CartSnapshot cart, long version) {
+    }
+
+    private record CartSnapshot(Long id, Long userId, Long version, LocalDateTime createdAt, LocalDateTime updatedAt,
+                                List<ItemSnapshot> items) {
+
+        static CartSnapshot of(ShoppingCart cart) {
+            return new CartSnapshot(cart.getId(), cart.getUserId(), cart.getVersion(), cart.getCreatedAt(),
+                    cart.getUpdatedAt(), cart.getItems().stream().map(ItemSnapshot::of).toList());
+        }
+
+        ShoppingCart toShoppingCart() {
+            ShoppingCart cart = new ShoppingCart();
+            cart.setId(id);
+            cart.setUserId(userId);
+            cart.setVersion(version);
+            cart.setCreatedAt(createdAt);
+            cart.setUpdatedAt(updatedAt);
+            items.forEach(item -> cart.addCartItem(item.toCartItem()));
+            return cart;
+        }
+    }
+
+    private record ItemSnapshot(Long id, Long productId, Integer quantity, BigDecimal priceAtAddition,
+                                LocalDateTime createdAt, LocalDateTime updatedAt, Long version) {
+
+        static ItemSnapshot of(CartItem item) {
+            return new ItemSnapshot(item.getId(), item.getProductId(), item.getQuantity(), item.getPriceAtAddition(),
+                    item.getCreatedAt(), item.getUpdatedAt(), item.getVersion());
+        }
+
+        CartItem toCartItem() {
+            return new CartItem(id, null, productId, quantity, priceAtAddition, createdAt, updatedAt, version);
+        }
+    }
+
+    private final Cache<Long, CachedView> views;
+
+    @Autowired
+    public CartViewCache(CartViewCacheProperties properties, MeterRegistry meterRegistry) {
+        if (properties.isEnabled()) {
+            this.views = Caffeine.newBuilder()
+                    .maximumSize(properties.getMaximumSize())
+                    .expireAfterWrite(properties.getExpireAfterWrite())
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, views, "carts");
+        } else {
+            this.views = null;
+        }
+    }
+
+    // ETag fuerte del carrito ("<id del carrito>-<versión>", "new-0" para el carrito vacío de un usuario sin
+    // carrito), o null si no tiene versión
+    public static String etagOf(ShoppingCart cart) {
+        if (cart.getVersion() == null) {
+            return null;
+        }
+        return "\"" + (cart.getId() != null ? cart.getId() : "new") + "-" + cart.getVersion() + "\"";
+    }
+
+    // Indica si la cabecera If-None-Match de la petición incluye la ETag (o es "*"). Las ETags débiles (W/)
+    // se comparan por su valor, como indica la comparación débil de If-None-Match
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Copia del carrito en caché si su versión sigue siendo la actual (currentVersion solo se consulta si hay entrada).
+    // Si no lo es, se descarta la entrada y la siguiente lectura del almacén la sustituye
+    public Optional<ShoppingCart> get(Long userId, Supplier<Optional<Long>> currentVersion) {
+        if (views == null) {
+            return Optional.empty();
+        }
+        CachedView cached = views.getIfPresent(userId);
+        if (cached == null || cached.cart() == null) {
+            return Optional.empty();
+        }
+        if (currentVersion.get().filter(version -> version == cached.version()).isEmpty()) {
+            views.asMap().remove(userId, cached);
+            return Optional.empty();
+        }
+        return Optional.of(cached.cart().toShoppingCart());
+    }
+
+    // Guarda una copia del carrito si no hay en la caché uno más reciente, y devuelve el carrito. Los carritos sin guardar
+    // (ShoppingCart.emptyFor) no se guardan: su versión 0 no es comparable con la del carrito que se cree después
+    public ShoppingCart update(ShoppingCart cart) {
+        if (views == null || cart == null || cart.getId() == null || cart.getUserId() == null || cart.getVersion() == null) {
+            return cart;
+        }
+        CachedView fresh = new CachedView(CartSnapshot.of(cart), cart.getVersion());
+        views.asMap().merge(cart.getUserId(), fresh, (cached, candidate) -> isNewer(candidate, cached) ? candidate : cached);
+        return cart;
+    }
+
+    private static boolean isNewer(CachedView candidate, CachedView cached) {
+        return cached.cart() == null ? candidate.version() > cached.version() : candidate.version() >= cached.version();
+    }
+
+    // Invalida el carrito del usuario. Dentro de una transacción se hace al confirmarla: si se deshace,
+    // el carrito de la caché sigue siendo el vigente
+    public void evictAfterCommit(Long userId) {
+        if (views == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(userId);
+                }
+            });
+        } else {
+            evict(userId);
+        }
+    }
+
+    private void evict(Long userId) {
+        views.asMap().computeIfPresent(userId, (id, cached) -> new CachedView(null, cached.version()));
+    }
+}
@@ -0,0 +1,22 @@
+package com.programthis.order_cart_service.service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Se lanza cuando las consultas remotas del checkout (usuario, catálogo) no terminan dentro del plazo
+ * configurado en {@code checkout.remote-deadline}. Indica qué dependencias seguían pendientes al vencer el plazo.
+ */
+public class CheckoutDeadlineExceededException extends RuntimeException {
+
+    private final List<String> slowestDependencies;
+
+    public CheckoutDeadlineExceededException(List<String> slowestDependencies, Duration deadline) {
+        super("El checkout superó el plazo de " + deadline.toMillis() + " ms esperando a: " + String.join(", ", slowestDependencies));
+        this.slowestDependencies = List.copyOf(slowestDependencies);
+    }
+
+    public List<String> getSlowestDependencies() {
+        return slowestDependencies;
+    }
+}
@@ -0,0 +1,23 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.model.Order;
+
+/**
+ * Se lanza cuando el checkout falla después de guardar el pedido, durante el pago o al registrar su resultado.
+ * A diferencia de los errores anteriores a la fase 2, el pedido ya existe (normalmente en {@code PAYMENT_FAILED},
+ * con el carrito restaurado): las repeticiones con la misma {@code Idempotency-Key} deben devolverlo en lugar de
+ * crear otro.
+ */
+public class CheckoutPaymentFailedException extends RuntimeException {
+
+    private final Order order;
+
+    public CheckoutPaymentFailedException(Order order, Throwable cause) {
+        super(cause.getMessage(), cause);
+        this.order = order;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+}
@@ -0,0 +1,161 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.config.IdempotencyProperties;
+import com.programthis.order_cart_service.model.IdempotencyRecord;
+import com.programthis.order_cart_service.repository.IdempotencyRecordRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+
+// Almacén de claves de idempotencia del checkout. Cada clave pasa por IN_PROGRESS (bloquea duplicados concurrentes)
+// y COMPLETED (las repeticiones devuelven el pedido original) hasta que expira.
+// Cada operación usa su propia transacción corta, independiente de la del checkout.
+// La petición que reserva o retoma una clave recibe un token (Claim.ownerToken): complete y release solo se aplican con
+// él, así que una petición que se daba por abandonada no pisa el resultado de la que la retomó.
+// La huella cubre el cuerpo de la petición, no el contenido del carrito: el propio checkout quita del carrito los
+// ítems pedidos, así que con el carrito en la huella toda repetición de una petición completada recibiría 422 en
+// lugar del pedido original. La clave identifica el intento de checkout, y el pedido es el carrito que encuentre la
+// petición que tiene la clave.
+@Service
+public class IdempotencyService {
+
+    static final String STATUS_IN_PROGRESS = "IN_PROGRESS";
+    static final String STATUS_COMPLETED = "COMPLETED";
+
+    public enum Outcome {
+        STARTED,      // La petición es la primera con esta clave y debe ejecutarse
+        REPLAY,       // La clave ya se completó: se devuelve el pedido original
+        IN_PROGRESS,  // Otra petición con la misma clave se está ejecutando
+        MISMATCH      // La clave se usó antes con datos distintos
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Claim {
+        private final Outcome outcome;
+        private final Long orderId;
+        private final String ownerToken; // Solo con STARTED: se pasa a complete o release
+    }
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final IdempotencyProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository,
+                              PlatformTransactionManager transactionManager,
+                              IdempotencyProperties properties,
+                              MeterRegistry meterRegistry) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Reserva la clave para esta petición o indica qué hacer con ella si ya existe.
+     *
+     * @param fingerprint Huella de los datos de la petición (ver {@link #fingerprint(String...)}).
+     */
+    public Claim begin(Long userId, String idempotencyKey, String fingerprint) {
+        Claim claim = tryBegin(userId, idempotencyKey, fingerprint);
+        meterRegistry.counter("checkout.idempotency", "outcome", claim.getOutcome().name().toLowerCase()).increment();
+        return claim;
+    }
+
+    private Claim tryBegin(Long userId, String idempotencyKey, String fingerprint) {
+        LocalDateTime now = LocalDateTime.now();
+        String ownerToken = UUID.randomUUID().toString();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                IdempotencyRecord record = new IdempotencyRecord();
+                record.setUserId(userId);
+                record.setIdempotencyKey(idempotencyKey);
+                record.setRequestFingerprint(fingerprint);
+                record.setStatus(STATUS_IN_PROGRESS);
+                record.setOwnerToken(ownerToken);
+                record.setLockedUntil(now.plus(properties.getInProgressTimeout()));
+                record.setExpiresAt(now.plus(properties.getKeyTtl()));
+                idempotencyRecordRepository.saveAndFlush(record);
+            });
+            return new Claim(Outcome.STARTED, null, ownerToken);
+        } catch (DataIntegrityViolationException e) {
+            // La clave ya existe: se decide a partir del registro existente
+        }
+
+        Optional<IdempotencyRecord> existingOptional = idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, idempotencyKey);
+        if (existingOptional.isEmpty()) {
+            // Se borró entre el INSERT y la consulta (expiró); el cliente puede reintentar
+            return new Claim(Outcome.IN_PROGRESS, null, null);
+        }
+        IdempotencyRecord existing = existingOptional.get();
+        boolean expired = existing.getExpiresAt().isBefore(now);
+        if (!expired && !existing.getRequestFingerprint().equals(fingerprint)) {
+            return new Claim(Outcome.MISMATCH, null, null);
+        }
+        if (!expired && STATUS_COMPLETED.equals(existing.getStatus())) {
+            return new Claim(Outcome.REPLAY, existing.getOrderId(), null);
+        }
+        // Clave expirada o petición original abandonada: solo una de las peticiones que compiten la retoma
+        Integer updated = transactionTemplate.execute(status -> idempotencyRecordRepository.takeOver(existing.getId(), fingerprint,
+                ownerToken, now.plus(properties.getInProgressTimeout()), now.plus(properties.getKeyTtl()), now));
+        return updated != null && updated == 1 ? new Claim(Outcome.STARTED, null, ownerToken) : new Claim(Outcome.IN_PROGRESS, null, null);
+    }
+
+    // Registra el pedido creado para que las repeticiones lo devuelvan
+    public void complete(Long userId, String idempotencyKey, String ownerToken, Long orderId) {
+        Integer updated = transactionTemplate.execute(status -> idempotencyRecordRepository.complete(userId, idempotencyKey,
+                ownerToken, orderId, LocalDateTime.now().plus(properties.getKeyTtl())));
+        if (updated == null || updated == 0) {
+            System.err.println("La clave de idempotencia " + idempotencyKey + " del usuario " + userId
+                    + " la retomó otra petición: no se asocia al pedido " + orderId + ".");
+        }
+    }
+
+    // Libera la clave cuando la petición falla antes de guardar el pedido, para que el cliente pueda reintentar.
+    // Si el pedido llegó a guardarse (aunque su pago fallara) la clave se completa con él
+    public void release(Long userId, String idempotencyKey, String ownerToken) {
+        transactionTemplate.executeWithoutResult(status ->
+                idempotencyRecordRepository.release(userId, idempotencyKey, ownerToken));
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.cleanup-interval-ms:600000}")
+    public void purgeExpiredKeys() {
+        Integer deleted = transactionTemplate.execute(status -> idempotencyRecordRepository.deleteExpired(LocalDateTime.now()));
+        if (deleted != null && deleted > 0) {
+            System.out.println("Claves de idempotencia expiradas eliminadas: " + deleted);
+        }
+    }
+
+    // Huella SHA-256 de los datos de la petición
+    public static String fingerprint(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0); // Separador: evita que ("ab", "c") y ("a", "bc") coincidan
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
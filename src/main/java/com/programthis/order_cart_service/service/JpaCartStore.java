@@ -0,0 +1,236 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.dto.CartItemOperationDto;
+import com.programthis.order_cart_service.dto.ProductDto;
+import com.programthis.order_cart_service.model.CartItem;
+import com.programthis.order_cart_service.model.ShoppingCart;
+import com.programthis.order_cart_service.repository.CartItemRepository;
+import com.programthis.order_cart_service.repository.ShoppingCartRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Almacén de carritos por defecto (cart.store.mode=jpa): cada operación escribe directamente en MySQL.
+// Las operaciones que escriben pasan por CartMutationGuard, que abre la transacción y la repite si choca con otra
+// modificación concurrente del mismo carrito. Por eso no llevan @Transactional: una transacción abierta antes del
+// guard impediría reintentar.
+@Component
+public class JpaCartStore implements CartStore {
+
+    private final ShoppingCartRepository shoppingCartRepository;
+    private final CartItemRepository cartItemRepository;
+    private final CartMutationGuard cartMutationGuard;
+
+    @Autowired
+    public JpaCartStore(ShoppingCartRepository shoppingCartRepository,
+                        CartItemRepository cartItemRepository,
+                        CartMutationGuard cartMutationGuard) {
+        this.shoppingCartRepository = shoppingCartRepository;
+        this.cartItemRepository = cartItemRepository;
+        this.cartMutationGuard = cartMutationGuard;
+    }
+
+    // Obtener o crear un carrito para un usuario
+    @Override
+    public ShoppingCart getOrCreateShoppingCart(Long userId) {
+        return cartMutationGuard.mutate(userId, () -> {
+            Optional<ShoppingCart> existingCart = shoppingCartRepository.findByUserId(userId);
+            if (existingCart.isPresent()) {
+                return existingCart.get();
+            } else {
+                ShoppingCart newCart = new ShoppingCart();
+                newCart.setUserId(userId);
+                return shoppingCartRepository.save(newCart);
+            }
+        });
+    }
+
+    // Leer el carrito sin crearlo: una sola consulta, sin transacción de escritura ni bloqueos
+    @Override
+    public Optional<ShoppingCart> findShoppingCart(Long userId) {
+        return shoppingCartRepository.findByUserId(userId);
+    }
+
+    // Una consulta por user_id (índice único) que solo lee la versión
+    @Override
+    public Optional<Long> findVersion(Long userId) {
+        return shoppingCartRepository.findVersionByUserId(userId);
+    }
+
+    // Añadir producto al carrito
+    @Override
+    public ShoppingCart addProductToCart(Long userId, ProductDto productDto, Integer quantity) {
+        return cartMutationGuard.mutate(userId, () -> {
+            // 1. Obtener o crear el carrito (solo su ID, sin cargar los ítems)
+            Long cartId = getOrCreateShoppingCartId(userId);
+            LocalDateTime now = LocalDateTime.now();
+            shoppingCartRepository.touch(cartId, now);
+
+            // 2. Insertar el ítem o sumar la cantidad si el producto ya está, en una sola sentencia.
+            // Si ya existía, el priceAtAddition se mantiene el original del momento de la primera adición
+            cartItemRepository.upsertQuantity(cartId, productDto.getId(), quantity, productDto.getPrice(), now);
+
+            // 3. Devolver el carrito actualizado (con sus ítems, en una consulta)
+            return findCart(userId);
+        });
+    }
+
+    private Long getOrCreateShoppingCartId(Long userId) {
+        return shoppingCartRepository.findIdByUserId(userId).orElseGet(() -> {
+            ShoppingCart newCart = new ShoppingCart();
+            newCart.setUserId(userId);
+            return shoppingCartRepository.save(newCart).getId();
+        });
+    }
+
+    // Actualizar cantidad de un producto en el carrito
+    @Override
+    public ShoppingCart updateProductQuantityInCart(Long userId, Long productId, Integer newQuantity) {
+        return cartMutationGuard.mutate(userId, () -> {
+            ShoppingCart cart = findCart(userId);
+
+            CartItem item = cart.findItem(productId);
+            if (item != null) {
+                if (newQuantity <= 0) {
+                    // Si la nueva cantidad es 0 o menos, eliminar el ítem del carrito
+                    cart.removeCartItem(item);
+                    cartItemRepository.delete(item);
+                } else {
+                    item.setQuantity(newQuantity);
+                    cartItemRepository.save(item);
+                }
+                cart.setUpdatedAt(LocalDateTime.now()); // Marca el carrito como modificado: se comprueba e incrementa su versión
+                return shoppingCartRepository.save(cart); // Guarda el carrito para actualizar updated_at
+            } else {
+                throw new RuntimeException("Producto con ID " + productId + " no encontrado en el carrito para actualizar.");
+            }
+        });
+    }
+
+    // Eliminar un producto del carrito
+    @Override
+    public ShoppingCart removeProductFromCart(Long userId, Long productId) {
+        return cartMutationGuard.mutate(userId, () -> {
+            ShoppingCart cart = findCart(userId);
+
+            CartItem item = cart.findItem(productId);
+            if (item != null) {
+                cart.removeCartItem(item); // Elimina del carrito y actualiza la relación
+                cartItemRepository.delete(item); // Elimina el item de la base de datos
+                cart.setUpdatedAt(LocalDateTime.now()); // Marca el carrito como modificado: se comprueba e incrementa su versión
+                return shoppingCartRepository.save(cart); // Guarda el carrito para actualizar updated_at
+            } else {
+                throw new RuntimeException("Producto con ID " + productId + " no encontrado en el carrito para eliminar.");
+            }
+        });
+    }
+
+    // Varias operaciones en una transacción: se carga el carrito con sus ítems (una consulta), se calculan las
+    // cantidades finales y los cambios se hacen sobre las entidades. Hibernate los escribe al confirmar: actualizaciones
+    // y borrados en lotes JDBC (hibernate.jdbc.batch_size), y las altas con una sentencia por producto (IDENTITY).
+    // La versión del carrito se comprueba e incrementa una sola vez
+    @Override
+    public ShoppingCart applyItemOperations(Long userId, List<CartItemOperationDto> operations, Map<Long, ProductDto> products) {
+        return cartMutationGuard.mutate(userId, () -> {
+            // Si ninguna operación es válida la transacción se deshace y el carrito recién creado no llega a guardarse
+            ShoppingCart cart = shoppingCartRepository.findByUserId(userId).orElseGet(() -> {
+                ShoppingCart newCart = new ShoppingCart();
+                newCart.setUserId(userId);
+                return shoppingCartRepository.save(newCart);
+            });
+
+            Map<Long, CartItem> items = new HashMap<>();
+            Map<Long, Integer> quantities = new LinkedHashMap<>();
+            for (CartItem item : cart.getItems()) {
+                items.put(item.getProductId(), item);
+                quantities.put(item.getProductId(), item.getQuantity());
+            }
+            Map<Long, Integer> finalQuantities = CartItemOperations.apply(quantities, operations);
+
+            items.forEach((productId, item) -> {
+                Integer quantity = finalQuantities.get(productId);
+                if (quantity == null) {
+                    cart.removeCartItem(item); // orphanRemoval lo borra
+                } else if (!quantity.equals(item.getQuantity())) {
+                    item.setQuantity(quantity);
+                }
+            });
+            finalQuantities.forEach((productId, quantity) -> {
+                if (!items.containsKey(productId)) {
+                    CartItem item = new CartItem();
+                    item.setProductId(productId);
+                    item.setQuantity(quantity);
+                    item.setPriceAtAddition(CartItemOperations.catalogPrice(products, productId));
+                    cart.addCartItem(item);
+                }
+            });
+            cart.setUpdatedAt(LocalDateTime.now()); // Marca el carrito como modificado: se comprueba e incrementa su versión
+            return shoppingCartRepository.save(cart);
+        });
+    }
+
+    // Usa el mismo upsert que addProductToCart: se ejecuta dentro de la transacción del checkout, que no puede
+    // reintentarse, y así no choca con modificaciones concurrentes del carrito
+    @Override
+    public ShoppingCart restoreCartItems(Long userId, List<CartItem> items) {
+        return cartMutationGuard.mutate(userId, () -> {
+            Long cartId = getOrCreateShoppingCartId(userId);
+            LocalDateTime now = LocalDateTime.now();
+            shoppingCartRepository.touch(cartId, now);
+            for (CartItem restoredItem : items) {
+                cartItemRepository.upsertQuantity(cartId, restoredItem.getProductId(), restoredItem.getQuantity(),
+                        restoredItem.getPriceAtAddition(), now);
+            }
+            return findCart(userId);
+        });
+    }
+
+    // Vaciar el carrito y devolverlo (vacío)
+    @Override
+    public ShoppingCart clearCart(Long userId) {
+        return cartMutationGuard.mutate(userId, () -> {
+            // Borrar todos los ítems del carrito con una sola sentencia, sin cargarlos
+            Long cartId = findCartId(userId);
+            shoppingCartRepository.touch(cartId, LocalDateTime.now());
+            cartItemRepository.deleteByCartId(cartId);
+            return findCart(userId);
+        });
+    }
+
+    // Restar las cantidades pedidas sin cargar el carrito: una sentencia por producto y un único borrado de los
+    // ítems que se quedan sin unidades. touch va primero: bloquea el carrito hasta el final de la transacción, así
+    // que las modificaciones concurrentes esperan o fallan por versión y se reintentan sobre el carrito ya restado
+    @Override
+    public void removeOrderedItems(Long userId, List<CartItem> orderedItems) {
+        cartMutationGuard.mutate(userId, () -> {
+            Long cartId = findCartId(userId);
+            LocalDateTime now = LocalDateTime.now();
+            shoppingCartRepository.touch(cartId, now);
+            for (CartItem orderedItem : orderedItems) {
+                cartItemRepository.subtractQuantity(cartId, orderedItem.getProductId(), orderedItem.getQuantity(), now);
+            }
+            return cartItemRepository.deleteEmptyItems(cartId);
+        });
+    }
+
+    // Nada pendiente: todas las operaciones ya escribieron en la base de datos
+    @Override
+    public void flush(Long userId) {
+    }
+
+    private Long findCartId(Long userId) {
+        return shoppingCartRepository.findIdByUserId(userId)
+                .orElseThrow(() -> new RuntimeException("Carrito no encontrado para el usuario: " + userId));
+    }
+
+    private ShoppingCart findCart(Long userId) {
+        return shoppingCartRepository.findByUserId(userId)
+                .orElseThrow(() -> new RuntimeException("Carrito no encontrado para el usuario: " + userId));
+    }
+}
@@ -0,0 +1,195 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.client.NotificationServiceClient;
+import com.programthis.order_cart_service.config.NotificationOutboxProperties;
+import com.programthis.order_cart_service.dto.NotificationRequestDto;
+import com.programthis.order_cart_service.model.NotificationOutbox;
+import com.programthis.order_cart_service.repository.NotificationOutboxRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+
+// Outbox de notificaciones: el checkout solo inserta una fila (en la misma transacción que el cambio de estado
+// del pedido) y un proceso en segundo plano la envía al Notification Service con reintentos.
+// La entrega es "al menos una vez": si la instancia cae tras enviar pero antes de marcarla, se reenviará.
+@Service
+public class NotificationOutboxService {
+
+    static final String STATUS_PENDING = "PENDING";
+    static final String STATUS_SENDING = "SENDING";
+    static final String STATUS_SENT = "SENT";
+    static final String STATUS_FAILED = "FAILED";
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+    private static final int MAX_TEXT_LENGTH = 255;
+    private static final int MAX_MESSAGE_BODY_LENGTH = 4000;
+
+    private final NotificationOutboxRepository notificationOutboxRepository;
+    private final NotificationServiceClient notificationServiceClient;
+    private final TransactionTemplate transactionTemplate;
+    private final NotificationOutboxProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public NotificationOutboxService(NotificationOutboxRepository notificationOutboxRepository,
+                                     NotificationServiceClient notificationServiceClient,
+                                     PlatformTransactionManager transactionManager,
+                                     NotificationOutboxProperties properties,
+                                     MeterRegistry meterRegistry) {
+        this.notificationOutboxRepository = notificationOutboxRepository;
+        this.notificationServiceClient = notificationServiceClient;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Registra una notificación para enviarla en segundo plano. Se une a la transacción en curso,
+     * así que solo se enviará si esa transacción confirma. Una segunda notificación del mismo tipo
+     * para el mismo pedido se ignora, también si las dos se registran a la vez.
+     * Nunca lanza por el contenido de la notificación: esa transacción es la que registra el pago, y una
+     * notificación imposible de enviar (sin destinatario) se descarta en lugar de revertirlo.
+     *
+     * @return true si se encoló, false si ya existía o se descartó.
+     */
+    @Transactional
+    public boolean enqueue(Long orderId, NotificationRequestDto request) {
+        String recipientEmail = request.getRecipientEmail();
+        if (request.getType() == null || recipientEmail == null || recipientEmail.isBlank()
+                || recipientEmail.length() > MAX_TEXT_LENGTH) {
+            meterRegistry.counter("notifications.outbox.discarded", "reason", "invalid-recipient").increment();
+            System.err.println("Notificación " + request.getType() + " para la orden " + orderId
+                    + " sin un destinatario válido (" + recipientEmail + "); no se encola.");
+            return false;
+        }
+        // El alta usa INSERT IGNORE, que con valores demasiado largos no fallaría sino que los cortaría sin avisar:
+        // se recortan aquí a las columnas de notification_outbox
+        int inserted = notificationOutboxRepository.insertIfAbsent(orderId, request.getType(), recipientEmail,
+                truncate(Objects.requireNonNullElse(request.getSubject(), ""), MAX_TEXT_LENGTH),
+                truncate(Objects.requireNonNullElse(request.getMessageBody(), ""), MAX_MESSAGE_BODY_LENGTH),
+                LocalDateTime.now());
+        if (inserted == 0) {
+            System.out.println("Notificación " + request.getType() + " para la orden " + orderId + " ya registrada; se ignora el duplicado.");
+            return false;
+        }
+        return true;
+    }
+
+    // Drena el outbox por lotes. Cada lote se reserva en una transacción corta y se envía fuera de ella,
+    // para no mantener bloqueos ni conexiones JDBC mientras se espera al Notification Service
+    @Scheduled(fixedDelayString = "${notifications.outbox.poll-interval-ms:2000}")
+    public void dispatchPendingNotifications() {
+        List<NotificationOutbox> batch;
+        do {
+            batch = claimBatch();
+            batch.forEach(this::deliver);
+        } while (batch.size() >= properties.getBatchSize());
+    }
+
+    // Marca el lote como SENDING con una reserva temporal; SKIP LOCKED evita que dos instancias cojan las mismas filas
+    private List<NotificationOutbox> claimBatch() {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<NotificationOutbox> due = notificationOutboxRepository.findDueForDispatch(now,
+                    PageRequest.of(0, properties.getBatchSize()));
+            for (NotificationOutbox notification : due) {
+                notification.setStatus(STATUS_SENDING);
+                notification.setAttempts(notification.getAttempts() + 1);
+                notification.setNextAttemptAt(now.plus(properties.getLease()));
+            }
+            return notificationOutboxRepository.saveAll(due);
+        });
+    }
+
+    // El lote se envía de uno en uno y puede tardar más que la reserva (batch-size envíos lentos): antes de cada envío
+    // se comprueba que la notificación sigue reservada por este lote y se renueva su reserva
+    private void deliver(NotificationOutbox notification) {
+        Integer renewed = transactionTemplate.execute(status -> notificationOutboxRepository.renewLease(
+                notification.getId(), notification.getAttempts(), LocalDateTime.now().plus(properties.getLease())));
+        if (renewed == null || renewed != 1) {
+            meterRegistry.counter("notifications.outbox.dispatched", "result", "lease-lost").increment();
+            System.err.println("La reserva de la notificación " + notification.getId() + " (orden " + notification.getOrderId()
+                    + ") caducó y la tomó otro envío; no se envía.");
+            return;
+        }
+        NotificationRequestDto request = new NotificationRequestDto(
+                notification.getRecipientEmail(),
+                notification.getSubject(),
+                notification.getMessageBody(),
+                notification.getType());
+        try {
+            if (notificationServiceClient.sendEmailNotification(request)) {
+                notification.setStatus(STATUS_SENT);
+                notification.setSentAt(LocalDateTime.now());
+                notification.setLastError(null);
+                record(notification, "sent");
+            } else {
+                // Error 4xx: la petición no es válida y reintentarla no cambiará el resultado
+                markFailed(notification, "Rechazada por el Notification Service");
+            }
+        } catch (RuntimeException e) {
+            scheduleRetry(notification, e);
+        }
+    }
+
+    private void scheduleRetry(NotificationOutbox notification, RuntimeException error) {
+        if (notification.getAttempts() >= properties.getMaxAttempts()) {
+            markFailed(notification, "Agotados " + notification.getAttempts() + " intentos: " + error.getMessage());
+            return;
+        }
+        Duration backoff = backoffFor(notification.getAttempts());
+        notification.setStatus(STATUS_PENDING);
+        notification.setNextAttemptAt(LocalDateTime.now().plus(backoff));
+        notification.setLastError(truncate(error.getMessage(), MAX_ERROR_LENGTH));
+        System.err.println("Fallo al enviar la notificación " + notification.getId() + " (orden " + notification.getOrderId()
+                + "), intento " + notification.getAttempts() + ". Se reintentará en " + backoff.toSeconds() + " s.");
+        record(notification, "retry");
+    }
+
+    private void markFailed(NotificationOutbox notification, String reason) {
+        notification.setStatus(STATUS_FAILED);
+        notification.setLastError(truncate(reason, MAX_ERROR_LENGTH));
+        System.err.println("Notificación " + notification.getId() + " (orden " + notification.getOrderId() + ") descartada: " + reason);
+        record(notification, "failed");
+    }
+
+    // Solo si la notificación sigue reservada por este envío (ver renewLease): si la reserva caducó durante el envío y
+    // otra instancia la tomó, su estado no se sobrescribe
+    private void record(NotificationOutbox notification, String result) {
+        Integer updated = transactionTemplate.execute(status -> notificationOutboxRepository.completeAttempt(
+                notification.getId(), notification.getAttempts(), notification.getStatus(), notification.getNextAttemptAt(),
+                notification.getLastError(), notification.getSentAt(), LocalDateTime.now()));
+        if (updated == null || updated != 1) {
+            meterRegistry.counter("notifications.outbox.dispatched", "result", "lease-lost").increment();
+            System.err.println("La reserva de la notificación " + notification.getId() + " (orden " + notification.getOrderId()
+                    + ") caducó durante el envío y la tomó otro envío; no se registra el resultado " + result + ".");
+            return;
+        }
+        meterRegistry.counter("notifications.outbox.dispatched", "result", result).increment();
+    }
+
+    // Backoff exponencial: initial-backoff * 2^(intento - 1), limitado por max-backoff
+    Duration backoffFor(int attempts) {
+        int exponent = Math.min(Math.max(attempts - 1, 0), 30);
+        Duration backoff = properties.getInitialBackoff().multipliedBy(1L << exponent);
+        return backoff.compareTo(properties.getMaxBackoff()) > 0 ? properties.getMaxBackoff() : backoff;
+    }
+
+    private static String truncate(String message, int maxLength) {
+        if (message == null || message.length() <= maxLength) {
+            return message;
+        }
+        return message.substring(0, maxLength);
+    }
+}
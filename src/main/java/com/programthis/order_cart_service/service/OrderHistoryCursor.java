@@ -0,0 +1,44 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.model.Order;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Posición en el historial de pedidos de un usuario: fecha e ID del último pedido entregado.
+ * Viaja al cliente como un token opaco (Base64 URL-safe) en el parámetro {@code cursor}.
+ */
+@Getter
+@AllArgsConstructor
+public class OrderHistoryCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private final LocalDateTime orderDate;
+    private final Long orderId;
+
+    public static OrderHistoryCursor after(Order order) {
+        return new OrderHistoryCursor(order.getOrderDate(), order.getId());
+    }
+
+    public String encode() {
+        String raw = orderDate + SEPARATOR + orderId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static OrderHistoryCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(SEPARATOR);
+            return new OrderHistoryCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    Long.valueOf(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Cursor de paginación no válido: " + token, e);
+        }
+    }
+}
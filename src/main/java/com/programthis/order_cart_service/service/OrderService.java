@@ -1,28 +1,51 @@
 package com.programthis.order_cart_service.service;
 
+import com.programthis.order_cart_service.model.CartItem;
 import com.programthis.order_cart_service.model.Order;
 import com.programthis.order_cart_service.model.OrderItem;
-import com.programthis.order_cart_service.model.ShoppingCart;
 import com.programthis.order_cart_service.repository.OrderRepository;
 import com.programthis.order_cart_service.repository.OrderItemRepository;
 import com.programthis.order_cart_service.client.ProductCatalogServiceClient;
 import com.programthis.order_cart_service.client.PaymentServiceClient;
-import com.programthis.order_cart_service.client.NotificationServiceClient;
+import com.programthis.order_cart_service.client.RemoteCallDeadline;
 import com.programthis.order_cart_service.client.UserServiceClient; // ¡NUEVA ADICIÓN!
 import com.programthis.order_cart_service.dto.ProductDto;
 import com.programthis.order_cart_service.dto.PaymentRequestDto;
 import com.programthis.order_cart_service.dto.PaymentResponseDto;
 import com.programthis.order_cart_service.dto.NotificationRequestDto;
+import com.programthis.order_cart_service.dto.OrderHistoryPage;
+import com.programthis.order_cart_service.dto.OrderSummaryDto;
+import com.programthis.order_cart_service.dto.OrderStatusDto;
+import com.programthis.order_cart_service.dto.OrderSummaryPage;
 import com.programthis.order_cart_service.dto.UserDto; // ¡NUEVA ADICIÓN!
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -32,42 +55,274 @@ public class OrderService {
     private final ShoppingCartService shoppingCartService;
     private final ProductCatalogServiceClient productCatalogServiceClient;
     private final PaymentServiceClient paymentServiceClient;
-    private final NotificationServiceClient notificationServiceClient;
+    private final NotificationOutboxService notificationOutboxService;
     private final UserServiceClient userServiceClient; // ¡NUEVA ADICIÓN!
+    private final TransactionTemplate transactionTemplate;
+    private final Executor checkoutExecutor;
+    private final Executor paymentPipelineExecutor;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final Duration remoteDeadline;
+
+    static final String USER_DEPENDENCY = "user-service";
+    static final String CATALOG_DEPENDENCY = "product-catalog-service";
+
+    public static final int DEFAULT_HISTORY_PAGE_SIZE = 20;
+    public static final int MAX_HISTORY_PAGE_SIZE = 100;
 
     @Autowired
     public OrderService(OrderRepository orderRepository, OrderItemRepository orderItemRepository,
                         ShoppingCartService shoppingCartService,
                         ProductCatalogServiceClient productCatalogServiceClient,
                         PaymentServiceClient paymentServiceClient,
-                        NotificationServiceClient notificationServiceClient,
-                        UserServiceClient userServiceClient) { // ¡MODIFICACIÓN CLAVE: Inyección de UserServiceClient!
+                        NotificationOutboxService notificationOutboxService,
+                        UserServiceClient userServiceClient, // ¡MODIFICACIÓN CLAVE: Inyección de UserServiceClient!
+                        PlatformTransactionManager transactionManager,
+                        @Qualifier("checkoutExecutor") Executor checkoutExecutor,
+                        @Qualifier("paymentPipelineExecutor") Executor paymentPipelineExecutor,
+                        ApplicationEventPublisher eventPublisher,
+                        MeterRegistry meterRegistry,
+                        @Value("${checkout.remote-deadline:3s}") Duration remoteDeadline) {
         this.orderRepository = orderRepository;
         this.shoppingCartService = shoppingCartService;
         this.productCatalogServiceClient = productCatalogServiceClient;
         this.paymentServiceClient = paymentServiceClient;
-        this.notificationServiceClient = notificationServiceClient;
+        this.notificationOutboxService = notificationOutboxService;
         this.userServiceClient = userServiceClient; // ¡NUEVA ADICIÓN!
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.checkoutExecutor = checkoutExecutor;
+        this.paymentPipelineExecutor = paymentPipelineExecutor;
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.remoteDeadline = remoteDeadline;
     }
 
-    // Crear un pedido a partir del carrito de un usuario
-    @Transactional
+    // Crear un pedido a partir del carrito de un usuario.
+    // El checkout se ejecuta por fases para no mantener una conexión JDBC ni bloqueos sobre el carrito
+    // mientras se espera a los servicios remotos:
+    //   1. Instantánea del carrito (transacción corta) y consultas remotas en paralelo (usuario, catálogo)
+    //      sin transacción y con un plazo global (checkout.remote-deadline).
+    //   2. Transacción corta: persistir el pedido en PENDING y quitar del carrito lo pedido (las cantidades de la
+    //      instantánea; lo que el usuario añada mientras tanto se queda en el carrito).
+    //   3. Pago fuera de transacción (en segundo plano en el modo asíncrono, ver submitOrderFromCart); el resultado
+    //      se registra en otra transacción corta que, si el pago se completó, también encola la confirmación en el outbox (se envía en segundo plano, ver NotificationOutboxService).
+    //      Si el pago falla, se compensa marcando el pedido como PAYMENT_FAILED y devolviendo los ítems al carrito.
+    // Los errores del pago llegan como CheckoutPaymentFailedException, con el pedido ya guardado
     public Order createOrderFromCart(Long userId, String shippingAddress, String paymentMethod) {
-        ShoppingCart cart = shoppingCartService.getOrCreateShoppingCart(userId);
-        if (cart.getItems().isEmpty()) {
-            throw new RuntimeException("El carrito está vacío. No se puede crear un pedido.");
+        CheckoutReservation reservation = reserveOrder(userId, shippingAddress, paymentMethod);
+        try {
+            return completePayment(reservation);
+        } catch (RuntimeException e) {
+            throw new CheckoutPaymentFailedException(reservation.order, e);
         }
+    }
+
+    // Modo asíncrono del checkout: se ejecutan las fases 1 y 2 (el pedido queda PENDING y el carrito vacío) y
+    // el pago y su registro continúan en paymentPipelineExecutor. Devuelve el pedido en PENDING; los cambios
+    // de estado posteriores se publican como OrderStatusChangedEvent.
+    public Order submitOrderFromCart(Long userId, String shippingAddress, String paymentMethod) {
+        CheckoutReservation reservation = reserveOrder(userId, shippingAddress, paymentMethod);
+        CompletableFuture.runAsync(() -> {
+                    // Si mientras esperaba en la cola la recuperación de PENDING tomó el pedido, no se cobra
+                    if (claimForPayment(reservation.order)) {
+                        completePayment(reservation);
+                    }
+                }, paymentPipelineExecutor)
+                .exceptionally(e -> {
+                    // El fallo del pago ya quedó compensado (PAYMENT_FAILED) y publicado; aquí solo se registra
+                    System.err.println("Checkout asíncrono de la orden " + reservation.order.getId() + " terminado con error: "
+                            + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+                    return null;
+                });
+        return reservation.order;
+    }
+
+    // Fases 1 y 2: datos remotos y persistencia del pedido en PENDING
+    private CheckoutReservation reserveOrder(Long userId, String shippingAddress, String paymentMethod) {
+        List<CartItem> cartItems = snapshotCart(userId);
+
+        // Fase 1: datos remotos, sin ninguna transacción abierta. El usuario y todos los productos se consultan
+        // en paralelo con un plazo global; los productos se piden en una sola operación (lotes/concurrencia en el cliente)
+        List<Long> productIds = cartItems.stream()
+                .map(CartItem::getProductId)
+                .collect(Collectors.toList());
+        long deadlineNanos = System.nanoTime() + remoteDeadline.toNanos();
+        CompletableFuture<Optional<UserDto>> userLookup =
+                timedLookup(USER_DEPENDENCY, deadlineNanos, () -> userServiceClient.getUserById(userId));
+        CompletableFuture<Map<Long, ProductDto>> productsLookup =
+                timedLookup(CATALOG_DEPENDENCY, deadlineNanos, () -> productCatalogServiceClient.getProductsByIds(productIds));
+        awaitWithinDeadline(Map.of(USER_DEPENDENCY, userLookup, CATALOG_DEPENDENCY, productsLookup), deadlineNanos);
 
-        // ¡MODIFICACIÓN CLAVE: Obtener datos del usuario desde User Service!
-        Optional<UserDto> userDtoOptional = userServiceClient.getUserById(userId);
-        if (userDtoOptional.isEmpty()) {
-            throw new RuntimeException("Usuario con ID " + userId + " no encontrado. No se puede crear el pedido.");
-        }
-        UserDto user = userDtoOptional.get();
         // Aquí podrías usar user.getFullName() o user.getShippingAddress() si el UserDto los tuviera
         // y tuvieras un campo para la dirección en Order, por ejemplo.
+        UserDto user = userLookup.join().orElseThrow(() -> userNotFound(userId));
+        Map<Long, ProductDto> products = productsLookup.join();
+
+        Order newOrder = buildPendingOrder(userId, shippingAddress, paymentMethod, cartItems, products);
+        return new CheckoutReservation(persistPendingOrder(newOrder, cartItems), cartItems, user);
+    }
+
+    // Fase 3: pago fuera de transacción y registro de su resultado
+    private Order completePayment(CheckoutReservation reservation) {
+        Order savedOrder = reservation.order;
+        Optional<PaymentResponseDto> paymentResponseOptional;
+        try {
+            paymentResponseOptional = paymentServiceClient.processPayment(paymentRequestFor(savedOrder));
+        } catch (RuntimeException e) {
+            compensateFailedPayment(savedOrder, reservation.cartItems);
+            throw e;
+        }
+
+        if (paymentResponseOptional.isEmpty()) {
+            compensateFailedPayment(savedOrder, reservation.cartItems);
+            throw paymentFailed(savedOrder);
+        }
+        return recordPaymentResult(savedOrder, paymentResponseOptional.get(), reservation.user);
+    }
+
+    // Los pasos siguientes, con acceso a base de datos y sin llamadas remotas, los comparten el checkout
+    // bloqueante y el reactivo (ReactiveOrderService), que los ejecuta fuera del event loop.
+
+    // Fase 1: instantánea del carrito (transacción corta). Antes se escriben en MySQL los cambios del carrito que
+    // sigan solo en memoria (cart.store.mode=write-behind), para que el pedido y el vaciado partan del mismo estado.
+    // Solo lee: un usuario sin carrito guardado tiene el carrito vacío, y el checkout no le crea uno
+    List<CartItem> snapshotCart(Long userId) {
+        shoppingCartService.flushPendingChanges(userId);
+        List<CartItem> cartItems = transactionTemplate.execute(status -> shoppingCartService.findShoppingCart(userId)
+                .map(cart -> new ArrayList<>(cart.getItems())) // Inicializa la colección LAZY dentro de la transacción
+                .orElseGet(ArrayList::new));
+        if (cartItems == null || cartItems.isEmpty()) {
+            throw new RuntimeException("El carrito está vacío. No se puede crear un pedido.");
+        }
+        return cartItems;
+    }
+
+    // Fase 2: transacción corta que persiste el pedido y quita del carrito los ítems de la instantánea. Entre la
+    // instantánea y esta fase el carrito no está bloqueado (se espera a los servicios remotos): no se vacía entero
+    // para no perder lo que el usuario haya añadido o cambiado mientras tanto
+    Order persistPendingOrder(Order newOrder, List<CartItem> cartItems) {
+        Order savedOrder = transactionTemplate.execute(status -> {
+            // Primero las sentencias masivas sobre el carrito: vacían el contexto de persistencia, y así el pedido
+            // guardado a continuación sigue gestionado
+            shoppingCartService.removeOrderedItems(newOrder.getUserId(), cartItems);
+            return orderRepository.save(newOrder);
+        });
+        publishStatusChange(savedOrder);
+        return savedOrder;
+    }
+
+    PaymentRequestDto paymentRequestFor(Order order) {
+        return new PaymentRequestDto(
+                order.getId().toString(),
+                order.getTotalAmount(),
+                order.getPaymentMethod()
+        );
+    }
+
+    // Fase 3: registra el resultado del pago y, si se completó, encola la confirmación en la misma transacción.
+    // Solo si el pedido sigue PENDING en la versión leída; si no, otro proceso ya lo cerró (ver finishPending)
+    Order recordPaymentResult(Order savedOrder, PaymentResponseDto paymentResponse, UserDto user) {
+        LocalDateTime now = LocalDateTime.now();
+        Boolean recorded = transactionTemplate.execute(status -> {
+            if (!finishPending(savedOrder, paymentResponse.getPaymentStatus(), paymentResponse.getTransactionId(), now)) {
+                return false;
+            }
+            // La confirmación se guarda en la misma transacción que el estado: o se registran ambos o ninguno
+            if ("COMPLETED".equals(paymentResponse.getPaymentStatus())) {
+                enqueueOrderConfirmation(savedOrder, user);
+            }
+            return true;
+        });
+        if (!Boolean.TRUE.equals(recorded)) {
+            return finishLost(savedOrder, paymentResponse.getPaymentStatus());
+        }
+        applyFinish(savedOrder, paymentResponse.getPaymentStatus(), paymentResponse.getTransactionId(), now);
+        publishStatusChange(savedOrder);
+        System.out.println("Pago para orden " + savedOrder.getId() + " procesado con estado: " + paymentResponse.getPaymentStatus());
+        return savedOrder;
+    }
+
+    static RuntimeException userNotFound(Long userId) {
+        return new RuntimeException("Usuario con ID " + userId + " no encontrado. No se puede crear el pedido.");
+    }
+
+    static RuntimeException paymentFailed(Order order) {
+        System.err.println("Error: El pago para la orden " + order.getId() + " no pudo ser procesado por el Payment Service.");
+        return new RuntimeException("El pago para la orden " + order.getId() + " falló o no pudo ser procesado.");
+    }
+
+    // Se llama tras confirmar la transacción que guarda el estado, para que nadie observe un estado revertido
+    private void publishStatusChange(Order order) {
+        eventPublisher.publishEvent(new OrderStatusChangedEvent(order.getId(), order.getUserId(), order.getStatus(), order.getTransactionId()));
+    }
+
+    // Estado que pasa de la reserva del pedido al pago
+    private static class CheckoutReservation {
+        private final Order order;
+        private final List<CartItem> cartItems;
+        private final UserDto user;
+
+        private CheckoutReservation(Order order, List<CartItem> cartItems, UserDto user) {
+            this.order = order;
+            this.cartItems = cartItems;
+            this.user = user;
+        }
+    }
+
+    // Lanza la consulta en checkoutExecutor y registra por dependencia su espera en la cola del executor
+    // (checkout.dependency.queue.wait, también consume el plazo) y su latencia. La consulta se hace con el plazo del
+    // checkout (RemoteCallDeadline): el timeout de cada petición HTTP se limita al tiempo que queda. Si el plazo vence
+    // antes de que empiece, no se hace
+    private <T> CompletableFuture<T> timedLookup(String dependency, long deadlineNanos, Supplier<T> lookup) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long submittedAt = System.nanoTime();
+        checkoutExecutor.execute(() -> {
+            meterRegistry.timer("checkout.dependency.queue.wait", "dependency", dependency)
+                    .record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+            if (result.isDone()) {
+                return; // Cancelada al vencer el plazo mientras esperaba en la cola
+            }
+            Timer.Sample sample = Timer.start(meterRegistry);
+            try {
+                result.complete(RemoteCallDeadline.within(deadlineNanos, lookup));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            } finally {
+                sample.stop(meterRegistry.timer("checkout.dependency.latency", "dependency", dependency));
+            }
+        });
+        return result;
+    }
 
+    // Espera a todas las consultas hasta el plazo del checkout. Si vence, cancela las que seguían pendientes (las que
+    // no habían empezado ya no se hacen) e informa de ellas
+    private void awaitWithinDeadline(Map<String, CompletableFuture<?>> lookups, long deadlineNanos) {
+        try {
+            CompletableFuture.allOf(lookups.values().toArray(new CompletableFuture[0]))
+                    .get(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            List<String> pending = lookups.entrySet().stream()
+                    .filter(entry -> !entry.getValue().isDone())
+                    .map(Map.Entry::getKey)
+                    .sorted()
+                    .collect(Collectors.toList());
+            lookups.values().forEach(lookup -> lookup.cancel(true));
+            pending.forEach(dependency -> meterRegistry.counter("checkout.deadline.exceeded", "dependency", dependency).increment());
+            System.err.println("Checkout fuera de plazo (" + remoteDeadline.toMillis() + " ms). Dependencias pendientes: " + pending);
+            throw new CheckoutDeadlineExceededException(pending, remoteDeadline);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException("Error consultando los servicios remotos del checkout", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Checkout interrumpido mientras se consultaban los servicios remotos", e);
+        }
+    }
 
+    Order buildPendingOrder(Long userId, String shippingAddress, String paymentMethod,
+                            List<CartItem> cartItems, Map<Long, ProductDto> products) {
         Order newOrder = new Order();
         newOrder.setUserId(userId);
         newOrder.setOrderDate(LocalDateTime.now());
@@ -76,16 +331,15 @@ public class OrderService {
         newOrder.setPaymentMethod(paymentMethod);
 
         BigDecimal totalAmount = BigDecimal.ZERO;
-        List<OrderItem> orderItems = cart.getItems().stream()
+        List<OrderItem> orderItems = cartItems.stream()
                 .map(cartItem -> {
                     OrderItem orderItem = new OrderItem();
                     orderItem.setProductId(cartItem.getProductId());
 
-                    Optional<ProductDto> productDtoOptional = productCatalogServiceClient.getProductById(cartItem.getProductId());
-                    if (productDtoOptional.isEmpty()) {
+                    ProductDto productDto = products.get(cartItem.getProductId());
+                    if (productDto == null) {
                         throw new RuntimeException("Producto con ID " + cartItem.getProductId() + " en el carrito no encontrado en el catálogo. No se puede crear el pedido.");
                     }
-                    ProductDto productDto = productDtoOptional.get();
                     orderItem.setProductName(productDto.getName());
 
                     orderItem.setQuantity(cartItem.getQuantity());
@@ -102,59 +356,91 @@ public class OrderService {
         }
 
         newOrder.setTotalAmount(totalAmount);
+        return newOrder;
+    }
 
-        Order savedOrder = orderRepository.save(newOrder);
-        
-        shoppingCartService.clearCart(userId);
-
-        PaymentRequestDto paymentRequest = new PaymentRequestDto(
-                savedOrder.getId().toString(),
-                savedOrder.getTotalAmount(),
-                savedOrder.getPaymentMethod()
-        );
+    // Compensación de un pago fallido: el pedido queda como PAYMENT_FAILED y el carrito recupera sus ítems. Como
+    // recordPaymentResult, solo si el pedido sigue PENDING en la versión leída: los ítems nunca vuelven dos veces
+    void compensateFailedPayment(Order order, List<CartItem> cartItems) {
+        LocalDateTime now = LocalDateTime.now();
+        Boolean compensated = transactionTemplate.execute(status -> {
+            if (!finishPending(order, "PAYMENT_FAILED", order.getTransactionId(), now)) {
+                return false;
+            }
+            shoppingCartService.restoreCartItems(order.getUserId(), cartItems);
+            return true;
+        });
+        if (!Boolean.TRUE.equals(compensated)) {
+            finishLost(order, "PAYMENT_FAILED");
+            return;
+        }
+        applyFinish(order, "PAYMENT_FAILED", order.getTransactionId(), now);
+        publishStatusChange(order);
+    }
 
-        Optional<PaymentResponseDto> paymentResponseOptional = paymentServiceClient.processPayment(paymentRequest);
+    // Reserva el pedido antes de cobrarlo en el checkout asíncrono. Falla si la recuperación de PENDING lo tomó
+    // mientras el pago esperaba en la cola (ver PendingOrderRecoveryService)
+    private boolean claimForPayment(Order order) {
+        LocalDateTime now = LocalDateTime.now();
+        Integer claimed = transactionTemplate.execute(status -> orderRepository.claimPending(order.getId(), order.getVersion(), now));
+        if (claimed == null || claimed != 1) {
+            meterRegistry.counter("checkout.order.transition.lost", "outcome", "payment-skipped").increment();
+            System.out.println("La orden " + order.getId() + " ya no está reservada para este pago (la tomó la recuperación de PENDING): no se cobra.");
+            return false;
+        }
+        order.setVersion(order.getVersion() + 1);
+        order.setUpdatedAt(now);
+        return true;
+    }
 
-        if (paymentResponseOptional.isPresent()) {
-            PaymentResponseDto paymentResponse = paymentResponseOptional.get();
-            savedOrder.setStatus(paymentResponse.getPaymentStatus()); 
-            savedOrder.setTransactionId(paymentResponse.getTransactionId());
-            orderRepository.save(savedOrder);
-            System.out.println("Pago para orden " + savedOrder.getId() + " procesado con estado: " + paymentResponse.getPaymentStatus());
+    // Paso de PENDING a su estado final con un UPDATE condicional (estado PENDING y versión leída). El pedido en
+    // memoria no cambia hasta que la transacción confirma (applyFinish)
+    private boolean finishPending(Order order, String newStatus, String transactionId, LocalDateTime now) {
+        return orderRepository.finishPending(order.getId(), order.getVersion(), newStatus, transactionId, now) == 1;
+    }
 
-            if ("COMPLETED".equals(paymentResponse.getPaymentStatus())) {
-                // ¡MODIFICACIÓN CLAVE: Usar el email real del usuario!
-                String userEmail = user.getEmail(); // ¡Obtenido del User Service!
-                String subject = "Confirmación de Orden #" + savedOrder.getId();
-                String messageBody = String.format("Estimado/a %s,\n\nGracias por su compra. Su orden #%d ha sido confirmada y su pago ha sido procesado con éxito. Total: %.2f\n\nSaludos,\nEl equipo de EcoMarket", user.getFullName() != null ? user.getFullName() : user.getUsername(), savedOrder.getId(), savedOrder.getTotalAmount());
-                
-                NotificationRequestDto notificationRequest = new NotificationRequestDto(
-                    userEmail,
-                    subject,
-                    messageBody,
-                    "ORDER_CONFIRMATION"
-                );
-                
-                try {
-                    boolean notificationSent = notificationServiceClient.sendEmailNotification(notificationRequest);
-                    if (notificationSent) {
-                        System.out.println("Notificación de confirmación de orden enviada al correo real del usuario " + userEmail);
-                    } else {
-                        System.err.println("Fallo al enviar notificación de confirmación para el usuario " + user.getEmail());
-                    }
-                } catch (Exception e) {
-                    System.err.println("Excepción al intentar enviar notificación de confirmación para el usuario " + user.getEmail() + ": " + e.getMessage());
-                }
-            }
+    // Refleja en el pedido en memoria el cierre de finishPending, una vez confirmada su transacción: si esta se
+    // revierte, el pedido sigue coincidiendo con la base de datos (PENDING)
+    private static void applyFinish(Order order, String newStatus, String transactionId, LocalDateTime now) {
+        order.setStatus(newStatus);
+        order.setTransactionId(transactionId);
+        order.setUpdatedAt(now);
+        order.setVersion(order.getVersion() + 1);
+    }
 
+    // Otro proceso (el checkout o la recuperación de PENDING) cerró el pedido antes: este resultado se descarta, sin
+    // compensar ni encolar nada. Si este lado tiene un pago completado y el pedido quedó PAYMENT_FAILED, el cliente
+    // pagó un pedido ya compensado: el Payment Service no ofrece reembolsos, así que se avisa para revisarlo a mano
+    private Order finishLost(Order order, String discardedStatus) {
+        Order current = orderRepository.findById(order.getId()).orElse(order);
+        boolean paidAfterCompensation = "COMPLETED".equals(discardedStatus) && "PAYMENT_FAILED".equals(current.getStatus());
+        meterRegistry.counter("checkout.order.transition.lost", "outcome",
+                paidAfterCompensation ? "paid-after-compensation" : "discarded").increment();
+        if (paidAfterCompensation) {
+            System.err.println("Error: la orden " + order.getId() + " se cobró después de compensarse (PAYMENT_FAILED). Requiere revisión manual del pago.");
         } else {
-            System.err.println("Error: El pago para la orden " + savedOrder.getId() + " no pudo ser procesado por el Payment Service.");
-            savedOrder.setStatus("PAYMENT_FAILED");
-            orderRepository.save(savedOrder);
-            throw new RuntimeException("El pago para la orden " + savedOrder.getId() + " falló o no pudo ser procesado.");
+            System.out.println("La orden " + order.getId() + " ya estaba en " + current.getStatus() + ": se descarta el resultado " + discardedStatus + ".");
         }
+        return current;
+    }
 
-        return savedOrder;
+    private void enqueueOrderConfirmation(Order savedOrder, UserDto user) {
+        // ¡MODIFICACIÓN CLAVE: Usar el email real del usuario!
+        String userEmail = user.getEmail(); // ¡Obtenido del User Service!
+        String subject = "Confirmación de Orden #" + savedOrder.getId();
+        String messageBody = String.format("Estimado/a %s,\n\nGracias por su compra. Su orden #%d ha sido confirmada y su pago ha sido procesado con éxito. Total: %.2f\n\nSaludos,\nEl equipo de EcoMarket", user.getFullName() != null ? user.getFullName() : user.getUsername(), savedOrder.getId(), savedOrder.getTotalAmount());
+
+        NotificationRequestDto notificationRequest = new NotificationRequestDto(
+            userEmail,
+            subject,
+            messageBody,
+            "ORDER_CONFIRMATION"
+        );
+
+        // Sin email válido la confirmación se descarta (y se registra), pero el pago se registra igualmente
+        if (notificationOutboxService.enqueue(savedOrder.getId(), notificationRequest)) {
+            System.out.println("Confirmación de la orden " + savedOrder.getId() + " encolada para " + userEmail);
+        }
     }
 
     // ... (resto de los métodos sin cambios)
@@ -162,16 +448,72 @@ public class OrderService {
         return orderRepository.findById(orderId);
     }
 
+    // Estado de los pedidos que ya salieron de PENDING, entre los indicados (los que siguen PENDING no aparecen)
+    public List<OrderStatusDto> findFinishedStatuses(Collection<Long> orderIds) {
+        return orderRepository.findFinishedStatuses(orderIds);
+    }
+
     public List<Order> getOrdersByUserId(Long userId) {
         return orderRepository.findByUserIdOrderByOrderDateDesc(userId);
     }
 
+    // Una página del historial de pedidos del usuario, del más reciente al más antiguo. cursor es el nextCursor de
+    // la página anterior (null para la primera); el tamaño se limita a MAX_HISTORY_PAGE_SIZE
+    public OrderHistoryPage getOrderHistory(Long userId, String cursor, int pageSize) {
+        int size = historyPageSize(pageSize);
+        // Se pide un ID de más para saber si hay otra página sin contar el total
+        Pageable page = PageRequest.of(0, size + 1);
+        List<Long> ids;
+        if (cursor == null || cursor.isBlank()) {
+            ids = orderRepository.findHistoryIds(userId, page);
+        } else {
+            OrderHistoryCursor after = OrderHistoryCursor.decode(cursor);
+            ids = orderRepository.findHistoryIdsAfter(userId, after.getOrderDate(), after.getOrderId(), page);
+        }
+        if (ids.isEmpty()) {
+            return new OrderHistoryPage(List.of(), null);
+        }
+
+        boolean hasMore = ids.size() > size;
+        List<Order> orders = orderRepository.findByIdInOrderByOrderDateDescIdAsc(hasMore ? ids.subList(0, size) : ids);
+        String nextCursor = hasMore && !orders.isEmpty()
+                ? OrderHistoryCursor.after(orders.get(orders.size() - 1)).encode()
+                : null;
+        return new OrderHistoryPage(orders, nextCursor);
+    }
+
+    // Igual que getOrderHistory, pero con resúmenes para listados: una sola consulta y ninguna entidad
+    public OrderSummaryPage getOrderSummaries(Long userId, String cursor, int pageSize) {
+        int size = historyPageSize(pageSize);
+        Pageable page = PageRequest.of(0, size + 1);
+        List<OrderSummaryDto> summaries;
+        if (cursor == null || cursor.isBlank()) {
+            summaries = orderRepository.findSummaries(userId, page);
+        } else {
+            OrderHistoryCursor after = OrderHistoryCursor.decode(cursor);
+            summaries = orderRepository.findSummariesAfter(userId, after.getOrderDate(), after.getOrderId(), page);
+        }
+
+        if (summaries.size() <= size) {
+            return new OrderSummaryPage(summaries, null);
+        }
+        List<OrderSummaryDto> pageSummaries = summaries.subList(0, size);
+        OrderSummaryDto last = pageSummaries.get(size - 1);
+        return new OrderSummaryPage(pageSummaries, new OrderHistoryCursor(last.getOrderDate(), last.getId()).encode());
+    }
+
+    private static int historyPageSize(int requested) {
+        return Math.min(Math.max(requested, 1), MAX_HISTORY_PAGE_SIZE);
+    }
+
     @Transactional
     public Order updateOrderStatus(Long orderId, String newStatus) {
         Order order = orderRepository.findById(orderId)
                 .orElseThrow(() -> new RuntimeException("Pedido no encontrado: " + orderId));
         order.setStatus(newStatus);
-        return orderRepository.save(order);
+        Order updatedOrder = orderRepository.save(order);
+        publishStatusChange(updatedOrder); // Los oyentes transaccionales lo reciben tras el commit
+        return updatedOrder;
     }
 
     @Transactional
@@ -0,0 +1,19 @@
+package com.programthis.order_cart_service.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Evento de aplicación publicado cada vez que se persiste un nuevo estado de un pedido
+ * (PENDING al aceptarlo, resultado del pago, compensación o actualización manual).
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class OrderStatusChangedEvent {
+    private final Long orderId;
+    private final Long userId;
+    private final String status;
+    private final String transactionId;
+}
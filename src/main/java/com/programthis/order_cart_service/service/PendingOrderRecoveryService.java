@@ -0,0 +1,119 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.client.PaymentServiceClient;
+import com.programthis.order_cart_service.client.UserServiceClient;
+import com.programthis.order_cart_service.config.PendingOrderRecoveryProperties;
+import com.programthis.order_cart_service.dto.PaymentResponseDto;
+import com.programthis.order_cart_service.dto.UserDto;
+import com.programthis.order_cart_service.model.CartItem;
+import com.programthis.order_cart_service.model.Order;
+import com.programthis.order_cart_service.repository.OrderRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+// Recupera los pedidos que se quedaron en PENDING. En el checkout asíncrono el pago sigue en paymentPipelineExecutor
+// después de responder 202, solo en memoria: si la instancia cae o la tarea se pierde, el pedido no saldría nunca de
+// PENDING y los ítems no volverían al carrito.
+// Cada pasada busca los pedidos PENDING sin cambios desde hace checkout.pending-recovery.stale-after y pregunta al
+// Payment Service por su pago:
+//   - Si lo conoce, se registra su resultado como en el checkout (y, si se completó, se encola la confirmación).
+//   - Si no, el pago no llegó a enviarse: se compensa (PAYMENT_FAILED y los ítems vuelven al carrito). No se reintenta
+//     el cobro sin el cliente delante.
+// Si algo falla (Payment o User Service caídos), el pedido se vuelve a intentar pasado otro stale-after.
+// La reserva incrementa la versión del pedido: si el pago asíncrono seguía en la cola ya no cobra, y si estaba en curso
+// su resultado se descarta, porque registrar el pago y compensar solo se aplican sobre la versión leída (OrderService)
+@Service
+public class PendingOrderRecoveryService {
+
+    private final OrderRepository orderRepository;
+    private final OrderService orderService;
+    private final PaymentServiceClient paymentServiceClient;
+    private final UserServiceClient userServiceClient;
+    private final TransactionTemplate transactionTemplate;
+    private final PendingOrderRecoveryProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public PendingOrderRecoveryService(OrderRepository orderRepository,
+                                       OrderService orderService,
+                                       PaymentServiceClient paymentServiceClient,
+                                       UserServiceClient userServiceClient,
+                                       PlatformTransactionManager transactionManager,
+                                       PendingOrderRecoveryProperties properties,
+                                       MeterRegistry meterRegistry) {
+        this.orderRepository = orderRepository;
+        this.orderService = orderService;
+        this.paymentServiceClient = paymentServiceClient;
+        this.userServiceClient = userServiceClient;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Scheduled(fixedDelayString = "${checkout.pending-recovery.interval-ms:60000}")
+    public void recoverStalePendingOrders() {
+        LocalDateTime staleBefore = LocalDateTime.now().minus(properties.getStaleAfter());
+        List<Long> orderIds = orderRepository.findStalePendingIds(staleBefore, PageRequest.of(0, properties.getBatchSize()));
+        for (Long orderId : orderIds) {
+            try {
+                recover(orderId, staleBefore);
+            } catch (RuntimeException e) {
+                record("error");
+                System.err.println("No se pudo recuperar la orden PENDING " + orderId + ", se reintentará: " + e.getMessage());
+            }
+        }
+    }
+
+    private void recover(Long orderId, LocalDateTime staleBefore) {
+        // La reserva renueva updated_at: otra instancia (o la siguiente pasada) no lo toma hasta pasado stale-after
+        Order order = transactionTemplate.execute(status -> {
+            if (orderRepository.claimStalePending(orderId, staleBefore, LocalDateTime.now()) != 1) {
+                return null;
+            }
+            return orderRepository.findById(orderId).orElse(null);
+        });
+        if (order == null) {
+            return; // Ya no está PENDING, o la reservó otra instancia
+        }
+
+        Optional<PaymentResponseDto> payment = paymentServiceClient.getPaymentStatusByOrderId(order.getId().toString());
+        if (payment.isPresent()) {
+            UserDto user = userServiceClient.getUserById(order.getUserId())
+                    .orElseThrow(() -> OrderService.userNotFound(order.getUserId()));
+            orderService.recordPaymentResult(order, payment.get(), user);
+            record("payment-recorded");
+        } else {
+            orderService.compensateFailedPayment(order, cartItemsOf(order));
+            record("compensated");
+            System.out.println("Orden " + order.getId() + " sin pago tras quedar abandonada en PENDING: se marca PAYMENT_FAILED.");
+        }
+    }
+
+    // Ítems a devolver al carrito, con el precio al que se pidieron
+    private static List<CartItem> cartItemsOf(Order order) {
+        return order.getItems().stream()
+                .map(orderItem -> {
+                    CartItem item = new CartItem();
+                    item.setProductId(orderItem.getProductId());
+                    item.setQuantity(orderItem.getQuantity());
+                    item.setPriceAtAddition(orderItem.getUnitPrice());
+                    return item;
+                })
+                .collect(Collectors.toList());
+    }
+
+    private void record(String outcome) {
+        meterRegistry.counter("checkout.pending.recovery", "outcome", outcome).increment();
+    }
+}
@@ -0,0 +1,39 @@
+package com.programthis.order_cart_service.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.function.Supplier;
+
+// Ejecuta trabajo JPA (bloqueante) desde los flujos reactivos: en una transacción y en el scheduler "jpa",
+// nunca en el event loop. Un resultado null se traduce en un Mono vacío.
+@Component
+@Profile("reactive")
+public class ReactiveJpaBridge {
+
+    private final TransactionTemplate transactionTemplate;
+    private final Scheduler jpaScheduler;
+
+    @Autowired
+    public ReactiveJpaBridge(PlatformTransactionManager transactionManager,
+                             @Qualifier("jpaScheduler") Scheduler jpaScheduler) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.jpaScheduler = jpaScheduler;
+    }
+
+    public <T> Mono<T> inTransaction(Supplier<T> work) {
+        return Mono.fromCallable(() -> transactionTemplate.execute(status -> work.get()))
+                .subscribeOn(jpaScheduler);
+    }
+
+    // Para los pasos que gestionan sus propias transacciones (ej. las fases del checkout en OrderService)
+    public <T> Mono<T> offload(Supplier<T> work) {
+        return Mono.fromSupplier(work).subscribeOn(jpaScheduler);
+    }
+}
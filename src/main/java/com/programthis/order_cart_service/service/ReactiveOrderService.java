@@ -0,0 +1,190 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.client.ReactivePaymentServiceClient;
+import com.programthis.order_cart_service.client.ReactiveProductCatalogServiceClient;
+import com.programthis.order_cart_service.client.ReactiveUserServiceClient;
+import com.programthis.order_cart_service.dto.OrderHistoryPage;
+import com.programthis.order_cart_service.dto.OrderSummaryPage;
+import com.programthis.order_cart_service.dto.ProductDto;
+import com.programthis.order_cart_service.dto.UserDto;
+import com.programthis.order_cart_service.model.CartItem;
+import com.programthis.order_cart_service.model.Order;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+// Checkout no bloqueante (perfil "reactive"). Sigue las mismas fases que OrderService.createOrderFromCart y
+// reutiliza sus pasos de base de datos, pero las llamadas remotas usan WebClient y el acceso a JPA se ejecuta
+// en el scheduler "jpa" (ReactiveJpaBridge), de modo que ningún hilo del event loop espera a la red ni a MySQL.
+@Service
+@Profile("reactive")
+public class ReactiveOrderService {
+
+    private final OrderService orderService;
+    private final ReactiveUserServiceClient userServiceClient;
+    private final ReactiveProductCatalogServiceClient productCatalogServiceClient;
+    private final ReactivePaymentServiceClient paymentServiceClient;
+    private final ReactiveJpaBridge jpa;
+    private final MeterRegistry meterRegistry;
+    private final Duration remoteDeadline;
+
+    @Autowired
+    public ReactiveOrderService(OrderService orderService,
+                                ReactiveUserServiceClient userServiceClient,
+                                ReactiveProductCatalogServiceClient productCatalogServiceClient,
+                                ReactivePaymentServiceClient paymentServiceClient,
+                                ReactiveJpaBridge jpa,
+                                MeterRegistry meterRegistry,
+                                @Value("${checkout.remote-deadline:3s}") Duration remoteDeadline) {
+        this.orderService = orderService;
+        this.userServiceClient = userServiceClient;
+        this.productCatalogServiceClient = productCatalogServiceClient;
+        this.paymentServiceClient = paymentServiceClient;
+        this.jpa = jpa;
+        this.meterRegistry = meterRegistry;
+        this.remoteDeadline = remoteDeadline;
+    }
+
+    public Mono<Order> createOrderFromCart(Long userId, String shippingAddress, String paymentMethod) {
+        // Como en el checkout bloqueante, los errores del pago llegan como CheckoutPaymentFailedException
+        return reserveOrder(userId, shippingAddress, paymentMethod)
+                .flatMap(reservation -> completePayment(reservation)
+                        .onErrorMap(e -> new CheckoutPaymentFailedException(reservation.order, e)));
+    }
+
+    // Modo asíncrono: el pago continúa tras completar el Mono devuelto, que emite el pedido en PENDING
+    public Mono<Order> submitOrderFromCart(Long userId, String shippingAddress, String paymentMethod) {
+        return reserveOrder(userId, shippingAddress, paymentMethod)
+                .doOnNext(reservation -> completePayment(reservation).subscribe(
+                        order -> { },
+                        e -> System.err.println("Checkout asíncrono de la orden " + reservation.order.getId()
+                                + " terminado con error: " + e.getMessage())))
+                .map(reservation -> reservation.order);
+    }
+
+    private Mono<CheckoutReservation> reserveOrder(Long userId, String shippingAddress, String paymentMethod) {
+        return jpa.offload(() -> orderService.snapshotCart(userId))
+                .flatMap(cartItems -> {
+                    List<Long> productIds = cartItems.stream()
+                            .map(CartItem::getProductId)
+                            .collect(Collectors.toList());
+                    // Usuario y productos en paralelo, con el mismo plazo global que el checkout bloqueante
+                    Set<String> pending = ConcurrentHashMap.newKeySet();
+                    Mono<UserDto> user = timed(OrderService.USER_DEPENDENCY, pending,
+                            userServiceClient.getUserById(userId).switchIfEmpty(Mono.error(() -> OrderService.userNotFound(userId))));
+                    Mono<Map<Long, ProductDto>> products = timed(OrderService.CATALOG_DEPENDENCY, pending,
+                            productCatalogServiceClient.getProductsByIds(productIds));
+                    return Mono.zip(user, products)
+                            .timeout(remoteDeadline)
+                            .onErrorMap(TimeoutException.class, e -> deadlineExceeded(pending))
+                            .flatMap(lookups -> {
+                                Order newOrder = orderService.buildPendingOrder(userId, shippingAddress, paymentMethod,
+                                        cartItems, lookups.getT2());
+                                return jpa.offload(() -> orderService.persistPendingOrder(newOrder, cartItems))
+                                        .map(savedOrder -> new CheckoutReservation(savedOrder, cartItems, lookups.getT1()));
+                            });
+                });
+    }
+
+    private Mono<Order> completePayment(CheckoutReservation reservation) {
+        Order savedOrder = reservation.order;
+        return paymentServiceClient.processPayment(orderService.paymentRequestFor(savedOrder))
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                // Error de comunicación con el Payment Service: se compensa y se propaga
+                .onErrorResume(e -> compensate(reservation).then(Mono.error(e)))
+                .flatMap(paymentResponse -> paymentResponse.isPresent()
+                        ? jpa.offload(() -> orderService.recordPaymentResult(savedOrder, paymentResponse.get(), reservation.user))
+                        : compensate(reservation).then(Mono.error(() -> OrderService.paymentFailed(savedOrder))));
+    }
+
+    private Mono<Void> compensate(CheckoutReservation reservation) {
+        return jpa.offload(() -> {
+            orderService.compensateFailedPayment(reservation.order, reservation.cartItems);
+            return reservation.order;
+        }).then();
+    }
+
+    // Registra la latencia de la dependencia y la mantiene en "pending" hasta que responde
+    private <T> Mono<T> timed(String dependency, Set<String> pending, Mono<T> lookup) {
+        return Mono.defer(() -> {
+            pending.add(dependency);
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return lookup.doFinally(signal -> {
+                // El plazo cancela la consulta antes de propagar el error: una dependencia cancelada sigue
+                // en "pending" para que deadlineExceeded pueda nombrarla
+                if (signal != SignalType.CANCEL) {
+                    pending.remove(dependency);
+                }
+                sample.stop(meterRegistry.timer("checkout.dependency.latency", "dependency", dependency));
+            });
+        });
+    }
+
+    private CheckoutDeadlineExceededException deadlineExceeded(Set<String> pending) {
+        List<String> slowest = pending.stream().sorted().collect(Collectors.toList());
+        slowest.forEach(dependency -> meterRegistry.counter("checkout.deadline.exceeded", "dependency", dependency).increment());
+        System.err.println("Checkout fuera de plazo (" + remoteDeadline.toMillis() + " ms). Dependencias pendientes: " + slowest);
+        return new CheckoutDeadlineExceededException(slowest, remoteDeadline);
+    }
+
+    // Consultas: la colección LAZY de ítems se inicializa dentro de la transacción para poder serializarla después
+
+    public Mono<Order> getOrderById(Long orderId) {
+        return jpa.inTransaction(() -> orderService.getOrderById(orderId)
+                .map(ReactiveOrderService::initializeItems)
+                .orElse(null));
+    }
+
+    public Mono<OrderHistoryPage> getOrderHistory(Long userId, String cursor, int pageSize) {
+        return jpa.offload(() -> orderService.getOrderHistory(userId, cursor, pageSize));
+    }
+
+    public Mono<OrderSummaryPage> getOrderSummaries(Long userId, String cursor, int pageSize) {
+        return jpa.offload(() -> orderService.getOrderSummaries(userId, cursor, pageSize));
+    }
+
+    public Mono<Order> updateOrderStatus(Long orderId, String newStatus) {
+        return jpa.inTransaction(() -> initializeItems(orderService.updateOrderStatus(orderId, newStatus)));
+    }
+
+    public Mono<Void> deleteOrder(Long orderId) {
+        return jpa.offload(() -> {
+            orderService.deleteOrder(orderId);
+            return orderId;
+        }).then();
+    }
+
+    private static Order initializeItems(Order order) {
+        Hibernate.initialize(order.getItems());
+        return order;
+    }
+
+    private static class CheckoutReservation {
+        private final Order order;
+        private final List<CartItem> cartItems;
+        private final UserDto user;
+
+        private CheckoutReservation(Order order, List<CartItem> cartItems, UserDto user) {
+            this.order = order;
+            this.cartItems = cartItems;
+            this.user = user;
+        }
+    }
+}
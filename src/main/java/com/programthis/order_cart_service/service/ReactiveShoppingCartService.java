@@ -0,0 +1,73 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.client.ReactiveProductCatalogServiceClient;
+import com.programthis.order_cart_service.dto.CartItemOperationDto;
+import com.programthis.order_cart_service.dto.ProductDto;
+import com.programthis.order_cart_service.model.ShoppingCart;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+// Operaciones de carrito para el perfil "reactive": la consulta al catálogo usa WebClient y las escrituras
+// reutilizan ShoppingCartService en el scheduler "jpa" (ReactiveJpaBridge), fuera del event loop.
+// ShoppingCartService gestiona sus transacciones (CartMutationGuard, con reintentos) y devuelve el carrito con sus
+// ítems ya cargados, así que aquí solo se descarga el trabajo con offload
+@Service
+@Profile("reactive")
+public class ReactiveShoppingCartService {
+
+    private final ShoppingCartService shoppingCartService;
+    private final ReactiveProductCatalogServiceClient productCatalogServiceClient;
+    private final ReactiveJpaBridge jpa;
+
+    @Autowired
+    public ReactiveShoppingCartService(ShoppingCartService shoppingCartService,
+                                       ReactiveProductCatalogServiceClient productCatalogServiceClient,
+                                       ReactiveJpaBridge jpa) {
+        this.shoppingCartService = shoppingCartService;
+        this.productCatalogServiceClient = productCatalogServiceClient;
+        this.jpa = jpa;
+    }
+
+    // También con la caché de carritos se consulta la versión en el almacén, así que siempre en el scheduler "jpa"
+    public Mono<ShoppingCart> getCart(Long userId) {
+        return jpa.offload(() -> shoppingCartService.getCart(userId));
+    }
+
+    public Mono<ShoppingCart> addProductToCart(Long userId, Long productId, Integer quantity) {
+        return productCatalogServiceClient.getProductById(productId)
+                .flatMap(productDto -> productDto.isPresent()
+                        ? jpa.offload(() -> shoppingCartService.addProductToCart(userId, productDto.get(), quantity))
+                        : Mono.error(new RuntimeException("Producto con ID " + productId + " no encontrado en el catálogo. No se puede añadir al carrito.")));
+    }
+
+    public Mono<ShoppingCart> applyItemOperations(Long userId, List<CartItemOperationDto> operations) {
+        List<Long> addedProductIds;
+        try {
+            CartItemOperations.validate(operations);
+            addedProductIds = CartItemOperations.addedProductIds(operations);
+        } catch (RuntimeException e) {
+            return Mono.error(e);
+        }
+        Mono<Map<Long, ProductDto>> products = addedProductIds.isEmpty()
+                ? Mono.just(Map.of())
+                : productCatalogServiceClient.getProductsByIds(addedProductIds);
+        return products.flatMap(found -> jpa.offload(() -> shoppingCartService.applyItemOperations(userId, operations, found)));
+    }
+
+    public Mono<ShoppingCart> updateProductQuantityInCart(Long userId, Long productId, Integer newQuantity) {
+        return jpa.offload(() -> shoppingCartService.updateProductQuantityInCart(userId, productId, newQuantity));
+    }
+
+    public Mono<ShoppingCart> removeProductFromCart(Long userId, Long productId) {
+        return jpa.offload(() -> shoppingCartService.removeProductFromCart(userId, productId));
+    }
+
+    public Mono<ShoppingCart> clearCart(Long userId) {
+        return jpa.offload(() -> shoppingCartService.clearCart(userId));
+    }
+}
@@ -2,142 +2,124 @@ package com.programthis.order_cart_service.service;
 
 import com.programthis.order_cart_service.model.CartItem;
 import com.programthis.order_cart_service.model.ShoppingCart;
-import com.programthis.order_cart_service.repository.CartItemRepository;
-import com.programthis.order_cart_service.repository.ShoppingCartRepository;
 import com.programthis.order_cart_service.client.ProductCatalogServiceClient; // ¡Añadido!
 import com.programthis.order_cart_service.dto.ProductDto; // ¡Añadido!
-import jakarta.transaction.Transactional;
+import com.programthis.order_cart_service.dto.CartItemOperationDto;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+// Operaciones de carrito de la API y del checkout. La lectura y escritura de los carritos la hace el CartStore
+// configurado (cart.store.mode): directamente en MySQL o en memoria con escritura diferida.
+// Cada operación deja en CartViewCache el carrito resultante (o lo invalida), para que getCart pueda servirlo sin cargarlo
 @Service
 public class ShoppingCartService {
 
-    private final ShoppingCartRepository shoppingCartRepository;
-    private final CartItemRepository cartItemRepository;
+    private final CartStore cartStore;
     private final ProductCatalogServiceClient productCatalogServiceClient; // ¡Añadido!
+    private final CartViewCache cartViewCache;
 
     @Autowired
-    public ShoppingCartService(ShoppingCartRepository shoppingCartRepository,
-                               CartItemRepository cartItemRepository,
-                               ProductCatalogServiceClient productCatalogServiceClient) { // ¡Añadido!
-        this.shoppingCartRepository = shoppingCartRepository;
-        this.cartItemRepository = cartItemRepository;
+    public ShoppingCartService(CartStore cartStore,
+                               ProductCatalogServiceClient productCatalogServiceClient, // ¡Añadido!
+                               CartViewCache cartViewCache) {
+        this.cartStore = cartStore;
         this.productCatalogServiceClient = productCatalogServiceClient; // ¡Añadido!
+        this.cartViewCache = cartViewCache;
     }
 
-    // Obtener o crear un carrito para un usuario
-    @Transactional
+    // Obtener o crear un carrito para un usuario (siempre desde el almacén)
     public ShoppingCart getOrCreateShoppingCart(Long userId) {
-        Optional<ShoppingCart> existingCart = shoppingCartRepository.findByUserId(userId);
-        if (existingCart.isPresent()) {
-            return existingCart.get();
-        } else {
-            ShoppingCart newCart = new ShoppingCart();
-            newCart.setUserId(userId);
-            return shoppingCartRepository.save(newCart);
-        }
+        return cartViewCache.update(cartStore.getOrCreateShoppingCart(userId));
+    }
+
+    // Carrito guardado del usuario, siempre desde el almacén y sin crearlo si no existe (lo usa el checkout)
+    public Optional<ShoppingCart> findShoppingCart(Long userId) {
+        return cartStore.findShoppingCart(userId);
+    }
+
+    // Carrito para la API de lectura: desde la caché si su versión sigue siendo la del almacén, y si no desde el
+    // almacén. No escribe nada: si el usuario aún no tiene carrito devuelve uno vacío sin guardarlo
+    // (ShoppingCart.emptyFor), que se crea con la primera modificación
+    public ShoppingCart getCart(Long userId) {
+        return cartViewCache.get(userId, () -> cartStore.findVersion(userId))
+                .or(() -> cartStore.findShoppingCart(userId).map(cartViewCache::update))
+                .orElseGet(() -> ShoppingCart.emptyFor(userId));
     }
 
     // Añadir producto al carrito
     // Ahora solo necesita productId y quantity, el precio se obtiene del Product Catalog Service
-    @Transactional
+    // (la consulta al catálogo queda fuera de la transacción)
     public ShoppingCart addProductToCart(Long userId, Long productId, Integer quantity) {
         // 1. Obtener información del producto del Product Catalog Service
         Optional<ProductDto> productDtoOptional = productCatalogServiceClient.getProductById(productId);
         if (productDtoOptional.isEmpty()) {
             throw new RuntimeException("Producto con ID " + productId + " no encontrado en el catálogo. No se puede añadir al carrito.");
         }
-        ProductDto productDto = productDtoOptional.get();
-        BigDecimal priceAtAddition = productDto.getPrice(); // Usar el precio del catálogo
-
-        // 2. Obtener o crear el carrito
-        ShoppingCart cart = getOrCreateShoppingCart(userId);
-
-        // 3. Buscar si el producto ya está en el carrito
-        Optional<CartItem> existingItem = cart.getItems().stream()
-                .filter(item -> item.getProductId().equals(productId))
-                .findFirst();
-
-        if (existingItem.isPresent()) {
-            // Si ya existe, actualizar la cantidad
-            CartItem item = existingItem.get();
-            item.setQuantity(item.getQuantity() + quantity);
-            // El priceAtAddition se mantiene el original del momento de la primera adición
-            cartItemRepository.save(item);
-        } else {
-            // Si no existe, crear un nuevo item de carrito
-            CartItem newItem = new CartItem();
-            newItem.setProductId(productId);
-            newItem.setQuantity(quantity);
-            newItem.setPriceAtAddition(priceAtAddition); // Usar el precio del catálogo
-            newItem.setCart(cart); // Establece la relación bidireccional
-            cart.addCartItem(newItem); // Añade al carrito y actualiza la relación
-            cartItemRepository.save(newItem);
-        }
-        return shoppingCartRepository.save(cart); // Guarda el carrito para actualizar updated_at
+        return addProductToCart(userId, productDtoOptional.get(), quantity);
+    }
+
+    // Añadir al carrito un producto ya obtenido del catálogo (lo usa también el carrito reactivo,
+    // que consulta el catálogo sin bloquear antes de entrar en la transacción)
+    public ShoppingCart addProductToCart(Long userId, ProductDto productDto, Integer quantity) {
+        return cartViewCache.update(cartStore.addProductToCart(userId, productDto, quantity));
     }
 
     // Actualizar cantidad de un producto en el carrito
-    @Transactional
     public ShoppingCart updateProductQuantityInCart(Long userId, Long productId, Integer newQuantity) {
-        ShoppingCart cart = shoppingCartRepository.findByUserId(userId)
-                .orElseThrow(() -> new RuntimeException("Carrito no encontrado para el usuario: " + userId));
-
-        Optional<CartItem> existingItem = cart.getItems().stream()
-                .filter(item -> item.getProductId().equals(productId))
-                .findFirst();
-
-        if (existingItem.isPresent()) {
-            CartItem item = existingItem.get();
-            if (newQuantity <= 0) {
-                // Si la nueva cantidad es 0 o menos, eliminar el ítem del carrito
-                cart.removeCartItem(item);
-                cartItemRepository.delete(item);
-            } else {
-                item.setQuantity(newQuantity);
-                cartItemRepository.save(item);
-            }
-            return shoppingCartRepository.save(cart); // Guarda el carrito para actualizar updated_at
-        } else {
-            throw new RuntimeException("Producto con ID " + productId + " no encontrado en el carrito para actualizar.");
-        }
+        return cartViewCache.update(cartStore.updateProductQuantityInCart(userId, productId, newQuantity));
     }
 
     // Eliminar un producto del carrito
-    @Transactional
     public ShoppingCart removeProductFromCart(Long userId, Long productId) {
-        ShoppingCart cart = shoppingCartRepository.findByUserId(userId)
-                .orElseThrow(() -> new RuntimeException("Carrito no encontrado para el usuario: " + userId));
-
-        Optional<CartItem> itemToRemove = cart.getItems().stream()
-                .filter(item -> item.getProductId().equals(productId))
-                .findFirst();
-
-        if (itemToRemove.isPresent()) {
-            CartItem item = itemToRemove.get();
-            cart.removeCartItem(item); // Elimina del carrito y actualiza la relación
-            cartItemRepository.delete(item); // Elimina el item de la base de datos
-            return shoppingCartRepository.save(cart); // Guarda el carrito para actualizar updated_at
-        } else {
-            throw new RuntimeException("Producto con ID " + productId + " no encontrado en el carrito para eliminar.");
-        }
+        return cartViewCache.update(cartStore.removeProductFromCart(userId, productId));
     }
 
-    // Vaciar el carrito
-    @Transactional
+    // Aplicar varias operaciones (añadir, actualizar, eliminar) en orden y en una sola transacción: todas o ninguna.
+    // Los productos a añadir se piden al catálogo en una sola búsqueda, fuera de la transacción
+    public ShoppingCart applyItemOperations(Long userId, List<CartItemOperationDto> operations) {
+        CartItemOperations.validate(operations);
+        List<Long> addedProductIds = CartItemOperations.addedProductIds(operations);
+        Map<Long, ProductDto> products = addedProductIds.isEmpty()
+                ? Map.of()
+                : productCatalogServiceClient.getProductsByIds(addedProductIds);
+        return applyItemOperations(userId, operations, products);
+    }
+
+    // Igual, con los productos a añadir ya obtenidos del catálogo (lo usa también el carrito reactivo)
+    public ShoppingCart applyItemOperations(Long userId, List<CartItemOperationDto> operations, Map<Long, ProductDto> products) {
+        CartItemOperations.validate(operations);
+        CartItemOperations.addedProductIds(operations).forEach(productId -> CartItemOperations.catalogPrice(products, productId));
+        return cartViewCache.update(cartStore.applyItemOperations(userId, operations, products));
+    }
+
+    // Devolver al carrito los ítems de un pedido cuyo pago falló (compensación del checkout).
+    // Se conserva el precio original de cada ítem y se suman las cantidades si el producto ya volvió a añadirse.
+    // Se ejecuta dentro de la transacción del checkout: la caché se invalida al confirmarla
+    public ShoppingCart restoreCartItems(Long userId, List<CartItem> items) {
+        ShoppingCart cart = cartStore.restoreCartItems(userId, items);
+        cartViewCache.evictAfterCommit(userId);
+        return cart;
+    }
+
+    // Vaciar el carrito y devolverlo (vacío)
     public ShoppingCart clearCart(Long userId) {
-        ShoppingCart cart = shoppingCartRepository.findByUserId(userId)
-                .orElseThrow(() -> new RuntimeException("Carrito no encontrado para el usuario: " + userId));
+        return cartViewCache.update(cartStore.clearCart(userId));
+    }
 
-        // Solo eliminar si hay ítems para evitar errores con deleteAll(empty list)
-        if (!cart.getItems().isEmpty()) {
-            cartItemRepository.deleteAll(cart.getItems()); // Elimina todos los ítems del carrito
-        }
-        cart.getItems().clear(); // Limpia la lista en memoria
-        return shoppingCartRepository.save(cart); // Guarda el carrito para actualizar updated_at
+    // Quitar del carrito los ítems de un pedido, sin cargarlo. Lo usa el checkout, que no necesita el carrito resultante.
+    // Se resta solo lo pedido: lo que el usuario añadió durante el checkout sigue en el carrito
+    public void removeOrderedItems(Long userId, List<CartItem> orderedItems) {
+        cartStore.removeOrderedItems(userId, orderedItems);
+        cartViewCache.evictAfterCommit(userId);
+    }
+
+    // Escribir en MySQL los cambios del carrito que aún estén solo en memoria (modo write-behind).
+    // El checkout lo llama antes de leer el carrito
+    public void flushPendingChanges(Long userId) {
+        cartStore.flush(userId);
     }
-}
\ No newline at end of file
+}
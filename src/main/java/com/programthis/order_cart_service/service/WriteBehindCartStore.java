@@ -0,0 +1,588 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.config.CartStoreProperties;
+import com.programthis.order_cart_service.dto.CartItemOperationDto;
+import com.programthis.order_cart_service.dto.ProductDto;
+import com.programthis.order_cart_service.model.CartItem;
+import com.programthis.order_cart_service.model.ShoppingCart;
+import com.programthis.order_cart_service.repository.CartItemRepository;
+import com.programthis.order_cart_service.repository.ShoppingCartRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Almacén de carritos con escritura diferida (cart.store.mode=write-behind). Los carritos activos se modifican en
+// memoria y solo se escriben en MySQL cada cart.store.flush-interval-ms, por lotes y con los cambios acumulados
+// desde la escritura anterior: diez clics sobre la cantidad de un producto acaban en un único upsert.
+// También se escribe todo al parar la aplicación y, de un carrito concreto, cuando lo pide el checkout (flush).
+//
+// Solo vale para despliegues de una instancia: la memoria es la fuente de verdad de los carritos cargados, así que
+// otra instancia no vería sus cambios pendientes. Los cambios que aún no se han escrito se pierden si el proceso muere.
+//
+// La compensación y el vaciado del checkout se ejecutan dentro de su transacción, directamente en MySQL (JpaCartStore):
+// antes de delegar se escriben los cambios pendientes del carrito y este sale de memoria. Hasta que esa transacción
+// termina, el carrito no se vuelve a cargar: se leería sin sus cambios, que aún no se han confirmado, y la siguiente
+// escritura diferida los desharía.
+@Component
+@Primary
+@ConditionalOnProperty(name = "cart.store.mode", havingValue = "write-behind")
+public class WriteBehindCartStore implements CartStore {
+
+    private final JpaCartStore jpaCartStore;
+    private final ShoppingCartRepository shoppingCartRepository;
+    private final CartItemRepository cartItemRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final CartStoreProperties properties;
+    private final Map<Long, CachedCart> carts = new ConcurrentHashMap<>();
+    // Usuarios con una transacción del checkout abierta sobre su carrito, y cuántas: sus operaciones van directamente
+    // a MySQL. Se protege con su propio monitor, que también ordena la entrada de los carritos recién cargados
+    private final Map<Long, Integer> directUsers = new HashMap<>();
+    // Evita que la escritura programada y la de la parada se solapen (cada una toma varios carritos)
+    private final ReentrantLock flushAllLock = new ReentrantLock();
+    private final Counter flushedCarts;
+    private final Counter flushFailures;
+
+    @Autowired
+    public WriteBehindCartStore(JpaCartStore jpaCartStore,
+                                ShoppingCartRepository shoppingCartRepository,
+                                CartItemRepository cartItemRepository,
+                                PlatformTransactionManager transactionManager,
+                                CartStoreProperties properties,
+                                MeterRegistry meterRegistry) {
+        this.jpaCartStore = jpaCartStore;
+        this.shoppingCartRepository = shoppingCartRepository;
+        this.cartItemRepository = cartItemRepository;
+        // Transacción propia: lo escrito no depende de que se confirme la transacción del checkout que lo pida
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.properties = properties;
+        Gauge.builder("cart.store.carts", carts, Map::size)
+                .description("Carritos en memoria")
+                .register(meterRegistry);
+        this.flushedCarts = Counter.builder("cart.store.flushed")
+                .description("Carritos con cambios escritos en MySQL")
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder("cart.store.flush.failures")
+                .description("Lotes de carritos que no se pudieron escribir (se reintentan en la siguiente escritura)")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public ShoppingCart getOrCreateShoppingCart(Long userId) {
+        return apply(userId, null, () -> jpaCartStore.getOrCreateShoppingCart(userId));
+    }
+
+    @Override
+    public ShoppingCart addProductToCart(Long userId, ProductDto productDto, Integer quantity) {
+        return apply(userId, cart -> {
+            CartLine line = cart.lines.get(productDto.getId());
+            cart.put(productDto.getId(), line == null
+                    ? new CartLine(null, quantity, productDto.getPrice())
+                    : new CartLine(line.itemId(), line.quantity() + quantity, line.priceAtAddition()));
+        }, () -> jpaCartStore.addProductToCart(userId, productDto, quantity));
+    }
+
+    @Override
+    public ShoppingCart updateProductQuantityInCart(Long userId, Long productId, Integer newQuantity) {
+        return apply(userId, cart -> {
+            CartLine line = cart.lines.get(productId);
+            if (line == null) {
+                throw new RuntimeException("Producto con ID " + productId + " no encontrado en el carrito para actualizar.");
+            }
+            if (newQuantity <= 0) {
+                cart.remove(productId);
+            } else {
+                cart.put(productId, new CartLine(line.itemId(), newQuantity, line.priceAtAddition()));
+            }
+        }, () -> jpaCartStore.updateProductQuantityInCart(userId, productId, newQuantity));
+    }
+
+    @Override
+    public ShoppingCart removeProductFromCart(Long userId, Long productId) {
+        return apply(userId, cart -> {
+            if (!cart.lines.containsKey(productId)) {
+                throw new RuntimeException("Producto con ID " + productId + " no encontrado en el carrito para eliminar.");
+            }
+            cart.remove(productId);
+        }, () -> jpaCartStore.removeProductFromCart(userId, productId));
+    }
+
+    @Override
+    public ShoppingCart applyItemOperations(Long userId, List<CartItemOperationDto> operations, Map<Long, ProductDto> products) {
+        return apply(userId, cart -> cart.applyAll(operations, products),
+                () -> jpaCartStore.applyItemOperations(userId, operations, products));
+    }
+
+    // Desde memoria si el carrito está cargado; si no, se lee de MySQL sin cargarlo (una lectura no ocupa sitio)
+    @Override
+    public Optional<ShoppingCart> findShoppingCart(Long userId) {
+        CachedCart cart = carts.get(userId);
+        if (cart != null) {
+            cart.lock.lock();
+            try {
+                if (!cart.released) {
+                    cart.lastAccessNanos = System.nanoTime();
+                    return Optional.of(cart.toShoppingCart());
+                }
+            } finally {
+                cart.lock.unlock();
+            }
+        }
+        return jpaCartStore.findShoppingCart(userId);
+    }
+
+    // La del carrito en memoria si está cargado (la de MySQL va por detrás hasta la siguiente escritura)
+    @Override
+    public Optional<Long> findVersion(Long userId) {
+        CachedCart cart = carts.get(userId);
+        if (cart != null) {
+            cart.lock.lock();
+            try {
+                if (!cart.released) {
+                    return Optional.of(cart.loadedVersion + cart.modifications);
+                }
+            } finally {
+                cart.lock.unlock();
+            }
+        }
+        return jpaCartStore.findVersion(userId);
+    }
+
+    @Override
+    public ShoppingCart clearCart(Long userId) {
+        return apply(userId, CachedCart::clear, () -> jpaCartStore.clearCart(userId));
+    }
+
+    @Override
+    public ShoppingCart restoreCartItems(Long userId, List<CartItem> items) {
+        bypassUntilTransactionEnds(userId);
+        return jpaCartStore.restoreCartItems(userId, items);
+    }
+
+    // Los cambios pendientes se escriben antes de restar: lo que el usuario cambió después de la instantánea del
+    // checkout se conserva
+    @Override
+    public void removeOrderedItems(Long userId, List<CartItem> orderedItems) {
+        bypassUntilTransactionEnds(userId);
+        jpaCartStore.removeOrderedItems(userId, orderedItems);
+    }
+
+    @Override
+    public void flush(Long userId) {
+        CachedCart cart = carts.get(userId);
+        if (cart == null) {
+            return;
+        }
+        cart.flushLock.lock();
+        try {
+            CartChanges changes = cart.takeChanges();
+            if (changes != null) {
+                writeOrRestore(List.of(changes));
+            }
+        } finally {
+            cart.flushLock.unlock();
+        }
+    }
+
+    // Escribe por lotes los carritos con cambios y saca de memoria los que llevan tiempo sin usarse. Se ejecuta en su
+    // propio planificador (SchedulingConfig.cartFlushScheduler), sin esperar a las demás tareas @Scheduled
+    @Scheduled(fixedDelayString = "${cart.store.flush-interval-ms:1000}", scheduler = "cartFlushScheduler")
+    public void flushDirtyCarts() {
+        flushAllLock.lock();
+        try {
+            List<CachedCart> batch = new ArrayList<>();
+            for (CachedCart cart : carts.values()) {
+                batch.add(cart);
+                if (batch.size() >= properties.getFlushBatchSize()) {
+                    flushBatch(batch);
+                    batch.clear();
+                }
+            }
+            flushBatch(batch);
+            evictIdleCarts();
+        } finally {
+            flushAllLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        System.out.println("Escribiendo los carritos pendientes antes de parar (" + carts.size() + " en memoria).");
+        flushDirtyCarts();
+    }
+
+    // Aplica una operación al carrito en memoria y devuelve una copia. Si el carrito no está en memoria y no cabe,
+    // la operación va directamente a MySQL (whenNotCached). mutation == null es una lectura
+    private ShoppingCart apply(Long userId, Consumer<CachedCart> mutation, Supplier<ShoppingCart> whenNotCached) {
+        while (true) {
+            CachedCart cart = cachedOrLoad(userId);
+            if (cart == null) {
+                return whenNotCached.get();
+            }
+            cart.lock.lock();
+            try {
+                if (cart.released) {
+                    continue; // Salió de memoria mientras se esperaba: se vuelve a cargar desde MySQL
+                }
+                if (mutation != null) {
+                    mutation.accept(cart);
+                    cart.modifications++;
+                    cart.updatedAt = LocalDateTime.now();
+                }
+                cart.lastAccessNanos = System.nanoTime();
+                return cart.toShoppingCart();
+            } finally {
+                cart.lock.unlock();
+            }
+        }
+    }
+
+    private CachedCart cachedOrLoad(Long userId) {
+        CachedCart cached = carts.get(userId);
+        if (cached != null || carts.size() >= properties.getMaxCarts() || isDirect(userId)) {
+            return cached;
+        }
+        // La carga (y la creación del carrito si no existe) se hace fuera del mapa; si otra petición del mismo
+        // usuario lo cargó a la vez, gana la primera. Si mientras tanto el checkout abrió su transacción sobre el
+        // carrito, lo cargado se descarta (el checkout no lo vio al sacarlo de memoria)
+        CachedCart loaded = new CachedCart(jpaCartStore.getOrCreateShoppingCart(userId));
+        synchronized (directUsers) {
+            if (directUsers.containsKey(userId)) {
+                return null;
+            }
+            CachedCart existing = carts.putIfAbsent(userId, loaded);
+            return existing != null ? existing : loaded;
+        }
+    }
+
+    private boolean isDirect(Long userId) {
+        synchronized (directUsers) {
+            return directUsers.containsKey(userId);
+        }
+    }
+
+    // Saca el carrito de memoria y hace que sus operaciones vayan directamente a MySQL hasta que termine la
+    // transacción en curso (o enseguida si no hay ninguna)
+    private void bypassUntilTransactionEnds(Long userId) {
+        synchronized (directUsers) {
+            directUsers.merge(userId, 1, Integer::sum);
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                release(userId);
+            } finally {
+                endBypass(userId);
+            }
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                endBypass(userId);
+            }
+        });
+        release(userId);
+    }
+
+    private void endBypass(Long userId) {
+        synchronized (directUsers) {
+            directUsers.computeIfPresent(userId, (id, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    // Saca el carrito de memoria escribiendo antes sus cambios pendientes, también la versión: la del carrito que se
+    // vuelva a leer de MySQL nunca es menor que la ya expuesta (ETag)
+    private void release(Long userId) {
+        CachedCart cart = carts.get(userId);
+        if (cart == null) {
+            return;
+        }
+        cart.flushLock.lock();
+        cart.lock.lock();
+        try {
+            if (cart.released) {
+                return;
+            }
+            CartChanges changes = cart.takeChanges();
+            if (changes != null) {
+                writeOrRestore(List.of(changes));
+            }
+            cart.released = true;
+            carts.remove(userId, cart);
+        } finally {
+            cart.lock.unlock();
+            cart.flushLock.unlock();
+        }
+    }
+
+    private void flushBatch(List<CachedCart> batch) {
+        List<CachedCart> locked = new ArrayList<>();
+        List<CartChanges> changes = new ArrayList<>();
+        try {
+            for (CachedCart cart : batch) {
+                cart.flushLock.lock();
+                locked.add(cart);
+                CartChanges cartChanges = cart.takeChanges();
+                if (cartChanges != null) {
+                    changes.add(cartChanges);
+                }
+            }
+            if (!changes.isEmpty()) {
+                writeOrRestore(changes);
+            }
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+            System.err.println("Error al escribir un lote de " + changes.size() + " carritos, se reintentará: " + e.getMessage());
+        } finally {
+            locked.forEach(cart -> cart.flushLock.unlock());
+        }
+    }
+
+    // Si la escritura falla, los carritos quedan marcados para escribirse enteros la próxima vez
+    private void writeOrRestore(List<CartChanges> changes) {
+        try {
+            write(changes);
+        } catch (RuntimeException e) {
+            for (CartChanges cartChanges : changes) {
+                cartChanges.cart().markForFullRewrite();
+            }
+            throw e;
+        }
+    }
+
+    private void write(List<CartChanges> changes) {
+        Map<CachedCart, Map<Long, Long>> newItemIds = new HashMap<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            for (CartChanges cartChanges : changes) {
+                Long cartId = cartChanges.cart().cartId;
+                shoppingCartRepository.touchToVersion(cartId, cartChanges.version(), now);
+                if (cartChanges.replaceAll()) {
+                    cartItemRepository.deleteByCartId(cartId);
+                } else if (!cartChanges.removedProductIds().isEmpty()) {
+                    cartItemRepository.deleteByCartIdAndProductIdIn(cartId, cartChanges.removedProductIds());
+                }
+                cartChanges.lines().forEach((productId, line) ->
+                        cartItemRepository.saveQuantity(cartId, productId, line.quantity(), line.priceAtAddition(), now));
+                // Los ítems nuevos reciben su ID al insertarse: se lee para que el carrito en memoria lo devuelva
+                boolean hasNewLines = cartChanges.replaceAll()
+                        || cartChanges.lines().values().stream().anyMatch(line -> line.itemId() == null);
+                if (hasNewLines) {
+                    Map<Long, Long> ids = new HashMap<>();
+                    cartItemRepository.findByCartId(cartId).forEach(item -> ids.put(item.getProductId(), item.getId()));
+                    newItemIds.put(cartChanges.cart(), ids);
+                }
+            }
+        });
+        flushedCarts.increment(changes.size());
+        newItemIds.forEach(CachedCart::assignItemIds);
+    }
+
+    private void evictIdleCarts() {
+        long idleNanos = properties.getIdleTimeout().toNanos();
+        long now = System.nanoTime();
+        for (Map.Entry<Long, CachedCart> entry : carts.entrySet()) {
+            CachedCart cart = entry.getValue();
+            if (now - cart.lastAccessNanos < idleNanos || !cart.flushLock.tryLock()) {
+                continue;
+            }
+            try {
+                if (cart.lock.tryLock()) {
+                    try {
+                        if (!cart.isDirty() && now - cart.lastAccessNanos >= idleNanos) {
+                            cart.released = true;
+                            carts.remove(entry.getKey(), cart);
+                        }
+                    } finally {
+                        cart.lock.unlock();
+                    }
+                }
+            } finally {
+                cart.flushLock.unlock();
+            }
+        }
+    }
+
+    private record CartLine(Long itemId, int quantity, BigDecimal priceAtAddition) {
+    }
+
+    // Cambios de un carrito desde la última escritura: líneas a insertar o actualizar y productos a borrar.
+    // replaceAll indica que hay que borrar todos los ítems antes (carrito vaciado o escritura anterior fallida).
+    // version es la que tenía el carrito en memoria: MySQL queda con la misma
+    private record CartChanges(CachedCart cart, long version, boolean replaceAll, Map<Long, CartLine> lines, Set<Long> removedProductIds) {
+    }
+
+    // Estado en memoria de un carrito. lock protege las líneas; flushLock ordena las escrituras del mismo carrito,
+    // para que una escritura antigua nunca llegue a MySQL después de otra más reciente (siempre flushLock antes que lock)
+    private static final class CachedCart {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ReentrantLock flushLock = new ReentrantLock();
+        private final Long cartId;
+        private final Long userId;
+        private final LocalDateTime createdAt;
+        private final long loadedVersion;
+        private final Map<Long, CartLine> lines = new LinkedHashMap<>();
+        private Set<Long> changedProductIds = new HashSet<>();
+        private boolean replaceAll;
+        private LocalDateTime updatedAt;
+        private long modifications;
+        private boolean released;
+        private volatile long lastAccessNanos = System.nanoTime();
+
+        private CachedCart(ShoppingCart cart) {
+            this.cartId = cart.getId();
+            this.userId = cart.getUserId();
+            this.createdAt = cart.getCreatedAt();
+            this.updatedAt = cart.getUpdatedAt();
+            this.loadedVersion = cart.getVersion() != null ? cart.getVersion() : 0L;
+            for (CartItem item : cart.getItems()) {
+                lines.put(item.getProductId(), new CartLine(item.getId(), item.getQuantity(), item.getPriceAtAddition()));
+            }
+        }
+
+        private void put(Long productId, CartLine line) {
+            lines.put(productId, line);
+            changedProductIds.add(productId);
+        }
+
+        private void remove(Long productId) {
+            lines.remove(productId);
+            changedProductIds.add(productId);
+        }
+
+        // Calcula primero el resultado de todas las operaciones: si una falla, el carrito no cambia
+        private void applyAll(List<CartItemOperationDto> operations, Map<Long, ProductDto> products) {
+            Map<Long, Integer> quantities = new LinkedHashMap<>();
+            lines.forEach((productId, line) -> quantities.put(productId, line.quantity()));
+            Map<Long, Integer> finalQuantities = CartItemOperations.apply(quantities, operations);
+            Map<Long, CartLine> finalLines = new LinkedHashMap<>();
+            finalQuantities.forEach((productId, quantity) -> {
+                CartLine line = lines.get(productId);
+                finalLines.put(productId, line != null
+                        ? new CartLine(line.itemId(), quantity, line.priceAtAddition())
+                        : new CartLine(null, quantity, CartItemOperations.catalogPrice(products, productId)));
+            });
+
+            for (Long productId : new ArrayList<>(lines.keySet())) {
+                if (!finalLines.containsKey(productId)) {
+                    remove(productId);
+                }
+            }
+            finalLines.forEach((productId, line) -> {
+                CartLine current = lines.get(productId);
+                if (current == null || current.quantity() != line.quantity()) {
+                    put(productId, line);
+                }
+            });
+        }
+
+        private void clear() {
+            lines.clear();
+            changedProductIds.clear();
+            replaceAll = true;
+        }
+
+        private boolean isDirty() {
+            return replaceAll || !changedProductIds.isEmpty();
+        }
+
+        // Tras una escritura, cada producto escrito tiene su ítem en MySQL (vaciar el carrito los vuelve a insertar con
+        // otro ID). Los productos que cambiaron mientras se escribía esperan a la escritura siguiente
+        private void assignItemIds(Map<Long, Long> itemIds) {
+            lock.lock();
+            try {
+                if (replaceAll) {
+                    return;
+                }
+                itemIds.forEach((productId, itemId) -> {
+                    CartLine line = lines.get(productId);
+                    if (line != null && !changedProductIds.contains(productId) && !itemId.equals(line.itemId())) {
+                        lines.put(productId, new CartLine(itemId, line.quantity(), line.priceAtAddition()));
+                    }
+                });
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void markForFullRewrite() {
+            lock.lock();
+            try {
+                replaceAll = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Devuelve los cambios pendientes (o null si no hay) y empieza a acumular los siguientes
+        private CartChanges takeChanges() {
+            lock.lock();
+            try {
+                if (!isDirty()) {
+                    return null;
+                }
+                Map<Long, CartLine> changedLines = new HashMap<>();
+                Set<Long> removed = new HashSet<>();
+                for (Long productId : replaceAll ? lines.keySet() : changedProductIds) {
+                    CartLine line = lines.get(productId);
+                    if (line != null) {
+                        changedLines.put(productId, line);
+                    } else {
+                        removed.add(productId);
+                    }
+                }
+                CartChanges changes = new CartChanges(this, loadedVersion + modifications, replaceAll, changedLines, removed);
+                changedProductIds = new HashSet<>();
+                replaceAll = false;
+                return changes;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Copia desacoplada del estado en memoria. Los ítems añadidos desde la última escritura aún no tienen ID
+        private ShoppingCart toShoppingCart() {
+            ShoppingCart cart = new ShoppingCart();
+            cart.setId(cartId);
+            cart.setUserId(userId);
+            cart.setCreatedAt(createdAt);
+            cart.setUpdatedAt(updatedAt);
+            cart.setVersion(loadedVersion + modifications);
+            lines.forEach((productId, line) -> {
+                CartItem item = new CartItem();
+                item.setId(line.itemId());
+                item.setProductId(productId);
+                item.setQuantity(line.quantity());
+                item.setPriceAtAddition(line.priceAtAddition());
+                cart.addCartItem(item);
+            });
+            return cart;
+        }
+    }
+}
@@ -0,0 +1,3 @@
+-- Versión de los pedidos (@Version): el registro del pago y la compensación solo cierran un pedido PENDING si nadie
+-- lo cambió desde que lo leyeron (ver OrderRepository.finishPending). Las filas existentes empiezan en 0
+ALTER TABLE orders ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
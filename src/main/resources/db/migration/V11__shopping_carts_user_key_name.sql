@@ -0,0 +1,5 @@
+-- La clave única de shopping_carts.user_id tenía el nombre que generó Hibernate (UKt5ao4h91q3su6hi9d2haxdr2t). Pasa a
+-- tener uno explícito, el de ShoppingCart, para que CartMutationGuard la reconozca sin depender de ese nombre.
+-- La nueva se crea antes de borrar la anterior: user_id no queda sin restricción en ningún momento
+ALTER TABLE shopping_carts ADD CONSTRAINT uk_shopping_carts_user UNIQUE (user_id);
+ALTER TABLE shopping_carts DROP CONSTRAINT UKt5ao4h91q3su6hi9d2haxdr2t;
@@ -0,0 +1,4 @@
+-- Petición que tiene reservada cada clave de idempotencia (ver IdempotencyService): se renueva al retomar una clave
+-- abandonada, y complete/release solo actúan si la clave sigue siendo de quien los llama. Las filas existentes quedan
+-- con un token vacío, que no coincide con el de ninguna petición
+ALTER TABLE idempotency_records ADD COLUMN owner_token VARCHAR(36) NOT NULL DEFAULT '';
@@ -0,0 +1,52 @@
+-- Esquema base: el que generaba Hibernate (ddl-auto=update) a partir de las entidades de la versión anterior a
+-- Flyway, con IDs AUTO_INCREMENT (GenerationType.IDENTITY). En una base de datos existente no se ejecuta:
+-- spring.flyway.baseline-on-migrate la marca como versión 1. Todo lo añadido después va en migraciones posteriores.
+
+CREATE TABLE shopping_carts (
+    id         BIGINT NOT NULL AUTO_INCREMENT,
+    user_id    BIGINT NOT NULL,
+    created_at DATETIME(6),
+    updated_at DATETIME(6),
+    PRIMARY KEY (id),
+    CONSTRAINT UKt5ao4h91q3su6hi9d2haxdr2t UNIQUE (user_id)
+) ENGINE = InnoDB;
+
+CREATE TABLE cart_items (
+    id                BIGINT        NOT NULL AUTO_INCREMENT,
+    cart_id           BIGINT        NOT NULL,
+    product_id        BIGINT        NOT NULL,
+    quantity          INTEGER       NOT NULL,
+    price_at_addition DECIMAL(10, 2) NOT NULL,
+    created_at        DATETIME(6),
+    updated_at        DATETIME(6),
+    PRIMARY KEY (id),
+    CONSTRAINT FKojy3ibx281qswho045bw4q0da FOREIGN KEY (cart_id) REFERENCES shopping_carts (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE orders (
+    id               BIGINT         NOT NULL AUTO_INCREMENT,
+    user_id          BIGINT         NOT NULL,
+    order_date       DATETIME(6)    NOT NULL,
+    total_amount     DECIMAL(10, 2) NOT NULL,
+    status           VARCHAR(255)   NOT NULL,
+    shipping_address VARCHAR(255),
+    payment_method   VARCHAR(255),
+    transaction_id   VARCHAR(255),
+    created_at       DATETIME(6),
+    updated_at       DATETIME(6),
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE order_items (
+    id           BIGINT         NOT NULL AUTO_INCREMENT,
+    order_id     BIGINT         NOT NULL,
+    product_id   BIGINT         NOT NULL,
+    product_name VARCHAR(255)   NOT NULL,
+    quantity     INTEGER        NOT NULL,
+    unit_price   DECIMAL(10, 2) NOT NULL,
+    subtotal     DECIMAL(10, 2) NOT NULL,
+    created_at   DATETIME(6),
+    updated_at   DATETIME(6),
+    PRIMARY KEY (id),
+    CONSTRAINT FKbioxgbv59vetrxe0ejfubep1w FOREIGN KEY (order_id) REFERENCES orders (id)
+) ENGINE = InnoDB;
@@ -0,0 +1,9 @@
+-- Índices de las consultas frecuentes que el esquema generado por Hibernate no tenía.
+-- El historial por usuario (orders.user_id) lo cubre idx_orders_user_date_id (V8).
+
+-- Ítems de un carrito y búsqueda de un producto dentro del carrito. InnoDB lo usa también para la clave
+-- foránea cart_id, en lugar del índice implícito
+CREATE INDEX idx_cart_items_cart_product ON cart_items (cart_id, product_id);
+
+-- Ítems de un pedido (carga con @EntityGraph y borrado en cascada)
+CREATE INDEX idx_order_items_order_id ON order_items (order_id);
@@ -0,0 +1,19 @@
+-- Crea las tablas de IDs de las secuencias "pooled" (ver docs/id-sequences.md) y las alinea con los datos existentes.
+-- En una base de datos nueva empiezan en 1. En una que ya tenía filas se sitúan por encima del mayor ID actual más
+-- allocationSize, para que ningún bloque reservado choque con filas existentes.
+
+CREATE TABLE IF NOT EXISTS shopping_carts_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO shopping_carts_seq (next_val) SELECT 1 FROM DUAL WHERE NOT EXISTS (SELECT * FROM shopping_carts_seq);
+UPDATE shopping_carts_seq SET next_val = GREATEST(next_val, (SELECT COALESCE(MAX(id) + 51, 1) FROM shopping_carts));
+
+CREATE TABLE IF NOT EXISTS cart_items_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO cart_items_seq (next_val) SELECT 1 FROM DUAL WHERE NOT EXISTS (SELECT * FROM cart_items_seq);
+UPDATE cart_items_seq SET next_val = GREATEST(next_val, (SELECT COALESCE(MAX(id) + 51, 1) FROM cart_items));
+
+CREATE TABLE IF NOT EXISTS orders_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO orders_seq (next_val) SELECT 1 FROM DUAL WHERE NOT EXISTS (SELECT * FROM orders_seq);
+UPDATE orders_seq SET next_val = GREATEST(next_val, (SELECT COALESCE(MAX(id) + 51, 1) FROM orders));
+
+CREATE TABLE IF NOT EXISTS order_items_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO order_items_seq (next_val) SELECT 1 FROM DUAL WHERE NOT EXISTS (SELECT * FROM order_items_seq);
+UPDATE order_items_seq SET next_val = GREATEST(next_val, (SELECT COALESCE(MAX(id) + 51, 1) FROM order_items));
@@ -0,0 +1,27 @@
+-- Un producto aparece como mucho una vez en cada carrito. La restricción única permite añadir productos con una sola
+-- sentencia (INSERT ... ON DUPLICATE KEY UPDATE) y evita las filas duplicadas de dos altas concurrentes.
+
+-- 1. Fusiona los duplicados que pudieran existir: la fila más antigua se queda con la suma de las cantidades.
+--    Las subconsultas agrupadas se materializan, así MySQL permite leer la misma tabla que se modifica.
+UPDATE cart_items
+SET quantity = (SELECT dup.total
+                FROM (SELECT MIN(id) AS keep_id, SUM(quantity) AS total
+                      FROM cart_items GROUP BY cart_id, product_id) AS dup
+                WHERE dup.keep_id = cart_items.id)
+WHERE id IN (SELECT keep.keep_id
+             FROM (SELECT MIN(id) AS keep_id
+                   FROM cart_items GROUP BY cart_id, product_id HAVING COUNT(*) > 1) AS keep);
+
+DELETE FROM cart_items
+WHERE id NOT IN (SELECT keep.keep_id
+                 FROM (SELECT MIN(id) AS keep_id FROM cart_items GROUP BY cart_id, product_id) AS keep);
+
+-- 2. La restricción sustituye al índice de V2 (mismas columnas). Se crea antes de borrar el índice porque la clave
+--    foránea cart_id necesita siempre un índice que empiece por esa columna.
+ALTER TABLE cart_items ADD CONSTRAINT uk_cart_items_cart_product UNIQUE (cart_id, product_id);
+DROP INDEX idx_cart_items_cart_product ON cart_items;
+
+-- 3. El upsert es SQL nativo y no pasa por el generador de Hibernate: el ID de cart_items vuelve a generarlo la base
+--    de datos y la tabla de IDs deja de usarse
+ALTER TABLE cart_items MODIFY id BIGINT NOT NULL AUTO_INCREMENT;
+DROP TABLE cart_items_seq;
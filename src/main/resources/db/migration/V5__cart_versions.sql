@@ -0,0 +1,3 @@
+-- Columnas de versión para el bloqueo optimista de carritos e ítems (@Version). Las filas existentes empiezan en 0
+ALTER TABLE shopping_carts ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE cart_items ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,21 @@
+-- Outbox de notificaciones del checkout (ver NotificationOutboxService): una fila por notificación pendiente de enviar
+CREATE TABLE notification_outbox (
+    id              BIGINT        NOT NULL AUTO_INCREMENT,
+    order_id        BIGINT        NOT NULL,
+    type            VARCHAR(255)  NOT NULL,
+    recipient_email VARCHAR(255)  NOT NULL,
+    subject         VARCHAR(255)  NOT NULL,
+    message_body    VARCHAR(4000) NOT NULL,
+    status          VARCHAR(255)  NOT NULL,
+    attempts        INTEGER       NOT NULL,
+    next_attempt_at DATETIME(6)   NOT NULL,
+    last_error      VARCHAR(1000),
+    sent_at         DATETIME(6),
+    created_at      DATETIME(6),
+    updated_at      DATETIME(6),
+    PRIMARY KEY (id),
+    CONSTRAINT UK9ogsanav8j2blk2m1t2cd5din UNIQUE (order_id, type)
+) ENGINE = InnoDB;
+
+-- Búsqueda de las notificaciones que toca enviar
+CREATE INDEX idx_notification_outbox_status_next_attempt ON notification_outbox (status, next_attempt_at);
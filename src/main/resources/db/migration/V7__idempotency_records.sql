@@ -0,0 +1,17 @@
+-- Claves de idempotencia del checkout (cabecera Idempotency-Key, ver IdempotencyService)
+CREATE TABLE idempotency_records (
+    id                  BIGINT       NOT NULL AUTO_INCREMENT,
+    user_id             BIGINT       NOT NULL,
+    idempotency_key     VARCHAR(255) NOT NULL,
+    request_fingerprint VARCHAR(64)  NOT NULL,
+    status              VARCHAR(255) NOT NULL,
+    order_id            BIGINT,
+    locked_until        DATETIME(6)  NOT NULL,
+    expires_at          DATETIME(6)  NOT NULL,
+    created_at          DATETIME(6),
+    PRIMARY KEY (id),
+    CONSTRAINT UKjxilkob4x9rm5guk5f420orub UNIQUE (user_id, idempotency_key)
+) ENGINE = InnoDB;
+
+-- Limpieza periódica de las claves expiradas
+CREATE INDEX idx_idempotency_records_expires_at ON idempotency_records (expires_at);
@@ -0,0 +1,2 @@
+-- Historial de pedidos por usuario, paginado por keyset (ver OrderRepository.findHistoryIdsAfter)
+CREATE INDEX idx_orders_user_date_id ON orders (user_id, order_date DESC, id);
@@ -0,0 +1,2 @@
+-- Búsqueda de los pedidos PENDING abandonados (ver PendingOrderRecoveryService)
+CREATE INDEX idx_orders_status_updated_at ON orders (status, updated_at);
@@ -0,0 +1,257 @@
+package com.programthis.order_cart_service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Checkout síncrono con hilos de plataforma frente a hilos virtuales (perfil virtual-threads), en el mismo proceso:
+// servicios remotos simulados con latencia fija, H2 en memoria y carga con concurrencia creciente.
+// No forma parte de la suite: requiere Java 21 para el modo virtual. Cada modo en su propia JVM, para que ninguno
+// aproveche el JIT ya calentado por el otro:
+//   mvn -Pjava21 test -Dtest='VirtualThreadsBenchmarkTest#platformThreads' -Dbenchmark=true
+//   mvn -Pjava21 test -Dtest='VirtualThreadsBenchmarkTest#virtualThreads' -Dbenchmark=true
+// Resultados y contexto en docs/virtual-threads.md
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class VirtualThreadsBenchmarkTest {
+
+    private static final int[] CONCURRENCY_LEVELS = {50, 200, 500, 1000};
+    // Calentamiento inicial (JIT, pools de conexiones) y antes de cada nivel
+    private static final Duration INITIAL_WARMUP = Duration.ofSeconds(30);
+    private static final Duration WARMUP = Duration.ofSeconds(5);
+    private static final Duration MEASUREMENT = Duration.ofSeconds(15);
+    // Latencias de los servicios remotos simulados (las de docs/virtual-threads.md), multiplicadas por
+    // -Dbenchmark.latency-factor para el escenario en que la espera, y no la CPU, es lo que limita
+    private static final long LATENCY_FACTOR = Long.getLong("benchmark.latency-factor", 1);
+    private static final long USER_LATENCY_MS = 50 * LATENCY_FACTOR;
+    private static final long CATALOG_LATENCY_MS = 50 * LATENCY_FACTOR;
+    private static final long PAYMENT_LATENCY_MS = 200 * LATENCY_FACTOR;
+    private static final long NOTIFICATION_LATENCY_MS = 100 * LATENCY_FACTOR;
+    // Un carrito por petición: nunca se reutiliza un usuario
+    private static final int CARTS = 150_000;
+
+    private static HttpServer remoteServices;
+    private static ScheduledExecutorService responseScheduler;
+
+    @BeforeAll
+    static void startRemoteServices() throws IOException {
+        // Las respuestas se envían desde un planificador tras la latencia: el simulador no ocupa un hilo por petición
+        responseScheduler = Executors.newScheduledThreadPool(2);
+        // Por defecto el HttpServer del JDK cierra las conexiones inactivas por encima de 200, y los pools HTTP del
+        // servicio las reutilizarían ya cerradas ("Broken pipe")
+        System.setProperty("sun.net.httpserver.maxIdleConnections", "10000");
+        remoteServices = HttpServer.create(new InetSocketAddress("localhost", 0), 4096);
+        remoteServices.setExecutor(Executors.newFixedThreadPool(2));
+        remoteServices.createContext("/api/users/", exchange -> {
+            String id = exchange.getRequestURI().getPath().substring("/api/users/".length());
+            respondLater(exchange, USER_LATENCY_MS, "{\"id\":" + id + ",\"username\":\"user" + id
+                    + "\",\"email\":\"user" + id + "@example.com\",\"fullName\":\"Usuario " + id + "\"}");
+        });
+        remoteServices.createContext("/api/products/", exchange -> respondLater(exchange, CATALOG_LATENCY_MS,
+                "[{\"id\":101,\"name\":\"Laptop\",\"description\":\"Laptop\",\"price\":10.00,\"stockQuantity\":1000000}]"));
+        remoteServices.createContext("/api/v1/payments/", exchange -> respondLater(exchange, PAYMENT_LATENCY_MS,
+                "{\"id\":1,\"orderId\":\"0\",\"amount\":10.00,\"paymentMethod\":\"card\",\"paymentStatus\":\"COMPLETED\",\"transactionId\":\"TX\"}"));
+        remoteServices.createContext("/api/v1/notifications/", exchange -> respondLater(exchange, NOTIFICATION_LATENCY_MS, "\"ok\""));
+        remoteServices.start();
+    }
+
+    @AfterAll
+    static void stopRemoteServices() {
+        remoteServices.stop(0);
+        responseScheduler.shutdownNow();
+    }
+
+    private static void respondLater(HttpExchange exchange, long delayMs, String json) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            body.readAllBytes();
+        }
+        responseScheduler.schedule(() -> {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            try (OutputStream out = exchange.getResponseBody()) {
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, bytes.length);
+                out.write(bytes);
+            } catch (IOException ignored) {
+                // El cliente abandonó la petición (timeout)
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void platformThreads() throws Exception {
+        run("Plataforma", false);
+    }
+
+    @Test
+    void virtualThreads() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "Los hilos virtuales requieren Java 21");
+        run("Virtual", true);
+    }
+
+    private void run(String mode, boolean virtualThreads) throws Exception {
+        String remoteUrl = "http://localhost:" + remoteServices.getAddress().getPort();
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:benchmark_" + mode + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                // Esquema generado por Hibernate: las tablas de secuencias de las migraciones (V3) son las de MySQL
+                "--spring.flyway.enabled=false",
+                "--spring.jpa.hibernate.ddl-auto=create",
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN",
+                "--spring.datasource.hikari.maximum-pool-size=30",
+                "--spring.threads.virtual.enabled=" + virtualThreads,
+                "--user-service.url=" + remoteUrl,
+                "--product-catalog-service.url=" + remoteUrl,
+                "--payment-service.url=" + remoteUrl,
+                "--notification-service.url=" + remoteUrl,
+                // Sin caché de productos: cada checkout consulta el catálogo
+                "--product-catalog-service.cache.enabled=false",
+                // Pools HTTP y executors mayores que la concurrencia de la prueba: solo se comparan los hilos
+                "--http-clients.defaults.connection-request-timeout=30s",
+                "--checkout.remote-deadline=30s",
+                "--checkout.executor.max-pool-size=4000",
+                "--checkout.executor.queue-capacity=0",
+                "--remote-calls.executor.max-pool-size=4000",
+                "--remote-calls.executor.queue-capacity=0"));
+        for (String service : List.of("user-service", "product-catalog-service", "payment-service", "notification-service")) {
+            args.add("--http-clients.services." + service + ".max-connections=4000");
+            args.add("--http-clients.services." + service + ".response-timeout=30s");
+        }
+        // Los mensajes de System.out de cada checkout falsearían la medida
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(OrderCartServiceApplication.class)
+                .web(WebApplicationType.SERVLET)
+                .run(args.toArray(String[]::new));
+        try {
+            insertCarts(context.getBean(JdbcTemplate.class));
+            int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+            AtomicLong nextUser = new AtomicLong(1);
+            List<String> rows = new ArrayList<>();
+            load(port, CONCURRENCY_LEVELS[0], INITIAL_WARMUP, nextUser);
+            for (int concurrency : CONCURRENCY_LEVELS) {
+                load(port, concurrency, WARMUP, nextUser);
+                rows.add(mode + " | " + concurrency + " | " + load(port, concurrency, MEASUREMENT, nextUser)
+                        + " | " + pinnedEvents(context.getBean(MeterRegistry.class)));
+            }
+            System.setOut(stdout);
+            System.out.println("Modo | Concurrencia | req/s | p50 | p99 | errores | hilos del servicio | anclajes");
+            rows.forEach(System.out::println);
+        } finally {
+            System.setOut(stdout);
+            context.close();
+        }
+    }
+
+    private static void insertCarts(JdbcTemplate jdbcTemplate) {
+        List<Object[]> carts = new ArrayList<>();
+        List<Object[]> items = new ArrayList<>();
+        for (long userId = 1; userId <= CARTS; userId++) {
+            carts.add(new Object[]{1_000_000 + userId, userId});
+            items.add(new Object[]{1_000_000 + userId, 1_000_000 + userId});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO shopping_carts (id, user_id, created_at, updated_at, version) "
+                + "VALUES (?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, 0)", carts);
+        jdbcTemplate.batchUpdate("INSERT INTO cart_items (id, cart_id, product_id, quantity, price_at_addition, created_at, updated_at, version) "
+                + "VALUES (?, ?, 101, 1, 10.00, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, 0)", items);
+    }
+
+    // Cada cliente repite checkouts (un usuario nuevo por petición) durante el tiempo indicado
+    private static String load(int port, int concurrency, Duration duration, AtomicLong nextUser) throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        long[][] latencies = new long[concurrency][];
+        AtomicInteger errors = new AtomicInteger();
+        long end = System.nanoTime() + duration.toNanos();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        AtomicInteger peakThreads = new AtomicInteger();
+        for (int c = 0; c < concurrency; c++) {
+            int slot = c;
+            clients.submit(() -> {
+                long[] samples = new long[1024];
+                int count = 0;
+                while (System.nanoTime() < end) {
+                    long userId = nextUser.getAndIncrement();
+                    HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/orders/" + userId + "/createFromCart"))
+                            .timeout(Duration.ofSeconds(120))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString("{\"shippingAddress\":\"Calle 1\",\"paymentMethod\":\"card\"}"))
+                            .build();
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() != 201) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                    if (count == samples.length) {
+                        samples = Arrays.copyOf(samples, count * 2);
+                    }
+                    samples[count++] = System.nanoTime() - start;
+                    peakThreads.accumulateAndGet(threads.getThreadCount(), Math::max);
+                }
+                latencies[slot] = Arrays.copyOf(samples, count);
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(duration.toSeconds() + 120, TimeUnit.SECONDS);
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        double throughput = all.length / (double) duration.toSeconds();
+        // Los hilos de la propia carga comparten la JVM: se descuentan para contar solo los del servicio
+        return String.format("%.0f | %d ms | %d ms | %d | %d", throughput, percentile(all, 0.50), percentile(all, 0.99),
+                errors.get(), peakThreads.get() - concurrency);
+    }
+
+    private static long percentile(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sortedNanos.length - 1, Math.ceil(percentile * sortedNanos.length) - 1);
+        return TimeUnit.NANOSECONDS.toMillis(sortedNanos[Math.max(index, 0)]);
+    }
+
+    // Anclajes de más de virtual-threads.pinning.threshold desde el arranque (acumulados entre niveles)
+    private static long pinnedEvents(MeterRegistry meterRegistry) {
+        return meterRegistry.find("jvm.threads.virtual.pinned").timers().stream().mapToLong(Timer::count).sum();
+    }
+}
@@ -0,0 +1,281 @@
+package com.programthis.order_cart_service.client;
+
+import com.programthis.order_cart_service.config.ProductCacheProperties;
+import com.programthis.order_cart_service.dto.ProductDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProductCatalogServiceClientTest {
+
+    private static final String BASE_URL = "http://catalog";
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    private ProductCacheProperties cacheProperties;
+    private ProductDto product1;
+    private ProductDto product2;
+    private ProductDto product3;
+
+    @BeforeEach
+    void setUp() {
+        cacheProperties = new ProductCacheProperties();
+        product1 = new ProductDto(1L, "Laptop", "Una laptop potente", new BigDecimal("10.00"), 10);
+        product2 = new ProductDto(2L, "Mouse", "Un mouse inalámbrico", new BigDecimal("25.50"), 50);
+        product3 = new ProductDto(3L, "Teclado", "Un teclado mecánico", new BigDecimal("75.00"), 20);
+    }
+
+    // El executor síncrono hace que las búsquedas "concurrentes" sean deterministas en los tests
+    private ProductCatalogServiceClient newClient(int batchSize) {
+        return newClient(batchSize, Duration.ofMinutes(10));
+    }
+
+    private ProductCatalogServiceClient newClient(int batchSize, Duration bulkLookupRetryAfter) {
+        return new ProductCatalogServiceClient(restTemplate, BASE_URL, Runnable::run, batchSize, true,
+                bulkLookupRetryAfter, cacheProperties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void getProductsByIds_usesBulkEndpointInChunks() {
+        when(restTemplate.getForObject(contains("/api/products/batch"), eq(ProductDto[].class)))
+                .thenReturn(new ProductDto[]{product1, product2})
+                .thenReturn(new ProductDto[]{product3});
+        ProductCatalogServiceClient client = newClient(2);
+
+        Map<Long, ProductDto> result = client.getProductsByIds(List.of(1L, 2L, 3L, 2L));
+
+        assertEquals(3, result.size());
+        assertEquals("Teclado", result.get(3L).getName());
+        verify(restTemplate, times(2)).getForObject(contains("/api/products/batch"), eq(ProductDto[].class));
+        verify(restTemplate, never()).getForObject(anyString(), eq(ProductDto.class), any(Object[].class));
+    }
+
+    @Test
+    void getProductsByIds_fallsBackToSingleLookupsWhenBulkIsUnsupported() {
+        when(restTemplate.getForObject(contains("/api/products/batch"), eq(ProductDto[].class)))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null));
+        when(restTemplate.getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 1L)).thenReturn(product1);
+        when(restTemplate.getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 2L)).thenReturn(product2);
+        ProductCatalogServiceClient client = newClient(50);
+
+        Map<Long, ProductDto> result = client.getProductsByIds(List.of(1L, 2L));
+
+        assertEquals(2, result.size());
+        assertEquals("Mouse", result.get(2L).getName());
+    }
+
+    @Test
+    void getProductsByIds_keepsUsingBulkEndpointAfterA404() {
+        cacheProperties.setEnabled(false);
+        when(restTemplate.getForObject(contains("/api/products/batch"), eq(ProductDto[].class)))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null))
+                .thenReturn(new ProductDto[]{product1, product2});
+        when(restTemplate.getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 1L)).thenReturn(product1);
+        when(restTemplate.getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 2L)).thenReturn(product2);
+        ProductCatalogServiceClient client = newClient(50);
+
+        assertEquals(2, client.getProductsByIds(List.of(1L, 2L)).size());
+        assertEquals(2, client.getProductsByIds(List.of(1L, 2L)).size());
+
+        verify(restTemplate, times(2)).getForObject(contains("/api/products/batch"), eq(ProductDto[].class));
+        verify(restTemplate, times(1)).getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 1L);
+    }
+
+    @Test
+    void getProductsByIds_stopsUsingBulkEndpointAfterA405() {
+        cacheProperties.setEnabled(false);
+        when(restTemplate.getForObject(contains("/api/products/batch"), eq(ProductDto[].class)))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.METHOD_NOT_ALLOWED, "Method Not Allowed", null, null, null));
+        when(restTemplate.getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 1L)).thenReturn(product1);
+        ProductCatalogServiceClient client = newClient(50);
+
+        client.getProductsByIds(List.of(1L));
+        client.getProductsByIds(List.of(1L));
+
+        verify(restTemplate, times(1)).getForObject(contains("/api/products/batch"), eq(ProductDto[].class));
+        verify(restTemplate, times(2)).getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 1L);
+    }
+
+    @Test
+    void getProductsByIds_retriesBulkEndpointAfterTheBackOff() {
+        cacheProperties.setEnabled(false);
+        when(restTemplate.getForObject(contains("/api/products/batch"), eq(ProductDto[].class)))
+                .thenThrow(HttpServerErrorException.create(HttpStatus.NOT_IMPLEMENTED, "Not Implemented", null, null, null))
+                .thenReturn(new ProductDto[]{product1});
+        when(restTemplate.getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 1L)).thenReturn(product1);
+        ProductCatalogServiceClient client = newClient(50, Duration.ZERO);
+
+        client.getProductsByIds(List.of(1L));
+        Map<Long, ProductDto> result = client.getProductsByIds(List.of(1L));
+
+        assertEquals("Laptop", result.get(1L).getName());
+        verify(restTemplate, times(2)).getForObject(contains("/api/products/batch"), eq(ProductDto[].class));
+        verify(restTemplate, times(1)).getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 1L);
+    }
+
+    @Test
+    void getProductById_servesRepeatedLookupsFromCache() {
+        when(restTemplate.getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 1L)).thenReturn(product1);
+        ProductCatalogServiceClient client = newClient(50);
+
+        assertEquals(Optional.of(product1), client.getProductById(1L));
+        assertEquals(Optional.of(product1), client.getProductById(1L));
+
+        verify(restTemplate, times(1)).getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 1L);
+    }
+
+    @Test
+    void getProductsByIds_onlyFetchesIdsMissingFromCache() {
+        when(restTemplate.getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 1L)).thenReturn(product1);
+        when(restTemplate.getForObject(contains("/api/products/batch"), eq(ProductDto[].class)))
+                .thenReturn(new ProductDto[]{product2});
+        ProductCatalogServiceClient client = newClient(50);
+        client.getProductById(1L);
+
+        Map<Long, ProductDto> result = client.getProductsByIds(List.of(1L, 2L));
+
+        assertEquals(2, result.size());
+        verify(restTemplate).getForObject(argThat((String url) -> url.contains("ids=2") && !url.contains("ids=1")), eq(ProductDto[].class));
+    }
+
+    @Test
+    void getProductById_cacheDisabled_alwaysCallsCatalog() {
+        cacheProperties.setEnabled(false);
+        when(restTemplate.getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 1L)).thenReturn(product1);
+        ProductCatalogServiceClient client = newClient(50);
+
+        client.getProductById(1L);
+        client.getProductById(1L);
+
+        verify(restTemplate, times(2)).getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 1L);
+    }
+
+    @Test
+    void getProductById_notFoundIsNegativelyCached() {
+        when(restTemplate.getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 99L))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null));
+        ProductCatalogServiceClient client = newClient(50);
+
+        assertTrue(client.getProductById(99L).isEmpty());
+        assertTrue(client.getProductById(99L).isEmpty());
+
+        verify(restTemplate, times(1)).getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 99L);
+    }
+
+    @Test
+    void getProductsByIds_missingIdsAreNegativelyCached() {
+        when(restTemplate.getForObject(contains("/api/products/batch"), eq(ProductDto[].class)))
+                .thenReturn(new ProductDto[]{product1});
+        ProductCatalogServiceClient client = newClient(50);
+
+        assertEquals(1, client.getProductsByIds(List.of(1L, 99L)).size());
+        assertTrue(client.getProductById(99L).isEmpty());
+
+        verify(restTemplate, times(1)).getForObject(contains("/api/products/batch"), eq(ProductDto[].class));
+        verify(restTemplate, never()).getForObject(anyString(), eq(ProductDto.class), any(Object[].class));
+    }
+
+    @Test
+    void getProductById_concurrentLookupsShareOneRequest() throws Exception {
+        // Sin caché, para comprobar que la deduplicación no depende de ella
+        cacheProperties.setEnabled(false);
+        CountDownLatch requestStarted = new CountDownLatch(1);
+        CountDownLatch releaseResponse = new CountDownLatch(1);
+        when(restTemplate.getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 1L)).thenAnswer(invocation -> {
+            requestStarted.countDown();
+            releaseResponse.await(5, TimeUnit.SECONDS);
+            return product1;
+        });
+        ProductCatalogServiceClient client = newClient(50);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            CompletableFuture<Optional<ProductDto>> first = CompletableFuture.supplyAsync(() -> client.getProductById(1L), callers);
+            assertTrue(requestStarted.await(5, TimeUnit.SECONDS));
+            List<CompletableFuture<Optional<ProductDto>>> others = IntStream.range(0, 7)
+                    .mapToObj(i -> CompletableFuture.supplyAsync(() -> client.getProductById(1L), callers))
+                    .toList();
+            // Se da tiempo a que las demás peticiones se unan a la búsqueda en curso
+            Thread.sleep(200);
+            releaseResponse.countDown();
+
+            assertEquals(Optional.of(product1), first.get(5, TimeUnit.SECONDS));
+            for (CompletableFuture<Optional<ProductDto>> other : others) {
+                assertEquals(Optional.of(product1), other.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        verify(restTemplate, times(1)).getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 1L);
+    }
+
+    @Test
+    void getProductById_sharedLookupOutlivesTheDeadlineOfTheCallerThatStartedIt() throws Exception {
+        CountDownLatch releaseResponse = new CountDownLatch(1);
+        List<Optional<Duration>> deadlinesSeenByTheRequest = new CopyOnWriteArrayList<>();
+        when(restTemplate.getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 1L)).thenAnswer(invocation -> {
+            deadlinesSeenByTheRequest.add(RemoteCallDeadline.remaining());
+            releaseResponse.await(5, TimeUnit.SECONDS);
+            return product1;
+        });
+        ExecutorService remoteCalls = Executors.newCachedThreadPool();
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            ProductCatalogServiceClient client = new ProductCatalogServiceClient(restTemplate, BASE_URL, remoteCalls, 50, true,
+                    Duration.ofMinutes(10), cacheProperties, new SimpleMeterRegistry());
+            // La primera petición lanza la búsqueda con un plazo de 100 ms; la segunda no tiene plazo
+            CompletableFuture<Optional<ProductDto>> withDeadline = CompletableFuture.supplyAsync(() -> RemoteCallDeadline.within(
+                    System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100), () -> client.getProductById(1L)), callers);
+            RuntimeException expired = assertThrows(RuntimeException.class, () -> join(withDeadline));
+            assertTrue(expired.getMessage().contains("Plazo"));
+            CompletableFuture<Optional<ProductDto>> withoutDeadline = CompletableFuture.supplyAsync(() -> client.getProductById(1L), callers);
+
+            releaseResponse.countDown();
+
+            assertEquals(Optional.of(product1), withoutDeadline.get(5, TimeUnit.SECONDS));
+        } finally {
+            callers.shutdownNow();
+            remoteCalls.shutdownNow();
+        }
+        // Una sola llamada, sin el plazo de la petición que la inició
+        verify(restTemplate, times(1)).getForObject(BASE_URL + "/api/products/{id}", ProductDto.class, 1L);
+        assertEquals(List.of(Optional.empty()), deadlinesSeenByTheRequest);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw (RuntimeException) e.getCause();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
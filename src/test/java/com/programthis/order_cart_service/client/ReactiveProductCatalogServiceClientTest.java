@@ -0,0 +1,136 @@
+package com.programthis.order_cart_service.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.programthis.order_cart_service.config.ProductCacheProperties;
+import com.programthis.order_cart_service.dto.ProductDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReactiveProductCatalogServiceClientTest {
+
+    private static final String BASE_URL = "http://catalog";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String> requestedPaths = new CopyOnWriteArrayList<>();
+    private ProductCacheProperties cacheProperties;
+    private ProductDto product1;
+    private ProductDto product2;
+
+    @BeforeEach
+    void setUp() {
+        cacheProperties = new ProductCacheProperties();
+        product1 = new ProductDto(1L, "Laptop", "Una laptop potente", new BigDecimal("10.00"), 10);
+        product2 = new ProductDto(2L, "Mouse", "Un mouse inalámbrico", new BigDecimal("25.50"), 50);
+    }
+
+    // El catálogo simulado responde en el mismo hilo; cada petición queda registrada en requestedPaths
+    private ReactiveProductCatalogServiceClient newClient(Function<ClientRequest, ClientResponse> catalog) {
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    requestedPaths.add(request.url().getPath() + (request.url().getQuery() != null ? "?" + request.url().getQuery() : ""));
+                    return Mono.just(catalog.apply(request));
+                })
+                .build();
+        return new ReactiveProductCatalogServiceClient(webClient, BASE_URL, 50, true, Duration.ofMinutes(10), cacheProperties, new SimpleMeterRegistry());
+    }
+
+    private ClientResponse json(Object body) {
+        try {
+            return ClientResponse.create(HttpStatus.OK)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .body(objectMapper.writeValueAsString(body))
+                    .build();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void getProductsByIds_usesBulkEndpoint() {
+        ReactiveProductCatalogServiceClient client = newClient(request -> json(List.of(product1, product2)));
+
+        Map<Long, ProductDto> result = client.getProductsByIds(List.of(1L, 2L, 1L)).block();
+
+        assertEquals(2, result.size());
+        assertEquals("Mouse", result.get(2L).getName());
+        assertEquals(1, requestedPaths.size());
+        assertTrue(requestedPaths.get(0).startsWith("/api/products/batch"));
+    }
+
+    @Test
+    void getProductsByIds_fallsBackToSingleLookupsWhenBulkIsUnsupported() {
+        ReactiveProductCatalogServiceClient client = newClient(request -> {
+            String path = request.url().getPath();
+            if (path.endsWith("/batch")) {
+                return ClientResponse.create(HttpStatus.NOT_FOUND).build();
+            }
+            return json(path.endsWith("/1") ? product1 : product2);
+        });
+
+        Map<Long, ProductDto> result = client.getProductsByIds(List.of(1L, 2L)).block();
+
+        assertEquals(2, result.size());
+        assertEquals("Laptop", result.get(1L).getName());
+        assertTrue(requestedPaths.contains("/api/products/1"));
+        assertTrue(requestedPaths.contains("/api/products/2"));
+    }
+
+    @Test
+    void getProductsByIds_stopsUsingBulkEndpointOnlyWhenUnsupported() {
+        cacheProperties.setEnabled(false);
+        AtomicReference<HttpStatus> bulkStatus = new AtomicReference<>(HttpStatus.BAD_REQUEST);
+        ReactiveProductCatalogServiceClient client = newClient(request -> {
+            if (request.url().getPath().endsWith("/batch")) {
+                return ClientResponse.create(bulkStatus.get()).build();
+            }
+            return json(product1);
+        });
+
+        client.getProductsByIds(List.of(1L)).block();
+        bulkStatus.set(HttpStatus.METHOD_NOT_ALLOWED);
+        client.getProductsByIds(List.of(1L)).block();
+        client.getProductsByIds(List.of(1L)).block();
+
+        // 400: solo ese lote va por búsquedas individuales; 405: se deja de usar el endpoint masivo
+        assertEquals(2, requestedPaths.stream().filter(path -> path.startsWith("/api/products/batch")).count());
+        assertEquals(3, requestedPaths.stream().filter(path -> path.equals("/api/products/1")).count());
+    }
+
+    @Test
+    void getProductById_notFoundIsNegativelyCached() {
+        ReactiveProductCatalogServiceClient client = newClient(request -> ClientResponse.create(HttpStatus.NOT_FOUND).build());
+
+        assertEquals(Optional.empty(), client.getProductById(99L).block());
+        assertEquals(Optional.empty(), client.getProductById(99L).block());
+
+        assertEquals(1, requestedPaths.size());
+    }
+
+    @Test
+    void getProductById_serverErrorIsPropagated() {
+        ReactiveProductCatalogServiceClient client = newClient(request -> ClientResponse.create(HttpStatus.INTERNAL_SERVER_ERROR).build());
+
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> client.getProductById(1L).block());
+
+        assertEquals("Error en comunicación con Product Catalog Service", exception.getMessage());
+    }
+}
@@ -0,0 +1,49 @@
+package com.programthis.order_cart_service.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncConfigTest {
+
+    private static AsyncConfig config(boolean virtualThreads) {
+        return new AsyncConfig(new MockEnvironment().withProperty("spring.threads.virtual.enabled", String.valueOf(virtualThreads)));
+    }
+
+    @Test
+    void platformThreadsUseBoundedPools() {
+        Executor executor = config(false).checkoutExecutor(8, 64, 200);
+
+        ThreadPoolTaskExecutor pool = assertInstanceOf(ThreadPoolTaskExecutor.class, executor);
+        assertEquals(64, pool.getMaxPoolSize());
+        assertEquals(200, pool.getQueueCapacity());
+    }
+
+    @Test
+    @EnabledForJreRange(max = JRE.JAVA_20)
+    void virtualThreadsPropertyIsIgnoredBeforeJava21() {
+        assertInstanceOf(ThreadPoolTaskExecutor.class, config(true).checkoutExecutor(8, 64, 200));
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void virtualThreadsRunEachTaskOnAVirtualThreadUpToTheMaxPoolSize() throws Exception {
+        Executor executor = config(true).checkoutExecutor(8, 64, 200);
+
+        SimpleAsyncTaskExecutor virtual = assertInstanceOf(SimpleAsyncTaskExecutor.class, executor);
+        assertEquals(64, virtual.getConcurrencyLimit());
+        // Thread.isVirtual() no existe en Java 17, con el que se compilan los tests por defecto
+        CompletableFuture<Thread> thread = CompletableFuture.supplyAsync(Thread::currentThread, executor);
+        Object isVirtual = Thread.class.getMethod("isVirtual").invoke(thread.get(5, TimeUnit.SECONDS));
+        assertEquals(Boolean.TRUE, isVirtual);
+    }
+}
@@ -0,0 +1,194 @@
+package com.programthis.order_cart_service.config;
+
+import com.programthis.order_cart_service.client.RemoteCallDeadline;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.config.Configurable;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.util.Timeout;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RestTemplateConfigTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private HttpClientProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        properties = new HttpClientProperties();
+        HttpClientProperties.Pool catalog = new HttpClientProperties.Pool();
+        catalog.setMaxConnections(100);
+        catalog.setResponseTimeout(Duration.ofSeconds(2));
+        HttpClientProperties.Pool payment = new HttpClientProperties.Pool();
+        payment.setMaxConnections(30);
+        payment.setResponseTimeout(Duration.ofSeconds(10));
+        payment.setConnectionRequestTimeout(Duration.ofMillis(500));
+        properties.setServices(Map.of("product-catalog-service", catalog, "payment-service", payment));
+    }
+
+    @Test
+    void eachRestTemplateHasItsOwnPoolAndTimeouts() {
+        RestTemplateConfig config = new RestTemplateConfig(properties, meterRegistry);
+
+        RequestConfig catalogConfig = requestConfig(config.productCatalogRestTemplate());
+        RequestConfig paymentConfig = requestConfig(config.paymentRestTemplate());
+        RequestConfig userConfig = requestConfig(config.userRestTemplate());
+
+        assertEquals(Timeout.ofSeconds(2), catalogConfig.getResponseTimeout());
+        assertEquals(Timeout.ofSeconds(1), catalogConfig.getConnectionRequestTimeout());
+        assertEquals(Timeout.ofSeconds(10), paymentConfig.getResponseTimeout());
+        assertEquals(Timeout.ofMilliseconds(500), paymentConfig.getConnectionRequestTimeout());
+        // Sin configuración propia: los valores de defaults
+        assertEquals(Timeout.ofSeconds(5), userConfig.getResponseTimeout());
+
+        assertEquals(100.0, poolMax("product-catalog-service"));
+        assertEquals(30.0, poolMax("payment-service"));
+        assertEquals(50.0, poolMax("user-service"));
+    }
+
+    @Test
+    void http2RestTemplateLimitsConcurrentRequestsToMaxConnections() throws Exception {
+        HttpClientProperties.Pool payment = properties.getServices().get("payment-service");
+        payment.setHttp2(true);
+        payment.setMaxConnections(1);
+        payment.setConnectionRequestTimeout(Duration.ofMillis(100));
+        RestTemplate paymentRestTemplate = new RestTemplateConfig(properties, meterRegistry).paymentRestTemplate();
+
+        CountDownLatch firstRequestArrived = new CountDownLatch(1);
+        CountDownLatch releaseFirstRequest = new CountDownLatch(1);
+        HttpServer server = startServer(exchange -> {
+            firstRequestArrived.countDown();
+            await(releaseFirstRequest);
+            respond(exchange, "ok");
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            String url = "http://localhost:" + server.getAddress().getPort() + "/";
+            Future<String> first = executor.submit(() -> paymentRestTemplate.getForObject(url, String.class));
+            assertTrue(firstRequestArrived.await(5, TimeUnit.SECONDS));
+
+            assertEquals(1.0, meterRegistry.get("http.client.pool.max").tag("service", "payment-service").gauge().value());
+            assertEquals(1.0, meterRegistry.get("http.client.pool.leased").tag("service", "payment-service").gauge().value());
+            assertThrows(ResourceAccessException.class, () -> paymentRestTemplate.getForObject(url, String.class));
+
+            releaseFirstRequest.countDown();
+            assertEquals("ok", first.get(5, TimeUnit.SECONDS));
+            assertEquals(0.0, meterRegistry.get("http.client.pool.leased").tag("service", "payment-service").gauge().value());
+        } finally {
+            releaseFirstRequest.countDown();
+            executor.shutdownNow();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void http2RestTemplateBoundsResponseTimeoutByRemainingDeadline() throws Exception {
+        properties.getServices().get("payment-service").setHttp2(true);
+        RestTemplate paymentRestTemplate = new RestTemplateConfig(properties, meterRegistry).paymentRestTemplate();
+        CountDownLatch release = new CountDownLatch(1);
+        HttpServer server = startServer(exchange -> {
+            await(release);
+            respond(exchange, "late");
+        });
+        try {
+            String url = "http://localhost:" + server.getAddress().getPort() + "/";
+            long start = System.nanoTime();
+
+            // Timeout de respuesta configurado: 10 s; plazo restante: 200 ms
+            assertThrows(ResourceAccessException.class, () -> RemoteCallDeadline.within(
+                    System.nanoTime() + Duration.ofMillis(200).toNanos(),
+                    () -> paymentRestTemplate.getForObject(url, String.class)));
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 5000);
+        } finally {
+            release.countDown();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void deadlineReadTimeout_boundsResponseTimeoutByRemainingDeadline() {
+        assertEquals(Duration.ofSeconds(10), RestTemplateConfig.deadlineReadTimeout(Duration.ofSeconds(10)));
+
+        Duration bounded = RemoteCallDeadline.within(System.nanoTime() + Duration.ofMillis(500).toNanos(),
+                () -> RestTemplateConfig.deadlineReadTimeout(Duration.ofSeconds(10)));
+        assertTrue(bounded.toMillis() <= 500);
+
+        assertThrows(RuntimeException.class, () -> RemoteCallDeadline.within(System.nanoTime() - 1,
+                () -> RestTemplateConfig.deadlineReadTimeout(Duration.ofSeconds(10))));
+    }
+
+    @Test
+    void deadlineContext_boundsTimeoutsByRemainingDeadline() {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofSeconds(1))
+                .setResponseTimeout(Timeout.ofSeconds(10))
+                .build();
+
+        assertNull(RestTemplateConfig.deadlineContext(requestConfig));
+
+        HttpClientContext context = RemoteCallDeadline.within(System.nanoTime() + Duration.ofMillis(500).toNanos(),
+                () -> RestTemplateConfig.deadlineContext(requestConfig));
+        assertTrue(context.getRequestConfig().getResponseTimeout().toMilliseconds() <= 500);
+        assertTrue(context.getRequestConfig().getConnectionRequestTimeout().toMilliseconds() <= 500);
+
+        assertThrows(RuntimeException.class, () -> RemoteCallDeadline.within(System.nanoTime() - 1,
+                () -> RestTemplateConfig.deadlineContext(requestConfig)));
+    }
+
+    private RequestConfig requestConfig(RestTemplate restTemplate) {
+        HttpComponentsClientHttpRequestFactory requestFactory =
+                assertInstanceOf(HttpComponentsClientHttpRequestFactory.class, restTemplate.getRequestFactory());
+        return ((Configurable) requestFactory.getHttpClient()).getConfig();
+    }
+
+    private static HttpServer startServer(HttpHandler handler) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", handler);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return server;
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private double poolMax(String serviceName) {
+        return meterRegistry.get("http.client.pool.max").tag("service", serviceName).gauge().value();
+    }
+}
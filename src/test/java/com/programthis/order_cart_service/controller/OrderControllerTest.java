@@ -1,6 +1,13 @@
 package com.programthis.order_cart_service.controller;
 
+import com.programthis.order_cart_service.dto.OrderHistoryPage;
+import com.programthis.order_cart_service.dto.OrderStatusDto;
+import com.programthis.order_cart_service.dto.OrderSummaryDto;
+import com.programthis.order_cart_service.dto.OrderSummaryPage;
 import com.programthis.order_cart_service.model.Order;
+import com.programthis.order_cart_service.service.CheckoutDeadlineExceededException;
+import com.programthis.order_cart_service.service.CheckoutPaymentFailedException;
+import com.programthis.order_cart_service.service.IdempotencyService;
 import com.programthis.order_cart_service.service.OrderService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,6 +19,9 @@ import org.springframework.hateoas.EntityModel;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
@@ -25,6 +35,12 @@ public class OrderControllerTest {
     @Mock
     private OrderService orderService;
 
+    @Mock
+    private IdempotencyService idempotencyService;
+
+    @Mock
+    private OrderStatusStreamRegistry orderStatusStreamRegistry;
+
     @InjectMocks
     private OrderController orderController;
 
@@ -47,7 +63,7 @@ public class OrderControllerTest {
                 .thenReturn(mockOrder);
 
         // Act
-        ResponseEntity<EntityModel<Order>> response = orderController.createOrderFromCart(userId, request);
+        ResponseEntity<EntityModel<Order>> response = orderController.createOrderFromCart(userId, request, null, null);
 
         // Assert
         assertEquals(HttpStatus.CREATED, response.getStatusCode());
@@ -65,13 +81,221 @@ public class OrderControllerTest {
                 .thenThrow(new RuntimeException("Cart not found"));
 
         // Act
-        ResponseEntity<EntityModel<Order>> response = orderController.createOrderFromCart(userId, request);
+        ResponseEntity<EntityModel<Order>> response = orderController.createOrderFromCart(userId, request, null, null);
 
         // Assert
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
         assertNull(response.getBody());
     }
 
+    @Test
+    public void testCreateOrderFromCart_DeadlineExceeded() {
+        // Arrange
+        Long userId = 1L;
+        OrderController.OrderCreationRequest request = new OrderController.OrderCreationRequest("Fake Street", "Credit Card");
+        when(orderService.createOrderFromCart(anyLong(), anyString(), anyString()))
+                .thenThrow(new CheckoutDeadlineExceededException(List.of("product-catalog-service"), Duration.ofSeconds(3)));
+
+        // Act
+        ResponseEntity<EntityModel<Order>> response = orderController.createOrderFromCart(userId, request, null, null);
+
+        // Assert
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, response.getStatusCode());
+        assertEquals("product-catalog-service", response.getHeaders().getFirst("X-Checkout-Slowest-Dependency"));
+    }
+
+    @Test
+    public void testCreateOrderFromCart_WithIdempotencyKey_CompletesKey() {
+        // Arrange
+        Long userId = 1L;
+        OrderController.OrderCreationRequest request = new OrderController.OrderCreationRequest("Fake Street", "Credit Card");
+        when(idempotencyService.begin(eq(userId), eq("key-1"), anyString()))
+                .thenReturn(new IdempotencyService.Claim(IdempotencyService.Outcome.STARTED, null, "owner-1"));
+        when(orderService.createOrderFromCart(userId, "Fake Street", "Credit Card")).thenReturn(mockOrder);
+
+        // Act
+        ResponseEntity<EntityModel<Order>> response = orderController.createOrderFromCart(userId, request, "key-1", null);
+
+        // Assert
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        verify(idempotencyService).complete(userId, "key-1", "owner-1", 1L);
+        verify(idempotencyService, never()).release(anyLong(), anyString(), anyString());
+    }
+
+    @Test
+    public void testCreateOrderFromCart_IdempotentReplay_ReturnsOriginalOrder() {
+        // Arrange
+        Long userId = 1L;
+        OrderController.OrderCreationRequest request = new OrderController.OrderCreationRequest("Fake Street", "Credit Card");
+        when(idempotencyService.begin(eq(userId), eq("key-1"), anyString()))
+                .thenReturn(new IdempotencyService.Claim(IdempotencyService.Outcome.REPLAY, 1L, null));
+        when(orderService.getOrderById(1L)).thenReturn(Optional.of(mockOrder));
+
+        // Act
+        ResponseEntity<EntityModel<Order>> response = orderController.createOrderFromCart(userId, request, "key-1", null);
+
+        // Assert
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertEquals("true", response.getHeaders().getFirst("Idempotent-Replayed"));
+        assertEquals(mockOrder, Objects.requireNonNull(response.getBody()).getContent());
+        verify(orderService, never()).createOrderFromCart(anyLong(), anyString(), anyString());
+    }
+
+    @Test
+    public void testCreateOrderFromCart_ConcurrentDuplicate_ReturnsConflict() {
+        // Arrange
+        OrderController.OrderCreationRequest request = new OrderController.OrderCreationRequest("Fake Street", "Credit Card");
+        when(idempotencyService.begin(eq(1L), eq("key-1"), anyString()))
+                .thenReturn(new IdempotencyService.Claim(IdempotencyService.Outcome.IN_PROGRESS, null, null));
+
+        // Act
+        ResponseEntity<EntityModel<Order>> response = orderController.createOrderFromCart(1L, request, "key-1", null);
+
+        // Assert
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        verify(orderService, never()).createOrderFromCart(anyLong(), anyString(), anyString());
+    }
+
+    @Test
+    public void testCreateOrderFromCart_KeyReusedWithDifferentBody_ReturnsUnprocessableEntity() {
+        // Arrange
+        OrderController.OrderCreationRequest request = new OrderController.OrderCreationRequest("Otra Calle", "Credit Card");
+        when(idempotencyService.begin(eq(1L), eq("key-1"), anyString()))
+                .thenReturn(new IdempotencyService.Claim(IdempotencyService.Outcome.MISMATCH, null, null));
+
+        // Act
+        ResponseEntity<EntityModel<Order>> response = orderController.createOrderFromCart(1L, request, "key-1", null);
+
+        // Assert
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, response.getStatusCode());
+    }
+
+    @Test
+    public void testCreateOrderFromCart_FailureWithIdempotencyKey_ReleasesKey() {
+        // Arrange
+        OrderController.OrderCreationRequest request = new OrderController.OrderCreationRequest("Fake Street", "Credit Card");
+        when(idempotencyService.begin(eq(1L), eq("key-1"), anyString()))
+                .thenReturn(new IdempotencyService.Claim(IdempotencyService.Outcome.STARTED, null, "owner-1"));
+        when(orderService.createOrderFromCart(anyLong(), anyString(), anyString()))
+                .thenThrow(new RuntimeException("El carrito está vacío. No se puede crear un pedido."));
+
+        // Act
+        ResponseEntity<EntityModel<Order>> response = orderController.createOrderFromCart(1L, request, "key-1", null);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verify(idempotencyService).release(1L, "key-1", "owner-1");
+        verify(idempotencyService, never()).complete(anyLong(), anyString(), anyString(), anyLong());
+    }
+
+    @Test
+    public void testCreateOrderFromCart_PaymentFailedWithIdempotencyKey_BindsKeyToOrder() {
+        // Arrange
+        OrderController.OrderCreationRequest request = new OrderController.OrderCreationRequest("Fake Street", "Credit Card");
+        mockOrder.setStatus("PAYMENT_FAILED");
+        when(idempotencyService.begin(eq(1L), eq("key-1"), anyString()))
+                .thenReturn(new IdempotencyService.Claim(IdempotencyService.Outcome.STARTED, null, "owner-1"));
+        when(orderService.createOrderFromCart(anyLong(), anyString(), anyString()))
+                .thenThrow(new CheckoutPaymentFailedException(mockOrder, new RuntimeException("El pago para la orden 1 falló o no pudo ser procesado.")));
+
+        // Act
+        ResponseEntity<EntityModel<Order>> response = orderController.createOrderFromCart(1L, request, "key-1", null);
+
+        // Assert: el pedido ya existe, así que la clave no se libera y un reintento no crea otro
+        assertEquals(HttpStatus.PAYMENT_REQUIRED, response.getStatusCode());
+        assertEquals(mockOrder, Objects.requireNonNull(response.getBody()).getContent());
+        verify(idempotencyService).complete(1L, "key-1", "owner-1", 1L);
+        verify(idempotencyService, never()).release(anyLong(), anyString(), anyString());
+    }
+
+    @Test
+    public void testCreateOrderFromCart_IdempotentReplayOfFailedPayment_ReturnsPaymentRequired() {
+        // Arrange
+        OrderController.OrderCreationRequest request = new OrderController.OrderCreationRequest("Fake Street", "Credit Card");
+        mockOrder.setStatus("PAYMENT_FAILED");
+        when(idempotencyService.begin(eq(1L), eq("key-1"), anyString()))
+                .thenReturn(new IdempotencyService.Claim(IdempotencyService.Outcome.REPLAY, 1L, null));
+        when(orderService.getOrderById(1L)).thenReturn(Optional.of(mockOrder));
+
+        // Act
+        ResponseEntity<EntityModel<Order>> response = orderController.createOrderFromCart(1L, request, "key-1", null);
+
+        // Assert
+        assertEquals(HttpStatus.PAYMENT_REQUIRED, response.getStatusCode());
+        assertEquals("true", response.getHeaders().getFirst("Idempotent-Replayed"));
+        verify(orderService, never()).createOrderFromCart(anyLong(), anyString(), anyString());
+    }
+
+    @Test
+    public void testCreateOrderFromCart_IdempotentReplayOfPendingAsyncOrder_ReturnsAccepted() {
+        // Arrange: la clave se usó con "Prefer: respond-async" y el pago sigue en curso
+        OrderController.OrderCreationRequest request = new OrderController.OrderCreationRequest("Fake Street", "Credit Card");
+        mockOrder.setStatus("PENDING");
+        when(idempotencyService.begin(eq(1L), eq("key-1"), anyString()))
+                .thenReturn(new IdempotencyService.Claim(IdempotencyService.Outcome.REPLAY, 1L, null));
+        when(orderService.getOrderById(1L)).thenReturn(Optional.of(mockOrder));
+
+        // Act
+        ResponseEntity<EntityModel<Order>> response = orderController.createOrderFromCart(1L, request, "key-1", "respond-async");
+
+        // Assert: el mismo 202 que la primera respuesta
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals("true", response.getHeaders().getFirst("Idempotent-Replayed"));
+        assertEquals("respond-async", response.getHeaders().getFirst("Preference-Applied"));
+        assertTrue(Objects.requireNonNull(response.getHeaders().getLocation()).getPath().endsWith("/api/orders/1"));
+        verify(orderService, never()).submitOrderFromCart(anyLong(), anyString(), anyString());
+    }
+
+    @Test
+    public void testCreateOrderFromCart_RespondAsync_ReturnsAcceptedWithLocation() {
+        // Arrange
+        Long userId = 1L;
+        mockOrder.setStatus("PENDING");
+        OrderController.OrderCreationRequest request = new OrderController.OrderCreationRequest("Fake Street", "Credit Card");
+        when(orderService.submitOrderFromCart(userId, "Fake Street", "Credit Card")).thenReturn(mockOrder);
+
+        // Act
+        ResponseEntity<EntityModel<Order>> response = orderController.createOrderFromCart(userId, request, null, "respond-async");
+
+        // Assert
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertNotNull(response.getHeaders().getLocation());
+        assertTrue(response.getHeaders().getLocation().getPath().endsWith("/api/orders/1"));
+        assertEquals("respond-async", response.getHeaders().getFirst("Preference-Applied"));
+        assertTrue(Objects.requireNonNull(response.getBody()).getLink("status-events").isPresent());
+        verify(orderService, never()).createOrderFromCart(anyLong(), anyString(), anyString());
+    }
+
+    @Test
+    public void testGetOrderStatus_Pending_SuggestsRetry() {
+        // Arrange
+        mockOrder.setStatus("PENDING");
+        when(orderService.getOrderById(1L)).thenReturn(Optional.of(mockOrder));
+
+        // Act
+        ResponseEntity<OrderStatusDto> response = orderController.getOrderStatus(1L);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("PENDING", Objects.requireNonNull(response.getBody()).getStatus());
+        assertEquals("1", response.getHeaders().getFirst("Retry-After"));
+    }
+
+    @Test
+    public void testStreamOrderStatus_NotFound() {
+        // Arrange
+        OrderStatusStreamRegistry registry = new OrderStatusStreamRegistry(orderService, Duration.ofSeconds(30));
+        OrderController controller = new OrderController(orderService, idempotencyService, registry);
+        when(orderService.getOrderById(1L)).thenReturn(Optional.empty());
+
+        // Act
+        ResponseEntity<?> response = controller.streamOrderStatus(1L);
+
+        // Assert
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertEquals(0, registry.subscriberCount(1L));
+    }
+
     @Test
     public void testGetOrderById_Found() {
         // Arrange
@@ -104,16 +328,71 @@ public class OrderControllerTest {
         // Arrange
         Long userId = 1L;
         List<Order> mockOrders = Arrays.asList(mockOrder, new Order());
-        when(orderService.getOrdersByUserId(userId)).thenReturn(mockOrders);
+        when(orderService.getOrderHistory(userId, null, OrderService.DEFAULT_HISTORY_PAGE_SIZE))
+                .thenReturn(new OrderHistoryPage(mockOrders, null));
 
         // Act
-        ResponseEntity<CollectionModel<EntityModel<Order>>> response = orderController.getOrdersByUserId(userId);
+        ResponseEntity<CollectionModel<EntityModel<Order>>> response = orderController.getOrdersByUserId(userId, null, null);
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertNotNull(response.getBody());
         assertEquals(2, response.getBody().getContent().size());
         assertTrue(response.getBody().getLink("self").isPresent());
+        assertFalse(response.getBody().getLink("next").isPresent());
+    }
+
+    @Test
+    public void testGetOrdersByUserId_MorePages_AddsNextLink() {
+        // Arrange
+        Long userId = 1L;
+        when(orderService.getOrderHistory(userId, null, 1))
+                .thenReturn(new OrderHistoryPage(List.of(mockOrder), "abc123"));
+
+        // Act
+        ResponseEntity<CollectionModel<EntityModel<Order>>> response = orderController.getOrdersByUserId(userId, null, 1);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        String next = response.getBody().getLink("next").orElseThrow().getHref();
+        assertTrue(next.contains("cursor=abc123"));
+        assertTrue(next.contains("size=1"));
+    }
+
+    @Test
+    public void testGetOrdersByUserId_NoOrders_ReturnsNoContent() {
+        when(orderService.getOrderHistory(1L, null, OrderService.DEFAULT_HISTORY_PAGE_SIZE))
+                .thenReturn(new OrderHistoryPage(List.of(), null));
+
+        ResponseEntity<CollectionModel<EntityModel<Order>>> response = orderController.getOrdersByUserId(1L, null, null);
+
+        assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
+    }
+
+    @Test
+    public void testGetOrdersByUserId_InvalidCursor_ReturnsBadRequest() {
+        when(orderService.getOrderHistory(1L, "basura", OrderService.DEFAULT_HISTORY_PAGE_SIZE))
+                .thenThrow(new IllegalArgumentException("Cursor de paginación no válido: basura"));
+
+        ResponseEntity<CollectionModel<EntityModel<Order>>> response = orderController.getOrdersByUserId(1L, "basura", null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    public void testGetOrderSummariesByUserId_ReturnsSummariesWithNextLink() {
+        // Arrange
+        OrderSummaryDto summary = new OrderSummaryDto(1L, LocalDateTime.of(2024, 5, 1, 12, 0), "COMPLETED", BigDecimal.TEN, 3L);
+        when(orderService.getOrderSummaries(1L, null, OrderService.DEFAULT_HISTORY_PAGE_SIZE))
+                .thenReturn(new OrderSummaryPage(List.of(summary), "abc123"));
+
+        // Act
+        ResponseEntity<CollectionModel<OrderSummaryDto>> response = orderController.getOrderSummariesByUserId(1L, null, null);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(List.of(summary), List.copyOf(response.getBody().getContent()));
+        assertTrue(response.getBody().getLink("next").orElseThrow().getHref().contains("cursor=abc123"));
     }
 
     @Test
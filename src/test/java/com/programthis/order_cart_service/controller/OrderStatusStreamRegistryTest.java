@@ -0,0 +1,89 @@
+package com.programthis.order_cart_service.controller;
+
+import com.programthis.order_cart_service.dto.OrderStatusDto;
+import com.programthis.order_cart_service.service.OrderService;
+import com.programthis.order_cart_service.service.OrderStatusChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+class OrderStatusStreamRegistryTest {
+
+    private OrderService orderService;
+    private OrderStatusStreamRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        orderService = mock(OrderService.class);
+        registry = new OrderStatusStreamRegistry(orderService, Duration.ofSeconds(30));
+    }
+
+    @Test
+    void subscribe_PendingOrder_KeepsStreamOpenUntilFinalStatus() {
+        registry.subscribe(1L, () -> Optional.of(new OrderStatusDto(1L, "PENDING", null)));
+        assertEquals(1, registry.subscriberCount(1L));
+
+        // Una transición de otro pedido no afecta al stream
+        registry.onOrderStatusChanged(new OrderStatusChangedEvent(2L, 1L, "COMPLETED", "TX-2"));
+        assertEquals(1, registry.subscriberCount(1L));
+
+        registry.onOrderStatusChanged(new OrderStatusChangedEvent(1L, 1L, "COMPLETED", "TX-1"));
+        assertEquals(0, registry.subscriberCount(1L));
+    }
+
+    @Test
+    void subscribe_OrderAlreadyFinished_ClosesStreamImmediately() {
+        registry.subscribe(1L, () -> Optional.of(new OrderStatusDto(1L, "PAYMENT_FAILED", null)));
+
+        assertEquals(0, registry.subscriberCount(1L));
+    }
+
+    @Test
+    void subscribe_TransitionWhileReadingCurrentStatus_IsDeliveredAndClosesStream() {
+        // El pago se registra justo después de leer el estado actual (PENDING): como el emisor ya estaba registrado,
+        // la transición le llega y el stream se cierra en lugar de quedarse en PENDING
+        Optional<SseEmitter> emitter = registry.subscribe(1L, () -> {
+            registry.onOrderStatusChanged(new OrderStatusChangedEvent(1L, 1L, "COMPLETED", "TX-1"));
+            return Optional.of(new OrderStatusDto(1L, "PENDING", null));
+        });
+
+        assertTrue(emitter.isPresent());
+        assertEquals(0, registry.subscriberCount(1L));
+    }
+
+    @Test
+    void subscribe_UnknownOrder_LeavesNoEmitterRegistered() {
+        assertTrue(registry.subscribe(1L, Optional::empty).isEmpty());
+
+        assertEquals(0, registry.subscriberCount(1L));
+    }
+
+    @Test
+    void recheckOpenStreams_StatusChangedByAnotherInstance_ClosesStream() {
+        // El pago del pedido 1 lo registró otra instancia: aquí no llega ningún evento, solo el estado en la base de datos
+        registry.subscribe(1L, () -> Optional.of(new OrderStatusDto(1L, "PENDING", null)));
+        registry.subscribe(2L, () -> Optional.of(new OrderStatusDto(2L, "PENDING", null)));
+        when(orderService.findFinishedStatuses(argThat(ids -> ids.containsAll(List.of(1L, 2L)))))
+                .thenReturn(List.of(new OrderStatusDto(1L, "COMPLETED", "TX-1")));
+
+        registry.recheckOpenStreams();
+
+        assertEquals(0, registry.subscriberCount(1L));
+        assertEquals(1, registry.subscriberCount(2L));
+    }
+
+    @Test
+    void recheckOpenStreams_NoOpenStreams_DoesNotQuery() {
+        registry.recheckOpenStreams();
+
+        verifyNoInteractions(orderService);
+    }
+}
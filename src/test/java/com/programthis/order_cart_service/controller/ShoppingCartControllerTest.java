@@ -1,6 +1,8 @@
 package com.programthis.order_cart_service.controller;
 
+import com.programthis.order_cart_service.dto.CartItemOperationDto;
 import com.programthis.order_cart_service.model.ShoppingCart;
+import com.programthis.order_cart_service.service.CartConflictException;
 import com.programthis.order_cart_service.service.ShoppingCartService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,6 +13,7 @@ import org.springframework.hateoas.EntityModel;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
+import java.util.List;
 import java.util.Objects;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -37,20 +40,98 @@ public class ShoppingCartControllerTest {
     }
 
     @Test
-    public void testGetOrCreateCart() {
+    public void testGetCart() {
         // Arrange
-        when(shoppingCartService.getOrCreateShoppingCart(userId)).thenReturn(cart);
+        cart.setVersion(3L);
+        when(shoppingCartService.getCart(userId)).thenReturn(cart);
 
         // Act
-        ResponseEntity<EntityModel<ShoppingCart>> response = shoppingCartController.getOrCreateCart(userId);
+        ResponseEntity<EntityModel<ShoppingCart>> response = shoppingCartController.getCart(userId, null);
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("\"1-3\"", response.getHeaders().getETag());
         assertNotNull(response.getBody());
         assertEquals(cart, response.getBody().getContent());
         assertTrue(response.getBody().getLink("self").isPresent());
     }
 
+    @Test
+    public void testGetCart_NotModified() {
+        // Arrange
+        cart.setVersion(3L);
+        when(shoppingCartService.getCart(userId)).thenReturn(cart);
+
+        // Act
+        ResponseEntity<EntityModel<ShoppingCart>> response = shoppingCartController.getCart(userId, "\"1-3\"");
+
+        // Assert
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals("\"1-3\"", response.getHeaders().getETag());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    public void testGetCart_StaleETagReturnsCurrentCart() {
+        // Arrange
+        cart.setVersion(4L);
+        when(shoppingCartService.getCart(userId)).thenReturn(cart);
+
+        // Act
+        ResponseEntity<EntityModel<ShoppingCart>> response = shoppingCartController.getCart(userId, "\"1-3\"");
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("\"1-4\"", response.getHeaders().getETag());
+        assertEquals(cart, response.getBody().getContent());
+    }
+
+    @Test
+    public void testGetCart_UserWithoutCartGetsUnsavedEmptyCart() {
+        // Arrange
+        when(shoppingCartService.getCart(userId)).thenReturn(ShoppingCart.emptyFor(userId));
+
+        // Act
+        ResponseEntity<EntityModel<ShoppingCart>> response = shoppingCartController.getCart(userId, null);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("\"new-0\"", response.getHeaders().getETag());
+        assertNull(response.getBody().getContent().getId());
+        assertTrue(response.getBody().getContent().getItems().isEmpty());
+        verify(shoppingCartService, never()).getOrCreateShoppingCart(any());
+    }
+
+    @Test
+    public void testApplyItemOperations_Success() {
+        // Arrange
+        List<CartItemOperationDto> operations = List.of(
+                new CartItemOperationDto(CartItemOperationDto.Type.ADD, productId, 2),
+                new CartItemOperationDto(CartItemOperationDto.Type.REMOVE, 200L, null));
+        when(shoppingCartService.applyItemOperations(userId, operations)).thenReturn(cart);
+
+        // Act
+        ResponseEntity<EntityModel<ShoppingCart>> response = shoppingCartController.applyItemOperations(userId, operations);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(cart, response.getBody().getContent());
+    }
+
+    @Test
+    public void testApplyItemOperations_InvalidOperationIsBadRequest() {
+        // Arrange
+        List<CartItemOperationDto> operations = List.of(new CartItemOperationDto(CartItemOperationDto.Type.REMOVE, 200L, null));
+        when(shoppingCartService.applyItemOperations(userId, operations))
+                .thenThrow(new RuntimeException("Producto con ID 200 no encontrado en el carrito para eliminar."));
+
+        // Act
+        ResponseEntity<EntityModel<ShoppingCart>> response = shoppingCartController.applyItemOperations(userId, operations);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
     @Test
     public void testAddProductToCart_Success() {
         // Arrange
@@ -104,6 +185,19 @@ public class ShoppingCartControllerTest {
         assertNull(response.getBody());
     }
 
+    @Test
+    public void testUpdateProductQuantityInCart_ConcurrentModification() {
+        // Arrange
+        when(shoppingCartService.updateProductQuantityInCart(userId, productId, 3)).thenThrow(new CartConflictException(userId, null));
+
+        // Act
+        ResponseEntity<EntityModel<ShoppingCart>> response = shoppingCartController.updateProductQuantityInCart(userId, productId, 3);
+
+        // Assert
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertNull(response.getBody());
+    }
+
     @Test
     public void testRemoveProductFromCart_Success() {
         // Arrange
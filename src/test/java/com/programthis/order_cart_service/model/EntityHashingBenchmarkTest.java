@@ -0,0 +1,104 @@
+package com.programthis.order_cart_service.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+// Coste de hashCode y de las operaciones en HashSet de carritos y pedidos según su número de ítems.
+// No forma parte de la suite: se ejecuta con
+//   mvn test -Dtest=EntityHashingBenchmarkTest -Dbenchmark=true
+// Resultados y contexto en docs/entity-identity.md
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class EntityHashingBenchmarkTest {
+
+    private static final int[] ITEM_COUNTS = {10, 100, 1_000};
+    private static final int WARMUP_ROUNDS = 20_000;
+    private static final int MEASURED_ROUNDS = 100_000;
+    private static final int SET_SIZE = 1_000;
+
+    // Evita que el JIT descarte los cálculos medidos
+    private static long sink;
+
+    private static ShoppingCart cart(long id, int itemCount) {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setId(id);
+        cart.setUserId(id);
+        cart.setVersion(1L);
+        for (int i = 0; i < itemCount; i++) {
+            CartItem item = new CartItem();
+            item.setId(id * 10_000 + i);
+            item.setProductId(100L + i);
+            item.setQuantity(1 + i % 5);
+            item.setPriceAtAddition(new BigDecimal("19.99"));
+            cart.addCartItem(item);
+        }
+        return cart;
+    }
+
+    private static Order order(long id, int itemCount) {
+        Order order = new Order();
+        order.setId(id);
+        order.setUserId(id);
+        order.setStatus("COMPLETED");
+        order.setTotalAmount(BigDecimal.TEN);
+        for (int i = 0; i < itemCount; i++) {
+            OrderItem item = new OrderItem();
+            item.setId(id * 10_000 + i);
+            item.setProductId(100L + i);
+            item.setProductName("Producto " + i);
+            item.setQuantity(1);
+            item.setUnitPrice(BigDecimal.ONE);
+            item.setSubtotal(BigDecimal.ONE);
+            order.addOrderItem(item);
+        }
+        return order;
+    }
+
+    // Nanosegundos por llamada, o el nombre del error si la operación falla (p. ej. StackOverflowError)
+    private static String nanosPerCall(Supplier<Integer> operation, int rounds) {
+        try {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                sink += operation.get();
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                sink += operation.get();
+            }
+            return String.format("%,.1f ns", (System.nanoTime() - start) / (double) rounds);
+        } catch (StackOverflowError e) {
+            return "StackOverflowError";
+        }
+    }
+
+    private static <T> String setLookup(Supplier<T> factory, T probe) {
+        try {
+            Set<T> set = new HashSet<>();
+            for (int i = 0; i < SET_SIZE; i++) {
+                set.add(factory.get());
+            }
+            return nanosPerCall(() -> set.contains(probe) ? 1 : 0, MEASURED_ROUNDS / 10);
+        } catch (StackOverflowError e) {
+            return "StackOverflowError";
+        }
+    }
+
+    @Test
+    void hashingCost() {
+        System.out.printf("%-8s %-22s %-22s %-22s %-22s%n", "ítems", "ShoppingCart.hashCode", "HashSet<ShoppingCart>", "Order.hashCode", "HashSet<Order>");
+        for (int itemCount : ITEM_COUNTS) {
+            ShoppingCart cart = cart(1L, itemCount);
+            Order order = order(1L, itemCount);
+            long[] nextId = {2};
+            System.out.printf("%-8d %-22s %-22s %-22s %-22s%n", itemCount,
+                    nanosPerCall(cart::hashCode, MEASURED_ROUNDS),
+                    setLookup(() -> cart(nextId[0]++, itemCount), cart),
+                    nanosPerCall(order::hashCode, MEASURED_ROUNDS),
+                    setLookup(() -> order(nextId[0]++, itemCount), order));
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+}
@@ -0,0 +1,80 @@
+package com.programthis.order_cart_service.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// equals/hashCode de las entidades: por ID o clave natural, sin recorrer colecciones ni referencias al padre
+class EntityIdentityTest {
+
+    // Lista que falla si se recorre: equals/hashCode no deben tocar los ítems (en una entidad real, la colección LAZY)
+    private static <T> List<T> untouchable() {
+        return new ArrayList<>() {
+            @Override
+            public int hashCode() {
+                throw new AssertionError("Se recorrieron los ítems");
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                throw new AssertionError("Se recorrieron los ítems");
+            }
+        };
+    }
+
+    @Test
+    void shoppingCart_isIdentifiedByUserWithoutTouchingItems() {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setUserId(7L);
+        cart.setItems(untouchable());
+        ShoppingCart copy = ShoppingCart.emptyFor(7L);
+        copy.setId(3L);
+
+        assertEquals(cart, copy);
+        assertEquals(cart.hashCode(), copy.hashCode());
+        assertNotEquals(cart, ShoppingCart.emptyFor(8L));
+        assertNotEquals(new ShoppingCart(), new ShoppingCart());
+    }
+
+    @Test
+    void order_withItemsCanBeHashedAndPrinted() {
+        Order order = new Order();
+        order.setId(1L);
+        for (int i = 0; i < 3; i++) {
+            OrderItem item = new OrderItem();
+            item.setId(10L + i);
+            item.setProductId(100L + i);
+            item.setQuantity(1);
+            item.setUnitPrice(BigDecimal.ONE);
+            order.addOrderItem(item);
+        }
+        Order sameRow = new Order();
+        sameRow.setId(1L);
+        sameRow.setItems(untouchable());
+
+        Set<Order> orders = new HashSet<>(List.of(order));
+
+        assertTrue(orders.contains(sameRow));
+        assertTrue(order.toString().contains("productId=102"));
+        assertTrue(new HashSet<>(order.getItems()).contains(order.getItems().get(2)));
+    }
+
+    @Test
+    void unsavedEntities_areOnlyEqualToThemselves() {
+        Order order = new Order();
+        int hashBeforeSave = order.hashCode();
+        Set<Order> orders = new HashSet<>(List.of(order));
+
+        order.setId(42L); // Como al guardarlo
+
+        assertEquals(hashBeforeSave, order.hashCode());
+        assertTrue(orders.contains(order));
+        assertNotEquals(new OrderItem(), new OrderItem());
+    }
+}
@@ -0,0 +1,107 @@
+package com.programthis.order_cart_service.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShoppingCartTest {
+
+    private static CartItem item(Long id, Long productId, int quantity) {
+        CartItem item = new CartItem();
+        item.setId(id);
+        item.setProductId(productId);
+        item.setQuantity(quantity);
+        item.setPriceAtAddition(BigDecimal.ONE);
+        return item;
+    }
+
+    @Test
+    void findItem_followsAddAndRemove() {
+        ShoppingCart cart = new ShoppingCart();
+        CartItem keyboard = item(1L, 101L, 1);
+        CartItem mouse = item(2L, 102L, 3);
+        cart.addCartItem(keyboard);
+        cart.addCartItem(mouse);
+
+        assertSame(mouse, cart.findItem(102L));
+
+        cart.removeCartItem(mouse);
+        cart.addCartItem(item(3L, 103L, 1));
+
+        assertNull(cart.findItem(102L));
+        assertNull(mouse.getCart());
+        assertSame(keyboard, cart.findItem(101L));
+        assertEquals(103L, cart.findItem(103L).getProductId());
+    }
+
+    @Test
+    void setItems_replacesTheItemsInPlace() {
+        ShoppingCart cart = new ShoppingCart();
+        cart.addCartItem(item(1L, 101L, 1));
+
+        // Como hace Jackson al deserializar
+        cart.setItems(new ArrayList<>(List.of(item(2L, 102L, 1), item(3L, 103L, 1))));
+
+        assertNull(cart.findItem(101L));
+        assertNotNull(cart.findItem(102L));
+        assertEquals(List.of(102L, 103L), cart.getItems().stream().map(CartItem::getProductId).toList());
+        assertSame(cart, cart.findItem(103L).getCart());
+    }
+
+    @Test
+    void getItems_isReadOnlyAndKeepsInsertionOrder() {
+        ShoppingCart cart = new ShoppingCart();
+        cart.addCartItem(item(1L, 103L, 1));
+        cart.addCartItem(item(2L, 101L, 1));
+        cart.addCartItem(item(3L, 102L, 1));
+
+        assertEquals(List.of(103L, 101L, 102L), cart.getItems().stream().map(CartItem::getProductId).toList());
+        assertThrows(UnsupportedOperationException.class, () -> cart.getItems().add(item(4L, 104L, 1)));
+        assertNull(cart.findItem(104L));
+    }
+
+    @Test
+    void addCartItem_replacesTheItemOfTheSameProduct() {
+        ShoppingCart cart = new ShoppingCart();
+        CartItem first = item(null, 101L, 2);
+        CartItem second = item(null, 101L, 5);
+        cart.addCartItem(first);
+        cart.addCartItem(second);
+
+        assertEquals(1, cart.getItems().size());
+        assertSame(second, cart.findItem(101L));
+        assertNull(first.getCart());
+    }
+
+    @Test
+    void removeCartItem_removesOnlyThatInstance() {
+        ShoppingCart cart = new ShoppingCart();
+        CartItem stale = item(null, 101L, 2);
+        CartItem current = item(null, 101L, 2);
+        cart.addCartItem(stale);
+        cart.addCartItem(current);
+
+        cart.removeCartItem(stale);
+
+        assertEquals(1, cart.getItems().size());
+        assertSame(current, cart.getItems().get(0));
+        assertSame(cart, current.getCart());
+    }
+
+    @Test
+    void cartItemEquality_isByIdAndStableWhenFieldsChange() {
+        CartItem saved = item(5L, 101L, 1);
+        CartItem sameRow = item(5L, 999L, 7);
+        int hashBefore = saved.hashCode();
+
+        saved.setQuantity(10);
+
+        assertEquals(saved, sameRow);
+        assertEquals(hashBefore, saved.hashCode());
+        assertNotEquals(item(null, 101L, 1), item(null, 101L, 1));
+    }
+}
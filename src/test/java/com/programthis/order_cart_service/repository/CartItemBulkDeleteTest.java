@@ -0,0 +1,65 @@
+package com.programthis.order_cart_service.repository;
+
+import com.programthis.order_cart_service.model.CartItem;
+import com.programthis.order_cart_service.model.ShoppingCart;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Vaciar un carrito es una sola sentencia DELETE, tenga los ítems que tenga, y no deja ítems borrados gestionados
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class CartItemBulkDeleteTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    private ShoppingCart persistCart(Long userId, int itemCount) {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setUserId(userId);
+        for (int i = 0; i < itemCount; i++) {
+            CartItem item = new CartItem();
+            item.setProductId(100L + i);
+            item.setQuantity(1);
+            item.setPriceAtAddition(BigDecimal.ONE);
+            cart.addCartItem(item);
+        }
+        return entityManager.persist(cart);
+    }
+
+    @Test
+    void deleteByCartId_removesAllItemsOfThatCartInOneStatement() {
+        ShoppingCart cart = persistCart(7L, 30);
+        ShoppingCart otherCart = persistCart(8L, 2);
+        entityManager.flush();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        int deleted = cartItemRepository.deleteByCartId(cart.getId());
+
+        assertEquals(30, deleted);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertFalse(entityManager.getEntityManager().contains(cart.getItems().get(0)));
+        assertTrue(cartItemRepository.findByCartId(cart.getId()).isEmpty());
+        assertEquals(2, cartItemRepository.findByCartId(otherCart.getId()).size());
+    }
+}
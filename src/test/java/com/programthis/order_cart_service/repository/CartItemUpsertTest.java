@@ -0,0 +1,70 @@
+package com.programthis.order_cart_service.repository;
+
+import com.programthis.order_cart_service.model.CartItem;
+import com.programthis.order_cart_service.model.ShoppingCart;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// El upsert es SQL nativo de MySQL: se prueba sobre el esquema de las migraciones (H2 en modo MySQL), que incluye la
+// restricción única (cart_id, product_id)
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:cart_upsert;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class CartItemUpsertTest {
+
+    private static final Long PRODUCT_ID = 101L;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    private Long cartId;
+
+    @BeforeEach
+    void setUp() {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setUserId(7L);
+        cartId = entityManager.persistAndFlush(cart).getId();
+    }
+
+    @Test
+    void upsertQuantity_insertsNewProduct() {
+        cartItemRepository.upsertQuantity(cartId, PRODUCT_ID, 2, new BigDecimal("75.00"), LocalDateTime.now());
+
+        List<CartItem> items = cartItemRepository.findByCartId(cartId);
+        assertEquals(1, items.size());
+        assertEquals(2, items.get(0).getQuantity());
+        assertEquals(0, new BigDecimal("75.00").compareTo(items.get(0).getPriceAtAddition()));
+        assertNotNull(items.get(0).getCreatedAt());
+    }
+
+    @Test
+    void upsertQuantity_addsToExistingRowAndKeepsOriginalPrice() {
+        cartItemRepository.upsertQuantity(cartId, PRODUCT_ID, 2, new BigDecimal("75.00"), LocalDateTime.now());
+        cartItemRepository.upsertQuantity(cartId, PRODUCT_ID, 3, new BigDecimal("80.00"), LocalDateTime.now());
+        cartItemRepository.upsertQuantity(cartId, 202L, 1, BigDecimal.ONE, LocalDateTime.now());
+
+        List<CartItem> items = cartItemRepository.findByCartId(cartId);
+        assertEquals(2, items.size());
+        CartItem item = items.stream().filter(i -> i.getProductId().equals(PRODUCT_ID)).findFirst().orElseThrow();
+        assertEquals(5, item.getQuantity());
+        assertEquals(0, new BigDecimal("75.00").compareTo(item.getPriceAtAddition()));
+    }
+}
@@ -0,0 +1,145 @@
+package com.programthis.order_cart_service.repository;
+
+import com.programthis.order_cart_service.dto.OrderSummaryDto;
+import com.programthis.order_cart_service.model.CartItem;
+import com.programthis.order_cart_service.model.Order;
+import com.programthis.order_cart_service.model.OrderItem;
+import com.programthis.order_cart_service.model.ShoppingCart;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Número de sentencias SQL de las consultas que usan los endpoints de lectura: un pedido, el historial de un
+// usuario y el carrito deben cargarse con sus ítems en una sola consulta, sin importar cuántos haya (sin N+1).
+// Los resúmenes de pedidos, además, no deben cargar ninguna entidad
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class FetchPlanQueryCountTest {
+
+    private static final Long USER_ID = 7L;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ShoppingCartRepository shoppingCartRepository;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    private Order persistOrder(int itemCount) {
+        Order order = new Order();
+        order.setUserId(USER_ID);
+        order.setOrderDate(LocalDateTime.now());
+        order.setStatus("COMPLETED");
+        order.setTotalAmount(BigDecimal.TEN);
+        for (int i = 0; i < itemCount; i++) {
+            OrderItem item = new OrderItem();
+            item.setProductId(100L + i);
+            item.setProductName("Producto " + i);
+            item.setQuantity(1);
+            item.setUnitPrice(BigDecimal.ONE);
+            item.setSubtotal(BigDecimal.ONE);
+            item.setOrder(order);
+            order.addOrderItem(item);
+        }
+        return entityManager.persist(order);
+    }
+
+    // Vacía el contexto de persistencia para que las lecturas vayan a la base de datos, y reinicia los contadores
+    private void startCounting() {
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+    }
+
+    private static int countItems(List<Order> orders) {
+        return orders.stream().mapToInt(order -> order.getItems().size()).sum();
+    }
+
+    @Test
+    void orderHistory_loadsOrdersAndItemsInOneQuery() {
+        for (int i = 0; i < 5; i++) {
+            persistOrder(3);
+        }
+        startCounting();
+
+        List<Order> orders = orderRepository.findByUserIdOrderByOrderDateDesc(USER_ID);
+
+        assertEquals(5, orders.size());
+        assertEquals(15, countItems(orders));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void orderById_loadsItemsInSameQuery() {
+        Long orderId = persistOrder(4).getId();
+        startCounting();
+
+        Order order = orderRepository.findById(orderId).orElseThrow();
+
+        assertEquals(4, order.getItems().size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void orderSummaries_countItemsInSqlWithoutLoadingEntities() {
+        persistOrder(3);
+        persistOrder(0);
+        startCounting();
+
+        List<OrderSummaryDto> summaries = orderRepository.findSummaries(USER_ID, PageRequest.of(0, 10));
+
+        assertEquals(2, summaries.size());
+        assertEquals(List.of(3L, 0L), summaries.stream().map(OrderSummaryDto::getItemCount).sorted(Comparator.reverseOrder()).toList());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void cartByUserId_loadsItemsInSameQuery() {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setUserId(USER_ID);
+        for (int i = 0; i < 3; i++) {
+            CartItem item = new CartItem();
+            item.setProductId(100L + i);
+            item.setQuantity(2);
+            item.setPriceAtAddition(BigDecimal.ONE);
+            cart.addCartItem(item);
+        }
+        entityManager.persist(cart);
+        startCounting();
+
+        ShoppingCart loaded = shoppingCartRepository.findByUserId(USER_ID).orElseThrow();
+
+        assertEquals(3, loaded.getItems().size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+}
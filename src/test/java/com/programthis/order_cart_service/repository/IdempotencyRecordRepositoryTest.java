@@ -0,0 +1,75 @@
+package com.programthis.order_cart_service.repository;
+
+import com.programthis.order_cart_service.model.IdempotencyRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Cierre de las claves de idempotencia condicionado a su token, sobre el esquema de las migraciones (H2 en modo MySQL)
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:idempotency_records;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class IdempotencyRecordRepositoryTest {
+
+    private static final Long USER_ID = 1L;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    // Clave reservada por "original" cuyo plazo ya venció, retomada después por "retry"
+    private IdempotencyRecord takenOverKey(String key) {
+        LocalDateTime now = LocalDateTime.now();
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setUserId(USER_ID);
+        record.setIdempotencyKey(key);
+        record.setRequestFingerprint("fp");
+        record.setStatus("IN_PROGRESS");
+        record.setOwnerToken("original");
+        record.setLockedUntil(now.minusMinutes(1));
+        record.setExpiresAt(now.plusHours(1));
+        entityManager.persistAndFlush(record);
+        assertEquals(1, idempotencyRecordRepository.takeOver(record.getId(), "fp", "retry", now.plusMinutes(1),
+                now.plusHours(1), now));
+        entityManager.clear();
+        return record;
+    }
+
+    @Test
+    void complete_fromTheAbandonedRequestDoesNotOverwriteTheOneThatTookOver() {
+        takenOverKey("key-1");
+        LocalDateTime expiresAt = LocalDateTime.now().plusHours(24);
+
+        assertEquals(0, idempotencyRecordRepository.complete(USER_ID, "key-1", "original", 10L, expiresAt));
+        assertEquals(1, idempotencyRecordRepository.complete(USER_ID, "key-1", "retry", 11L, expiresAt));
+
+        IdempotencyRecord stored = idempotencyRecordRepository.findByUserIdAndIdempotencyKey(USER_ID, "key-1").orElseThrow();
+        assertEquals("COMPLETED", stored.getStatus());
+        assertEquals(11L, stored.getOrderId());
+    }
+
+    @Test
+    void release_fromTheAbandonedRequestKeepsTheKeyOfTheOneThatTookOver() {
+        takenOverKey("key-2");
+
+        assertEquals(0, idempotencyRecordRepository.release(USER_ID, "key-2", "original"));
+
+        IdempotencyRecord stored = idempotencyRecordRepository.findByUserIdAndIdempotencyKey(USER_ID, "key-2").orElseThrow();
+        assertEquals("retry", stored.getOwnerToken());
+        assertEquals(1, idempotencyRecordRepository.release(USER_ID, "key-2", "retry"));
+        assertTrue(idempotencyRecordRepository.findByUserIdAndIdempotencyKey(USER_ID, "key-2").isEmpty());
+    }
+}
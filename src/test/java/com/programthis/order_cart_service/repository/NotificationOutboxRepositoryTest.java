@@ -0,0 +1,70 @@
+package com.programthis.order_cart_service.repository;
+
+import com.programthis.order_cart_service.model.NotificationOutbox;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Alta sin duplicados y cierre condicionado a la reserva del outbox, sobre el esquema de las migraciones (H2 en modo MySQL)
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:notification_outbox;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class NotificationOutboxRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private NotificationOutboxRepository notificationOutboxRepository;
+
+    private int enqueue(Long orderId, String type) {
+        return notificationOutboxRepository.insertIfAbsent(orderId, type, "jdoe@example.com", "Confirmación", "Gracias",
+                LocalDateTime.now());
+    }
+
+    @Test
+    void insertIfAbsent_ignoresASecondNotificationOfTheSameType() {
+        assertEquals(1, enqueue(10L, "ORDER_CONFIRMATION"));
+        // Sin excepción: la transacción del pedido sigue siendo válida
+        assertEquals(0, enqueue(10L, "ORDER_CONFIRMATION"));
+        assertEquals(1, enqueue(10L, "ORDER_SHIPPED"));
+
+        assertEquals(2, notificationOutboxRepository.count());
+        NotificationOutbox stored = notificationOutboxRepository.findAll().get(0);
+        assertEquals("PENDING", stored.getStatus());
+        assertEquals(0, stored.getAttempts());
+    }
+
+    @Test
+    void completeAttempt_onlyAppliesWhileTheLeaseIsOwned() {
+        enqueue(11L, "ORDER_CONFIRMATION");
+        NotificationOutbox notification = notificationOutboxRepository.findAll().get(0);
+        notification.setStatus("SENDING");
+        notification.setAttempts(2);
+        entityManager.flush();
+        entityManager.clear();
+        LocalDateTime now = LocalDateTime.now();
+
+        // Un envío anterior (intento 1) cuya reserva caducó no puede sobrescribir la del intento 2
+        assertEquals(0, notificationOutboxRepository.completeAttempt(notification.getId(), 1, "PENDING", now.plusMinutes(5),
+                "timeout", null, now));
+        assertEquals(1, notificationOutboxRepository.completeAttempt(notification.getId(), 2, "SENT", now, null, now, now));
+        assertEquals(0, notificationOutboxRepository.completeAttempt(notification.getId(), 2, "FAILED", now, "x", null, now));
+
+        entityManager.clear();
+        NotificationOutbox reloaded = notificationOutboxRepository.findById(notification.getId()).orElseThrow();
+        assertEquals("SENT", reloaded.getStatus());
+        assertNull(reloaded.getLastError());
+    }
+}
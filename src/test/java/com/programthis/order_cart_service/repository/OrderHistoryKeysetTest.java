@@ -0,0 +1,126 @@
+package com.programthis.order_cart_service.repository;
+
+import com.programthis.order_cart_service.dto.OrderStatusDto;
+import com.programthis.order_cart_service.dto.OrderSummaryDto;
+import com.programthis.order_cart_service.model.Order;
+import com.programthis.order_cart_service.model.OrderItem;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+class OrderHistoryKeysetTest {
+
+    private static final Long USER_ID = 7L;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    private Order persistOrder(Long userId, LocalDateTime orderDate) {
+        Order order = new Order();
+        order.setUserId(userId);
+        order.setOrderDate(orderDate);
+        order.setStatus("COMPLETED");
+        order.setTotalAmount(BigDecimal.TEN);
+        return entityManager.persist(order);
+    }
+
+    @Test
+    void pagesThroughHistoryWithoutGapsOrDuplicates_IncludingOrdersWithTheSameDate() {
+        LocalDateTime base = LocalDateTime.of(2024, 5, 1, 12, 0);
+        List<Long> expected = new ArrayList<>();
+        // Tres pedidos con la misma fecha en medio del historial: el desempate por ID no debe perder ninguno
+        for (int day = 5; day >= 0; day--) {
+            int ordersThatDay = day == 3 ? 3 : 1;
+            for (int i = 0; i < ordersThatDay; i++) {
+                expected.add(persistOrder(USER_ID, base.plusDays(day)).getId());
+            }
+        }
+        persistOrder(99L, base.plusDays(10));
+        entityManager.flush();
+
+        List<Long> visited = new ArrayList<>();
+        List<Long> page = orderRepository.findHistoryIds(USER_ID, PageRequest.of(0, 2));
+        while (!page.isEmpty()) {
+            visited.addAll(page);
+            Order last = orderRepository.findById(page.get(page.size() - 1)).orElseThrow();
+            page = orderRepository.findHistoryIdsAfter(USER_ID, last.getOrderDate(), last.getId(), PageRequest.of(0, 2));
+        }
+
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    void findByIdIn_returnsOrdersInHistoryOrder() {
+        LocalDateTime base = LocalDateTime.of(2024, 5, 1, 12, 0);
+        Long older = persistOrder(USER_ID, base).getId();
+        Long newer = persistOrder(USER_ID, base.plusHours(1)).getId();
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Order> orders = orderRepository.findByIdInOrderByOrderDateDescIdAsc(List.of(older, newer));
+
+        assertEquals(List.of(newer, older), orders.stream().map(Order::getId).toList());
+    }
+
+    @Test
+    void summariesAfterCursor_continueTheHistoryAndCountEachOrdersItems() {
+        LocalDateTime base = LocalDateTime.of(2024, 5, 1, 12, 0);
+        Order newest = persistOrder(USER_ID, base.plusDays(2));
+        Order middle = persistOrder(USER_ID, base.plusDays(1));
+        addItems(middle, 2);
+        Order oldest = persistOrder(USER_ID, base);
+        addItems(oldest, 1);
+        entityManager.flush();
+        entityManager.clear();
+
+        List<OrderSummaryDto> page = orderRepository.findSummariesAfter(USER_ID, newest.getOrderDate(), newest.getId(), PageRequest.of(0, 10));
+
+        assertEquals(List.of(middle.getId(), oldest.getId()), page.stream().map(OrderSummaryDto::getId).toList());
+        assertEquals(List.of(2L, 1L), page.stream().map(OrderSummaryDto::getItemCount).toList());
+    }
+
+    @Test
+    void findFinishedStatuses_onlyReturnsOrdersThatLeftPending() {
+        LocalDateTime base = LocalDateTime.of(2024, 5, 1, 12, 0);
+        Order completed = persistOrder(USER_ID, base);
+        Order pending = persistOrder(USER_ID, base.plusHours(1));
+        pending.setStatus("PENDING");
+        entityManager.flush();
+        entityManager.clear();
+
+        List<OrderStatusDto> statuses = orderRepository.findFinishedStatuses(List.of(completed.getId(), pending.getId()));
+
+        assertEquals(List.of(completed.getId()), statuses.stream().map(OrderStatusDto::getOrderId).toList());
+        assertEquals("COMPLETED", statuses.get(0).getStatus());
+    }
+
+    private void addItems(Order order, int count) {
+        for (int i = 0; i < count; i++) {
+            OrderItem item = new OrderItem();
+            item.setOrder(order);
+            item.setProductId(100L + i);
+            item.setProductName("Producto " + i);
+            item.setQuantity(1);
+            item.setUnitPrice(BigDecimal.ONE);
+            item.setSubtotal(BigDecimal.ONE);
+            entityManager.persist(item);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.programthis.order_cart_service.repository;
+
+import com.programthis.order_cart_service.model.Order;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Cierre condicional de pedidos PENDING sobre el esquema de las migraciones (H2 en modo MySQL): el checkout asíncrono y
+// la recuperación de PENDING compiten por el mismo pedido y solo uno de los dos aplica su resultado
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:order_transitions;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class OrderStatusTransitionTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    private Order order;
+
+    @BeforeEach
+    void setUp() {
+        order = new Order();
+        order.setUserId(7L);
+        order.setStatus("PENDING");
+        order.setTotalAmount(BigDecimal.TEN);
+        entityManager.persistAndFlush(order);
+        entityManager.clear();
+    }
+
+    private Order reload() {
+        entityManager.clear();
+        return orderRepository.findById(order.getId()).orElseThrow();
+    }
+
+    @Test
+    void finishPending_appliesOnlyOnceForTheSameVersion() {
+        LocalDateTime now = LocalDateTime.now();
+
+        assertEquals(1, orderRepository.finishPending(order.getId(), 0L, "PAYMENT_FAILED", null, now));
+        // El otro lado leyó la misma versión: ya no puede sobrescribir el estado final
+        assertEquals(0, orderRepository.finishPending(order.getId(), 0L, "COMPLETED", "TX-1", now));
+
+        Order reloaded = reload();
+        assertEquals("PAYMENT_FAILED", reloaded.getStatus());
+        assertNull(reloaded.getTransactionId());
+        assertEquals(1L, reloaded.getVersion());
+    }
+
+    @Test
+    void claimStalePending_invalidatesThePaymentPipelineVersion() {
+        LocalDateTime now = LocalDateTime.now();
+
+        // La recuperación toma el pedido mientras el pago asíncrono espera en la cola
+        assertEquals(1, orderRepository.claimStalePending(order.getId(), now.plusMinutes(1), now));
+        assertEquals(0, orderRepository.claimPending(order.getId(), 0L, now));
+        assertEquals(0, orderRepository.finishPending(order.getId(), 0L, "COMPLETED", "TX-1", now));
+
+        // La recuperación cierra el pedido con la versión que leyó tras reservarlo
+        Order claimed = reload();
+        assertEquals(1, orderRepository.finishPending(order.getId(), claimed.getVersion(), "PAYMENT_FAILED", null, now));
+        assertEquals("PAYMENT_FAILED", reload().getStatus());
+    }
+}
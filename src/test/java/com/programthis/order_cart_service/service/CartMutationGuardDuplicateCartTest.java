@@ -0,0 +1,111 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.config.CartConcurrencyProperties;
+import com.programthis.order_cart_service.model.ShoppingCart;
+import com.programthis.order_cart_service.repository.CartItemRepository;
+import com.programthis.order_cart_service.repository.ShoppingCartRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Alta simultánea del carrito de un usuario sobre el esquema de las migraciones (H2 en modo MySQL): la restricción
+// única de user_id llega como DataIntegrityViolationException y el guard debe repetir la modificación. Sin la
+// transacción del test, para que el guard abra y confirme las suyas
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:cart_duplicate;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CartMutationGuardDuplicateCartTest {
+
+    private static final Long USER_ID = 7L;
+
+    @Autowired
+    private ShoppingCartRepository shoppingCartRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private CartMutationGuard guard;
+    private TransactionTemplate concurrentRequest;
+
+    @BeforeEach
+    void setUp() {
+        CartConcurrencyProperties properties = new CartConcurrencyProperties();
+        properties.setRetryBackoff(Duration.ZERO);
+        meterRegistry = new SimpleMeterRegistry();
+        guard = new CartMutationGuard(transactionManager, properties, meterRegistry);
+        concurrentRequest = new TransactionTemplate(transactionManager);
+        concurrentRequest.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cartItemRepository.deleteAllInBatch();
+        shoppingCartRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void mutate_retriesWhenAnotherRequestCreatedTheSameCart() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Lo mismo que JpaCartStore.getOrCreateShoppingCart, con otra petición que crea el carrito entre la
+        // consulta y el INSERT del primer intento
+        ShoppingCart cart = guard.mutate(USER_ID, () -> {
+            Optional<ShoppingCart> existingCart = shoppingCartRepository.findByUserId(USER_ID);
+            if (attempts.incrementAndGet() == 1) {
+                concurrentRequest.executeWithoutResult(status -> shoppingCartRepository.save(ShoppingCart.emptyFor(USER_ID)));
+            }
+            return existingCart.orElseGet(() -> {
+                ShoppingCart newCart = new ShoppingCart();
+                newCart.setUserId(USER_ID);
+                return shoppingCartRepository.save(newCart);
+            });
+        });
+
+        assertEquals(2, attempts.get());
+        assertEquals(1, shoppingCartRepository.count());
+        assertEquals(shoppingCartRepository.findIdByUserId(USER_ID).orElseThrow(), cart.getId());
+        assertEquals(1.0, meterRegistry.counter("cart.mutation.conflicts", "outcome", "retried").count());
+    }
+
+    @Test
+    void mutate_doesNotRetryOtherIntegrityViolations() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Clave foránea: el carrito 999 no existe
+        assertThrows(DataIntegrityViolationException.class, () -> guard.mutate(USER_ID, () -> {
+            attempts.incrementAndGet();
+            return cartItemRepository.upsertQuantity(999L, 101L, 1, BigDecimal.TEN, LocalDateTime.now());
+        }));
+
+        assertEquals(1, attempts.get());
+        assertEquals(0.0, meterRegistry.counter("cart.mutation.conflicts", "outcome", "retried").count());
+    }
+}
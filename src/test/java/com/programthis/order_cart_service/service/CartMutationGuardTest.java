@@ -0,0 +1,195 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.config.CartConcurrencyProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CartMutationGuardTest {
+
+    private static final Long USER_ID = 1L;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private CartConcurrencyProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new CartConcurrencyProperties();
+        properties.setRetryBackoff(Duration.ZERO);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private CartMutationGuard newGuard() {
+        return new CartMutationGuard(transactionManager, properties, meterRegistry);
+    }
+
+    private double conflicts(String outcome) {
+        return meterRegistry.counter("cart.mutation.conflicts", "outcome", outcome).count();
+    }
+
+    @Test
+    void mutate_retriesOptimisticLockConflictInNewTransaction() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = newGuard().mutate(USER_ID, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new ObjectOptimisticLockingFailureException("ShoppingCart", 1L);
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(2, attempts.get());
+        verify(transactionManager, times(2)).getTransaction(any());
+        assertEquals(1.0, conflicts("retried"));
+    }
+
+    @Test
+    void mutate_givesUpAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        CartConflictException exception = assertThrows(CartConflictException.class, () -> newGuard().mutate(USER_ID, () -> {
+            attempts.incrementAndGet();
+            throw new ObjectOptimisticLockingFailureException("CartItem", 5L);
+        }));
+
+        assertEquals(3, attempts.get());
+        assertEquals("El carrito del usuario 1 se modificó desde otra petición y no se pudo aplicar el cambio.", exception.getMessage());
+        assertEquals(2.0, conflicts("retried"));
+        assertEquals(1.0, conflicts("exhausted"));
+    }
+
+    @Test
+    void mutate_doesNotRetryOtherErrors() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> newGuard().mutate(USER_ID, () -> {
+            attempts.incrementAndGet();
+            throw new RuntimeException("Carrito no encontrado para el usuario: 1");
+        }));
+
+        assertEquals("Carrito no encontrado para el usuario: 1", exception.getMessage());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void mutate_retriesViolationOfACartUniqueKeyByConstraintName() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = newGuard().mutate(USER_ID, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw uniqueKeyViolation("shopping_carts.uk_shopping_carts_user");
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void mutate_doesNotRetryViolationOfAnotherNamedConstraint() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(DataIntegrityViolationException.class, () -> newGuard().mutate(USER_ID, () -> {
+            attempts.incrementAndGet();
+            throw uniqueKeyViolation("orders.uk_orders_idempotency_key");
+        }));
+
+        assertEquals(1, attempts.get());
+    }
+
+    // Como la traduce Spring desde MySQL: nombre de la clave cualificado con la tabla, error 1062
+    private static DataIntegrityViolationException uniqueKeyViolation(String constraintName) {
+        SQLException duplicate = new SQLException("Duplicate entry '1' for key '" + constraintName + "'", "23000", 1062);
+        return new DataIntegrityViolationException("could not execute statement",
+                new ConstraintViolationException("could not execute statement", duplicate, constraintName));
+    }
+
+    @Test
+    void mutate_joinsExistingTransactionWithoutRetrying() {
+        AtomicInteger attempts = new AtomicInteger();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            assertThrows(ObjectOptimisticLockingFailureException.class, () -> newGuard().mutate(USER_ID, () -> {
+                attempts.incrementAndGet();
+                throw new ObjectOptimisticLockingFailureException("ShoppingCart", 1L);
+            }));
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+
+        assertEquals(1, attempts.get());
+        verifyNoInteractions(transactionManager);
+    }
+
+    @Test
+    void mutate_localLocksSerializeSameUserAndRecordContention() throws Exception {
+        properties.setLocalLocks(true);
+        CartMutationGuard guard = newGuard();
+        CountDownLatch firstInside = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = executor.submit(() -> guard.mutate(USER_ID, () -> {
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                firstInside.countDown();
+                await(releaseFirst);
+                return concurrent.decrementAndGet();
+            }));
+            assertTrue(firstInside.await(5, TimeUnit.SECONDS));
+            Future<?> second = executor.submit(() -> guard.mutate(USER_ID, () -> {
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                return concurrent.decrementAndGet();
+            }));
+            // La segunda petición queda esperando el cerrojo del usuario
+            while (meterRegistry.counter("cart.mutation.lock.contended").count() == 0) {
+                Thread.sleep(5);
+            }
+            releaseFirst.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, maxConcurrent.get());
+        assertEquals(1, meterRegistry.timer("cart.mutation.lock.wait").count());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
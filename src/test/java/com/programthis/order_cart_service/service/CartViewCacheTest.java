@@ -0,0 +1,143 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.config.CartViewCacheProperties;
+import com.programthis.order_cart_service.model.CartItem;
+import com.programthis.order_cart_service.model.ShoppingCart;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CartViewCacheTest {
+
+    private static final Long USER_ID = 1L;
+
+    private CartViewCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new CartViewCache(new CartViewCacheProperties(), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    // Versión actual del carrito en el almacén
+    private static Supplier<Optional<Long>> storeAt(long version) {
+        return () -> Optional.of(version);
+    }
+
+    private static ShoppingCart cart(long version) {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setId(5L);
+        cart.setUserId(USER_ID);
+        cart.setVersion(version);
+        return cart;
+    }
+
+    @Test
+    void olderVersionNeverReplacesNewerOne() {
+        ShoppingCart newer = cart(4);
+        cache.update(newer);
+
+        // Una lectura que empezó antes de la modificación termina después
+        cache.update(cart(3));
+
+        assertEquals(Optional.of(newer), cache.get(USER_ID, storeAt(4)));
+    }
+
+    @Test
+    void evictedCartOnlyAcceptsLaterVersions() {
+        cache.update(cart(4));
+        cache.evictAfterCommit(USER_ID);
+
+        cache.update(cart(4));
+        assertTrue(cache.get(USER_ID, storeAt(4)).isEmpty());
+
+        ShoppingCart afterCheckout = cart(5);
+        cache.update(afterCheckout);
+        assertEquals(Optional.of(afterCheckout), cache.get(USER_ID, storeAt(5)));
+    }
+
+    @Test
+    void evictionInsideTransactionWaitsForCommit() {
+        cache.update(cart(4));
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.evictAfterCommit(USER_ID);
+        assertTrue(cache.get(USER_ID, storeAt(4)).isPresent());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertTrue(cache.get(USER_ID, storeAt(4)).isEmpty());
+    }
+
+    @Test
+    void cartChangedElsewhereIsNotServed() {
+        cache.update(cart(4));
+
+        // Otra instancia modificó el carrito: la entrada se descarta aunque luego la versión coincida
+        assertTrue(cache.get(USER_ID, storeAt(5)).isEmpty());
+        assertTrue(cache.get(USER_ID, storeAt(4)).isEmpty());
+        // Ni una versión ni un carrito: ya no existe
+        cache.update(cart(6));
+        assertTrue(cache.get(USER_ID, Optional::empty).isEmpty());
+    }
+
+    @Test
+    void storeIsOnlyAskedWhenTheCartIsCached() {
+        assertTrue(cache.get(USER_ID, () -> fail("sin entrada no se consulta la versión")).isEmpty());
+    }
+
+    @Test
+    void eachReadGetsItsOwnCopy() {
+        ShoppingCart cart = cart(4);
+        cart.addCartItem(new CartItem(9L, null, 101L, 2, new BigDecimal("10.00"), null, null, 0L));
+        cache.update(cart);
+        // Cambios posteriores en la entidad guardada no llegan a la caché
+        cart.findItem(101L).setQuantity(50);
+
+        ShoppingCart first = cache.get(USER_ID, storeAt(4)).orElseThrow();
+        assertNotSame(cart, first);
+        assertEquals(2, first.findItem(101L).getQuantity());
+        assertSame(first, first.findItem(101L).getCart());
+
+        first.findItem(101L).setQuantity(7);
+        first.removeCartItem(first.findItem(101L));
+        assertEquals(2, cache.get(USER_ID, storeAt(4)).orElseThrow().findItem(101L).getQuantity());
+    }
+
+    @Test
+    void etagMatching() {
+        String etag = CartViewCache.etagOf(cart(7));
+
+        assertEquals("\"5-7\"", etag);
+        assertTrue(CartViewCache.matches("\"5-7\"", etag));
+        assertTrue(CartViewCache.matches("\"5-6\", W/\"5-7\"", etag));
+        assertTrue(CartViewCache.matches("*", etag));
+        assertFalse(CartViewCache.matches("\"5-6\"", etag));
+        assertFalse(CartViewCache.matches(null, etag));
+        assertNull(CartViewCache.etagOf(new ShoppingCart()));
+    }
+
+    @Test
+    void unsavedEmptyCartHasETagButIsNotCached() {
+        ShoppingCart unsaved = ShoppingCart.emptyFor(USER_ID);
+
+        assertEquals("\"new-0\"", CartViewCache.etagOf(unsaved));
+        cache.update(unsaved);
+
+        assertTrue(cache.get(USER_ID, storeAt(0)).isEmpty());
+    }
+}
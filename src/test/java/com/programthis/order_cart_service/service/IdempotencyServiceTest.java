@@ -0,0 +1,142 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.config.IdempotencyProperties;
+import com.programthis.order_cart_service.model.IdempotencyRecord;
+import com.programthis.order_cart_service.repository.IdempotencyRecordRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private IdempotencyService idempotencyService;
+    private String fingerprint;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new IdempotencyService(idempotencyRecordRepository, transactionManager,
+                new IdempotencyProperties(), new SimpleMeterRegistry());
+        fingerprint = IdempotencyService.fingerprint("Fake Street", "Credit Card");
+    }
+
+    private IdempotencyRecord existingRecord(String status, Long orderId, LocalDateTime lockedUntil, LocalDateTime expiresAt) {
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setId(5L);
+        record.setUserId(1L);
+        record.setIdempotencyKey("key-1");
+        record.setRequestFingerprint(fingerprint);
+        record.setStatus(status);
+        record.setOrderId(orderId);
+        record.setLockedUntil(lockedUntil);
+        record.setExpiresAt(expiresAt);
+        return record;
+    }
+
+    private void givenKeyAlreadyExists(IdempotencyRecord record) {
+        when(idempotencyRecordRepository.saveAndFlush(any(IdempotencyRecord.class)))
+                .thenThrow(new DataIntegrityViolationException("Duplicate entry"));
+        when(idempotencyRecordRepository.findByUserIdAndIdempotencyKey(1L, "key-1")).thenReturn(Optional.of(record));
+    }
+
+    @Test
+    void begin_NewKey_IsStarted() {
+        IdempotencyService.Claim claim = idempotencyService.begin(1L, "key-1", fingerprint);
+
+        assertEquals(IdempotencyService.Outcome.STARTED, claim.getOutcome());
+        ArgumentCaptor<IdempotencyRecord> captor = ArgumentCaptor.forClass(IdempotencyRecord.class);
+        verify(idempotencyRecordRepository).saveAndFlush(captor.capture());
+        assertEquals("IN_PROGRESS", captor.getValue().getStatus());
+        assertEquals(fingerprint, captor.getValue().getRequestFingerprint());
+        assertNotNull(claim.getOwnerToken());
+        assertEquals(claim.getOwnerToken(), captor.getValue().getOwnerToken());
+    }
+
+    @Test
+    void begin_CompletedKey_ReplaysOriginalOrder() {
+        LocalDateTime now = LocalDateTime.now();
+        givenKeyAlreadyExists(existingRecord("COMPLETED", 10L, now.minusMinutes(1), now.plusHours(1)));
+
+        IdempotencyService.Claim claim = idempotencyService.begin(1L, "key-1", fingerprint);
+
+        assertEquals(IdempotencyService.Outcome.REPLAY, claim.getOutcome());
+        assertEquals(10L, claim.getOrderId());
+    }
+
+    @Test
+    void begin_KeyInProgress_IsRejected() {
+        LocalDateTime now = LocalDateTime.now();
+        givenKeyAlreadyExists(existingRecord("IN_PROGRESS", null, now.plusMinutes(1), now.plusHours(1)));
+        when(idempotencyRecordRepository.takeOver(anyLong(), anyString(), anyString(), any(), any(), any())).thenReturn(0);
+
+        IdempotencyService.Claim claim = idempotencyService.begin(1L, "key-1", fingerprint);
+
+        assertEquals(IdempotencyService.Outcome.IN_PROGRESS, claim.getOutcome());
+    }
+
+    @Test
+    void begin_AbandonedKey_IsTakenOver() {
+        LocalDateTime now = LocalDateTime.now();
+        givenKeyAlreadyExists(existingRecord("IN_PROGRESS", null, now.minusMinutes(1), now.plusHours(1)));
+        when(idempotencyRecordRepository.takeOver(eq(5L), eq(fingerprint), anyString(), any(), any(), any())).thenReturn(1);
+
+        IdempotencyService.Claim claim = idempotencyService.begin(1L, "key-1", fingerprint);
+
+        assertEquals(IdempotencyService.Outcome.STARTED, claim.getOutcome());
+        // La petición que retoma la clave recibe un token nuevo: la abandonada ya no puede completarla
+        verify(idempotencyRecordRepository).takeOver(eq(5L), eq(fingerprint), eq(claim.getOwnerToken()), any(), any(), any());
+    }
+
+    @Test
+    void begin_KeyReusedWithDifferentRequest_IsMismatch() {
+        LocalDateTime now = LocalDateTime.now();
+        givenKeyAlreadyExists(existingRecord("COMPLETED", 10L, now, now.plusHours(1)));
+
+        IdempotencyService.Claim claim = idempotencyService.begin(1L, "key-1",
+                IdempotencyService.fingerprint("Otra Calle", "Credit Card"));
+
+        assertEquals(IdempotencyService.Outcome.MISMATCH, claim.getOutcome());
+    }
+
+    @Test
+    void complete_StoresOrderIdForTheOwnerOfTheKey() {
+        when(idempotencyRecordRepository.complete(eq(1L), eq("key-1"), eq("owner-1"), eq(10L), any())).thenReturn(1);
+
+        idempotencyService.complete(1L, "key-1", "owner-1", 10L);
+
+        verify(idempotencyRecordRepository).complete(eq(1L), eq("key-1"), eq("owner-1"), eq(10L), any());
+    }
+
+    @Test
+    void release_OnlyDeletesTheKeyOfItsOwner() {
+        idempotencyService.release(1L, "key-1", "owner-1");
+
+        verify(idempotencyRecordRepository).release(1L, "key-1", "owner-1");
+        verify(idempotencyRecordRepository, never()).delete(any(IdempotencyRecord.class));
+    }
+
+    @Test
+    void fingerprint_DependsOnFieldBoundaries() {
+        assertNotEquals(IdempotencyService.fingerprint("ab", "c"), IdempotencyService.fingerprint("a", "bc"));
+        assertEquals(IdempotencyService.fingerprint("a", null), IdempotencyService.fingerprint("a", null));
+    }
+}
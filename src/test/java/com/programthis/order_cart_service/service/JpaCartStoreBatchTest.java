@@ -0,0 +1,101 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.config.CartConcurrencyProperties;
+import com.programthis.order_cart_service.dto.CartItemOperationDto;
+import com.programthis.order_cart_service.dto.ProductDto;
+import com.programthis.order_cart_service.model.CartItem;
+import com.programthis.order_cart_service.model.ShoppingCart;
+import com.programthis.order_cart_service.repository.CartItemRepository;
+import com.programthis.order_cart_service.repository.ShoppingCartRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Las operaciones por lotes del carrito se escriben con el flush de la transacción: las actualizaciones y los borrados
+// de ítems van en un lote JDBC cada uno, sin una sentencia por operación
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+        "spring.jpa.properties.hibernate.order_updates=true"
+})
+class JpaCartStoreBatchTest {
+
+    private static final Long USER_ID = 7L;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ShoppingCartRepository shoppingCartRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static CartItemOperationDto op(CartItemOperationDto.Type type, Long productId, Integer quantity) {
+        return new CartItemOperationDto(type, productId, quantity);
+    }
+
+    @Test
+    void applyItemOperations_writesChangesInBatches() {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setUserId(USER_ID);
+        for (int i = 0; i < 5; i++) {
+            CartItem item = new CartItem();
+            item.setProductId(100L + i);
+            item.setQuantity(1);
+            item.setPriceAtAddition(BigDecimal.ONE);
+            cart.addCartItem(item);
+        }
+        entityManager.persist(cart);
+        entityManager.flush();
+        entityManager.clear();
+        Long initialVersion = cart.getVersion();
+
+        // La transacción del test ya está abierta: el guard ejecuta la modificación en ella, sin reintentos
+        CartMutationGuard guard = new CartMutationGuard(transactionManager, new CartConcurrencyProperties(), new SimpleMeterRegistry());
+        JpaCartStore store = new JpaCartStore(shoppingCartRepository, cartItemRepository, guard);
+        ProductDto newProduct = new ProductDto(200L, "Monitor", "Un monitor.", new BigDecimal("150.00"), 3);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        store.applyItemOperations(USER_ID, List.of(
+                op(CartItemOperationDto.Type.UPDATE, 100L, 5),
+                op(CartItemOperationDto.Type.UPDATE, 101L, 6),
+                op(CartItemOperationDto.Type.UPDATE, 102L, 7),
+                op(CartItemOperationDto.Type.REMOVE, 103L, null),
+                op(CartItemOperationDto.Type.UPDATE, 104L, 0),
+                op(CartItemOperationDto.Type.ADD, 200L, 1)), Map.of(200L, newProduct));
+        entityManager.flush();
+
+        // Carga del carrito, alta del producto nuevo, un lote de actualizaciones de ítems, la del carrito y un lote de borrados
+        assertEquals(5, statistics.getPrepareStatementCount());
+        entityManager.clear();
+        ShoppingCart reloaded = shoppingCartRepository.findByUserId(USER_ID).orElseThrow();
+        Map<Long, Integer> quantities = new HashMap<>();
+        reloaded.getItems().forEach(item -> quantities.put(item.getProductId(), item.getQuantity()));
+        assertEquals(Map.of(100L, 5, 101L, 6, 102L, 7, 200L, 1), quantities);
+        assertEquals(initialVersion + 1, reloaded.getVersion());
+    }
+}
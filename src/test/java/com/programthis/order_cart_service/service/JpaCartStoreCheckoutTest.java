@@ -0,0 +1,89 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.config.CartConcurrencyProperties;
+import com.programthis.order_cart_service.dto.ProductDto;
+import com.programthis.order_cart_service.model.CartItem;
+import com.programthis.order_cart_service.model.ShoppingCart;
+import com.programthis.order_cart_service.repository.CartItemRepository;
+import com.programthis.order_cart_service.repository.ShoppingCartRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// El checkout quita del carrito solo lo que leyó en su instantánea. Se prueba sobre el esquema de las migraciones
+// (H2 en modo MySQL) porque las altas del carrito usan el upsert nativo
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:cart_checkout;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class JpaCartStoreCheckoutTest {
+
+    private static final Long USER_ID = 7L;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ShoppingCartRepository shoppingCartRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static CartItem item(Long productId, int quantity) {
+        CartItem item = new CartItem();
+        item.setProductId(productId);
+        item.setQuantity(quantity);
+        item.setPriceAtAddition(BigDecimal.TEN);
+        return item;
+    }
+
+    @Test
+    void removeOrderedItems_keepsWhatWasAddedAfterTheSnapshot() {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setUserId(USER_ID);
+        cart.addCartItem(item(101L, 2));
+        cart.addCartItem(item(102L, 1));
+        entityManager.persist(cart);
+        entityManager.flush();
+        entityManager.clear();
+
+        // La transacción del test ya está abierta: el guard ejecuta las modificaciones en ella, sin reintentos
+        CartMutationGuard guard = new CartMutationGuard(transactionManager, new CartConcurrencyProperties(), new SimpleMeterRegistry());
+        JpaCartStore store = new JpaCartStore(shoppingCartRepository, cartItemRepository, guard);
+
+        // Instantánea del checkout (fase 1)
+        List<CartItem> snapshot = List.of(item(101L, 2), item(102L, 1));
+        // Mientras el checkout espera a los servicios remotos, el usuario añade otra unidad y un producto nuevo
+        store.addProductToCart(USER_ID, new ProductDto(101L, "Laptop", "Una laptop potente", BigDecimal.TEN, 10), 1);
+        store.addProductToCart(USER_ID, new ProductDto(103L, "Teclado", "Un teclado mecánico", BigDecimal.ONE, 5), 4);
+        Long versionBeforeCheckout = shoppingCartRepository.findByUserId(USER_ID).orElseThrow().getVersion();
+
+        // Fase 2
+        store.removeOrderedItems(USER_ID, snapshot);
+
+        entityManager.clear();
+        ShoppingCart reloaded = shoppingCartRepository.findByUserId(USER_ID).orElseThrow();
+        Map<Long, Integer> quantities = new HashMap<>();
+        reloaded.getItems().forEach(cartItem -> quantities.put(cartItem.getProductId(), cartItem.getQuantity()));
+        assertEquals(Map.of(101L, 1, 103L, 4), quantities);
+        assertEquals(versionBeforeCheckout + 1, reloaded.getVersion());
+    }
+}
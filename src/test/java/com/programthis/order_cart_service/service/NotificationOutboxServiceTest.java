@@ -0,0 +1,215 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.client.NotificationServiceClient;
+import com.programthis.order_cart_service.config.NotificationOutboxProperties;
+import com.programthis.order_cart_service.dto.NotificationRequestDto;
+import com.programthis.order_cart_service.model.NotificationOutbox;
+import com.programthis.order_cart_service.repository.NotificationOutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationOutboxServiceTest {
+
+    @Mock
+    private NotificationOutboxRepository notificationOutboxRepository;
+
+    @Mock
+    private NotificationServiceClient notificationServiceClient;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private NotificationOutboxProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private NotificationOutboxService notificationOutboxService;
+    private NotificationRequestDto request;
+
+    @BeforeEach
+    void setUp() {
+        properties = new NotificationOutboxProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        notificationOutboxService = new NotificationOutboxService(notificationOutboxRepository, notificationServiceClient,
+                transactionManager, properties, meterRegistry);
+        request = new NotificationRequestDto("jdoe@example.com", "Confirmación de Orden #10", "Gracias", "ORDER_CONFIRMATION");
+    }
+
+    private NotificationOutbox pendingNotification(int attempts) {
+        NotificationOutbox notification = new NotificationOutbox();
+        notification.setId(1L);
+        notification.setOrderId(10L);
+        notification.setRecipientEmail(request.getRecipientEmail());
+        notification.setSubject(request.getSubject());
+        notification.setMessageBody(request.getMessageBody());
+        notification.setType(request.getType());
+        notification.setStatus("PENDING");
+        notification.setAttempts(attempts);
+        notification.setNextAttemptAt(LocalDateTime.now());
+        return notification;
+    }
+
+    private void givenDueNotifications(NotificationOutbox... notifications) {
+        when(notificationOutboxRepository.findDueForDispatch(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(notifications));
+        when(notificationOutboxRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        for (NotificationOutbox notification : notifications) {
+            lenient().when(notificationOutboxRepository.renewLease(eq(notification.getId()), eq(notification.getAttempts() + 1), any(LocalDateTime.class)))
+                    .thenReturn(1);
+            lenient().when(notificationOutboxRepository.completeAttempt(eq(notification.getId()), eq(notification.getAttempts() + 1),
+                    anyString(), any(), any(), any(), any(LocalDateTime.class))).thenReturn(1);
+        }
+    }
+
+    @Test
+    void enqueue_StoresPendingNotification() {
+        when(notificationOutboxRepository.insertIfAbsent(eq(10L), eq("ORDER_CONFIRMATION"), eq("jdoe@example.com"),
+                eq("Confirmación de Orden #10"), eq("Gracias"), any(LocalDateTime.class))).thenReturn(1);
+
+        assertTrue(notificationOutboxService.enqueue(10L, request));
+
+        verifyNoInteractions(notificationServiceClient);
+    }
+
+    @Test
+    void enqueue_DuplicateForSameOrder_IsIgnored() {
+        // Ya existía (o se insertó a la vez en otra transacción): INSERT IGNORE no inserta nada
+        when(notificationOutboxRepository.insertIfAbsent(eq(10L), eq("ORDER_CONFIRMATION"), anyString(), anyString(),
+                anyString(), any(LocalDateTime.class))).thenReturn(0);
+
+        assertFalse(notificationOutboxService.enqueue(10L, request));
+
+        verify(notificationOutboxRepository, never()).save(any());
+    }
+
+    @Test
+    void enqueue_WithoutRecipient_IsDiscardedWithoutFailing() {
+        NotificationRequestDto withoutRecipient = new NotificationRequestDto(null, "Asunto", "Cuerpo", "ORDER_CONFIRMATION");
+
+        // No lanza: la transacción que registra el pago no debe revertirse por la notificación
+        assertFalse(notificationOutboxService.enqueue(10L, withoutRecipient));
+
+        verifyNoInteractions(notificationOutboxRepository);
+        assertEquals(1.0, meterRegistry.get("notifications.outbox.discarded").tag("reason", "invalid-recipient").counter().count());
+    }
+
+    @Test
+    void enqueue_TooLongBody_IsTruncatedToTheColumn() {
+        NotificationRequestDto longBody = new NotificationRequestDto("jdoe@example.com", "Asunto", "x".repeat(5000), "ORDER_CONFIRMATION");
+        when(notificationOutboxRepository.insertIfAbsent(eq(10L), eq("ORDER_CONFIRMATION"), eq("jdoe@example.com"), eq("Asunto"),
+                argThat((String body) -> body.length() == 4000), any(LocalDateTime.class))).thenReturn(1);
+
+        assertTrue(notificationOutboxService.enqueue(10L, longBody));
+    }
+
+    @Test
+    void dispatchPendingNotifications_Success_MarksAsSent() {
+        NotificationOutbox notification = pendingNotification(0);
+        givenDueNotifications(notification);
+        when(notificationServiceClient.sendEmailNotification(any(NotificationRequestDto.class))).thenReturn(true);
+
+        notificationOutboxService.dispatchPendingNotifications();
+
+        assertEquals("SENT", notification.getStatus());
+        assertEquals(1, notification.getAttempts());
+        assertNotNull(notification.getSentAt());
+        verify(notificationOutboxRepository).completeAttempt(eq(1L), eq(1), eq("SENT"), any(), isNull(),
+                eq(notification.getSentAt()), any(LocalDateTime.class));
+    }
+
+    @Test
+    void dispatchPendingNotifications_CommunicationError_SchedulesRetryWithBackoff() {
+        NotificationOutbox notification = pendingNotification(0);
+        givenDueNotifications(notification);
+        when(notificationServiceClient.sendEmailNotification(any(NotificationRequestDto.class)))
+                .thenThrow(new RuntimeException("Error en comunicación con Notification Service"));
+
+        LocalDateTime before = LocalDateTime.now();
+        notificationOutboxService.dispatchPendingNotifications();
+
+        assertEquals("PENDING", notification.getStatus());
+        assertEquals(1, notification.getAttempts());
+        assertFalse(notification.getNextAttemptAt().isBefore(before.plus(properties.getInitialBackoff())));
+        assertEquals("Error en comunicación con Notification Service", notification.getLastError());
+    }
+
+    @Test
+    void dispatchPendingNotifications_LastAttemptFails_MarksAsFailed() {
+        NotificationOutbox notification = pendingNotification(properties.getMaxAttempts() - 1);
+        givenDueNotifications(notification);
+        when(notificationServiceClient.sendEmailNotification(any(NotificationRequestDto.class)))
+                .thenThrow(new RuntimeException("timeout"));
+
+        notificationOutboxService.dispatchPendingNotifications();
+
+        assertEquals("FAILED", notification.getStatus());
+    }
+
+    @Test
+    void dispatchPendingNotifications_RejectedRequest_IsNotRetried() {
+        NotificationOutbox notification = pendingNotification(0);
+        givenDueNotifications(notification);
+        when(notificationServiceClient.sendEmailNotification(any(NotificationRequestDto.class))).thenReturn(false);
+
+        notificationOutboxService.dispatchPendingNotifications();
+
+        assertEquals("FAILED", notification.getStatus());
+    }
+
+    @Test
+    void dispatchPendingNotifications_LeaseTakenByAnotherDispatcher_IsNotSentTwice() {
+        NotificationOutbox expired = pendingNotification(0);
+        NotificationOutbox stillOwned = pendingNotification(0);
+        stillOwned.setId(2L);
+        givenDueNotifications(expired, stillOwned);
+        // La reserva de la primera caducó y otra instancia la volvió a reservar (otro número de intento)
+        when(notificationOutboxRepository.renewLease(eq(1L), eq(1), any(LocalDateTime.class))).thenReturn(0);
+        when(notificationServiceClient.sendEmailNotification(any(NotificationRequestDto.class))).thenReturn(true);
+
+        notificationOutboxService.dispatchPendingNotifications();
+
+        verify(notificationServiceClient, times(1)).sendEmailNotification(any(NotificationRequestDto.class));
+        assertEquals("SENDING", expired.getStatus());
+        assertEquals("SENT", stillOwned.getStatus());
+        verify(notificationOutboxRepository, never()).completeAttempt(eq(1L), anyInt(), anyString(), any(), any(), any(), any());
+    }
+
+    @Test
+    void dispatchPendingNotifications_LeaseLostDuringSend_DoesNotOverwriteTheNewClaim() {
+        NotificationOutbox notification = pendingNotification(0);
+        givenDueNotifications(notification);
+        when(notificationServiceClient.sendEmailNotification(any(NotificationRequestDto.class)))
+                .thenThrow(new RuntimeException("timeout"));
+        // Mientras se esperaba al Notification Service otra instancia volvió a reservar la notificación
+        when(notificationOutboxRepository.completeAttempt(eq(1L), eq(1), eq("PENDING"), any(), any(), any(), any(LocalDateTime.class)))
+                .thenReturn(0);
+
+        notificationOutboxService.dispatchPendingNotifications();
+
+        verify(notificationOutboxRepository, never()).save(any());
+        assertEquals(1.0, meterRegistry.get("notifications.outbox.dispatched").tag("result", "lease-lost").counter().count());
+        assertNull(meterRegistry.find("notifications.outbox.dispatched").tag("result", "retry").counter());
+    }
+
+    @Test
+    void backoffFor_DoublesUntilMaximum() {
+        assertEquals(Duration.ofSeconds(5), notificationOutboxService.backoffFor(1));
+        assertEquals(Duration.ofSeconds(10), notificationOutboxService.backoffFor(2));
+        assertEquals(Duration.ofSeconds(40), notificationOutboxService.backoffFor(4));
+        assertEquals(properties.getMaxBackoff(), notificationOutboxService.backoffFor(20));
+    }
+}
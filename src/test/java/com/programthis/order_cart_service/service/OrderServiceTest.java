@@ -1,24 +1,52 @@
 package com.programthis.order_cart_service.service;
 
+import com.programthis.order_cart_service.client.PaymentServiceClient;
 import com.programthis.order_cart_service.client.ProductCatalogServiceClient;
+import com.programthis.order_cart_service.client.RemoteCallDeadline;
+import com.programthis.order_cart_service.client.UserServiceClient;
+import com.programthis.order_cart_service.dto.NotificationRequestDto;
+import com.programthis.order_cart_service.dto.OrderHistoryPage;
+import com.programthis.order_cart_service.dto.OrderSummaryDto;
+import com.programthis.order_cart_service.dto.OrderSummaryPage;
+import com.programthis.order_cart_service.dto.PaymentRequestDto;
+import com.programthis.order_cart_service.dto.PaymentResponseDto;
 import com.programthis.order_cart_service.dto.ProductDto;
+import com.programthis.order_cart_service.dto.UserDto;
 import com.programthis.order_cart_service.model.CartItem; // Usando tu modelo real
 import com.programthis.order_cart_service.model.Order;
 import com.programthis.order_cart_service.model.ShoppingCart; // Usando tu modelo real
 import com.programthis.order_cart_service.repository.OrderRepository;
+import com.programthis.order_cart_service.config.NotificationOutboxProperties;
+import com.programthis.order_cart_service.repository.NotificationOutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -33,17 +61,34 @@ class OrderServiceTest {
     @Mock
     private ProductCatalogServiceClient productCatalogServiceClient;
 
-    @InjectMocks
+    @Mock
+    private UserServiceClient userServiceClient;
+
+    @Mock
+    private PaymentServiceClient paymentServiceClient;
+
+    @Mock
+    private NotificationOutboxService notificationOutboxService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     private OrderService orderService;
 
     private Long userId;
     private ShoppingCart cart;
     private ProductDto productDto1;
     private ProductDto productDto2;
+    private UserDto userDto;
 
     @BeforeEach
     void setUp() {
         userId = 1L;
+        // Executor síncrono: las consultas "en paralelo" se ejecutan en el hilo del test
+        orderService = newOrderService(Runnable::run, Duration.ofSeconds(3));
 
         // --- SECCIÓN MODIFICADA PARA USAR TUS MODELOS REALES ---
 
@@ -73,6 +118,13 @@ class OrderServiceTest {
         // Configuración de DTOs de productos de ejemplo (esto no cambia)
         productDto1 = new ProductDto(101L, "Laptop", "Una laptop potente", new BigDecimal("10.00"), 10);
         productDto2 = new ProductDto(102L, "Mouse", "Un mouse inalámbrico", new BigDecimal("25.50"), 50);
+        userDto = new UserDto(userId, "jdoe", "jdoe@example.com", "John Doe");
+    }
+
+    private OrderService newOrderService(Executor checkoutExecutor, Duration remoteDeadline) {
+        return new OrderService(orderRepository, null, shoppingCartService, productCatalogServiceClient,
+                paymentServiceClient, notificationOutboxService, userServiceClient, transactionManager,
+                checkoutExecutor, Runnable::run, eventPublisher, new SimpleMeterRegistry(), remoteDeadline);
     }
 
     @Test
@@ -81,10 +133,19 @@ class OrderServiceTest {
         String shippingAddress = "123 Calle Falsa, Springfield";
         String paymentMethod = "Credit Card";
 
-        when(shoppingCartService.getOrCreateShoppingCart(userId)).thenReturn(cart);
-        when(productCatalogServiceClient.getProductById(101L)).thenReturn(Optional.of(productDto1));
-        when(productCatalogServiceClient.getProductById(102L)).thenReturn(Optional.of(productDto2));
-        when(orderRepository.save(any(Order.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(shoppingCartService.findShoppingCart(userId)).thenReturn(Optional.of(cart));
+        when(userServiceClient.getUserById(userId)).thenReturn(Optional.of(userDto));
+        when(productCatalogServiceClient.getProductsByIds(List.of(101L, 102L)))
+                .thenReturn(Map.of(101L, productDto1, 102L, productDto2));
+        when(orderRepository.save(any(Order.class))).thenAnswer(invocation -> {
+            Order order = invocation.getArgument(0);
+            order.setId(10L);
+            order.setVersion(0L);
+            return order;
+        });
+        when(paymentServiceClient.processPayment(any(PaymentRequestDto.class)))
+                .thenReturn(Optional.of(new PaymentResponseDto(1L, "10", new BigDecimal("45.50"), paymentMethod, "COMPLETED", "TX-1", null)));
+        when(orderRepository.finishPending(eq(10L), eq(0L), eq("COMPLETED"), eq("TX-1"), any(LocalDateTime.class))).thenReturn(1);
 
         // Act
         Order createdOrder = orderService.createOrderFromCart(userId, shippingAddress, paymentMethod);
@@ -94,18 +155,317 @@ class OrderServiceTest {
         assertEquals(userId, createdOrder.getUserId());
         assertEquals(shippingAddress, createdOrder.getShippingAddress());
         assertEquals(paymentMethod, createdOrder.getPaymentMethod());
-        assertEquals("PENDING", createdOrder.getStatus());
+        assertEquals("COMPLETED", createdOrder.getStatus());
+        assertEquals("TX-1", createdOrder.getTransactionId());
         assertEquals(2, createdOrder.getItems().size());
         assertEquals(new BigDecimal("45.50"), createdOrder.getTotalAmount());
         
         assertEquals("Laptop", createdOrder.getItems().get(0).getProductName());
         assertEquals("Mouse", createdOrder.getItems().get(1).getProductName());
 
-        verify(shoppingCartService, times(1)).getOrCreateShoppingCart(userId);
-        verify(productCatalogServiceClient, times(1)).getProductById(101L);
-        verify(productCatalogServiceClient, times(1)).getProductById(102L);
+        // Los cambios del carrito pendientes de escribir se fuerzan antes de leerlo
+        InOrder cartReads = inOrder(shoppingCartService);
+        cartReads.verify(shoppingCartService).flushPendingChanges(userId);
+        cartReads.verify(shoppingCartService).findShoppingCart(userId);
+        verify(shoppingCartService, times(1)).findShoppingCart(userId);
+        // Una única búsqueda masiva en lugar de una llamada por ítem
+        verify(productCatalogServiceClient, times(1)).getProductsByIds(List.of(101L, 102L));
+        verify(productCatalogServiceClient, never()).getProductById(anyLong());
+        // El pedido se inserta una vez; el resultado del pago es un UPDATE condicional sobre la versión guardada
         verify(orderRepository, times(1)).save(any(Order.class));
-        verify(shoppingCartService, times(1)).clearCart(userId);
+        assertEquals(1L, createdOrder.getVersion());
+        verify(shoppingCartService, times(1)).removeOrderedItems(userId, cart.getItems());
+        // La confirmación se encola en el outbox en lugar de enviarse durante el checkout
+        ArgumentCaptor<NotificationRequestDto> notificationCaptor = ArgumentCaptor.forClass(NotificationRequestDto.class);
+        verify(notificationOutboxService, times(1)).enqueue(eq(10L), notificationCaptor.capture());
+        assertEquals("jdoe@example.com", notificationCaptor.getValue().getRecipientEmail());
+        assertEquals("ORDER_CONFIRMATION", notificationCaptor.getValue().getType());
+    }
+
+    @Test
+    void createOrderFromCart_CartChangesDuringRemoteLookups_RemovesOnlySnapshottedItems() {
+        // Arrange
+        List<CartItem> snapshot = List.copyOf(cart.getItems());
+        when(shoppingCartService.findShoppingCart(userId)).thenReturn(Optional.of(cart));
+        // Mientras el checkout espera al User Service el usuario añade otro producto al carrito
+        when(userServiceClient.getUserById(userId)).thenAnswer(invocation -> {
+            CartItem addedLater = new CartItem();
+            addedLater.setProductId(103L);
+            addedLater.setQuantity(1);
+            addedLater.setPriceAtAddition(BigDecimal.ONE);
+            cart.addCartItem(addedLater);
+            return Optional.of(userDto);
+        });
+        when(productCatalogServiceClient.getProductsByIds(List.of(101L, 102L)))
+                .thenReturn(Map.of(101L, productDto1, 102L, productDto2));
+        when(orderRepository.save(any(Order.class))).thenAnswer(invocation -> {
+            Order order = invocation.getArgument(0);
+            order.setId(10L);
+            order.setVersion(0L);
+            return order;
+        });
+        when(paymentServiceClient.processPayment(any(PaymentRequestDto.class)))
+                .thenReturn(Optional.of(new PaymentResponseDto(1L, "10", new BigDecimal("45.50"), "Credit Card", "COMPLETED", "TX-1", null)));
+        when(orderRepository.finishPending(eq(10L), eq(0L), eq("COMPLETED"), eq("TX-1"), any(LocalDateTime.class))).thenReturn(1);
+
+        // Act
+        Order createdOrder = orderService.createOrderFromCart(userId, "address", "Credit Card");
+
+        // Assert: se restan los ítems pedidos, no se vacía el carrito, y el producto añadido después se conserva
+        verify(shoppingCartService, times(1)).removeOrderedItems(userId, snapshot);
+        verify(shoppingCartService, never()).clearCart(any());
+        assertEquals(2, createdOrder.getItems().size());
+    }
+
+    @Test
+    void submitOrderFromCart_ReturnsPendingOrderAndPublishesPaymentOutcome() {
+        // Arrange
+        when(shoppingCartService.findShoppingCart(userId)).thenReturn(Optional.of(cart));
+        when(userServiceClient.getUserById(userId)).thenReturn(Optional.of(userDto));
+        when(productCatalogServiceClient.getProductsByIds(List.of(101L, 102L)))
+                .thenReturn(Map.of(101L, productDto1, 102L, productDto2));
+        when(orderRepository.save(any(Order.class))).thenAnswer(invocation -> {
+            Order order = invocation.getArgument(0);
+            order.setId(10L);
+            order.setVersion(0L);
+            return order;
+        });
+        when(paymentServiceClient.processPayment(any(PaymentRequestDto.class)))
+                .thenReturn(Optional.of(new PaymentResponseDto(1L, "10", new BigDecimal("45.50"), "Credit Card", "COMPLETED", "TX-1", null)));
+        when(orderRepository.claimPending(eq(10L), eq(0L), any(LocalDateTime.class))).thenReturn(1);
+        when(orderRepository.finishPending(eq(10L), eq(1L), eq("COMPLETED"), eq("TX-1"), any(LocalDateTime.class))).thenReturn(1);
+        // El pago se retiene hasta después de que submitOrderFromCart haya devuelto el pedido
+        List<Runnable> pendingPayments = new ArrayList<>();
+        orderService = new OrderService(orderRepository, null, shoppingCartService, productCatalogServiceClient,
+                paymentServiceClient, notificationOutboxService, userServiceClient, transactionManager,
+                Runnable::run, pendingPayments::add, eventPublisher, new SimpleMeterRegistry(), Duration.ofSeconds(3));
+
+        // Act
+        Order acceptedOrder = orderService.submitOrderFromCart(userId, "address", "Credit Card");
+
+        // Assert: el pedido se acepta en PENDING sin haber llamado todavía al servicio de pagos
+        assertEquals("PENDING", acceptedOrder.getStatus());
+        verify(paymentServiceClient, never()).processPayment(any());
+        verify(shoppingCartService, times(1)).removeOrderedItems(userId, cart.getItems());
+
+        pendingPayments.forEach(Runnable::run);
+
+        assertEquals("COMPLETED", acceptedOrder.getStatus());
+        ArgumentCaptor<OrderStatusChangedEvent> eventCaptor = ArgumentCaptor.forClass(OrderStatusChangedEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(eventCaptor.capture());
+        assertEquals(List.of("PENDING", "COMPLETED"),
+                eventCaptor.getAllValues().stream().map(OrderStatusChangedEvent::getStatus).toList());
+        verify(notificationOutboxService, times(1)).enqueue(eq(10L), any(NotificationRequestDto.class));
+    }
+
+    @Test
+    void createOrderFromCart_PaymentFails_ShouldCompensateAndThrow() {
+        // Arrange
+        when(shoppingCartService.findShoppingCart(userId)).thenReturn(Optional.of(cart));
+        when(userServiceClient.getUserById(userId)).thenReturn(Optional.of(userDto));
+        when(productCatalogServiceClient.getProductsByIds(List.of(101L, 102L)))
+                .thenReturn(Map.of(101L, productDto1, 102L, productDto2));
+        when(orderRepository.save(any(Order.class))).thenAnswer(invocation -> {
+            Order order = invocation.getArgument(0);
+            order.setId(10L);
+            order.setVersion(0L);
+            return order;
+        });
+        when(paymentServiceClient.processPayment(any(PaymentRequestDto.class))).thenReturn(Optional.empty());
+        when(orderRepository.finishPending(eq(10L), eq(0L), eq("PAYMENT_FAILED"), isNull(), any(LocalDateTime.class))).thenReturn(1);
+
+        // Act & Assert
+        CheckoutPaymentFailedException exception = assertThrows(CheckoutPaymentFailedException.class, () -> {
+            orderService.createOrderFromCart(userId, "address", "payment");
+        });
+
+        assertEquals("El pago para la orden 10 falló o no pudo ser procesado.", exception.getMessage());
+        // El pedido ya existe: el controlador asocia a él la Idempotency-Key
+        assertEquals(10L, exception.getOrder().getId());
+        assertEquals("PAYMENT_FAILED", exception.getOrder().getStatus());
+        verify(orderRepository, times(1)).save(any(Order.class));
+        // El pedido se persistió y el carrito se vació antes del pago; la compensación devuelve los ítems
+        verify(shoppingCartService, times(1)).removeOrderedItems(userId, cart.getItems());
+        verify(shoppingCartService, times(1)).restoreCartItems(userId, cart.getItems());
+        verify(notificationOutboxService, never()).enqueue(any(), any());
+    }
+
+    private Order pendingOrder() {
+        Order order = new Order();
+        order.setId(10L);
+        order.setUserId(userId);
+        order.setStatus("PENDING");
+        order.setVersion(0L);
+        order.setTotalAmount(new BigDecimal("45.50"));
+        return order;
+    }
+
+    @Test
+    void recordPaymentResult_OrderAlreadyCompensatedByRecovery_DiscardsResultWithoutConfirmation() {
+        // Arrange: la recuperación de PENDING compensó el pedido mientras el pago seguía en curso
+        Order order = pendingOrder();
+        Order compensated = pendingOrder();
+        compensated.setStatus("PAYMENT_FAILED");
+        compensated.setVersion(2L);
+        when(orderRepository.finishPending(eq(10L), eq(0L), eq("COMPLETED"), eq("TX-1"), any(LocalDateTime.class))).thenReturn(0);
+        when(orderRepository.findById(10L)).thenReturn(Optional.of(compensated));
+        PaymentResponseDto payment = new PaymentResponseDto(1L, "10", new BigDecimal("45.50"), "Credit Card", "COMPLETED", "TX-1", null);
+
+        // Act
+        Order result = orderService.recordPaymentResult(order, payment, userDto);
+
+        // Assert: el estado final no se sobrescribe ni se encola la confirmación
+        assertEquals("PAYMENT_FAILED", result.getStatus());
+        assertEquals("PENDING", order.getStatus());
+        verify(notificationOutboxService, never()).enqueue(any(), any());
+        verify(eventPublisher, never()).publishEvent(any());
+        verify(orderRepository, never()).save(any(Order.class));
+    }
+
+    @Test
+    void recordPaymentResult_UserWithoutEmail_RecordsPaymentWithoutConfirmation() {
+        // Arrange: outbox real (repositorio simulado); el User Service no tiene email para este usuario
+        NotificationOutboxRepository outboxRepository = mock(NotificationOutboxRepository.class);
+        NotificationOutboxService realOutbox = new NotificationOutboxService(outboxRepository, null, transactionManager,
+                new NotificationOutboxProperties(), new SimpleMeterRegistry());
+        orderService = new OrderService(orderRepository, null, shoppingCartService, productCatalogServiceClient,
+                paymentServiceClient, realOutbox, userServiceClient, transactionManager,
+                Runnable::run, Runnable::run, eventPublisher, new SimpleMeterRegistry(), Duration.ofSeconds(3));
+        UserDto withoutEmail = new UserDto(userId, "jdoe", null, "John Doe");
+        Order order = pendingOrder();
+        when(orderRepository.finishPending(eq(10L), eq(0L), eq("COMPLETED"), eq("TX-1"), any(LocalDateTime.class))).thenReturn(1);
+        PaymentResponseDto payment = new PaymentResponseDto(1L, "10", new BigDecimal("45.50"), "Credit Card", "COMPLETED", "TX-1", null);
+
+        // Act
+        Order result = orderService.recordPaymentResult(order, payment, withoutEmail);
+
+        // Assert: el pago cobrado queda registrado; solo se descarta la confirmación
+        assertEquals("COMPLETED", result.getStatus());
+        verifyNoInteractions(outboxRepository);
+        verify(eventPublisher, times(1)).publishEvent(any(OrderStatusChangedEvent.class));
+    }
+
+    @Test
+    void compensateFailedPayment_OrderAlreadyClosed_DoesNotRestoreCartTwice() {
+        // Arrange: el checkout y la recuperación compensan el mismo pedido; la recuperación llegó antes
+        Order order = pendingOrder();
+        Order compensated = pendingOrder();
+        compensated.setStatus("PAYMENT_FAILED");
+        when(orderRepository.finishPending(eq(10L), eq(0L), eq("PAYMENT_FAILED"), isNull(), any(LocalDateTime.class))).thenReturn(0);
+        when(orderRepository.findById(10L)).thenReturn(Optional.of(compensated));
+
+        // Act
+        orderService.compensateFailedPayment(order, cart.getItems());
+
+        // Assert
+        verify(shoppingCartService, never()).restoreCartItems(any(), any());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void submitOrderFromCart_RecoveryClaimedOrderWhileQueued_DoesNotCharge() {
+        // Arrange
+        when(shoppingCartService.findShoppingCart(userId)).thenReturn(Optional.of(cart));
+        when(userServiceClient.getUserById(userId)).thenReturn(Optional.of(userDto));
+        when(productCatalogServiceClient.getProductsByIds(List.of(101L, 102L)))
+                .thenReturn(Map.of(101L, productDto1, 102L, productDto2));
+        when(orderRepository.save(any(Order.class))).thenAnswer(invocation -> {
+            Order order = invocation.getArgument(0);
+            order.setId(10L);
+            order.setVersion(0L);
+            return order;
+        });
+        // La recuperación reservó el pedido (nueva versión) mientras el pago esperaba en la cola
+        when(orderRepository.claimPending(eq(10L), eq(0L), any(LocalDateTime.class))).thenReturn(0);
+        List<Runnable> pendingPayments = new ArrayList<>();
+        orderService = new OrderService(orderRepository, null, shoppingCartService, productCatalogServiceClient,
+                paymentServiceClient, notificationOutboxService, userServiceClient, transactionManager,
+                Runnable::run, pendingPayments::add, eventPublisher, new SimpleMeterRegistry(), Duration.ofSeconds(3));
+
+        // Act
+        orderService.submitOrderFromCart(userId, "address", "Credit Card");
+        pendingPayments.forEach(Runnable::run);
+
+        // Assert
+        verify(paymentServiceClient, never()).processPayment(any());
+        verify(orderRepository, never()).finishPending(any(), any(), any(), any(), any());
+        verify(shoppingCartService, never()).restoreCartItems(any(), any());
+    }
+
+    @Test
+    void createOrderFromCart_RemoteLookupsExceedDeadline_ShouldReportSlowestDependency() {
+        // Arrange
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            orderService = newOrderService(executor, Duration.ofMillis(100));
+            when(shoppingCartService.findShoppingCart(userId)).thenReturn(Optional.of(cart));
+            when(userServiceClient.getUserById(userId)).thenAnswer(invocation -> {
+                Thread.sleep(1000);
+                return Optional.of(userDto);
+            });
+            when(productCatalogServiceClient.getProductsByIds(List.of(101L, 102L)))
+                    .thenReturn(Map.of(101L, productDto1, 102L, productDto2));
+
+            // Act & Assert
+            CheckoutDeadlineExceededException exception = assertThrows(CheckoutDeadlineExceededException.class, () -> {
+                orderService.createOrderFromCart(userId, "address", "payment");
+            });
+
+            assertEquals(List.of("user-service"), exception.getSlowestDependencies());
+            verify(orderRepository, never()).save(any(Order.class));
+            verify(paymentServiceClient, never()).processPayment(any());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void createOrderFromCart_DeadlineExpiresWhileLookupIsQueued_LookupIsNeverMade() throws InterruptedException {
+        // Arrange: un solo hilo, ocupado por la consulta del usuario; la del catálogo espera en la cola
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            orderService = newOrderService(executor, Duration.ofMillis(100));
+            when(shoppingCartService.findShoppingCart(userId)).thenReturn(Optional.of(cart));
+            // lenient: con la máquina cargada el plazo puede vencer antes de que el hilo llegue a consultar al usuario
+            lenient().when(userServiceClient.getUserById(userId)).thenAnswer(invocation -> {
+                Thread.sleep(300);
+                return Optional.of(userDto);
+            });
+
+            // Act & Assert
+            CheckoutDeadlineExceededException exception = assertThrows(CheckoutDeadlineExceededException.class, () -> {
+                orderService.createOrderFromCart(userId, "address", "payment");
+            });
+
+            assertEquals(List.of("product-catalog-service", "user-service"), exception.getSlowestDependencies());
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            verify(productCatalogServiceClient, never()).getProductsByIds(any());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void createOrderFromCart_RemoteLookupsRunWithCheckoutDeadline() {
+        // Arrange
+        orderService = newOrderService(Runnable::run, Duration.ofSeconds(3));
+        when(shoppingCartService.findShoppingCart(userId)).thenReturn(Optional.of(cart));
+        List<Duration> remaining = new ArrayList<>();
+        when(userServiceClient.getUserById(userId)).thenAnswer(invocation -> {
+            remaining.add(RemoteCallDeadline.remaining().orElseThrow());
+            throw new RuntimeException("Error en comunicación con User Service");
+        });
+        when(productCatalogServiceClient.getProductsByIds(List.of(101L, 102L)))
+                .thenReturn(Map.of(101L, productDto1, 102L, productDto2));
+
+        // Act
+        assertThrows(RuntimeException.class, () -> orderService.createOrderFromCart(userId, "address", "payment"));
+
+        // Assert: el timeout de las peticiones HTTP de la consulta se limita a lo que queda del plazo
+        assertEquals(1, remaining.size());
+        assertTrue(remaining.get(0).compareTo(Duration.ofSeconds(3)) <= 0);
+        assertTrue(RemoteCallDeadline.remaining().isEmpty());
     }
 
     @Test
@@ -114,7 +474,7 @@ class OrderServiceTest {
         ShoppingCart emptyCart = new ShoppingCart(); // Usar constructor vacío
         emptyCart.setUserId(userId);
         
-        when(shoppingCartService.getOrCreateShoppingCart(userId)).thenReturn(emptyCart);
+        when(shoppingCartService.findShoppingCart(userId)).thenReturn(Optional.of(emptyCart));
 
         // Act & Assert
         RuntimeException exception = assertThrows(RuntimeException.class, () -> {
@@ -123,7 +483,20 @@ class OrderServiceTest {
 
         assertEquals("El carrito está vacío. No se puede crear un pedido.", exception.getMessage());
         verify(orderRepository, never()).save(any(Order.class));
-        verify(shoppingCartService, never()).clearCart(userId);
+        verify(shoppingCartService, never()).removeOrderedItems(eq(userId), any());
+    }
+
+    @Test
+    void createOrderFromCart_UserHasNoCart_ShouldThrowExceptionWithoutCreatingOne() {
+        when(shoppingCartService.findShoppingCart(userId)).thenReturn(Optional.empty());
+
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
+            orderService.createOrderFromCart(userId, "address", "payment");
+        });
+
+        assertEquals("El carrito está vacío. No se puede crear un pedido.", exception.getMessage());
+        verify(shoppingCartService, never()).getOrCreateShoppingCart(any());
+        verify(orderRepository, never()).save(any(Order.class));
     }
 
     // Los tests restantes de aquí para abajo no necesitaban cambios
@@ -132,9 +505,9 @@ class OrderServiceTest {
     @Test
     void createOrderFromCart_ProductNotFoundInCatalog_ShouldThrowException() {
         // Arrange
-        when(shoppingCartService.getOrCreateShoppingCart(userId)).thenReturn(cart);
-        when(productCatalogServiceClient.getProductById(101L)).thenReturn(Optional.of(productDto1));
-        when(productCatalogServiceClient.getProductById(102L)).thenReturn(Optional.empty());
+        when(shoppingCartService.findShoppingCart(userId)).thenReturn(Optional.of(cart));
+        when(userServiceClient.getUserById(userId)).thenReturn(Optional.of(userDto));
+        when(productCatalogServiceClient.getProductsByIds(List.of(101L, 102L))).thenReturn(Map.of(101L, productDto1));
 
         // Act & Assert
         RuntimeException exception = assertThrows(RuntimeException.class, () -> {
@@ -143,7 +516,7 @@ class OrderServiceTest {
 
         assertEquals("Producto con ID 102 en el carrito no encontrado en el catálogo. No se puede crear el pedido.", exception.getMessage());
         verify(orderRepository, never()).save(any(Order.class));
-        verify(shoppingCartService, never()).clearCart(userId);
+        verify(shoppingCartService, never()).removeOrderedItems(eq(userId), any());
     }
 
     @Test
@@ -194,6 +567,74 @@ class OrderServiceTest {
         verify(orderRepository, times(1)).findByUserIdOrderByOrderDateDesc(userId);
     }
 
+    @Test
+    void getOrderHistory_FirstPageWithMore_ReturnsCursorOfLastOrder() {
+        // Arrange
+        Order newest = new Order();
+        newest.setId(10L);
+        newest.setOrderDate(LocalDateTime.of(2024, 5, 2, 10, 0));
+        Order older = new Order();
+        older.setId(7L);
+        older.setOrderDate(LocalDateTime.of(2024, 5, 1, 9, 30));
+        // Se piden size + 1 IDs: el tercero solo indica que hay otra página
+        when(orderRepository.findHistoryIds(eq(userId), any(Pageable.class))).thenReturn(List.of(10L, 7L, 3L));
+        when(orderRepository.findByIdInOrderByOrderDateDescIdAsc(List.of(10L, 7L))).thenReturn(List.of(newest, older));
+
+        // Act
+        OrderHistoryPage page = orderService.getOrderHistory(userId, null, 2);
+
+        // Assert
+        assertEquals(2, page.getOrders().size());
+        OrderHistoryCursor cursor = OrderHistoryCursor.decode(page.getNextCursor());
+        assertEquals(7L, cursor.getOrderId());
+        assertEquals(older.getOrderDate(), cursor.getOrderDate());
+        verify(orderRepository).findHistoryIds(userId, PageRequest.of(0, 3));
+    }
+
+    @Test
+    void getOrderHistory_WithCursor_ContinuesAfterItAndCapsPageSize() {
+        // Arrange
+        LocalDateTime lastDate = LocalDateTime.of(2024, 5, 1, 9, 30);
+        String cursor = new OrderHistoryCursor(lastDate, 7L).encode();
+        Order last = new Order();
+        last.setId(3L);
+        when(orderRepository.findHistoryIdsAfter(eq(userId), eq(lastDate), eq(7L), any(Pageable.class))).thenReturn(List.of(3L));
+        when(orderRepository.findByIdInOrderByOrderDateDescIdAsc(List.of(3L))).thenReturn(List.of(last));
+
+        // Act
+        OrderHistoryPage page = orderService.getOrderHistory(userId, cursor, 10_000);
+
+        // Assert
+        assertEquals(List.of(last), page.getOrders());
+        assertNull(page.getNextCursor());
+        verify(orderRepository).findHistoryIdsAfter(userId, lastDate, 7L, PageRequest.of(0, OrderService.MAX_HISTORY_PAGE_SIZE + 1));
+    }
+
+    @Test
+    void getOrderSummaries_FullPage_ReturnsCursorOfLastSummary() {
+        // Arrange
+        LocalDateTime date = LocalDateTime.of(2024, 5, 1, 9, 30);
+        OrderSummaryDto first = new OrderSummaryDto(10L, date.plusDays(1), "COMPLETED", BigDecimal.TEN, 2L);
+        OrderSummaryDto second = new OrderSummaryDto(7L, date, "COMPLETED", BigDecimal.ONE, 1L);
+        OrderSummaryDto extra = new OrderSummaryDto(3L, date.minusDays(1), "COMPLETED", BigDecimal.ONE, 1L);
+        when(orderRepository.findSummaries(userId, PageRequest.of(0, 3))).thenReturn(List.of(first, second, extra));
+
+        // Act
+        OrderSummaryPage page = orderService.getOrderSummaries(userId, null, 2);
+
+        // Assert
+        assertEquals(List.of(first, second), page.getSummaries());
+        OrderHistoryCursor cursor = OrderHistoryCursor.decode(page.getNextCursor());
+        assertEquals(7L, cursor.getOrderId());
+        assertEquals(date, cursor.getOrderDate());
+    }
+
+    @Test
+    void getOrderHistory_InvalidCursor_ThrowsIllegalArgument() {
+        assertThrows(IllegalArgumentException.class, () -> orderService.getOrderHistory(userId, "no-es-un-cursor", 20));
+        verifyNoInteractions(orderRepository);
+    }
+
     @Test
     void updateOrderStatus_Success() {
         // Arrange
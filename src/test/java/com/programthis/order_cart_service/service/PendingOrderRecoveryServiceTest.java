@@ -0,0 +1,137 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.client.PaymentServiceClient;
+import com.programthis.order_cart_service.client.UserServiceClient;
+import com.programthis.order_cart_service.config.PendingOrderRecoveryProperties;
+import com.programthis.order_cart_service.dto.PaymentResponseDto;
+import com.programthis.order_cart_service.dto.UserDto;
+import com.programthis.order_cart_service.model.CartItem;
+import com.programthis.order_cart_service.model.Order;
+import com.programthis.order_cart_service.model.OrderItem;
+import com.programthis.order_cart_service.repository.OrderRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PendingOrderRecoveryServiceTest {
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    @Mock
+    private OrderService orderService;
+
+    @Mock
+    private PaymentServiceClient paymentServiceClient;
+
+    @Mock
+    private UserServiceClient userServiceClient;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private PendingOrderRecoveryService recoveryService;
+
+    @BeforeEach
+    void setUp() {
+        recoveryService = new PendingOrderRecoveryService(orderRepository, orderService, paymentServiceClient,
+                userServiceClient, transactionManager, new PendingOrderRecoveryProperties(), new SimpleMeterRegistry());
+    }
+
+    private Order pendingOrder(Long orderId) {
+        Order order = new Order();
+        order.setId(orderId);
+        order.setUserId(1L);
+        order.setStatus("PENDING");
+        OrderItem item = new OrderItem();
+        item.setProductId(101L);
+        item.setQuantity(2);
+        item.setUnitPrice(new BigDecimal("10.00"));
+        order.addOrderItem(item);
+        return order;
+    }
+
+    private void givenStalePendingOrders(Order... orders) {
+        when(orderRepository.findStalePendingIds(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(Arrays.stream(orders).map(Order::getId).toList());
+        for (Order order : orders) {
+            when(orderRepository.claimStalePending(eq(order.getId()), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(1);
+            when(orderRepository.findById(order.getId())).thenReturn(Optional.of(order));
+        }
+    }
+
+    @Test
+    void recoverStalePendingOrders_PaymentKnown_RecordsItsResult() {
+        Order order = pendingOrder(10L);
+        givenStalePendingOrders(order);
+        PaymentResponseDto payment = new PaymentResponseDto(1L, "10", new BigDecimal("20.00"), "Credit Card", "COMPLETED", "TX-1", null);
+        UserDto user = new UserDto(1L, "jdoe", "jdoe@example.com", "John Doe");
+        when(paymentServiceClient.getPaymentStatusByOrderId("10")).thenReturn(Optional.of(payment));
+        when(userServiceClient.getUserById(1L)).thenReturn(Optional.of(user));
+
+        recoveryService.recoverStalePendingOrders();
+
+        verify(orderService).recordPaymentResult(order, payment, user);
+        verify(orderService, never()).compensateFailedPayment(any(), any());
+    }
+
+    @Test
+    void recoverStalePendingOrders_PaymentNeverSent_CompensatesWithoutCharging() {
+        Order order = pendingOrder(10L);
+        givenStalePendingOrders(order);
+        when(paymentServiceClient.getPaymentStatusByOrderId("10")).thenReturn(Optional.empty());
+
+        recoveryService.recoverStalePendingOrders();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<CartItem>> itemsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(orderService).compensateFailedPayment(eq(order), itemsCaptor.capture());
+        assertEquals(1, itemsCaptor.getValue().size());
+        assertEquals(101L, itemsCaptor.getValue().get(0).getProductId());
+        assertEquals(2, itemsCaptor.getValue().get(0).getQuantity());
+        assertEquals(new BigDecimal("10.00"), itemsCaptor.getValue().get(0).getPriceAtAddition());
+        verify(paymentServiceClient, never()).processPayment(any());
+    }
+
+    @Test
+    void recoverStalePendingOrders_ClaimedElsewhere_SkipsOrder() {
+        when(orderRepository.findStalePendingIds(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(10L));
+        when(orderRepository.claimStalePending(eq(10L), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(0);
+
+        recoveryService.recoverStalePendingOrders();
+
+        verify(paymentServiceClient, never()).getPaymentStatusByOrderId(anyString());
+        verifyNoInteractions(orderService);
+    }
+
+    @Test
+    void recoverStalePendingOrders_PaymentServiceDown_LeavesOrderForNextRunAndContinues() {
+        Order unreachable = pendingOrder(10L);
+        Order recoverable = pendingOrder(11L);
+        givenStalePendingOrders(unreachable, recoverable);
+        when(paymentServiceClient.getPaymentStatusByOrderId("10")).thenThrow(new RuntimeException("Error en comunicación con Payment Service"));
+        when(paymentServiceClient.getPaymentStatusByOrderId("11")).thenReturn(Optional.empty());
+
+        recoveryService.recoverStalePendingOrders();
+
+        verify(orderService, never()).compensateFailedPayment(eq(unreachable), any());
+        verify(orderService).compensateFailedPayment(eq(recoverable), any());
+    }
+}
@@ -0,0 +1,152 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.client.ReactivePaymentServiceClient;
+import com.programthis.order_cart_service.client.ReactiveProductCatalogServiceClient;
+import com.programthis.order_cart_service.client.ReactiveUserServiceClient;
+import com.programthis.order_cart_service.dto.PaymentRequestDto;
+import com.programthis.order_cart_service.dto.PaymentResponseDto;
+import com.programthis.order_cart_service.dto.ProductDto;
+import com.programthis.order_cart_service.dto.UserDto;
+import com.programthis.order_cart_service.model.CartItem;
+import com.programthis.order_cart_service.model.Order;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveOrderServiceTest {
+
+    @Mock
+    private OrderService orderService;
+
+    @Mock
+    private ReactiveUserServiceClient userServiceClient;
+
+    @Mock
+    private ReactiveProductCatalogServiceClient productCatalogServiceClient;
+
+    @Mock
+    private ReactivePaymentServiceClient paymentServiceClient;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ReactiveOrderService reactiveOrderService;
+
+    private Long userId;
+    private List<CartItem> cartItems;
+    private Map<Long, ProductDto> products;
+    private UserDto userDto;
+    private Order pendingOrder;
+
+    @BeforeEach
+    void setUp() {
+        // Scheduler inmediato: el trabajo "JPA" se ejecuta en el hilo del test
+        ReactiveJpaBridge jpa = new ReactiveJpaBridge(transactionManager, Schedulers.immediate());
+        reactiveOrderService = new ReactiveOrderService(orderService, userServiceClient, productCatalogServiceClient,
+                paymentServiceClient, jpa, new SimpleMeterRegistry(), Duration.ofMillis(200));
+
+        userId = 1L;
+        CartItem item = new CartItem();
+        item.setProductId(101L);
+        item.setQuantity(2);
+        cartItems = List.of(item);
+        products = Map.of(101L, new ProductDto(101L, "Laptop", "Una laptop potente", new BigDecimal("10.00"), 10));
+        userDto = new UserDto(userId, "testuser", "test@example.com", "Test User");
+        pendingOrder = new Order();
+        pendingOrder.setId(500L);
+        pendingOrder.setUserId(userId);
+        pendingOrder.setStatus("PENDING");
+    }
+
+    private void givenReservableCart() {
+        when(orderService.snapshotCart(userId)).thenReturn(cartItems);
+        when(userServiceClient.getUserById(userId)).thenReturn(Mono.just(userDto));
+        when(productCatalogServiceClient.getProductsByIds(List.of(101L))).thenReturn(Mono.just(products));
+        when(orderService.buildPendingOrder(userId, "Calle 1", "CREDIT_CARD", cartItems, products)).thenReturn(pendingOrder);
+        when(orderService.persistPendingOrder(pendingOrder, cartItems)).thenReturn(pendingOrder);
+        when(orderService.paymentRequestFor(pendingOrder)).thenReturn(new PaymentRequestDto());
+    }
+
+    @Test
+    void createOrderFromCart_RecordsSuccessfulPayment() {
+        givenReservableCart();
+        PaymentResponseDto paymentResponse = new PaymentResponseDto();
+        paymentResponse.setPaymentStatus("COMPLETED");
+        when(paymentServiceClient.processPayment(any(PaymentRequestDto.class))).thenReturn(Mono.just(paymentResponse));
+        when(orderService.recordPaymentResult(pendingOrder, paymentResponse, userDto)).thenReturn(pendingOrder);
+
+        Order result = reactiveOrderService.createOrderFromCart(userId, "Calle 1", "CREDIT_CARD").block();
+
+        assertSame(pendingOrder, result);
+        verify(orderService).recordPaymentResult(pendingOrder, paymentResponse, userDto);
+        verify(orderService, never()).compensateFailedPayment(any(), any());
+    }
+
+    @Test
+    void createOrderFromCart_RejectedPaymentCompensatesAndFails() {
+        givenReservableCart();
+        when(paymentServiceClient.processPayment(any(PaymentRequestDto.class))).thenReturn(Mono.empty());
+
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> reactiveOrderService.createOrderFromCart(userId, "Calle 1", "CREDIT_CARD").block());
+
+        assertEquals("El pago para la orden 500 falló o no pudo ser procesado.", exception.getMessage());
+        verify(orderService).compensateFailedPayment(pendingOrder, cartItems);
+        verify(orderService, never()).recordPaymentResult(any(), any(), any());
+    }
+
+    @Test
+    void createOrderFromCart_PaymentServiceErrorCompensatesAndPropagates() {
+        givenReservableCart();
+        when(paymentServiceClient.processPayment(any(PaymentRequestDto.class)))
+                .thenReturn(Mono.error(new RuntimeException("Error en comunicación con Payment Service")));
+
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> reactiveOrderService.createOrderFromCart(userId, "Calle 1", "CREDIT_CARD").block());
+
+        assertEquals("Error en comunicación con Payment Service", exception.getMessage());
+        verify(orderService).compensateFailedPayment(pendingOrder, cartItems);
+    }
+
+    @Test
+    void createOrderFromCart_SlowCatalogExceedsDeadline() {
+        when(orderService.snapshotCart(userId)).thenReturn(cartItems);
+        when(userServiceClient.getUserById(userId)).thenReturn(Mono.just(userDto));
+        when(productCatalogServiceClient.getProductsByIds(List.of(101L))).thenReturn(Mono.never());
+
+        CheckoutDeadlineExceededException exception = assertThrows(CheckoutDeadlineExceededException.class,
+                () -> reactiveOrderService.createOrderFromCart(userId, "Calle 1", "CREDIT_CARD").block());
+
+        assertEquals(List.of(OrderService.CATALOG_DEPENDENCY), exception.getSlowestDependencies());
+        verify(orderService, never()).persistPendingOrder(any(), any());
+    }
+
+    @Test
+    void createOrderFromCart_UnknownUserFailsBeforePersisting() {
+        when(orderService.snapshotCart(userId)).thenReturn(cartItems);
+        when(userServiceClient.getUserById(userId)).thenReturn(Mono.empty());
+        when(productCatalogServiceClient.getProductsByIds(List.of(101L))).thenReturn(Mono.just(products));
+
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> reactiveOrderService.createOrderFromCart(userId, "Calle 1", "CREDIT_CARD").block());
+
+        assertEquals("Usuario con ID 1 no encontrado. No se puede crear el pedido.", exception.getMessage());
+        verify(orderService, never()).persistPendingOrder(any(), any());
+    }
+}
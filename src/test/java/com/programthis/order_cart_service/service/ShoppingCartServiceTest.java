@@ -1,23 +1,30 @@
 package com.programthis.order_cart_service.service;
 
 import com.programthis.order_cart_service.client.ProductCatalogServiceClient;
+import com.programthis.order_cart_service.config.CartViewCacheProperties;
+import com.programthis.order_cart_service.dto.CartItemOperationDto;
 import com.programthis.order_cart_service.dto.ProductDto;
 import com.programthis.order_cart_service.model.CartItem;
 import com.programthis.order_cart_service.model.ShoppingCart;
 import com.programthis.order_cart_service.repository.CartItemRepository;
 import com.programthis.order_cart_service.repository.ShoppingCartRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,7 +39,9 @@ class ShoppingCartServiceTest {
     @Mock
     private ProductCatalogServiceClient productCatalogServiceClient;
 
-    @InjectMocks
+    @Mock
+    private CartMutationGuard cartMutationGuard;
+
     private ShoppingCartService shoppingCartService;
 
     private Long userId;
@@ -51,6 +60,85 @@ class ShoppingCartServiceTest {
         cart.setItems(new ArrayList<>()); 
 
         productDto = new ProductDto(productId, "Teclado Mecánico", "Un teclado para programar.", new BigDecimal("75.00"), 20);
+
+        // El guard (reintentos y transacción) se prueba en CartMutationGuardTest: aquí ejecuta la modificación tal cual
+        lenient().when(cartMutationGuard.mutate(any(), any())).thenAnswer(i -> i.getArgument(1, Supplier.class).get());
+        shoppingCartService = new ShoppingCartService(
+                new JpaCartStore(shoppingCartRepository, cartItemRepository, cartMutationGuard), productCatalogServiceClient,
+                new CartViewCache(new CartViewCacheProperties(), new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void getCart_isServedFromCacheWhileItsVersionIsCurrent() {
+        cart.setVersion(4L);
+        ShoppingCart updated = new ShoppingCart();
+        updated.setId(1L);
+        updated.setUserId(userId);
+        updated.setVersion(5L);
+        when(shoppingCartRepository.findByUserId(userId)).thenReturn(Optional.of(cart), Optional.of(updated));
+        when(shoppingCartRepository.findIdByUserId(userId)).thenReturn(Optional.of(cart.getId()));
+        when(shoppingCartRepository.findVersionByUserId(userId)).thenReturn(Optional.of(4L), Optional.of(5L));
+
+        assertSame(cart, shoppingCartService.getCart(userId));
+        // Desde la caché: una copia, tras comprobar solo la versión
+        ShoppingCart cached = shoppingCartService.getCart(userId);
+        assertNotSame(cart, cached);
+        assertEquals(4L, cached.getVersion());
+        verify(shoppingCartRepository, times(1)).findByUserId(userId);
+
+        // clearCart deja en la caché el carrito resultante: el siguiente GET no vuelve a cargarlo
+        shoppingCartService.clearCart(userId);
+        assertEquals(5L, shoppingCartService.getCart(userId).getVersion());
+        verify(shoppingCartRepository, times(2)).findByUserId(userId);
+        verify(shoppingCartRepository, times(2)).findVersionByUserId(userId);
+    }
+
+    @Test
+    void getCart_cartChangedByAnotherInstanceIsReloaded() {
+        cart.setVersion(4L);
+        ShoppingCart changedElsewhere = new ShoppingCart();
+        changedElsewhere.setId(1L);
+        changedElsewhere.setUserId(userId);
+        changedElsewhere.setVersion(6L);
+        when(shoppingCartRepository.findByUserId(userId)).thenReturn(Optional.of(cart), Optional.of(changedElsewhere));
+        when(shoppingCartRepository.findVersionByUserId(userId)).thenReturn(Optional.of(6L));
+
+        shoppingCartService.getCart(userId);
+
+        assertSame(changedElsewhere, shoppingCartService.getCart(userId));
+        verify(shoppingCartRepository, times(2)).findByUserId(userId);
+    }
+
+    @Test
+    void getCart_userWithoutCart_returnsEmptyCartWithoutCreatingIt() {
+        when(shoppingCartRepository.findByUserId(userId)).thenReturn(Optional.empty());
+
+        ShoppingCart result = shoppingCartService.getCart(userId);
+
+        assertNull(result.getId());
+        assertEquals(userId, result.getUserId());
+        assertTrue(result.getItems().isEmpty());
+        verify(shoppingCartRepository, never()).save(any());
+        verify(cartMutationGuard, never()).mutate(any(), any());
+        // El carrito sin guardar no queda en la caché: el siguiente GET vuelve a comprobar si ya existe
+        shoppingCartService.getCart(userId);
+        verify(shoppingCartRepository, times(2)).findByUserId(userId);
+        verify(shoppingCartRepository, never()).findVersionByUserId(any());
+    }
+
+    @Test
+    void removeOrderedItems_invalidatesCachedCart() {
+        cart.setVersion(4L);
+        when(shoppingCartRepository.findByUserId(userId)).thenReturn(Optional.of(cart));
+        when(shoppingCartRepository.findIdByUserId(userId)).thenReturn(Optional.of(cart.getId()));
+        shoppingCartService.getCart(userId);
+
+        shoppingCartService.removeOrderedItems(userId, List.copyOf(cart.getItems()));
+
+        // Fuera de una transacción se invalida en el acto: el siguiente GET vuelve a cargarlo
+        shoppingCartService.getCart(userId);
+        verify(shoppingCartRepository, times(2)).findByUserId(userId);
+        verify(shoppingCartRepository, never()).findVersionByUserId(any());
     }
 
     @Test
@@ -75,40 +163,34 @@ class ShoppingCartServiceTest {
     }
 
     @Test
-    void addProductToCart_addNewProduct_success() {
+    void addProductToCart_upsertsItemInExistingCart_success() {
         Integer quantity = 2;
         when(productCatalogServiceClient.getProductById(productId)).thenReturn(Optional.of(productDto));
+        when(shoppingCartRepository.findIdByUserId(userId)).thenReturn(Optional.of(cart.getId()));
         when(shoppingCartRepository.findByUserId(userId)).thenReturn(Optional.of(cart));
-        when(cartItemRepository.save(any(CartItem.class))).thenAnswer(i -> i.getArgument(0));
-        when(shoppingCartRepository.save(any(ShoppingCart.class))).thenAnswer(i -> i.getArgument(0));
         ShoppingCart result = shoppingCartService.addProductToCart(userId, productId, quantity);
-        assertEquals(1, result.getItems().size());
-        CartItem addedItem = result.getItems().get(0);
-        assertEquals(productId, addedItem.getProductId());
-        assertEquals(quantity, addedItem.getQuantity());
-        assertEquals(new BigDecimal("75.00"), addedItem.getPriceAtAddition());
+        assertSame(cart, result);
         verify(productCatalogServiceClient, times(1)).getProductById(productId);
-        verify(cartItemRepository, times(1)).save(any(CartItem.class));
-        verify(shoppingCartRepository, times(1)).save(cart);
+        verify(shoppingCartRepository, times(1)).touch(eq(cart.getId()), any(LocalDateTime.class));
+        verify(cartItemRepository, times(1)).upsertQuantity(eq(cart.getId()), eq(productId), eq(quantity),
+                eq(new BigDecimal("75.00")), any(LocalDateTime.class));
+        verify(cartItemRepository, never()).save(any());
+        verify(shoppingCartRepository, never()).save(any());
     }
 
     @Test
-    void addProductToCart_updateExistingProductQuantity_success() {
-        Integer initialQuantity = 1;
-        Integer addedQuantity = 2;
-        CartItem existingItem = new CartItem();
-        existingItem.setProductId(productId);
-        existingItem.setQuantity(initialQuantity);
-        cart.addCartItem(existingItem);
-        when(productCatalogServiceClient.getProductById(productId)).thenReturn(Optional.of(productDto));
-        when(shoppingCartRepository.findByUserId(userId)).thenReturn(Optional.of(cart));
-        when(cartItemRepository.save(any(CartItem.class))).thenAnswer(i -> i.getArgument(0));
-        when(shoppingCartRepository.save(any(ShoppingCart.class))).thenAnswer(i -> i.getArgument(0));
-        ShoppingCart result = shoppingCartService.addProductToCart(userId, productId, addedQuantity);
-        assertEquals(1, result.getItems().size());
-        assertEquals(initialQuantity + addedQuantity, result.getItems().get(0).getQuantity());
-        verify(cartItemRepository, times(1)).save(existingItem);
-        verify(shoppingCartRepository, times(1)).save(cart);
+    void addProductToCart_createsCartBeforeUpsertingItem() {
+        ShoppingCart newCart = new ShoppingCart();
+        newCart.setId(2L);
+        newCart.setUserId(userId);
+        when(shoppingCartRepository.findIdByUserId(userId)).thenReturn(Optional.empty());
+        when(shoppingCartRepository.save(any(ShoppingCart.class))).thenReturn(newCart);
+        when(shoppingCartRepository.findByUserId(userId)).thenReturn(Optional.of(newCart));
+        ShoppingCart result = shoppingCartService.addProductToCart(userId, productDto, 1);
+        assertSame(newCart, result);
+        verify(shoppingCartRepository, times(1)).save(argThat(saved -> userId.equals(saved.getUserId())));
+        verify(cartItemRepository, times(1)).upsertQuantity(eq(2L), eq(productId), eq(1),
+                eq(new BigDecimal("75.00")), any(LocalDateTime.class));
     }
 
     @Test
@@ -117,9 +199,84 @@ class ShoppingCartServiceTest {
         RuntimeException exception = assertThrows(RuntimeException.class, () -> shoppingCartService.addProductToCart(userId, productId, 1));
         assertEquals("Producto con ID " + productId + " no encontrado en el catálogo. No se puede añadir al carrito.", exception.getMessage());
         verify(shoppingCartRepository, never()).save(any());
+        verify(cartItemRepository, never()).upsertQuantity(any(), any(), any(), any(), any());
+    }
+
+    private CartItem cartItem(Long itemProductId, int quantity) {
+        CartItem item = new CartItem();
+        item.setProductId(itemProductId);
+        item.setQuantity(quantity);
+        item.setPriceAtAddition(new BigDecimal("75.00"));
+        cart.addCartItem(item);
+        return item;
+    }
+
+    @Test
+    void applyItemOperations_appliesAllOperationsWithOneCatalogLookup() {
+        CartItem keyboard = cartItem(productId, 2);
+        cartItem(102L, 1);
+        ProductDto mouse = new ProductDto(103L, "Ratón", "Un ratón inalámbrico.", new BigDecimal("20.00"), 10);
+        when(productCatalogServiceClient.getProductsByIds(List.of(productId, 103L)))
+                .thenReturn(Map.of(productId, productDto, 103L, mouse));
+        when(shoppingCartRepository.findByUserId(userId)).thenReturn(Optional.of(cart));
+        when(shoppingCartRepository.save(cart)).thenReturn(cart);
+
+        ShoppingCart result = shoppingCartService.applyItemOperations(userId, List.of(
+                new CartItemOperationDto(CartItemOperationDto.Type.ADD, productId, 1),
+                new CartItemOperationDto(CartItemOperationDto.Type.REMOVE, 102L, null),
+                new CartItemOperationDto(CartItemOperationDto.Type.ADD, 103L, 2),
+                new CartItemOperationDto(CartItemOperationDto.Type.ADD, productId, 1)));
+
+        assertSame(cart, result);
+        assertEquals(List.of(productId, 103L), result.getItems().stream().map(CartItem::getProductId).toList());
+        assertSame(keyboard, result.getItems().get(0));
+        assertEquals(4, keyboard.getQuantity());
+        assertEquals(2, result.getItems().get(1).getQuantity());
+        assertEquals(new BigDecimal("20.00"), result.getItems().get(1).getPriceAtAddition());
+        assertNotNull(cart.getUpdatedAt());
+        verify(productCatalogServiceClient, never()).getProductById(any());
+        verify(cartMutationGuard, times(1)).mutate(eq(userId), any());
+        // Los cambios se escriben con el flush del carrito, sin sentencias por operación
+        verify(cartItemRepository, never()).upsertQuantity(any(), any(), any(), any(), any());
         verify(cartItemRepository, never()).save(any());
     }
 
+    @Test
+    void applyItemOperations_invalidOperationAppliesNone() {
+        CartItem keyboard = cartItem(productId, 2);
+        when(shoppingCartRepository.findByUserId(userId)).thenReturn(Optional.of(cart));
+
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> shoppingCartService.applyItemOperations(userId, List.of(
+                new CartItemOperationDto(CartItemOperationDto.Type.UPDATE, productId, 7),
+                new CartItemOperationDto(CartItemOperationDto.Type.REMOVE, 999L, null))));
+
+        assertEquals("Producto con ID 999 no encontrado en el carrito para eliminar.", exception.getMessage());
+        assertEquals(2, keyboard.getQuantity());
+        verify(shoppingCartRepository, never()).save(any());
+        verifyNoInteractions(productCatalogServiceClient);
+    }
+
+    @Test
+    void applyItemOperations_unknownCatalogProductFailsBeforeTouchingCart() {
+        when(productCatalogServiceClient.getProductsByIds(List.of(555L))).thenReturn(Map.of());
+
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> shoppingCartService.applyItemOperations(userId, List.of(
+                new CartItemOperationDto(CartItemOperationDto.Type.ADD, 555L, 1))));
+
+        assertEquals("Producto con ID 555 no encontrado en el catálogo. No se puede añadir al carrito.", exception.getMessage());
+        verify(cartMutationGuard, never()).mutate(any(), any());
+    }
+
+    @Test
+    void applyItemOperations_rejectsMalformedOperations() {
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> shoppingCartService.applyItemOperations(userId, List.of(
+                new CartItemOperationDto(CartItemOperationDto.Type.ADD, productId, 0))));
+
+        assertEquals("La cantidad a añadir del producto con ID " + productId + " debe ser mayor que 0.", exception.getMessage());
+        assertThrows(RuntimeException.class, () -> shoppingCartService.applyItemOperations(userId, List.of()));
+        verifyNoInteractions(productCatalogServiceClient, shoppingCartRepository);
+    }
+
     @Test
     void updateProductQuantityInCart_updateQuantity_success() {
         Integer newQuantity = 5;
@@ -199,31 +356,71 @@ class ShoppingCartServiceTest {
     }
 
     @Test
-    void clearCart_WithItems_Success() {
-        CartItem item1 = new CartItem(); item1.setProductId(101L);
-        cart.addCartItem(item1);
+    void restoreCartItems_upsertsEachItemKeepingOriginalPrice() {
+        CartItem restoredExisting = new CartItem();
+        restoredExisting.setProductId(productId);
+        restoredExisting.setQuantity(2);
+        restoredExisting.setPriceAtAddition(new BigDecimal("70.00"));
+        CartItem restoredNew = new CartItem();
+        restoredNew.setProductId(202L);
+        restoredNew.setQuantity(3);
+        restoredNew.setPriceAtAddition(new BigDecimal("5.00"));
+
+        when(shoppingCartRepository.findIdByUserId(userId)).thenReturn(Optional.of(cart.getId()));
         when(shoppingCartRepository.findByUserId(userId)).thenReturn(Optional.of(cart));
-        when(shoppingCartRepository.save(cart)).thenReturn(cart);
-        doNothing().when(cartItemRepository).deleteAll(any());
-        shoppingCartService.clearCart(userId);
-        verify(cartItemRepository, times(1)).deleteAll(cart.getItems());
-        verify(shoppingCartRepository, times(1)).save(cart);
+        ShoppingCart result = shoppingCartService.restoreCartItems(userId, List.of(restoredExisting, restoredNew));
+
+        assertSame(cart, result);
+        verify(cartItemRepository).upsertQuantity(eq(cart.getId()), eq(productId), eq(2), eq(new BigDecimal("70.00")), any(LocalDateTime.class));
+        verify(cartItemRepository).upsertQuantity(eq(cart.getId()), eq(202L), eq(3), eq(new BigDecimal("5.00")), any(LocalDateTime.class));
+        verify(cartItemRepository, never()).save(any());
+        verify(productCatalogServiceClient, never()).getProductById(any());
     }
 
     @Test
-    void clearCart_EmptyCart_Success() {
+    void updateProductQuantityInCart_goesThroughMutationGuard() {
+        CartItem item = new CartItem();
+        item.setProductId(productId);
+        item.setQuantity(2);
+        cart.addCartItem(item);
         when(shoppingCartRepository.findByUserId(userId)).thenReturn(Optional.of(cart));
         when(shoppingCartRepository.save(cart)).thenReturn(cart);
-        shoppingCartService.clearCart(userId);
+        shoppingCartService.updateProductQuantityInCart(userId, productId, 4);
+        verify(cartMutationGuard, times(1)).mutate(eq(userId), any());
+        assertNotNull(cart.getUpdatedAt());
+    }
+
+    @Test
+    void clearCart_DeletesItemsInBulkAndReturnsReloadedCart() {
+        when(shoppingCartRepository.findIdByUserId(userId)).thenReturn(Optional.of(cart.getId()));
+        when(shoppingCartRepository.findByUserId(userId)).thenReturn(Optional.of(cart));
+        ShoppingCart result = shoppingCartService.clearCart(userId);
+        assertSame(cart, result);
+        verify(cartItemRepository, times(1)).deleteByCartId(cart.getId());
         verify(cartItemRepository, never()).deleteAll(any());
-        verify(shoppingCartRepository, times(1)).save(cart);
+        verify(shoppingCartRepository, never()).save(any());
+    }
+
+    @Test
+    void removeOrderedItems_SubtractsOrderedQuantitiesWithoutLoadingCart() {
+        CartItem ordered = new CartItem();
+        ordered.setProductId(101L);
+        ordered.setQuantity(2);
+        when(shoppingCartRepository.findIdByUserId(userId)).thenReturn(Optional.of(cart.getId()));
+        shoppingCartService.removeOrderedItems(userId, List.of(ordered));
+        verify(shoppingCartRepository, times(1)).touch(eq(cart.getId()), any(LocalDateTime.class));
+        verify(cartItemRepository, times(1)).subtractQuantity(eq(cart.getId()), eq(101L), eq(2), any(LocalDateTime.class));
+        verify(cartItemRepository, times(1)).deleteEmptyItems(cart.getId());
+        verify(cartItemRepository, never()).deleteByCartId(any());
+        verify(shoppingCartRepository, never()).findByUserId(any());
     }
     
     // --- TEST AÑADIDO PARA CUBRIR orElseThrow ---
     @Test
     void clearCart_CartNotFound_ShouldThrowException() {
-        when(shoppingCartRepository.findByUserId(userId)).thenReturn(Optional.empty());
+        when(shoppingCartRepository.findIdByUserId(userId)).thenReturn(Optional.empty());
         RuntimeException exception = assertThrows(RuntimeException.class, () -> shoppingCartService.clearCart(userId));
         assertEquals("Carrito no encontrado para el usuario: " + userId, exception.getMessage());
+        verify(cartItemRepository, never()).deleteByCartId(any());
     }
-}
\ No newline at end of file
+}
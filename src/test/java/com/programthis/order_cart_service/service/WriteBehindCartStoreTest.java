@@ -0,0 +1,299 @@
+package com.programthis.order_cart_service.service;
+
+import com.programthis.order_cart_service.config.CartStoreProperties;
+import com.programthis.order_cart_service.dto.CartItemOperationDto;
+import com.programthis.order_cart_service.dto.ProductDto;
+import com.programthis.order_cart_service.model.CartItem;
+import com.programthis.order_cart_service.model.ShoppingCart;
+import com.programthis.order_cart_service.repository.CartItemRepository;
+import com.programthis.order_cart_service.repository.ShoppingCartRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WriteBehindCartStoreTest {
+
+    private static final Long USER_ID = 1L;
+    private static final Long CART_ID = 5L;
+    private static final BigDecimal PRICE = new BigDecimal("75.00");
+
+    @Mock
+    private JpaCartStore jpaCartStore;
+
+    @Mock
+    private ShoppingCartRepository shoppingCartRepository;
+
+    @Mock
+    private CartItemRepository cartItemRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private CartStoreProperties properties;
+    private WriteBehindCartStore store;
+    private ProductDto keyboard;
+
+    @BeforeEach
+    void setUp() {
+        properties = new CartStoreProperties();
+        properties.setMode("write-behind");
+        store = new WriteBehindCartStore(jpaCartStore, shoppingCartRepository, cartItemRepository, transactionManager,
+                properties, new SimpleMeterRegistry());
+        keyboard = new ProductDto(101L, "Teclado Mecánico", "Un teclado para programar.", PRICE, 20);
+    }
+
+    private ShoppingCart persistedCart(CartItem... items) {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setId(CART_ID);
+        cart.setUserId(USER_ID);
+        cart.setVersion(3L);
+        for (CartItem item : items) {
+            cart.addCartItem(item);
+        }
+        return cart;
+    }
+
+    private CartItem persistedItem(Long id, Long productId, int quantity) {
+        CartItem item = new CartItem();
+        item.setId(id);
+        item.setProductId(productId);
+        item.setQuantity(quantity);
+        item.setPriceAtAddition(PRICE);
+        return item;
+    }
+
+    @Test
+    void mutationsStayInMemoryAndAreCoalescedIntoOneWrite() {
+        when(jpaCartStore.getOrCreateShoppingCart(USER_ID)).thenReturn(persistedCart());
+
+        store.addProductToCart(USER_ID, keyboard, 1);
+        store.addProductToCart(USER_ID, keyboard, 1);
+        ShoppingCart cart = store.addProductToCart(USER_ID, keyboard, 1);
+
+        assertEquals(3, cart.getItems().get(0).getQuantity());
+        assertEquals(6L, cart.getVersion());
+        verifyNoInteractions(cartItemRepository, shoppingCartRepository);
+
+        store.flushDirtyCarts();
+
+        verify(shoppingCartRepository, times(1)).touchToVersion(eq(CART_ID), eq(6L), any(LocalDateTime.class));
+        verify(cartItemRepository, times(1)).saveQuantity(eq(CART_ID), eq(101L), eq(3), eq(PRICE), any(LocalDateTime.class));
+        verify(cartItemRepository, never()).deleteByCartId(any());
+        verify(jpaCartStore, times(1)).getOrCreateShoppingCart(USER_ID);
+    }
+
+    @Test
+    void flush_writesOnlyChangedProductsOnce() {
+        when(jpaCartStore.getOrCreateShoppingCart(USER_ID)).thenReturn(persistedCart(
+                persistedItem(11L, 101L, 2), persistedItem(12L, 102L, 1), persistedItem(13L, 103L, 4)));
+
+        store.updateProductQuantityInCart(USER_ID, 101L, 5);
+        ShoppingCart cart = store.removeProductFromCart(USER_ID, 102L);
+        store.flush(USER_ID);
+        store.flush(USER_ID);
+
+        assertEquals(List.of(101L, 103L), cart.getItems().stream().map(CartItem::getProductId).toList());
+        assertEquals(11L, cart.getItems().get(0).getId());
+        verify(cartItemRepository, times(1)).saveQuantity(eq(CART_ID), eq(101L), eq(5), eq(PRICE), any(LocalDateTime.class));
+        verify(cartItemRepository, never()).saveQuantity(eq(CART_ID), eq(103L), any(), any(), any());
+        verify(cartItemRepository, times(1)).deleteByCartIdAndProductIdIn(CART_ID, Set.of(102L));
+        verify(shoppingCartRepository, times(1)).touchToVersion(eq(CART_ID), eq(5L), any(LocalDateTime.class));
+    }
+
+    @Test
+    void updateUnknownProduct_throwsSameErrorAndLeavesCartClean() {
+        when(jpaCartStore.getOrCreateShoppingCart(USER_ID)).thenReturn(persistedCart());
+
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> store.updateProductQuantityInCart(USER_ID, 999L, 2));
+        store.flushDirtyCarts();
+
+        assertEquals("Producto con ID 999 no encontrado en el carrito para actualizar.", exception.getMessage());
+        verifyNoInteractions(cartItemRepository, shoppingCartRepository);
+    }
+
+    @Test
+    void clearCart_deletesAllItemsBeforeWritingNewOnes() {
+        when(jpaCartStore.getOrCreateShoppingCart(USER_ID)).thenReturn(persistedCart(persistedItem(11L, 102L, 1)));
+
+        assertTrue(store.clearCart(USER_ID).getItems().isEmpty());
+        store.addProductToCart(USER_ID, keyboard, 2);
+        store.flush(USER_ID);
+
+        InOrder writes = inOrder(cartItemRepository);
+        writes.verify(cartItemRepository).deleteByCartId(CART_ID);
+        writes.verify(cartItemRepository).saveQuantity(eq(CART_ID), eq(101L), eq(2), eq(PRICE), any(LocalDateTime.class));
+    }
+
+    @Test
+    void failedWrite_isRetriedAsFullRewrite() {
+        when(jpaCartStore.getOrCreateShoppingCart(USER_ID)).thenReturn(persistedCart(persistedItem(11L, 102L, 1)));
+        when(cartItemRepository.saveQuantity(any(), eq(101L), any(), any(), any()))
+                .thenThrow(new DataAccessResourceFailureException("MySQL no disponible"))
+                .thenReturn(1);
+
+        store.addProductToCart(USER_ID, keyboard, 2);
+        store.flushDirtyCarts();
+        store.flushDirtyCarts();
+
+        verify(cartItemRepository, times(1)).deleteByCartId(CART_ID);
+        verify(cartItemRepository, times(2)).saveQuantity(eq(CART_ID), eq(101L), eq(2), eq(PRICE), any(LocalDateTime.class));
+        verify(cartItemRepository, times(1)).saveQuantity(eq(CART_ID), eq(102L), eq(1), eq(PRICE), any(LocalDateTime.class));
+    }
+
+    @Test
+    void removeOrderedItems_writesPendingChangesBeforeSubtractingAndReloadsCartNextTime() {
+        when(jpaCartStore.getOrCreateShoppingCart(USER_ID)).thenReturn(persistedCart());
+        List<CartItem> ordered = List.of(persistedItem(1L, 101L, 1));
+
+        // Cambio posterior a la instantánea del checkout: no se pierde
+        store.addProductToCart(USER_ID, keyboard, 2);
+        store.removeOrderedItems(USER_ID, ordered);
+        store.getOrCreateShoppingCart(USER_ID);
+
+        InOrder order = inOrder(cartItemRepository, jpaCartStore);
+        order.verify(cartItemRepository).saveQuantity(eq(CART_ID), eq(101L), eq(2), eq(PRICE), any(LocalDateTime.class));
+        order.verify(jpaCartStore).removeOrderedItems(USER_ID, ordered);
+        verify(jpaCartStore, times(2)).getOrCreateShoppingCart(USER_ID);
+        // La versión ya expuesta (ETag) se conserva en MySQL, así que el carrito recargado no la repite
+        verify(shoppingCartRepository, times(1)).touchToVersion(eq(CART_ID), eq(4L), any(LocalDateTime.class));
+    }
+
+    @Test
+    void removeOrderedItems_cartIsNotReloadedUntilCheckoutTransactionEnds() {
+        when(jpaCartStore.getOrCreateShoppingCart(USER_ID)).thenReturn(persistedCart());
+        when(jpaCartStore.addProductToCart(USER_ID, keyboard, 1)).thenReturn(persistedCart());
+        List<CartItem> ordered = List.of(persistedItem(1L, 101L, 1));
+        store.getOrCreateShoppingCart(USER_ID);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            store.removeOrderedItems(USER_ID, ordered);
+            // Con la transacción del checkout abierta, cargarlo leería el carrito sin la resta aún sin confirmar
+            store.addProductToCart(USER_ID, keyboard, 1);
+            verify(jpaCartStore, times(1)).addProductToCart(USER_ID, keyboard, 1);
+            verify(jpaCartStore, times(1)).getOrCreateShoppingCart(USER_ID);
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        store.getOrCreateShoppingCart(USER_ID);
+        verify(jpaCartStore, times(2)).getOrCreateShoppingCart(USER_ID);
+    }
+
+    @Test
+    void flush_assignsIdsOfNewlyWrittenItems() {
+        when(jpaCartStore.getOrCreateShoppingCart(USER_ID)).thenReturn(persistedCart());
+        when(cartItemRepository.findByCartId(CART_ID)).thenReturn(List.of(persistedItem(21L, 101L, 2)));
+
+        assertNull(store.addProductToCart(USER_ID, keyboard, 2).getItems().get(0).getId());
+        store.flush(USER_ID);
+
+        assertEquals(21L, store.getOrCreateShoppingCart(USER_ID).getItems().get(0).getId());
+    }
+
+    @Test
+    void restoreCartItems_writesPendingChangesBeforeDelegating() {
+        when(jpaCartStore.getOrCreateShoppingCart(USER_ID)).thenReturn(persistedCart());
+        List<CartItem> restored = List.of(persistedItem(null, 202L, 1));
+
+        store.addProductToCart(USER_ID, keyboard, 2);
+        store.restoreCartItems(USER_ID, restored);
+
+        InOrder order = inOrder(cartItemRepository, jpaCartStore);
+        order.verify(cartItemRepository).saveQuantity(eq(CART_ID), eq(101L), eq(2), eq(PRICE), any(LocalDateTime.class));
+        order.verify(jpaCartStore).restoreCartItems(USER_ID, restored);
+    }
+
+    @Test
+    void findShoppingCart_readsUnloadedCartWithoutLoadingOrCreatingIt() {
+        when(jpaCartStore.findShoppingCart(USER_ID)).thenReturn(Optional.empty());
+
+        assertTrue(store.findShoppingCart(USER_ID).isEmpty());
+        store.flushDirtyCarts();
+
+        verify(jpaCartStore, never()).getOrCreateShoppingCart(any());
+        verifyNoInteractions(cartItemRepository, shoppingCartRepository);
+    }
+
+    @Test
+    void findShoppingCart_returnsPendingChangesOfLoadedCart() {
+        when(jpaCartStore.getOrCreateShoppingCart(USER_ID)).thenReturn(persistedCart());
+        store.addProductToCart(USER_ID, keyboard, 2);
+
+        ShoppingCart cart = store.findShoppingCart(USER_ID).orElseThrow();
+
+        assertEquals(2, cart.getItems().get(0).getQuantity());
+        verify(jpaCartStore, never()).findShoppingCart(any());
+    }
+
+    @Test
+    void findVersion_isTheInMemoryVersionWhileTheCartIsLoaded() {
+        when(jpaCartStore.findVersion(USER_ID)).thenReturn(Optional.of(3L));
+        assertEquals(Optional.of(3L), store.findVersion(USER_ID));
+
+        when(jpaCartStore.getOrCreateShoppingCart(USER_ID)).thenReturn(persistedCart());
+        store.addProductToCart(USER_ID, keyboard, 2);
+
+        // MySQL sigue en la 3 hasta la siguiente escritura
+        assertEquals(Optional.of(4L), store.findVersion(USER_ID));
+        verify(jpaCartStore, times(1)).findVersion(USER_ID);
+    }
+
+    @Test
+    void applyItemOperations_isAppliedInMemoryAsOneModificationAndNothingOnFailure() {
+        when(jpaCartStore.getOrCreateShoppingCart(USER_ID)).thenReturn(persistedCart(persistedItem(11L, 102L, 1)));
+        ProductDto mouse = new ProductDto(103L, "Ratón", "Un ratón inalámbrico.", new BigDecimal("20.00"), 10);
+
+        ShoppingCart cart = store.applyItemOperations(USER_ID, List.of(
+                new CartItemOperationDto(CartItemOperationDto.Type.ADD, 101L, 2),
+                new CartItemOperationDto(CartItemOperationDto.Type.UPDATE, 102L, 0),
+                new CartItemOperationDto(CartItemOperationDto.Type.ADD, 103L, 1)), Map.of(101L, keyboard, 103L, mouse));
+        assertThrows(RuntimeException.class, () -> store.applyItemOperations(USER_ID, List.of(
+                new CartItemOperationDto(CartItemOperationDto.Type.ADD, 101L, 1),
+                new CartItemOperationDto(CartItemOperationDto.Type.UPDATE, 102L, 3)), Map.of(101L, keyboard)));
+        store.flush(USER_ID);
+
+        assertEquals(List.of(101L, 103L), cart.getItems().stream().map(CartItem::getProductId).toList());
+        assertEquals(4L, cart.getVersion());
+        verify(cartItemRepository, times(1)).saveQuantity(eq(CART_ID), eq(101L), eq(2), eq(PRICE), any(LocalDateTime.class));
+        verify(cartItemRepository, times(1)).saveQuantity(eq(CART_ID), eq(103L), eq(1), eq(new BigDecimal("20.00")), any(LocalDateTime.class));
+        verify(cartItemRepository, times(1)).deleteByCartIdAndProductIdIn(CART_ID, Set.of(102L));
+        verify(shoppingCartRepository, times(1)).touchToVersion(eq(CART_ID), eq(4L), any(LocalDateTime.class));
+    }
+
+    @Test
+    void cartsBeyondCapacityGoStraightToMySql() {
+        properties.setMaxCarts(1);
+        when(jpaCartStore.getOrCreateShoppingCart(USER_ID)).thenReturn(persistedCart());
+
+        store.getOrCreateShoppingCart(USER_ID);
+        store.addProductToCart(2L, keyboard, 1);
+
+        verify(jpaCartStore, times(1)).addProductToCart(2L, keyboard, 1);
+        verify(jpaCartStore, never()).getOrCreateShoppingCart(2L);
+    }
+}